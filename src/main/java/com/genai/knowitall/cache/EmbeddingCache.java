@@ -0,0 +1,171 @@
+package com.genai.knowitall.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.logging.Logger;
+
+/**
+ * Content-addressed embedding cache.
+ *
+ * Entries are keyed by SHA-256 of (model name, text), so identical text is only
+ * embedded once per model and switching models never serves vectors from the old one.
+ *
+ * Tiers:
+ * - Memory: bounded LRU of float[] (doc.embedding.cache.memory.max-entries).
+ * - Disk (optional, doc.embedding.cache.disk.dir): one file per entry with the vector
+ *   stored as fp16 (half the size of float32; well within embedding precision needs).
+ *   Survives restarts, so re-ingesting unchanged chunks skips the provider entirely.
+ *   Not size-bounded; the directory can be pruned or deleted at any time.
+ */
+@Component
+public class EmbeddingCache {
+
+    private static final Logger logger = Logger.getLogger(EmbeddingCache.class.getName());
+
+    private static final String FILE_SUFFIX = ".f16";
+
+    private final boolean enabled;
+    private final LruCache<String, float[]> memory;
+    private final Path diskDir;
+
+    public EmbeddingCache(
+            @Value("${doc.embedding.cache.enabled:true}") boolean enabled,
+            @Value("${doc.embedding.cache.memory.max-entries:10000}") int memoryMaxEntries,
+            @Value("${doc.embedding.cache.disk.dir:}") String diskDir) {
+        this.enabled = enabled;
+        this.memory = new LruCache<>(Math.max(1, memoryMaxEntries));
+        this.diskDir = enabled && diskDir != null && !diskDir.isBlank() ? Paths.get(diskDir) : null;
+
+        if (this.diskDir != null) {
+            try {
+                Files.createDirectories(this.diskDir);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot create embedding cache directory: " + this.diskDir, e);
+            }
+        }
+        logger.info("EmbeddingCache initialized (enabled: " + enabled + ", memory entries: " + memoryMaxEntries +
+                   ", disk: " + (this.diskDir != null ? this.diskDir : "disabled") + ")");
+    }
+
+    /**
+     * Look up a cached vector: memory first, then disk (promoted to memory on hit).
+     * @return The vector, or null on a miss. Callers must not modify it.
+     */
+    public float[] get(String modelName, String text) {
+        if (!enabled) {
+            return null;
+        }
+        String key = key(modelName, text);
+        float[] vector = memory.get(key);
+        if (vector == null && diskDir != null) {
+            vector = readFromDisk(key);
+            if (vector != null) {
+                memory.put(key, vector);
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Store a vector in memory and, if enabled, on disk. Disk failures are logged and ignored.
+     */
+    public void put(String modelName, String text, float[] vector) {
+        if (!enabled || vector == null) {
+            return;
+        }
+        String key = key(modelName, text);
+        memory.put(key, vector);
+        if (diskDir != null) {
+            writeToDisk(key, vector);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==================== Helper Methods ====================
+
+    /**
+     * SHA-256 over model name and text (NUL-separated), hex encoded.
+     */
+    static String key(String modelName, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Two-level fan-out (first hash byte) keeps directories small.
+     */
+    private Path pathFor(String key) {
+        return diskDir.resolve(key.substring(0, 2)).resolve(key + FILE_SUFFIX);
+    }
+
+    private float[] readFromDisk(String key) {
+        Path path = pathFor(key);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int dimension = in.readInt();
+            float[] vector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = Float.float16ToFloat(in.readShort());
+            }
+            return vector;
+        } catch (IOException e) {
+            logger.warning("Discarding unreadable embedding cache entry " + path + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // best effort
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Write via a temp file and atomic move so concurrent readers never see a partial entry.
+     */
+    private void writeToDisk(String key, float[] vector) {
+        Path path = pathFor(key);
+        if (Files.exists(path)) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Files.createDirectories(path.getParent());
+            temp = Files.createTempFile(path.getParent(), key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(vector.length);
+                for (float value : vector) {
+                    out.writeShort(Float.floatToFloat16(value));
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warning("Failed to write embedding cache entry " + path + ": " + e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // best effort
+                }
+            }
+        }
+    }
+}
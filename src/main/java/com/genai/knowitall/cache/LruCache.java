@@ -0,0 +1,65 @@
+package com.genai.knowitall.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, thread-safe LRU cache.
+ *
+ * Backed by an access-ordered LinkedHashMap; the least recently used entry is
+ * evicted once maxEntries is exceeded. All operations synchronize on the cache,
+ * which is fine for the short critical sections here (no I/O under the lock).
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class LruCache<K, V> {
+
+    private final int maxEntries;
+    private final LinkedHashMap<K, V> entries;
+
+    public LruCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get a cached value and mark it as recently used.
+     * @return The value, or null if absent
+     */
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized V remove(K key) {
+        return entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+}
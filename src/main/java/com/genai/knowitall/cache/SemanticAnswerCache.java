@@ -0,0 +1,232 @@
+package com.genai.knowitall.cache;
+
+import com.genai.knowitall.controller.dto.QueryResponse;
+import com.genai.knowitall.controller.dto.SourceReference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Answer cache for near-duplicate questions.
+ *
+ * Lookup is a nearest-neighbour scan over the cached question embeddings: a hit is the
+ * most similar entry with cosine similarity >= similarityThreshold and the same scope
+ * (topK, confidence threshold, filter). The scan is linear, which at the configured
+ * maxEntries (a few thousand) costs well under the embedding call it follows.
+ *
+ * Eviction: entries expire after ttl; beyond maxEntries the oldest entry is dropped.
+ * Invalidation: invalidateDocument removes every entry citing the document in its
+ * sources, plus every ungrounded entry (new content may now answer those questions).
+ * A version counter guards against caching a response computed from data that was
+ * invalidated while the query was running.
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private static final Logger logger = Logger.getLogger(SemanticAnswerCache.class.getName());
+
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LinkedHashMap<Long, CacheEntry> entries = new LinkedHashMap<>();
+    private long nextEntryId;
+    private volatile long version;
+
+    public SemanticAnswerCache(
+            @Value("${rag.answer.cache.enabled:true}") boolean enabled,
+            @Value("${rag.answer.cache.similarity.threshold:0.95}") double similarityThreshold,
+            @Value("${rag.answer.cache.ttl.seconds:3600}") long ttlSeconds,
+            @Value("${rag.answer.cache.max.entries:2000}") int maxEntries) {
+        this.enabled = enabled && maxEntries > 0;
+        this.similarityThreshold = similarityThreshold;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxEntries = maxEntries;
+        logger.info("SemanticAnswerCache initialized (enabled: " + this.enabled +
+                   ", similarity threshold: " + similarityThreshold +
+                   ", ttl: " + ttlSeconds + "s, max entries: " + maxEntries + ")");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Current invalidation version; pass it back to put() so responses computed
+     * across an invalidation are not cached.
+     */
+    public long currentVersion() {
+        return version;
+    }
+
+    /**
+     * Find the cached response for the most similar question in the same scope.
+     * @param scope Scope key (see scopeKey)
+     * @param questionEmbedding Embedding of the incoming question
+     * @return Cached response, or empty if no entry is similar enough
+     */
+    public Optional<QueryResponse> lookup(String scope, float[] questionEmbedding) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        float[] query = normalize(questionEmbedding);
+        long now = System.currentTimeMillis();
+
+        CacheEntry best = null;
+        double bestSimilarity = similarityThreshold;
+
+        lock.readLock().lock();
+        try {
+            for (CacheEntry entry : entries.values()) {
+                if (entry.expiresAt <= now || !entry.scope.equals(scope) || entry.embedding.length != query.length) {
+                    continue;
+                }
+                double similarity = dot(query, entry.embedding);
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (best == null) {
+            return Optional.empty();
+        }
+        logger.fine("Answer cache hit (similarity: " + String.format("%.4f", bestSimilarity) + ")");
+        return Optional.of(best.response);
+    }
+
+    /**
+     * Cache a successful response. Skipped if any invalidation happened after
+     * versionAtStart (the response may cite deleted or outdated chunks).
+     */
+    public void put(String scope, float[] questionEmbedding, QueryResponse response, long versionAtStart) {
+        if (!enabled || response == null || response.getError() != null || response.getAnswer() == null) {
+            return;
+        }
+
+        Set<String> documentIds = new HashSet<>();
+        if (response.getSources() != null) {
+            for (SourceReference source : response.getSources()) {
+                if (source.getDocumentId() != null) {
+                    documentIds.add(source.getDocumentId());
+                }
+            }
+        }
+        CacheEntry entry = new CacheEntry(scope, normalize(questionEmbedding), response, documentIds,
+                Boolean.TRUE.equals(response.getIsGrounded()), System.currentTimeMillis() + ttlMillis);
+
+        lock.writeLock().lock();
+        try {
+            if (version != versionAtStart) {
+                return;
+            }
+            evictExpired();
+            while (entries.size() >= maxEntries) {
+                Iterator<Long> oldest = entries.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            entries.put(nextEntryId++, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop entries whose sources cite the document, and all ungrounded entries.
+     * Call when a document is deleted or (re-)ingested.
+     */
+    public void invalidateDocument(String documentId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            version++;
+            int before = entries.size();
+            entries.values().removeIf(entry -> !entry.grounded || entry.documentIds.contains(documentId));
+            logger.fine("Answer cache invalidated " + (before - entries.size()) + " entries for document: " + documentId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            version++;
+            entries.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Build the scope key: answers are only shared between queries with identical retrieval settings.
+     */
+    public static String scopeKey(int topK, double confidenceThreshold, Collection<String> documentIds,
+                                  Collection<String> owners) {
+        return topK + "|" + confidenceThreshold + "|" + sorted(documentIds) + "|" + sorted(owners);
+    }
+
+    // ==================== Helper Methods ====================
+
+    /**
+     * Remove expired entries. Entries share one TTL, so insertion order is expiry order.
+     * Caller holds the write lock.
+     */
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<CacheEntry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().expiresAt <= now) {
+            iterator.remove();
+        }
+    }
+
+    private static List<String> sorted(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return List.of();
+        }
+        List<String> list = new ArrayList<>(values);
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * Unit-length copy (the caller's array may be shared with the embedding cache).
+     */
+    private static float[] normalize(float[] embedding) {
+        float[] vector = embedding.clone();
+        double norm = 0.0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record CacheEntry(String scope, float[] embedding, QueryResponse response, Set<String> documentIds,
+                              boolean grounded, long expiresAt) {
+    }
+}
@@ -6,11 +6,20 @@ import org.springframework.scheduling.annotation.EnableAsync;
 /**
  * Configuration for async task execution.
  *
- * Enables Spring's @Async annotation for background processing.
+ * Enables Spring's @Async annotation for background processing. The only @Async task
+ * left is LexicalSearchService's index rebuild on startup; document ingestion runs on
+ * IngestionJobService's own workers (doc.ingestion.jobs.workers), not on this executor.
  * Thread pool configuration is defined in application.properties:
  * - spring.task.execution.pool.core-size
  * - spring.task.execution.pool.max-size
  * - spring.task.execution.pool.queue-capacity
+ *
+ * Virtual-thread mode (opt-in, spring.threads.virtual.enabled=true): Spring Boot then
+ * runs Tomcat request handling and this @Async executor on Java 21 virtual threads.
+ * The pool settings above no longer apply; spring.task.execution.simple.concurrency-limit
+ * bounds concurrent @Async tasks instead. Ingestion jobs and the RAG pipeline switch
+ * to virtual threads on the same flag, in their own executors. Pinning-prone client calls
+ * are offloaded to platform threads by BlockingCallGuard.
  */
 @Configuration
 @EnableAsync
@@ -0,0 +1,91 @@
+package com.genai.knowitall.config;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Keeps pinning-prone blocking calls off virtual threads.
+ *
+ * The OpenAI clients (LangChain4j → OkHttp) wait for HTTP/2 responses with
+ * Object.wait() inside synchronized blocks, which pins a virtual thread to its carrier
+ * for the whole call; a few hundred slow LLM calls would then exhaust the carriers.
+ * When spring.threads.virtual.enabled=true and the caller is a virtual thread, call()
+ * runs the work on a bounded platform-thread pool and parks the virtual thread on the
+ * result (parking does not pin). On platform threads, or with virtual threads off, the
+ * work runs inline.
+ *
+ * Qdrant gRPC calls need no guard: the client is future-based and callers wait in
+ * Future.get(), which parks cleanly.
+ */
+@Component
+public class BlockingCallGuard {
+
+    private static final Logger logger = Logger.getLogger(BlockingCallGuard.class.getName());
+
+    private final boolean virtualThreadsEnabled;
+    private final ExecutorService platformPool;
+
+    public BlockingCallGuard(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled,
+            @Value("${virtual.threads.blocking-pool.size:200}") int poolSize) {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+        this.platformPool = virtualThreadsEnabled
+                ? Executors.newFixedThreadPool(Math.max(1, poolSize), platformThreadFactory())
+                : null;
+        if (virtualThreadsEnabled) {
+            logger.info("Virtual threads enabled; pinning-prone client calls offloaded to " +
+                       poolSize + " platform threads");
+        }
+    }
+
+    /**
+     * Run a blocking client call, offloading it to a platform thread if the caller is virtual.
+     * Exceptions thrown by the call propagate unchanged.
+     */
+    public <T> T call(Supplier<T> blockingCall) {
+        if (platformPool == null || !Thread.currentThread().isVirtual()) {
+            return blockingCall.get();
+        }
+        try {
+            return CompletableFuture.supplyAsync(blockingCall, platformPool).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (platformPool != null) {
+            platformPool.shutdown();
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "blocking-io-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
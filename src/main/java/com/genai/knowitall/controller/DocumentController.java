@@ -5,14 +5,22 @@ import com.genai.knowitall.controller.dto.DocumentUploadResponse;
 import com.genai.knowitall.model.Document;
 import com.genai.knowitall.model.DocumentStatus;
 import com.genai.knowitall.repository.DocumentRepository;
+import com.genai.knowitall.service.DocumentDeletionService;
 import com.genai.knowitall.service.DocumentIngestionService;
-import com.genai.knowitall.service.TextExtractionService;
+import com.genai.knowitall.service.IngestionJobService;
+import com.genai.knowitall.service.exception.IngestionQueueFullException;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Set;
@@ -21,8 +29,8 @@ import java.util.logging.Logger;
 
 /**
  * REST controller for document upload and status tracking.
- * Handles endpoints for uploading documents, checking processing status,
- * listing all documents, and deleting documents.
+ * Handles endpoints for uploading documents, re-uploading new versions,
+ * checking processing status, listing all documents, and deleting documents.
  */
 @RestController
 @RequestMapping("/api/documents")
@@ -31,15 +39,19 @@ public class DocumentController {
     private static final Logger logger = Logger.getLogger(DocumentController.class.getName());
 
     private final DocumentRepository documentRepository;
-    private final TextExtractionService textExtractionService;
     private final DocumentIngestionService ingestionService;
+    private final IngestionJobService ingestionJobService;
+    private final DocumentDeletionService deletionService;
 
-    @Value("${doc.max.file.size.bytes:10485760}")
+    @Value("${doc.max.file.size.bytes:536870912}")
     private long maxFileSizeBytes;
 
     @Value("${doc.allowed.file.types}")
     private String allowedFileTypes;
 
+    @Value("${doc.upload.spool.dir:}")
+    private String spoolDir;
+
     private static final Set<String> ALLOWED_CONTENT_TYPES = Set.of(
             "application/pdf",
             "application/vnd.openxmlformats-officedocument.wordprocessingml.document"
@@ -47,16 +59,21 @@ public class DocumentController {
 
     public DocumentController(
             DocumentRepository documentRepository,
-            TextExtractionService textExtractionService,
-            DocumentIngestionService ingestionService) {
+            DocumentIngestionService ingestionService,
+            IngestionJobService ingestionJobService,
+            DocumentDeletionService deletionService) {
 
         this.documentRepository = documentRepository;
-        this.textExtractionService = textExtractionService;
         this.ingestionService = ingestionService;
+        this.ingestionJobService = ingestionJobService;
+        this.deletionService = deletionService;
     }
 
     /**
      * Upload a document for processing.
+     * The upload is spooled to disk and the request returns 202 Accepted right away;
+     * text extraction and the rest of ingestion run in the background (poll the
+     * status endpoint in the Location header).
      * @param file Multipart file to upload
      * @param title file name
      * @param description description of the document
@@ -77,11 +94,17 @@ public class DocumentController {
             // Validate file
             validateFile(file);
 
+            // Refuse early (before spooling) when the ingestion queue is saturated
+            ingestionJobService.admit(file.getSize());
+
             // Generate document ID
             String documentId = UUID.randomUUID().toString();
             String filename = file.getOriginalFilename();
             String documentTitle = (title != null && !title.isEmpty()) ? title : filename;
 
+            // Spool the upload so the request thread only copies bytes
+            Path spoolFile = spoolUpload(file, documentId);
+
             // Create document entity
             Document document = Document.builder()
                     .id(documentId)
@@ -95,32 +118,18 @@ public class DocumentController {
                     .totalChunks(0)
                     .build();
 
-            // Save document with UPLOADING status
-            documentRepository.save(document);
-            logger.info("Created document record: " + documentId);
-
-            // Extract text synchronously (fast operation)
-            String textContent;
             try {
-                textContent = textExtractionService.extractText(
-                        file.getInputStream(),
-                        file.getContentType(),
-                        filename
-                );
-                logger.info("Extracted " + textContent.length() + " characters from " + filename);
-            } catch (Exception e) {
-                // Update document status to FAILED
-                document.setStatus(DocumentStatus.FAILED);
-                document.setErrorMessage("Text extraction failed: " + e.getMessage());
-                documentRepository.save(document);
-
-                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
-                        .body(Map.of("error", "Failed to extract text from document: " + e.getMessage()));
+                // Save document with UPLOADING status, together with its job: extraction,
+                // chunking, embedding and vector storage run in the background as a
+                // durable job (resumed after a restart)
+                ingestionJobService.submit(document, spoolFile, file.getContentType(), filename);
+                logger.info("Created document record: " + documentId);
+            } catch (RuntimeException e) {
+                // Nothing was saved: no document is left UPLOADING without a job
+                Files.deleteIfExists(spoolFile);
+                throw e;
             }
 
-            // Start async processing (chunking + embedding + vector storage)
-            ingestionService.processDocumentAsync(documentId, textContent);
-
             // Return response
             DocumentUploadResponse response = DocumentUploadResponse.builder()
                     .documentId(documentId)
@@ -129,11 +138,18 @@ public class DocumentController {
                     .status(DocumentStatus.PROCESSING)
                     .uploadedAt(document.getUploadedAt())
                     .fileSizeBytes(file.getSize())
-                    .message("Document uploaded successfully. Processing in background.")
+                    .message("Document accepted. Processing in background.")
                     .build();
 
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/documents/" + documentId + "/status"))
+                    .body(response);
 
+        } catch (IngestionQueueFullException e) {
+            logger.warning("Upload refused: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", e.getMessage() + ". Retry later."));
         } catch (IllegalArgumentException e) {
             logger.warning("File validation failed: " + e.getMessage());
             return ResponseEntity.badRequest()
@@ -145,6 +161,99 @@ public class DocumentController {
         }
     }
 
+    /**
+     * Re-upload a new version of an existing document.
+     * Ingestion is incremental: the new version is chunked and compared with the stored
+     * chunks by content, only new or changed chunks are embedded, and chunks (and
+     * vectors) whose content is gone are removed once the new version is in place. The
+     * current version stays searchable in the meantime.
+     * @param id ID of the document to update
+     * @param file Multipart file with the new version
+     * @param title New title (optional, kept otherwise)
+     * @param description New description (optional, kept otherwise)
+     * @return ResponseEntity with upload result (202, or 409 while the document is still being ingested)
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<?> updateDocument(
+            @PathVariable String id,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "title", required = false) String title,
+            @RequestParam(value = "description", required = false) String description) {
+
+        logger.info("Received re-upload request for document " + id + ": " + file.getOriginalFilename() +
+                   " (size: " + file.getSize() + " bytes)");
+
+        Document document = documentRepository.findById(id).orElse(null);
+        if (document == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // Early refusal before spooling; submitUpdate re-checks when it queues the job
+        if (ingestionJobService.isPending(id)) {
+            return stillIngesting();
+        }
+
+        try {
+            validateFile(file);
+            ingestionJobService.admit(file.getSize());
+
+            String filename = file.getOriginalFilename();
+            Path spoolFile = spoolUpload(file, id);
+
+            document.setFilename(filename);
+            if (title != null && !title.isEmpty()) {
+                document.setTitle(title);
+            }
+            if (description != null) {
+                document.setDescription(description);
+            }
+            document.setFileSizeBytes(file.getSize());
+            document.setStatus(DocumentStatus.UPLOADING);
+            document.setErrorMessage(null);
+            document.setProcessedAt(null);
+
+            boolean queued;
+            try {
+                queued = ingestionJobService.submitUpdate(document, spoolFile, file.getContentType(), filename);
+            } catch (RuntimeException e) {
+                Files.deleteIfExists(spoolFile);
+                throw e;
+            }
+            if (!queued) {
+                // Another re-upload of the document was queued meanwhile
+                Files.deleteIfExists(spoolFile);
+                return stillIngesting();
+            }
+
+            DocumentUploadResponse response = DocumentUploadResponse.builder()
+                    .documentId(id)
+                    .filename(filename)
+                    .title(document.getTitle())
+                    .status(DocumentStatus.PROCESSING)
+                    .uploadedAt(document.getUploadedAt())
+                    .fileSizeBytes(file.getSize())
+                    .message("New version accepted. Changed content is processed in background.")
+                    .build();
+
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/documents/" + id + "/status"))
+                    .body(response);
+
+        } catch (IngestionQueueFullException e) {
+            logger.warning("Re-upload refused: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", e.getMessage() + ". Retry later."));
+        } catch (IllegalArgumentException e) {
+            logger.warning("File validation failed: " + e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.severe("Document re-upload failed: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Failed to upload document: " + e.getMessage()));
+        }
+    }
+
     /**
      * Get document processing status.
      *
@@ -187,19 +296,19 @@ public class DocumentController {
     }
 
     /**
-     * Delete a document and its chunks.
+     * Delete a document, its chunks and its vectors.
+     * The document is gone from queries when this returns; its vectors are purged from
+     * the vector store in the background.
      */
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteDocument(@PathVariable String id) {
         logger.info("Delete request for document: " + id);
 
-        return documentRepository.findById(id)
-                .map(doc -> {
-                    documentRepository.delete(doc);
-                    logger.info("Deleted document: " + id);
-                    return ResponseEntity.ok(Map.of("message", "Document deleted successfully"));
-                })
-                .orElse(ResponseEntity.notFound().build());
+        if (!documentRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        deletionService.deleteDocument(id);
+        return ResponseEntity.ok(Map.of("message", "Document deleted successfully"));
     }
 
     // ==================== Helper Methods ====================
@@ -224,6 +333,32 @@ public class DocumentController {
         }
     }
 
+    /**
+     * Copy the upload to a spool file (doc.upload.spool.dir, default: the system temp dir).
+     * The ingestion job deletes it when done.
+     */
+    private Path spoolUpload(MultipartFile file, String documentId) throws IOException {
+        Path directory = spoolDir == null || spoolDir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"))
+                : Files.createDirectories(Paths.get(spoolDir));
+        Path spoolFile = Files.createTempFile(directory, documentId + "-", ".upload");
+        try {
+            file.transferTo(spoolFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spoolFile);
+            throw e;
+        }
+        return spoolFile;
+    }
+
+    /**
+     * 409 response for a re-upload of a document whose ingestion is still pending.
+     */
+    private ResponseEntity<?> stillIngesting() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "Document is still being ingested. Retry when it is READY or FAILED."));
+    }
+
     /**
      * Get user-friendly status message.
      */
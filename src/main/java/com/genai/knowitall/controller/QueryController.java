@@ -2,22 +2,32 @@ package com.genai.knowitall.controller;
 
 import com.genai.knowitall.controller.dto.QueryRequest;
 import com.genai.knowitall.controller.dto.QueryResponse;
+import com.genai.knowitall.service.QueryStreamListener;
 import com.genai.knowitall.service.RAGService;
+import com.genai.knowitall.vectorstore.SearchFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
  * REST Controller for RAG query/search operations.
  *
- * Endpoint:
+ * Endpoints:
  * - POST /api/query - Submit a question and get RAG-grounded answer
+ * - POST /api/query/stream - Same, streamed as Server-Sent Events (sources first, then answer tokens)
  *
  * Features:
  * - Semantic search across all documents
- * - Document filtering (optional)
+ * - Document and owner filtering (optional, applied inside the vector search)
  * - Confidence scoring and grounding detection
  * - Source attribution with excerpts
  * - Performance metrics (retrieval time, generation time)
@@ -29,9 +39,13 @@ public class QueryController {
     private static final Logger logger = Logger.getLogger(QueryController.class.getName());
 
     private final RAGService ragService;
+    private final long streamTimeoutMs;
 
-    public QueryController(RAGService ragService) {
+    public QueryController(
+            RAGService ragService,
+            @Value("${rag.stream.timeout.ms:120000}") long streamTimeoutMs) {
         this.ragService = ragService;
+        this.streamTimeoutMs = streamTimeoutMs;
     }
 
     /**
@@ -42,7 +56,9 @@ public class QueryController {
      *   "question": "What are the benefits of AI in healthcare?",
      *   "topK": 5,
      *   "confidenceThreshold": 0.7,
-     *   "documentFilter": null
+     *   "documentFilter": null,
+     *   "documentIds": ["doc-123", "doc-456"],
+     *   "owners": ["alice"]
      * }
      *
      * Response example:
@@ -84,7 +100,7 @@ public class QueryController {
                     request.getQuestion(),
                     request.getTopK(),
                     request.getConfidenceThreshold(),
-                    request.getDocumentFilter()
+                    toSearchFilter(request)
             );
 
             // Log metrics
@@ -103,6 +119,132 @@ public class QueryController {
         }
     }
 
+    /**
+     * Execute a RAG query and stream the answer as Server-Sent Events.
+     *
+     * Same request body as POST /api/query. Events, in order:
+     * - sources: retrieval result (confidence, isGrounded, sources, retrievalTimeMs), sent before generation starts
+     * - token:   one answer token per event, as generated by the LLM
+     * - done:    the full QueryResponse including answer and timings
+     * - error:   { "error": "..." } if retrieval or generation fails (ends the stream)
+     *
+     * The servlet thread is released once retrieval is done and generation has started;
+     * tokens are pushed from the LLM client's threads. When the client disconnects or
+     * the stream times out, no more events are sent and the LLM stream is aborted.
+     *
+     * @param request QueryRequest with question and optional parameters
+     * @return SSE stream
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter queryStream(@RequestBody QueryRequest request) {
+        logger.info("Received streaming query request: " + request.getQuestion());
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        // Set once the emitter is done (completed, timed out or failed): later callbacks send nothing
+        AtomicBoolean cancelled = new AtomicBoolean();
+        emitter.onCompletion(() -> cancelled.set(true));
+        emitter.onTimeout(() -> {
+            logger.fine("Streaming query timed out after " + streamTimeoutMs + "ms");
+            cancelled.set(true);
+            emitter.complete();
+        });
+        emitter.onError(error -> cancelled.set(true));
+
+        if (!request.isValid()) {
+            sendError(emitter, "Question cannot be empty");
+            return emitter;
+        }
+
+        ragService.streamQuery(
+                request.getQuestion(),
+                request.getTopK(),
+                request.getConfidenceThreshold(),
+                toSearchFilter(request),
+                new QueryStreamListener() {
+                    @Override
+                    public void onSources(QueryResponse retrieval) {
+                        if (!cancelled.get() && !send(emitter, "sources", retrieval)) {
+                            cancelled.set(true);
+                        }
+                    }
+
+                    @Override
+                    public void onToken(String token) {
+                        if (!cancelled.get() && !send(emitter, "token", token)) {
+                            cancelled.set(true);
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(QueryResponse response) {
+                        if (cancelled.get()) {
+                            return;
+                        }
+                        logger.info("Streaming query processed: confidence=" + String.format("%.2f", response.getConfidence()) +
+                                   ", grounded=" + response.getIsGrounded() +
+                                   ", sources=" + response.getSources().size() +
+                                   ", totalTime=" + response.getTotalTimeMs() + "ms");
+                        if (send(emitter, "done", response)) {
+                            emitter.complete();
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        if (cancelled.get()) {
+                            logger.fine("Streaming query stopped after the client went away: " + error.getMessage());
+                            return;
+                        }
+                        logger.severe("Streaming query failed: " + error.getMessage());
+                        sendError(emitter, "Failed to process query: " + error.getMessage());
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return cancelled.get();
+                    }
+                });
+
+        return emitter;
+    }
+
+    /**
+     * Send one SSE event. Returns false (and ends the stream) if the client has gone away.
+     */
+    private boolean send(SseEmitter emitter, String eventName, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            logger.fine("Streaming client disconnected: " + e.getMessage());
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    private void sendError(SseEmitter emitter, String message) {
+        if (send(emitter, "error", Map.of("error", message))) {
+            emitter.complete();
+        }
+    }
+
+    /**
+     * Merge the single documentFilter with the documentIds/owners sets.
+     */
+    private SearchFilter toSearchFilter(QueryRequest request) {
+        Set<String> documentIds = new HashSet<>();
+        if (request.getDocumentIds() != null) {
+            documentIds.addAll(request.getDocumentIds());
+        }
+        if (request.getDocumentFilter() != null && !request.getDocumentFilter().isEmpty()) {
+            documentIds.add(request.getDocumentFilter());
+        }
+        return SearchFilter.builder()
+                .documentIds(documentIds)
+                .owners(request.getOwners())
+                .build();
+    }
+
     /**
      * Health check endpoint for query service.
      *
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Set;
+
 /**
  * Request DTO for querying the RAG system.
  *
@@ -13,7 +15,9 @@ import lombok.NoArgsConstructor;
  *   "question": "What are the benefits of AI in healthcare?",
  *   "topK": 5,
  *   "confidenceThreshold": 0.7,
- *   "documentFilter": "optional-document-id"
+ *   "documentFilter": "optional-document-id",
+ *   "documentIds": ["doc-1", "doc-2"],
+ *   "owners": ["alice"]
  * }
  */
 @Data
@@ -46,6 +50,16 @@ public class QueryRequest {
      */
     private String documentFilter;
 
+    /**
+     * Optional: Restrict results to any of these documents (combined with documentFilter)
+     */
+    private Set<String> documentIds;
+
+    /**
+     * Optional: Restrict results to documents owned by any of these owners
+     */
+    private Set<String> owners;
+
     /**
      * Validation: question must not be empty
      */
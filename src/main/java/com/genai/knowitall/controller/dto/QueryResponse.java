@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Response DTO for answering a user's query in the RAG system.
@@ -13,7 +14,7 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class QueryResponse {
 
     /**
@@ -66,6 +67,19 @@ public class QueryResponse {
      */
     private Long totalTimeMs;
 
+    /**
+     * Per-stage timings in milliseconds, in completion order
+     * (embedding, cache_lookup, retrieval.<leg>, retrieval, context, sources, generation, ...).
+     * Stages that overlap (e.g. sources and generation) run concurrently, so they do not sum to totalTimeMs.
+     */
+    private Map<String, Long> stageTimingsMs;
+
+    /**
+     * True if the answer was served from the semantic answer cache
+     * (a near-identical question was answered recently); no LLM call was made
+     */
+    private Boolean cached;
+
     /**
      * Optional error message if something went wrong
      */
@@ -2,23 +2,29 @@ package com.genai.knowitall.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.springframework.data.domain.Persistable;
 import java.util.UUID;
 
 /**
  * JPA Entity representing a chunk of a document.
  * When a document is split into chunks for embedding and vector storage,
  * each chunk is represented by this entity.
+ *
+ * Chunk IDs are assigned up front (UUID), so the entity reports whether it is new
+ * (Persistable): saveAll() then persists new chunks directly, in JDBC batches, instead
+ * of merging them (a SELECT per chunk to find out whether the row exists).
  */
 @Entity
 @Table(name = "document_chunks", indexes = {
         @Index(name = "idx_document_id", columnList = "document_id"),
-        @Index(name = "idx_vector_id", columnList = "vector_id")
+        @Index(name = "idx_vector_id", columnList = "vector_id"),
+        @Index(name = "idx_content_hash", columnList = "content_hash")
 })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class DocumentChunk {
+public class DocumentChunk implements Persistable<String> {
 
     /**
      * Unique identifier for this chunk (UUID)
@@ -47,8 +53,16 @@ public class DocumentChunk {
     private Integer chunkIndex;
 
     /**
-     * ID of the embedding vector stored in Qdrant
-     * Used to track and delete embeddings when chunks are deleted
+     * SHA-256 of the normalized content (hex), identical for chunks with the same text
+     * Chunks with the same hash share one embedding and one vector (see SharedVector)
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * ID of the embedding vector stored in the vector store
+     * Shared by all chunks with the same content hash; the chunk's own ID when it
+     * introduced the vector. Used to track and delete embeddings when chunks are deleted
      */
     @Column(name = "vector_id")
     private String vectorId;
@@ -74,6 +88,24 @@ public class DocumentChunk {
      */
     private Integer tokenCount;
 
+    /**
+     * First and last page (1-based) this chunk's text comes from
+     * Null for formats without pages (DOCX, plain text)
+     */
+    @Column(name = "page_start")
+    private Integer pageStart;
+
+    @Column(name = "page_end")
+    private Integer pageEnd;
+
+    /**
+     * Upload revision of the document this chunk was produced from (0 = first upload)
+     * A re-upload writes its chunks under the next revision and removes older ones when done
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer revision = 0;
+
     /**
      * Many-to-One relationship with Document
      */
@@ -83,6 +115,28 @@ public class DocumentChunk {
     @EqualsAndHashCode.Exclude
     private Document document;
 
+    /**
+     * True until the chunk has been persisted or was loaded from the database
+     */
+    @Transient
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private boolean newChunk = true;
+
+    @Override
+    public boolean isNew() {
+        return newChunk;
+    }
+
+    @PostPersist
+    @PostLoad
+    void markNotNew() {
+        this.newChunk = false;
+    }
+
     /**
      * Generate a new UUID for chunk if not set
      */
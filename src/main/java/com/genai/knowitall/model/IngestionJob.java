@@ -0,0 +1,140 @@
+package com.genai.knowitall.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+/**
+ * JPA Entity representing the durable ingestion job of an uploaded document.
+ * Jobs survive restarts: a worker leases a job, renews the lease while it runs, and a
+ * job whose lease expires (crash, deploy) is picked up again and resumed from its
+ * checkpoint instead of starting over.
+ */
+@Entity
+@Table(name = "ingestion_jobs", indexes = {
+        @Index(name = "idx_ingestion_job_status", columnList = "status, priority_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestionJob {
+
+    /**
+     * ID of the document being ingested (one job per document)
+     */
+    @Id
+    @Column(name = "document_id", columnDefinition = "VARCHAR(36)")
+    private String documentId;
+
+    /**
+     * Current state of the job
+     */
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private IngestionJobStatus status;
+
+    /**
+     * Spooled upload the text is extracted from (deleted when the job finishes)
+     */
+    @Column(nullable = false, length = 1024)
+    private String spoolPath;
+
+    /**
+     * MIME content type and original filename of the upload
+     */
+    private String contentType;
+
+    private String filename;
+
+    /**
+     * Size of the spooled upload
+     */
+    private Long sizeBytes;
+
+    /**
+     * Dispatch order: queued jobs are leased in ascending order of this time, which is
+     * the enqueue time pushed back in proportion to the upload size, so small documents
+     * overtake large ones queued shortly before them (but not indefinitely)
+     */
+    private LocalDateTime priorityAt;
+
+    /**
+     * Re-upload of an existing document: chunks are written under revision, chunks of
+     * earlier revisions keep serving queries until the job completes, and content they
+     * already embedded is reused rather than embedded again
+     */
+    @Column(nullable = false)
+    private Boolean incremental;
+
+    /**
+     * Chunk revision this job writes (0 for a first upload)
+     */
+    @Column(nullable = false)
+    private Integer revision;
+
+    /**
+     * Checkpoint: number of chunks produced and stored so far (in chunk order)
+     */
+    @Column(nullable = false)
+    private Integer chunksCheckpoint;
+
+    /**
+     * Checkpoint: all chunks have been produced and saved; a resumed job only needs to
+     * embed the chunks that still have no vector (vectorId is null)
+     */
+    @Column(nullable = false)
+    private Boolean chunkingComplete;
+
+    /**
+     * Number of times a worker has leased this job
+     */
+    @Column(nullable = false)
+    private Integer attempts;
+
+    /**
+     * Worker (node) currently holding the lease, and when the lease expires
+     */
+    private String leaseOwner;
+
+    private LocalDateTime leaseExpiresAt;
+
+    /**
+     * Error message if the job failed
+     */
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    public void prePersist() {
+        if (this.status == null) {
+            this.status = IngestionJobStatus.QUEUED;
+        }
+        if (this.chunksCheckpoint == null) {
+            this.chunksCheckpoint = 0;
+        }
+        if (this.chunkingComplete == null) {
+            this.chunkingComplete = false;
+        }
+        if (this.incremental == null) {
+            this.incremental = false;
+        }
+        if (this.revision == null) {
+            this.revision = 0;
+        }
+        if (this.attempts == null) {
+            this.attempts = 0;
+        }
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
+        if (this.priorityAt == null) {
+            this.priorityAt = this.createdAt;
+        }
+    }
+}
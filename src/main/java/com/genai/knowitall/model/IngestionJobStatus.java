@@ -0,0 +1,26 @@
+package com.genai.knowitall.model;
+
+/**
+ * Enum representing the state of a durable ingestion job
+ */
+public enum IngestionJobStatus {
+    /**
+     * Waiting for a worker to lease it
+     */
+    QUEUED,
+
+    /**
+     * Leased by a worker (taken over by another worker if the lease expires)
+     */
+    RUNNING,
+
+    /**
+     * Document reached READY
+     */
+    COMPLETED,
+
+    /**
+     * Document reached FAILED, or the job ran out of attempts
+     */
+    FAILED
+}
@@ -0,0 +1,85 @@
+package com.genai.knowitall.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.springframework.data.domain.Persistable;
+import java.time.LocalDateTime;
+
+/**
+ * JPA Entity representing one stored vector, shared by every chunk with the same content.
+ *
+ * Chunks are content-addressed: the first chunk whose normalized text has a given hash
+ * is embedded and stored as a vector (point ID = that chunk's ID) and recorded here.
+ * Later chunks with the same hash and embedding model, in any document, reuse the
+ * vector by setting their vectorId to it instead of being embedded again. The chunks
+ * referencing a vector are its reference list (document_chunks.vector_id).
+ *
+ * Like DocumentChunk, the ID is assigned up front and the entity reports whether it is
+ * new, so new rows are inserted in the window's JDBC batches without a SELECT first.
+ */
+@Entity
+@Table(name = "shared_vectors", indexes = {
+        @Index(name = "idx_shared_vector_hash", columnList = "content_hash, embedding_model")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SharedVector implements Persistable<String> {
+
+    /**
+     * ID of the vector in the vector store (the ID of the chunk that introduced it)
+     */
+    @Id
+    @Column(name = "vector_id", columnDefinition = "VARCHAR(36)")
+    private String vectorId;
+
+    /**
+     * SHA-256 of the normalized chunk content (hex)
+     */
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    /**
+     * Embedding model the vector was generated with (vectors of different models are never shared)
+     */
+    @Column(name = "embedding_model", nullable = false)
+    private String embeddingModel;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * True until the row has been persisted or was loaded from the database
+     */
+    @Transient
+    @Builder.Default
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private boolean newVector = true;
+
+    @Override
+    public String getId() {
+        return vectorId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newVector;
+    }
+
+    @PostPersist
+    @PostLoad
+    void markNotNew() {
+        this.newVector = false;
+    }
+
+    @PrePersist
+    public void prePersist() {
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.genai.knowitall.repository;
 
 import com.genai.knowitall.model.DocumentChunk;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -45,6 +50,78 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, St
      */
     List<DocumentChunk> findByDocumentIdAndVectorIdIsNull(String documentId);
 
+    /**
+     * Find chunks of one revision of a document that haven't been embedded yet
+     */
+    List<DocumentChunk> findByDocumentIdAndRevisionAndVectorIdIsNull(String documentId, Integer revision);
+
+    /**
+     * Count embedded chunks of one revision of a document
+     */
+    long countByDocumentIdAndRevisionAndVectorIdIsNotNull(String documentId, Integer revision);
+
+    /**
+     * Record that stored chunks now have a vector (vectorId = chunk ID), in one statement
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DocumentChunk dc SET dc.vectorId = dc.id, dc.embeddingModel = :model WHERE dc.id IN :ids")
+    int markEmbedded(@Param("ids") Collection<String> ids, @Param("model") String embeddingModel);
+
+    /**
+     * Record that stored chunks reuse an existing (shared) vector, in one statement
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DocumentChunk dc SET dc.vectorId = :vectorId, dc.embeddingModel = :model WHERE dc.id IN :ids")
+    int assignVector(@Param("ids") Collection<String> ids, @Param("vectorId") String vectorId,
+                     @Param("model") String embeddingModel);
+
+    /**
+     * Chunk indexes already stored for a revision of a document (used to resume an interrupted ingestion)
+     */
+    @Query("SELECT dc.chunkIndex FROM DocumentChunk dc WHERE dc.documentId = :documentId AND dc.revision = :revision")
+    List<Integer> findChunkIndexesByDocumentIdAndRevision(@Param("documentId") String documentId,
+                                                          @Param("revision") Integer revision);
+
+    /**
+     * Latest chunk revision of a document (null if it has no chunks)
+     */
+    @Query("SELECT MAX(dc.revision) FROM DocumentChunk dc WHERE dc.documentId = :documentId")
+    Integer findMaxRevision(@Param("documentId") String documentId);
+
+    /**
+     * Vector references of a document's chunks from revisions before the given one
+     * (the chunks a re-upload replaces)
+     */
+    @Query("SELECT dc.id AS chunkId, dc.vectorId AS vectorId, dc.contentHash AS contentHash, " +
+           "dc.embeddingModel AS embeddingModel FROM DocumentChunk dc " +
+           "WHERE dc.documentId = :documentId AND dc.revision < :revision")
+    List<ChunkVectorInfo> findVectorInfoBeforeRevision(@Param("documentId") String documentId,
+                                                       @Param("revision") Integer revision);
+
+    /**
+     * Vector references of all chunks of a document (used to delete it)
+     */
+    @Query("SELECT dc.id AS chunkId, dc.vectorId AS vectorId, dc.contentHash AS contentHash, " +
+           "dc.embeddingModel AS embeddingModel FROM DocumentChunk dc WHERE dc.documentId = :documentId")
+    List<ChunkVectorInfo> findVectorInfoByDocumentId(@Param("documentId") String documentId);
+
+    /**
+     * Which of the given vector IDs some chunk references (vectors not returned are orphans)
+     */
+    @Query("SELECT DISTINCT dc.vectorId FROM DocumentChunk dc WHERE dc.vectorId IN :vectorIds")
+    List<String> findReferencedVectorIds(@Param("vectorIds") Collection<String> vectorIds);
+
+    /**
+     * Vector references of the chunks of one revision of a document
+     */
+    @Query("SELECT dc.id AS chunkId, dc.vectorId AS vectorId, dc.contentHash AS contentHash, " +
+           "dc.embeddingModel AS embeddingModel FROM DocumentChunk dc " +
+           "WHERE dc.documentId = :documentId AND dc.revision = :revision")
+    List<ChunkVectorInfo> findVectorInfoByRevision(@Param("documentId") String documentId,
+                                                   @Param("revision") Integer revision);
+
     /**
      * Delete all chunks for a document
      * (though CASCADE should handle this, this is explicit)
@@ -56,6 +133,11 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, St
      */
     Long countByDocumentId(String documentId);
 
+    /**
+     * Count chunks of one revision of a document
+     */
+    Long countByDocumentIdAndRevision(String documentId, Integer revision);
+
     /**
      * Custom query: Find chunks that have been successfully embedded
      */
@@ -66,4 +148,84 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, St
      * Find a specific chunk by document and chunk index
      */
     Optional<DocumentChunk> findByDocumentIdAndChunkIndex(String documentId, Integer chunkIndex);
+
+    /**
+     * Source metadata (token count, document title) for many chunks in one query.
+     * Projection only: chunk content is not loaded and Document is joined, not lazily fetched.
+     */
+    @Query("SELECT dc.id AS chunkId, dc.tokenCount AS tokenCount, d.title AS documentTitle " +
+           "FROM DocumentChunk dc LEFT JOIN dc.document d WHERE dc.id IN :ids")
+    List<ChunkSourceInfo> findSourceInfoByIds(@Param("ids") Collection<String> ids);
+
+    /**
+     * Chunks referencing any of the given vectors, with their document's owner
+     * (one row per chunk, ordered by vector, document and chunk index).
+     */
+    @Query("SELECT dc.id AS chunkId, dc.vectorId AS vectorId, dc.documentId AS documentId, d.owner AS owner, " +
+           "dc.chunkIndex AS chunkIndex FROM DocumentChunk dc LEFT JOIN dc.document d " +
+           "WHERE dc.vectorId IN :vectorIds ORDER BY dc.vectorId, dc.documentId, dc.chunkIndex")
+    List<VectorReferenceInfo> findReferencesByVectorIds(@Param("vectorIds") Collection<String> vectorIds);
+
+    /**
+     * Page through all embedded chunks with the fields the lexical index needs
+     * (content, vector ID, document ID, document owner), ordered by chunk ID for stable paging.
+     */
+    @Query("SELECT dc.id AS chunkId, dc.vectorId AS vectorId, dc.documentId AS documentId, d.owner AS owner, " +
+           "dc.content AS content FROM DocumentChunk dc LEFT JOIN dc.document d " +
+           "WHERE dc.vectorId IS NOT NULL ORDER BY dc.id")
+    Slice<ChunkIndexInfo> findIndexInfo(Pageable pageable);
+
+    /**
+     * Projection used by findIndexInfo.
+     */
+    interface ChunkIndexInfo {
+        String getChunkId();
+
+        String getVectorId();
+
+        String getDocumentId();
+
+        String getOwner();
+
+        String getContent();
+    }
+
+    /**
+     * Projection used by the findVectorInfo* queries.
+     */
+    interface ChunkVectorInfo {
+        String getChunkId();
+
+        String getVectorId();
+
+        String getContentHash();
+
+        String getEmbeddingModel();
+    }
+
+    /**
+     * Projection used by findReferencesByVectorIds.
+     */
+    interface VectorReferenceInfo {
+        String getChunkId();
+
+        String getVectorId();
+
+        String getDocumentId();
+
+        String getOwner();
+
+        Integer getChunkIndex();
+    }
+
+    /**
+     * Projection used by findSourceInfoByIds.
+     */
+    interface ChunkSourceInfo {
+        String getChunkId();
+
+        Integer getTokenCount();
+
+        String getDocumentTitle();
+    }
 }
@@ -3,7 +3,11 @@ package com.genai.knowitall.repository;
 import com.genai.knowitall.model.Document;
 import com.genai.knowitall.model.DocumentStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -40,6 +44,14 @@ public interface DocumentRepository extends JpaRepository<Document, String> {
      */
     List<Document> findByOwnerAndStatusOrderByUploadedAtDesc(String owner, DocumentStatus status);
 
+    /**
+     * Set the chunk count of a document without loading it
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Document d SET d.totalChunks = :totalChunks WHERE d.id = :id")
+    int updateTotalChunks(@Param("id") String id, @Param("totalChunks") int totalChunks);
+
     /**
      * Count documents by status (useful for monitoring)
      */
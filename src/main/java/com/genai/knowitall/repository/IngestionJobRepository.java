@@ -0,0 +1,138 @@
+package com.genai.knowitall.repository;
+
+import com.genai.knowitall.model.IngestionJob;
+import com.genai.knowitall.model.IngestionJobStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for IngestionJob entity
+ * Leasing is done with conditional updates, so concurrent workers (threads or nodes)
+ * never both claim the same job
+ */
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, String> {
+
+    /**
+     * IDs of jobs that can be leased: queued, or running with an expired lease.
+     * In dispatch order (priorityAt: small uploads ahead of large ones).
+     */
+    @Query("SELECT j.documentId FROM IngestionJob j " +
+           "WHERE j.status = :queued OR (j.status = :running AND j.leaseExpiresAt < :now) " +
+           "ORDER BY j.priorityAt, j.createdAt")
+    List<String> findClaimableIds(@Param("queued") IngestionJobStatus queued,
+                                  @Param("running") IngestionJobStatus running,
+                                  @Param("now") LocalDateTime now,
+                                  Pageable pageable);
+
+    /**
+     * Lease a job if it is still claimable.
+     * @return 1 if this worker now holds the lease, 0 if another worker got it first
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE IngestionJob j SET j.status = :running, j.leaseOwner = :owner, j.leaseExpiresAt = :until, " +
+           "j.attempts = j.attempts + 1, j.updatedAt = :now " +
+           "WHERE j.documentId = :id AND (j.status = :queued OR (j.status = :running AND j.leaseExpiresAt < :now))")
+    int claim(@Param("id") String id,
+              @Param("owner") String owner,
+              @Param("until") LocalDateTime until,
+              @Param("now") LocalDateTime now,
+              @Param("queued") IngestionJobStatus queued,
+              @Param("running") IngestionJobStatus running);
+
+    /**
+     * Extend the lease of a job this worker holds.
+     * @return 0 if the lease was lost (expired and taken over)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE IngestionJob j SET j.leaseExpiresAt = :until " +
+           "WHERE j.documentId = :id AND j.leaseOwner = :owner AND j.status = :running")
+    int renewLease(@Param("id") String id,
+                   @Param("owner") String owner,
+                   @Param("until") LocalDateTime until,
+                   @Param("running") IngestionJobStatus running);
+
+    /**
+     * Lock the row of a job this worker holds until the caller's transaction ends, so a
+     * concurrent cancel (which deletes the row) waits for it.
+     * @return 0 if the job was cancelled or the lease lost
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE IngestionJob j SET j.updatedAt = :now " +
+           "WHERE j.documentId = :id AND j.leaseOwner = :owner AND j.status = :running")
+    int lockLease(@Param("id") String id,
+                  @Param("owner") String owner,
+                  @Param("now") LocalDateTime now,
+                  @Param("running") IngestionJobStatus running);
+
+    /**
+     * Record chunking progress of a job this worker holds.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE IngestionJob j SET j.chunksCheckpoint = :chunks, j.chunkingComplete = :complete, j.updatedAt = :now " +
+           "WHERE j.documentId = :id AND j.leaseOwner = :owner")
+    int updateCheckpoint(@Param("id") String id,
+                         @Param("owner") String owner,
+                         @Param("chunks") int chunks,
+                         @Param("complete") boolean complete,
+                         @Param("now") LocalDateTime now);
+
+    /**
+     * Move a job this worker holds to a final state and release the lease.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE IngestionJob j SET j.status = :status, j.lastError = :error, j.leaseOwner = NULL, " +
+           "j.leaseExpiresAt = NULL, j.updatedAt = :now WHERE j.documentId = :id AND j.leaseOwner = :owner")
+    int finish(@Param("id") String id,
+               @Param("owner") String owner,
+               @Param("status") IngestionJobStatus status,
+               @Param("error") String error,
+               @Param("now") LocalDateTime now);
+
+    /**
+     * Replace a finished job (completed or failed) with a new queued one, in place.
+     * @return 0 if the job is queued or running (or there is none), so nothing was replaced
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE IngestionJob j SET j.status = :queued, j.spoolPath = :spoolPath, j.contentType = :contentType, " +
+           "j.filename = :filename, j.sizeBytes = :sizeBytes, j.incremental = :incremental, j.revision = :revision, " +
+           "j.chunksCheckpoint = 0, j.chunkingComplete = false, j.attempts = 0, j.leaseOwner = NULL, " +
+           "j.leaseExpiresAt = NULL, j.lastError = NULL, j.createdAt = :now, j.priorityAt = :priorityAt, " +
+           "j.updatedAt = :now WHERE j.documentId = :id AND j.status NOT IN (:queued, :running)")
+    int requeueFinished(@Param("id") String id,
+                        @Param("spoolPath") String spoolPath,
+                        @Param("contentType") String contentType,
+                        @Param("filename") String filename,
+                        @Param("sizeBytes") long sizeBytes,
+                        @Param("incremental") boolean incremental,
+                        @Param("revision") int revision,
+                        @Param("now") LocalDateTime now,
+                        @Param("priorityAt") LocalDateTime priorityAt,
+                        @Param("queued") IngestionJobStatus queued,
+                        @Param("running") IngestionJobStatus running);
+
+    /**
+     * Count jobs by status (useful for monitoring)
+     */
+    Long countByStatus(IngestionJobStatus status);
+
+    /**
+     * Total upload size of jobs with a status (admission control)
+     */
+    @Query("SELECT COALESCE(SUM(j.sizeBytes), 0) FROM IngestionJob j WHERE j.status = :status")
+    long sumSizeBytesByStatus(@Param("status") IngestionJobStatus status);
+}
@@ -0,0 +1,31 @@
+package com.genai.knowitall.repository;
+
+import com.genai.knowitall.model.SharedVector;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for SharedVector entity
+ * Looks up vectors that chunks with known content can reuse
+ */
+@Repository
+public interface SharedVectorRepository extends JpaRepository<SharedVector, String> {
+
+    /**
+     * Vectors already stored for any of the given content hashes with one embedding model,
+     * oldest first (concurrent ingestion may store the same content twice; the oldest wins)
+     */
+    List<SharedVector> findByEmbeddingModelAndContentHashInOrderByCreatedAtAsc(
+            String embeddingModel, Collection<String> contentHashes);
+
+    /**
+     * Which of the given vectors are still recorded (a vector's row is deleted when it is released)
+     */
+    @Query("SELECT sv.vectorId FROM SharedVector sv WHERE sv.vectorId IN :vectorIds")
+    List<String> findExistingVectorIds(@Param("vectorIds") Collection<String> vectorIds);
+}
@@ -0,0 +1,494 @@
+package com.genai.knowitall.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory inverted index with BM25 scoring over document chunks.
+ *
+ * Each chunk gets a dense internal doc number. Postings per term are a growable
+ * byte[] of varint pairs (doc-number delta, term frequency); since doc numbers only
+ * grow, new chunks are appended without re-encoding. Per-doc data (length, chunk id,
+ * vector id, document id, owner) lives in parallel arrays.
+ *
+ * Removal tombstones doc numbers; compact() rewrites all postings without them once
+ * tombstones outnumber live chunks. Term statistics (document frequency) include
+ * tombstoned chunks until compaction, which only slightly skews IDF.
+ *
+ * Thread safety: concurrent searches are safe, but add/removeDocument/compact/clear must
+ * not run concurrently with anything else. LexicalSearchService guards the index with a
+ * read-write lock.
+ */
+public class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<String, int[]> docsByDocument = new HashMap<>();
+    private final Map<String, Integer> docsByChunkId = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+
+    private int[] docLengths = new int[1024];
+    private String[] chunkIds = new String[1024];
+    private String[] vectorIds = new String[1024];
+    private String[] documentIds = new String[1024];
+    private String[] owners = new String[1024];
+    private int size;
+    private int deletedCount;
+    private long liveTokenCount;
+
+    /**
+     * Index one chunk. Adding a chunk ID that is already indexed is a no-op.
+     * @param vectorId Vector the chunk references (shared by chunks with the same content)
+     * @return The internal doc number
+     */
+    public int add(String chunkId, String vectorId, String documentId, String owner, String content) {
+        Integer existing = docsByChunkId.get(chunkId);
+        if (existing != null) {
+            return existing;
+        }
+        List<String> tokens = tokenize(content);
+        int doc = size;
+        ensureCapacity(doc + 1);
+        docLengths[doc] = tokens.size();
+        chunkIds[doc] = chunkId;
+        vectorIds[doc] = vectorId;
+        documentIds[doc] = documentId;
+        owners[doc] = owner;
+        docsByChunkId.put(chunkId, doc);
+        size++;
+        liveTokenCount += tokens.size();
+
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (String token : tokens) {
+            termFrequencies.merge(token, 1, Integer::sum);
+        }
+        termFrequencies.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new Postings()).add(doc, tf));
+
+        int[] docs = docsByDocument.get(documentId);
+        if (docs == null) {
+            docs = new int[]{0, 0, 0, 0};
+        } else if (docs[0] + 1 == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length * 2);
+        }
+        docs[++docs[0]] = doc;
+        docsByDocument.put(documentId, docs);
+        return doc;
+    }
+
+    /**
+     * Tombstone every chunk of a document.
+     * @return Number of chunks removed
+     */
+    public int removeDocument(String documentId) {
+        int[] docs = docsByDocument.remove(documentId);
+        if (docs == null) {
+            return 0;
+        }
+        for (int i = 1; i <= docs[0]; i++) {
+            int doc = docs[i];
+            if (!deleted.get(doc)) {
+                deleted.set(doc);
+                docsByChunkId.remove(chunkIds[doc]);
+                deletedCount++;
+                liveTokenCount -= docLengths[doc];
+            }
+        }
+        compactIfSparse();
+        return docs[0];
+    }
+
+    /**
+     * Tombstone one chunk.
+     * @return True if the chunk was indexed
+     */
+    public boolean removeChunk(String chunkId) {
+        Integer doc = docsByChunkId.remove(chunkId);
+        if (doc == null) {
+            return false;
+        }
+        deleted.set(doc);
+        deletedCount++;
+        liveTokenCount -= docLengths[doc];
+        return true;
+    }
+
+    /**
+     * Compact once tombstones outnumber live chunks (and are not just a handful).
+     */
+    public void compactIfSparse() {
+        if (deletedCount > 1024 && deletedCount > liveSize()) {
+            compact();
+        }
+    }
+
+    /**
+     * BM25 top-K search.
+     * @param query  Free text; tokenized like indexed content
+     * @param topK   Maximum number of hits
+     * @param accept Optional doc-number filter (null = accept all live chunks)
+     * @return Hits sorted by score, best first
+     */
+    public List<Hit> search(String query, int topK, IntPredicate accept) {
+        int live = liveSize();
+        if (live == 0 || topK <= 0) {
+            return List.of();
+        }
+        float avgDocLength = Math.max(1f, (float) liveTokenCount / live);
+
+        ScoreAccumulator scores = new ScoreAccumulator();
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            Postings termPostings = postings.get(term);
+            if (termPostings == null) {
+                continue;
+            }
+            float idf = (float) Math.log(1.0 + (size - termPostings.docFreq + 0.5) / (termPostings.docFreq + 0.5));
+
+            byte[] data = termPostings.data;
+            int pos = 0;
+            int doc = 0;
+            while (pos < termPostings.length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                int tf = 0;
+                shift = 0;
+                do {
+                    b = data[pos++];
+                    tf |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+
+                if (deleted.get(doc) || (accept != null && !accept.test(doc))) {
+                    continue;
+                }
+                float norm = K1 * (1 - B + B * docLengths[doc] / avgDocLength);
+                scores.add(doc, idf * tf * (K1 + 1) / (tf + norm));
+            }
+        }
+        return scores.top(topK);
+    }
+
+    /**
+     * Rewrite postings and per-doc arrays without tombstoned chunks.
+     */
+    public void compact() {
+        if (deletedCount == 0) {
+            return;
+        }
+        int[] remap = new int[size];
+        int next = 0;
+        for (int doc = 0; doc < size; doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+            } else {
+                remap[doc] = next;
+                docLengths[next] = docLengths[doc];
+                chunkIds[next] = chunkIds[doc];
+                vectorIds[next] = vectorIds[doc];
+                documentIds[next] = documentIds[doc];
+                owners[next] = owners[doc];
+                next++;
+            }
+        }
+        Arrays.fill(chunkIds, next, size, null);
+        Arrays.fill(vectorIds, next, size, null);
+        Arrays.fill(documentIds, next, size, null);
+        Arrays.fill(owners, next, size, null);
+
+        postings.replaceAll((term, old) -> old.remap(remap));
+        postings.values().removeIf(p -> p.docFreq == 0);
+
+        // Chunks removed one by one are still listed under their document: drop them
+        for (int[] docs : docsByDocument.values()) {
+            int kept = 0;
+            for (int i = 1; i <= docs[0]; i++) {
+                if (remap[docs[i]] >= 0) {
+                    docs[++kept] = remap[docs[i]];
+                }
+            }
+            docs[0] = kept;
+        }
+        docsByChunkId.replaceAll((chunkId, doc) -> remap[doc]);
+        size = next;
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+    public void clear() {
+        postings.clear();
+        docsByDocument.clear();
+        docsByChunkId.clear();
+        deleted.clear();
+        Arrays.fill(chunkIds, null);
+        Arrays.fill(vectorIds, null);
+        Arrays.fill(documentIds, null);
+        Arrays.fill(owners, null);
+        size = 0;
+        deletedCount = 0;
+        liveTokenCount = 0;
+    }
+
+    public String chunkId(int doc) {
+        return chunkIds[doc];
+    }
+
+    public String vectorId(int doc) {
+        return vectorIds[doc];
+    }
+
+    public String documentId(int doc) {
+        return documentIds[doc];
+    }
+
+    public String owner(int doc) {
+        return owners[doc];
+    }
+
+    public int liveSize() {
+        return size - deletedCount;
+    }
+
+    public int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * Lowercased runs of letters/digits, plus compound tokens such as error codes and
+     * part numbers ("ERR-4012", "v2.3.1", "part_no_77") kept whole so they match exactly.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(lower.charAt(i))) {
+                i++;
+            }
+            int compoundStart = i;
+            int parts = 0;
+            boolean hasDigit = false;
+            while (i < length && Character.isLetterOrDigit(lower.charAt(i))) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(lower.charAt(i))) {
+                    hasDigit |= Character.isDigit(lower.charAt(i));
+                    i++;
+                }
+                tokens.add(lower.substring(start, i));
+                parts++;
+                // Continue the compound only across a single joiner followed by another run
+                if (i + 1 < length && isJoiner(lower.charAt(i)) && Character.isLetterOrDigit(lower.charAt(i + 1))) {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            if (parts > 1 && hasDigit) {
+                int end = i;
+                tokens.add(lower.substring(compoundStart, end));
+            }
+        }
+        return tokens;
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static boolean isJoiner(char c) {
+        return c == '-' || c == '_' || c == '.' || c == '/';
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > docLengths.length) {
+            int capacity = Math.max(required, docLengths.length * 2);
+            docLengths = Arrays.copyOf(docLengths, capacity);
+            chunkIds = Arrays.copyOf(chunkIds, capacity);
+            vectorIds = Arrays.copyOf(vectorIds, capacity);
+            documentIds = Arrays.copyOf(documentIds, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+        }
+    }
+
+    /**
+     * A scored search hit (internal doc number).
+     */
+    public record Hit(int doc, float score) {
+    }
+
+    /**
+     * Varint-compressed postings list: (doc delta, tf) pairs in increasing doc order.
+     */
+    private static final class Postings {
+        private byte[] data = new byte[8];
+        private int length;
+        private int lastDoc;
+        private int docFreq;
+
+        void add(int doc, int tf) {
+            writeVarint(doc - lastDoc);
+            writeVarint(tf);
+            lastDoc = doc;
+            docFreq++;
+        }
+
+        /**
+         * Re-encode with new doc numbers; docs mapped to -1 are dropped.
+         */
+        Postings remap(int[] remap) {
+            Postings result = new Postings();
+            int pos = 0;
+            int doc = 0;
+            while (pos < length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                int tf = 0;
+                shift = 0;
+                do {
+                    b = data[pos++];
+                    tf |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                doc += delta;
+                if (remap[doc] >= 0) {
+                    result.add(remap[doc], tf);
+                }
+            }
+            return result;
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+
+    /**
+     * Open-addressing doc → score map, sized to the number of matched docs rather than the corpus.
+     */
+    private static final class ScoreAccumulator {
+        private int[] keys = new int[64];
+        private float[] values = new float[64];
+        private boolean[] used = new boolean[64];
+        private int count;
+
+        void add(int doc, float score) {
+            if ((count + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = mix(doc) & mask;
+            while (used[slot] && keys[slot] != doc) {
+                slot = (slot + 1) & mask;
+            }
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = doc;
+                count++;
+            }
+            values[slot] += score;
+        }
+
+        /**
+         * Best k entries via a size-k min-heap.
+         */
+        List<Hit> top(int k) {
+            int heapSize = 0;
+            int[] heapDocs = new int[Math.min(k, count)];
+            float[] heapScores = new float[heapDocs.length];
+            if (heapDocs.length == 0) {
+                return List.of();
+            }
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (!used[slot]) {
+                    continue;
+                }
+                float score = values[slot];
+                if (heapSize < heapDocs.length) {
+                    int i = heapSize++;
+                    while (i > 0 && heapScores[(i - 1) >>> 1] > score) {
+                        heapDocs[i] = heapDocs[(i - 1) >>> 1];
+                        heapScores[i] = heapScores[(i - 1) >>> 1];
+                        i = (i - 1) >>> 1;
+                    }
+                    heapDocs[i] = keys[slot];
+                    heapScores[i] = score;
+                } else if (score > heapScores[0]) {
+                    int i = 0;
+                    while (true) {
+                        int child = 2 * i + 1;
+                        if (child >= heapSize) {
+                            break;
+                        }
+                        if (child + 1 < heapSize && heapScores[child + 1] < heapScores[child]) {
+                            child++;
+                        }
+                        if (heapScores[child] >= score) {
+                            break;
+                        }
+                        heapDocs[i] = heapDocs[child];
+                        heapScores[i] = heapScores[child];
+                        i = child;
+                    }
+                    heapDocs[i] = keys[slot];
+                    heapScores[i] = score;
+                }
+            }
+            Hit[] hits = new Hit[heapSize];
+            for (int i = 0; i < heapSize; i++) {
+                hits[i] = new Hit(heapDocs[i], heapScores[i]);
+            }
+            Arrays.sort(hits, (a, b) -> Float.compare(b.score(), a.score()));
+            return Arrays.asList(hits);
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            float[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            values = new float[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            count = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldUsed[slot]) {
+                    add(oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+
+        private static int mix(int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
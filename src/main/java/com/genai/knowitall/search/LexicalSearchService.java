@@ -0,0 +1,252 @@
+package com.genai.knowitall.search;
+
+import com.genai.knowitall.model.DocumentChunk;
+import com.genai.knowitall.repository.DocumentChunkRepository;
+import com.genai.knowitall.repository.DocumentChunkRepository.ChunkIndexInfo;
+import com.genai.knowitall.vectorstore.SearchFilter;
+import com.genai.knowitall.vectorstore.VectorSearchResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.logging.Logger;
+
+/**
+ * Keyword (BM25) search over all embedded chunks, used as the lexical leg of hybrid retrieval.
+ *
+ * The index lives in process (Bm25Index) and is kept current by the ingestion pipeline
+ * (addChunks as chunk windows are stored, removeChunks when a re-upload replaces chunks,
+ * removeDocument on re-ingest and delete). On startup it is rebuilt from the database in
+ * the background; until then searches see only documents ingested since startup.
+ * Updates made while the rebuild runs are replayed onto the rebuilt index before it
+ * replaces the live one.
+ *
+ * Results carry the vector ID, chunk ID, document ID and raw BM25 score; content and
+ * chunk index are left null (the caller resolves them only for chunks it actually uses).
+ * Chunks with identical content share a vector ID and are returned once (best-scoring
+ * copy), so copies of the same text do not use up the top-K.
+ */
+@Service
+public class LexicalSearchService {
+
+    private static final Logger logger = Logger.getLogger(LexicalSearchService.class.getName());
+
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final DocumentChunkRepository chunkRepository;
+    private final boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Bm25Index index = new Bm25Index();
+    private List<Consumer<Bm25Index>> pendingDuringRebuild;
+
+    public LexicalSearchService(
+            DocumentChunkRepository chunkRepository,
+            @Value("${rag.hybrid.enabled:true}") boolean enabled) {
+        this.chunkRepository = chunkRepository;
+        this.enabled = enabled;
+        logger.info("LexicalSearchService initialized (enabled: " + enabled + ")");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add chunks of a document (e.g. one ingestion window) without touching chunks
+     * already indexed for it. Chunks already in the index are skipped.
+     * @param documentId Document ID
+     * @param owner Document owner (may be null)
+     * @param chunks Stored chunks (id, vectorId and content must be set)
+     */
+    public void addChunks(String documentId, String owner, List<DocumentChunk> chunks) {
+        if (!enabled) {
+            return;
+        }
+        apply(target -> {
+            for (DocumentChunk chunk : chunks) {
+                target.add(chunk.getId(), chunk.getVectorId(), documentId, owner, chunk.getContent());
+            }
+        });
+    }
+
+    /**
+     * Remove individual chunks (e.g. chunks replaced by a re-upload) from the index.
+     */
+    public void removeChunks(Collection<String> chunkIds) {
+        if (!enabled || chunkIds.isEmpty()) {
+            return;
+        }
+        List<String> ids = List.copyOf(chunkIds);
+        apply(target -> {
+            for (String chunkId : ids) {
+                target.removeChunk(chunkId);
+            }
+            target.compactIfSparse();
+        });
+    }
+
+    /**
+     * Remove all chunks of a document from the index.
+     */
+    public void removeDocument(String documentId) {
+        if (!enabled) {
+            return;
+        }
+        apply(target -> target.removeDocument(documentId));
+    }
+
+    /**
+     * BM25 top-K search, one result per vector (duplicate chunks collapsed).
+     * When copies push distinct chunks out of the top-K, the search is repeated with a
+     * larger K until topK distinct chunks are found or the matches run out.
+     * @param query Free-text query
+     * @param topK Maximum number of results
+     * @param filter Optional document/owner restrictions (null = search all)
+     * @return Matches sorted by BM25 score (not normalized), best first
+     */
+    public List<VectorSearchResult> search(String query, int topK, SearchFilter filter) {
+        if (!enabled) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Bm25Index current = index;
+            IntPredicate accept = toPredicate(current, filter);
+            int fetch = topK;
+            while (true) {
+                List<Bm25Index.Hit> hits = current.search(query, fetch, accept);
+
+                Set<String> seen = new HashSet<>();
+                List<VectorSearchResult> results = new ArrayList<>(Math.min(hits.size(), topK));
+                for (Bm25Index.Hit hit : hits) {
+                    String chunkId = current.chunkId(hit.doc());
+                    String vectorId = current.vectorId(hit.doc()) != null ? current.vectorId(hit.doc()) : chunkId;
+                    if (!seen.add(vectorId)) {
+                        continue;
+                    }
+                    results.add(VectorSearchResult.builder()
+                            .vectorId(vectorId)
+                            .chunkId(chunkId)
+                            .documentId(current.documentId(hit.doc()))
+                            .score((double) hit.score())
+                            .build());
+                    if (results.size() == topK) {
+                        break;
+                    }
+                }
+                if (results.size() == topK || hits.size() < fetch) {
+                    return results;
+                }
+                fetch *= 2;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the index from the database once the application has started.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuild the index from all embedded chunks in the database, paging through a
+     * projection query. The live index keeps serving searches until the swap.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            if (pendingDuringRebuild != null) {
+                logger.info("Lexical index rebuild already running");
+                return;
+            }
+            pendingDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long startTime = System.currentTimeMillis();
+        Bm25Index rebuilt = new Bm25Index();
+        try {
+            Slice<ChunkIndexInfo> page = chunkRepository.findIndexInfo(PageRequest.of(0, REBUILD_PAGE_SIZE));
+            while (true) {
+                for (ChunkIndexInfo chunk : page) {
+                    rebuilt.add(chunk.getChunkId(), chunk.getVectorId(), chunk.getDocumentId(), chunk.getOwner(),
+                            chunk.getContent());
+                }
+                if (!page.hasNext()) {
+                    break;
+                }
+                page = chunkRepository.findIndexInfo(page.nextPageable());
+            }
+        } catch (Exception e) {
+            logger.warning("Lexical index rebuild failed (keeping current index): " + e.getMessage());
+            lock.writeLock().lock();
+            try {
+                pendingDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            pendingDuringRebuild.forEach(update -> update.accept(rebuilt));
+            pendingDuringRebuild = null;
+            index = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Lexical index rebuilt: " + rebuilt.liveSize() + " chunks, " + rebuilt.termCount() +
+                   " terms in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    // ==================== Helper Methods ====================
+
+    /**
+     * Apply an update to the live index, and record it for replay if a rebuild is running.
+     */
+    private void apply(Consumer<Bm25Index> update) {
+        lock.writeLock().lock();
+        try {
+            update.accept(index);
+            if (pendingDuringRebuild != null) {
+                pendingDuringRebuild.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static IntPredicate toPredicate(Bm25Index index, SearchFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        Set<String> documentIds = filter.hasDocumentIds() ? filter.getDocumentIds() : null;
+        Set<String> owners = filter.hasOwners() ? filter.getOwners() : null;
+        Set<String> excluded = filter.hasExcludedDocumentIds() ? filter.getExcludedDocumentIds() : null;
+        return doc -> (documentIds == null || documentIds.contains(index.documentId(doc)))
+                && (owners == null || owners.contains(index.owner(doc)))
+                && (excluded == null || !excluded.contains(index.documentId(doc)));
+    }
+}
@@ -0,0 +1,28 @@
+package com.genai.knowitall.search;
+
+import com.genai.knowitall.vectorstore.VectorSearchResult;
+
+import java.util.List;
+
+/**
+ * Second-stage ranking of retrieved chunks against the question.
+ *
+ * RAGService over-fetches candidates, hands them to the active Reranker and keeps the
+ * top-K of the returned order. Implementations run under a per-query time budget and
+ * are cancelled (interrupted) when it expires, in which case first-stage order is used.
+ */
+public interface Reranker {
+
+    /**
+     * Reorder candidates by relevance to the question, best first.
+     * @param question User's question
+     * @param candidates First-stage results (content set), best first
+     * @return The same results in reranked order; scores are left unchanged
+     */
+    List<VectorSearchResult> rerank(String question, List<VectorSearchResult> candidates);
+
+    /**
+     * Short name for logs and stage timings.
+     */
+    String name();
+}
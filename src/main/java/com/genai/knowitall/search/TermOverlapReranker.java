@@ -0,0 +1,138 @@
+package com.genai.knowitall.search;
+
+import com.genai.knowitall.vectorstore.VectorSearchResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Logger;
+
+/**
+ * Lightweight reranker scoring each candidate jointly against the question text,
+ * without a model call (microseconds per candidate).
+ *
+ * Features per candidate:
+ * - coverage: share of question terms present, weighted by IDF over the candidate pool
+ *   (terms every candidate contains carry little weight)
+ * - phrase: share of adjacent question term pairs that appear adjacent in the chunk
+ * - prior: first-stage rank, linearly from 1 (first) to 0 (last)
+ * score = firstStageWeight * prior + (1 - firstStageWeight) * (0.7 * coverage + 0.3 * phrase)
+ *
+ * Enabled with rag.rerank.type=overlap (default).
+ */
+@Component
+@ConditionalOnProperty(name = "rag.rerank.type", havingValue = "overlap", matchIfMissing = true)
+public class TermOverlapReranker implements Reranker {
+
+    private static final Logger logger = Logger.getLogger(TermOverlapReranker.class.getName());
+
+    private final double firstStageWeight;
+
+    public TermOverlapReranker(@Value("${rag.rerank.first-stage.weight:0.5}") double firstStageWeight) {
+        this.firstStageWeight = Math.max(0.0, Math.min(1.0, firstStageWeight));
+        logger.info("TermOverlapReranker initialized (first-stage weight: " + this.firstStageWeight + ")");
+    }
+
+    @Override
+    public List<VectorSearchResult> rerank(String question, List<VectorSearchResult> candidates) {
+        List<String> questionTerms = new ArrayList<>(new LinkedHashSet<>(Bm25Index.tokenize(question)));
+        int n = candidates.size();
+        if (n < 2 || questionTerms.isEmpty()) {
+            return candidates;
+        }
+
+        // Tokenize candidates once; document frequency of question terms within the pool
+        List<List<String>> candidateTokens = new ArrayList<>(n);
+        List<Set<String>> candidateTerms = new ArrayList<>(n);
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        for (VectorSearchResult candidate : candidates) {
+            checkInterrupted();
+            List<String> tokens = Bm25Index.tokenize(candidate.getContent());
+            Set<String> terms = new HashSet<>(tokens);
+            candidateTokens.add(tokens);
+            candidateTerms.add(terms);
+            for (String term : questionTerms) {
+                if (terms.contains(term)) {
+                    documentFrequency.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+
+        double[] idf = new double[questionTerms.size()];
+        double idfTotal = 0.0;
+        for (int t = 0; t < idf.length; t++) {
+            int df = documentFrequency.getOrDefault(questionTerms.get(t), 0);
+            idf[t] = Math.log(1.0 + (n - df + 0.5) / (df + 0.5));
+            idfTotal += idf[t];
+        }
+        Set<String> questionBigrams = bigrams(Bm25Index.tokenize(question));
+
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            checkInterrupted();
+            Set<String> terms = candidateTerms.get(i);
+            double covered = 0.0;
+            for (int t = 0; t < idf.length; t++) {
+                if (terms.contains(questionTerms.get(t))) {
+                    covered += idf[t];
+                }
+            }
+            double coverage = idfTotal > 0 ? covered / idfTotal : 0.0;
+
+            double phrase = 0.0;
+            if (!questionBigrams.isEmpty()) {
+                Set<String> matched = bigrams(candidateTokens.get(i));
+                matched.retainAll(questionBigrams);
+                phrase = (double) matched.size() / questionBigrams.size();
+            }
+
+            double prior = 1.0 - (double) i / (n - 1);
+            scores[i] = firstStageWeight * prior + (1 - firstStageWeight) * (0.7 * coverage + 0.3 * phrase);
+        }
+
+        List<Integer> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+
+        List<VectorSearchResult> reranked = new ArrayList<>(n);
+        for (int i : order) {
+            reranked.add(candidates.get(i));
+        }
+        return reranked;
+    }
+
+    @Override
+    public String name() {
+        return "overlap";
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static Set<String> bigrams(List<String> tokens) {
+        Set<String> bigrams = new HashSet<>();
+        for (int i = 1; i < tokens.size(); i++) {
+            bigrams.add(tokens.get(i - 1) + ' ' + tokens.get(i));
+        }
+        return bigrams;
+    }
+
+    /**
+     * Stop promptly once RAGService has given up on this rerank (budget exceeded).
+     */
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Rerank cancelled");
+        }
+    }
+}
@@ -5,10 +5,20 @@ import com.genai.knowitall.service.exception.ChunkingException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 /**
  * Service for splitting documents into overlapping chunks.
@@ -17,23 +27,52 @@ import java.util.logging.Logger;
  * semantic context across boundaries. This is critical for RAG systems
  * to avoid losing information at chunk boundaries.
  *
- * Strategy: Token-based chunking with overlap
+ * Strategy: Sentence packing with exact token counts (TokenCounter)
+ * - Text is split into sentences (a sentence longer than a chunk is split by tokens)
+ * - Whole sentences are packed until the next one would exceed chunk size
+ * - The next chunk repeats the trailing sentences that fit in the overlap
  * - Default: 512 tokens per chunk with 50-token overlap
- * - Tokens are estimated at 1.3 tokens per word (English)
+ * - Content-defined boundaries (doc.chunking.content-defined.enabled): once a chunk
+ *   holds doc.chunking.min.tokens, it also ends after any sentence whose fingerprint
+ *   marks a boundary (about one sentence in eight). Boundaries then depend on nearby
+ *   text rather than on position, so an edit only changes the chunks around it and
+ *   re-ingesting an edited document re-embeds just those
+ *
+ * Text can be streamed (Reader): chunks are emitted as soon as they are complete, so
+ * documents of any size are chunked in memory proportional to one chunk.
+ *
+ * Every chunk carries a hash of its normalized content (contentHash), so chunks with
+ * the same text, in any document, can share one embedding and one stored vector.
  */
 @Service
 public class DocumentChunkingService {
 
     private static final Logger logger = Logger.getLogger(DocumentChunkingService.class.getName());
 
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s\\p{Z}]+");
+
+    /**
+     * A sentence ends a content-defined chunk when these fingerprint bits are all zero (1 in 8)
+     */
+    private static final int BOUNDARY_MASK = 0x7;
+
     @Value("${doc.chunking.size.tokens:512}")
     private int chunkSizeTokens;
 
     @Value("${doc.chunking.overlap.tokens:50}")
     private int overlapTokens;
 
-    // Approximate: 1 token ≈ 0.75 words for English (conservative estimate)
-    private static final double CHARS_PER_TOKEN = 4.0;
+    @Value("${doc.chunking.content-defined.enabled:true}")
+    private boolean contentDefined;
+
+    @Value("${doc.chunking.min.tokens:256}")
+    private int minChunkTokens;
+
+    private final TokenCounter tokenCounter;
+
+    public DocumentChunkingService(TokenCounter tokenCounter) {
+        this.tokenCounter = tokenCounter;
+    }
 
     /**
      * Chunk a document's text into overlapping segments.
@@ -43,121 +82,100 @@ public class DocumentChunkingService {
      * @throws ChunkingException if chunking fails
      */
     public List<DocumentChunk> chunkDocument(String documentId, String text) {
-        logger.info("Chunking document " + documentId + " - text length: " + text.length() + " chars");
-
         if (text.trim().isEmpty()) {
             throw new ChunkingException("Cannot chunk empty text", documentId);
         }
+        List<DocumentChunk> chunks = new ArrayList<>();
+        chunkDocument(documentId, new StringReader(text), chunks::add);
+        return chunks;
+    }
 
-        // Safety check: prevent chunking extremely large documents
-        if (text.length() > 10_000_000) { // 10MB limit
-            throw new ChunkingException("Document too large for chunking: " + text.length() + " chars (max 10MB)", documentId);
-        }
-
-        try {
-            List<DocumentChunk> chunks = new ArrayList<>();
-
-            // Calculate character-based chunk sizes from token estimates
-            int chunkSizeChars = (int) (chunkSizeTokens * CHARS_PER_TOKEN);
-            int overlapChars = (int) (overlapTokens * CHARS_PER_TOKEN);
-
-            int startIndex = 0;
-            int chunkIndex = 0;
-            int safetyCounter = 0;
-            int maxChunks = (text.length() / chunkSizeChars) + 10; // Safety limit
-
-            // Loop to create chunks.
-            while (startIndex < text.length() && safetyCounter < maxChunks) {
-                safetyCounter++;
-
-                // Calculate end index for this chunk
-                int endIndex = Math.min(startIndex + chunkSizeChars, text.length());
-
-                // Try to break at sentence boundary (period, question mark, exclamation)
-                if (endIndex < text.length()) {
-                    int sentenceBreak = findSentenceBreak(text, endIndex, startIndex + chunkSizeChars / 2);
-                    if (sentenceBreak > startIndex) {
-                        endIndex = sentenceBreak; //1996,
-                    }
-                }
-
-                // Extract chunk text - avoid trim() to prevent memory issues
-                String chunkText = text.substring(startIndex, endIndex);
-
-                // Only trim if chunk is small enough to be safe
-                if (chunkText.length() < 10000) {
-                    chunkText = chunkText.trim();
-                }
-
-                if (!chunkText.isEmpty()) {
-                    DocumentChunk chunk = DocumentChunk.builder()
-                            .id(UUID.randomUUID().toString())
-                            .documentId(documentId)
-                            .content(chunkText)
-                            .chunkIndex(chunkIndex)
-                            .tokenCount(estimateTokenCount(chunkText))
-                            .build();
-
-                    chunks.add(chunk);
-                    chunkIndex++;
-                }
-
-                // Move to next chunk position
-                // Always move forward by at least chunkSizeChars - overlapChars
-                int moveForward = Math.max(chunkSizeChars - overlapChars, 1);
-                startIndex = startIndex + moveForward;
-
-                // Safety check: ensure we're making progress
-                if (startIndex >= text.length()) {
-                    break;
-                }
-            }
+    /**
+     * Chunk a text stream into overlapping segments, emitting each chunk as soon as it
+     * is complete. Memory use is bounded by the chunk size, not the document size.
+     *
+     * Exceptions thrown by the sink propagate unchanged (and stop chunking).
+     *
+     * @param documentId ID of the document
+     * @param text Text of the document, read once to the end
+     * @param sink Receives chunks in order (chunkIndex 0, 1, ...)
+     * @return Number of chunks emitted
+     * @throws ChunkingException if the text cannot be read
+     */
+    public int chunkDocument(String documentId, Reader text, Consumer<DocumentChunk> sink) {
+        return chunkDocument(documentId, text, null, sink);
+    }
 
-            logger.info("Created " + chunks.size() + " chunks for document " + documentId);
-            return chunks;
+    /**
+     * Chunk a text stream (see above), recording on each chunk the first and last page
+     * it spans.
+     *
+     * @param documentId ID of the document
+     * @param text Text of the document, read once to the end
+     * @param pages Page starts by character offset in text (null or empty = no page numbers)
+     * @param sink Receives chunks in order (chunkIndex 0, 1, ...)
+     * @return Number of chunks emitted
+     * @throws ChunkingException if the text cannot be read
+     */
+    public int chunkDocument(String documentId, Reader text, PageOffsets pages, Consumer<DocumentChunk> sink) {
+        logger.info("Chunking document " + documentId + " (streaming)");
 
-        } catch (Exception e) {
+        ChunkPacker packer = new ChunkPacker(documentId, pages, sink);
+        long chars;
+        try {
+            chars = splitSentences(text, packer::addSentence);
+        } catch (IOException e) {
             logger.severe("Failed to chunk document " + documentId + ": " + e.getMessage());
             throw new ChunkingException("Failed to chunk document: " + e.getMessage(), documentId, e);
         }
+        packer.finish();
+
+        logger.info("Created " + packer.chunkIndex + " chunks from " + chars + " chars for document " + documentId);
+        return packer.chunkIndex;
     }
 
     /**
-     * Find the nearest sentence boundary (period, question mark, exclamation)
-     * within a reasonable range of the target index.
+     * Split streamed text into sentences: a break follows sentence punctuation (period,
+     * question mark, exclamation) that is followed by whitespace, or a line break; the
+     * whitespace after punctuation starts the next sentence. Sentences concatenate back
+     * to the original text. Runs without any break are cut every few chunk lengths so
+     * a single sentence never grows unbounded.
      *
-     * @param text Full text
-     * @param targetIndex Target end index
-     * @param minIndex Minimum index to search
-     * @return Index of sentence break, or -1 if not found
+     * @param text Text stream
+     * @param sentences Receives each sentence in order
+     * @return Number of characters read
      */
-    private int findSentenceBreak(String text, int targetIndex, int minIndex) {
-        // Search backward from targetIndex to minIndex
-        for (int i = targetIndex; i >= minIndex && i >= 0; i--) {
-            char c = text.charAt(i);
-            if (c == '.' || c == '?' || c == '!') {
-                // Found sentence break, return position after the punctuation
-                return Math.min(i + 1, text.length());
+    private long splitSentences(Reader text, Consumer<String> sentences) throws IOException {
+        int maxSentenceChars = Math.max(1024, chunkSizeTokens * 8);
+        StringBuilder sentence = new StringBuilder();
+        boolean afterPunctuation = false;
+        long chars = 0;
+
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = text.read(buffer)) != -1) {
+            chars += read;
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (afterPunctuation && Character.isWhitespace(c)) {
+                    sentences.accept(sentence.toString());
+                    sentence.setLength(0);
+                }
+                sentence.append(c);
+                afterPunctuation = c == '.' || c == '?' || c == '!';
+
+                boolean tooLong = sentence.length() >= maxSentenceChars && !Character.isHighSurrogate(c);
+                if (c == '\n' || tooLong) {
+                    sentences.accept(sentence.toString());
+                    sentence.setLength(0);
+                    afterPunctuation = false;
+                }
             }
         }
-        return -1;
-    }
-
-    /**
-     * Estimate token count for a text string.
-     * Uses approximation: 1 token ≈ 4 characters for English.
-     *
-     * For production, consider using OpenAI's tiktoken library or
-     * LangChain4j's TokenCounter for accurate counts.
-     *
-     * @param text Text to estimate
-     * @return Estimated token count
-     */
-    private int estimateTokenCount(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
+        if (!sentence.isEmpty()) {
+            sentences.accept(sentence.toString());
         }
-        return (int) Math.ceil(text.length() / CHARS_PER_TOKEN);
+        return chars;
     }
 
     /**
@@ -173,4 +191,162 @@ public class DocumentChunkingService {
     public int getOverlapTokens() {
         return overlapTokens;
     }
+
+    /**
+     * Content hash of chunk text: SHA-256 (hex) of the text after Unicode NFKC
+     * normalization, with whitespace runs collapsed to one space and trimmed. Text that
+     * differs only in layout (line breaks, indentation, non-breaking spaces) hashes alike.
+     */
+    public static String contentHash(String text) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFKC))
+                .replaceAll(" ")
+                .trim();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Whether a chunk may end after this sentence (content-defined boundary).
+     * The fingerprint is String.hashCode of the stripped sentence (specified, so stable
+     * across JVMs and restarts), with its bits mixed so the low bits are usable.
+     */
+    private static boolean isBoundary(String sentence) {
+        int h = sentence.strip().hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return (h & BOUNDARY_MASK) == 0;
+    }
+
+    /**
+     * Packs sentences into chunks as they arrive.
+     *
+     * Whole sentences are added until the next one would exceed the chunk size (or,
+     * with content-defined boundaries, until a boundary sentence past the minimum size);
+     * the next chunk then starts with the trailing sentences that fit in the overlap,
+     * but never all of them (guarantees progress) and leaving room for the next new
+     * sentence (a chunk of only repeated sentences is useless).
+     */
+    private final class ChunkPacker {
+        private final String documentId;
+        private final PageOffsets pages;
+        private final Consumer<DocumentChunk> sink;
+        private final List<String> sentences = new ArrayList<>();
+        private final List<Integer> sentenceTokens = new ArrayList<>();
+        private final List<Long> sentenceOffsets = new ArrayList<>();
+        private long offset;
+        private int tokens;
+        private int carried;
+        private int chunkIndex;
+
+        ChunkPacker(String documentId, PageOffsets pages, Consumer<DocumentChunk> sink) {
+            this.documentId = documentId;
+            this.pages = pages;
+            this.sink = sink;
+        }
+
+        /**
+         * Add a sentence; one longer than a chunk is split by tokens first.
+         */
+        void addSentence(String sentence) {
+            int count = tokenCounter.count(sentence);
+            if (count <= chunkSizeTokens) {
+                add(sentence, count);
+                return;
+            }
+            for (String piece : tokenCounter.split(sentence, chunkSizeTokens)) {
+                add(piece, tokenCounter.count(piece));
+            }
+        }
+
+        /**
+         * Emit the last chunk, unless it would only repeat overlap sentences.
+         */
+        void finish() {
+            if (sentences.size() > carried) {
+                emit();
+            }
+        }
+
+        private void add(String sentence, int count) {
+            if (!sentences.isEmpty() && tokens + count > chunkSizeTokens) {
+                if (sentences.size() > carried) {
+                    cut(chunkSizeTokens - count);
+                }
+                // Overlap carried over a content-defined cut may not leave room: drop
+                // its oldest sentences
+                while (!sentences.isEmpty() && tokens + count > chunkSizeTokens) {
+                    tokens -= sentenceTokens.remove(0);
+                    sentences.remove(0);
+                    sentenceOffsets.remove(0);
+                    carried--;
+                }
+            }
+            sentences.add(sentence);
+            sentenceTokens.add(count);
+            sentenceOffsets.add(offset);
+            offset += sentence.length();
+            tokens += count;
+
+            if (contentDefined && sentences.size() > carried && tokens >= minChunkTokens && isBoundary(sentence)) {
+                cut(chunkSizeTokens);
+            }
+        }
+
+        /**
+         * Emit the current chunk and keep the trailing sentences that fit in the overlap
+         * and in room (tokens left for the sentence that follows).
+         */
+        private void cut(int room) {
+            emit();
+
+            int keep = 0;
+            int overlap = 0;
+            while (keep < sentences.size() - 1) {
+                int previous = sentenceTokens.get(sentences.size() - 1 - keep);
+                if (overlap + previous > Math.min(overlapTokens, room)) {
+                    break;
+                }
+                overlap += previous;
+                keep++;
+            }
+            sentences.subList(0, sentences.size() - keep).clear();
+            sentenceTokens.subList(0, sentenceTokens.size() - keep).clear();
+            sentenceOffsets.subList(0, sentenceOffsets.size() - keep).clear();
+            tokens = overlap;
+            carried = keep;
+        }
+
+        private void emit() {
+            String joined = String.join("", sentences);
+            String chunkText = joined.trim();
+            if (chunkText.isEmpty()) {
+                return;
+            }
+            DocumentChunk chunk = DocumentChunk.builder()
+                    .id(UUID.randomUUID().toString())
+                    .documentId(documentId)
+                    .content(chunkText)
+                    .chunkIndex(chunkIndex++)
+                    .tokenCount(tokenCounter.count(chunkText))
+                    .contentHash(contentHash(chunkText))
+                    .build();
+
+            if (pages != null && !pages.isEmpty()) {
+                // Offsets of the first and last character kept by trim()
+                int leading = 0;
+                while (joined.charAt(leading) <= ' ') {
+                    leading++;
+                }
+                long start = sentenceOffsets.get(0) + leading;
+                chunk.setPageStart(pages.pageAt(start));
+                chunk.setPageEnd(pages.pageAt(start + chunkText.length() - 1));
+            }
+            sink.accept(chunk);
+        }
+    }
 }
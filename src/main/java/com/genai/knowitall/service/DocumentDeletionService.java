@@ -0,0 +1,253 @@
+package com.genai.knowitall.service;
+
+import com.genai.knowitall.cache.SemanticAnswerCache;
+import com.genai.knowitall.repository.DocumentChunkRepository;
+import com.genai.knowitall.repository.DocumentChunkRepository.ChunkVectorInfo;
+import com.genai.knowitall.repository.DocumentRepository;
+import com.genai.knowitall.search.LexicalSearchService;
+import com.genai.knowitall.vectorstore.SearchFilter;
+import com.genai.knowitall.vectorstore.VectorIdPage;
+import com.genai.knowitall.vectorstore.VectorStoreClient;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Deletes documents, including their vectors, and removes vectors nothing references.
+ *
+ * A delete removes the document's rows and keyword index entries right away and
+ * tombstones the document: until its vectors are purged, searches exclude it
+ * (excludeDeleted). The purge runs in the background, once a cancelled ingestion job
+ * of the document running on this node has stopped (the delete does not wait for it):
+ * vectors only this document referenced are deleted in batches, shared vectors lose
+ * its references, and a final delete by document_id payload catches vectors stored by
+ * an ingestion window that was still running. A purge that fails keeps its tombstone and is retried.
+ *
+ * A periodic reconcile pass scans the vector store for orphans: vectors no chunk
+ * references (e.g. left by a crash between storing a window's vectors and saving its
+ * chunks). An orphan is deleted when two consecutive passes find it, so vectors of a
+ * window that is still being saved are never touched. The pass ends by letting the
+ * store compact deleted vectors away.
+ */
+@Service
+public class DocumentDeletionService {
+
+    private static final Logger logger = Logger.getLogger(DocumentDeletionService.class.getName());
+
+    private final DocumentRepository documentRepository;
+    private final DocumentChunkRepository chunkRepository;
+    private final DocumentIngestionService ingestionService;
+    private final IngestionJobService ingestionJobService;
+    private final VectorStoreClient vectorStoreClient;
+    private final LexicalSearchService lexicalSearchService;
+    private final SemanticAnswerCache answerCache;
+
+    private final long reconcileIntervalMinutes;
+    private final int reconcileBatchSize;
+
+    // Deleted documents whose vectors are not purged yet, with the vectors their chunks referenced
+    private final Map<String, Set<String>> pendingPurges = new ConcurrentHashMap<>();
+    // Deleted documents whose cancelled ingestion job is still running on this node (not purged yet)
+    private final Set<String> awaitingJobStop = ConcurrentHashMap.newKeySet();
+    // Orphans found by the last reconcile pass (only touched on the deletion thread)
+    private Set<String> suspectedOrphans = Set.of();
+    private final ScheduledExecutorService executor;
+    private volatile boolean stopping;
+
+    public DocumentDeletionService(
+            DocumentRepository documentRepository,
+            DocumentChunkRepository chunkRepository,
+            DocumentIngestionService ingestionService,
+            IngestionJobService ingestionJobService,
+            VectorStoreClient vectorStoreClient,
+            LexicalSearchService lexicalSearchService,
+            SemanticAnswerCache answerCache,
+            @Value("${doc.deletion.reconcile.interval-minutes:10}") long reconcileIntervalMinutes,
+            @Value("${doc.deletion.reconcile.batch-size:1000}") int reconcileBatchSize) {
+        this.documentRepository = documentRepository;
+        this.chunkRepository = chunkRepository;
+        this.ingestionService = ingestionService;
+        this.ingestionJobService = ingestionJobService;
+        this.vectorStoreClient = vectorStoreClient;
+        this.lexicalSearchService = lexicalSearchService;
+        this.answerCache = answerCache;
+        this.reconcileIntervalMinutes = reconcileIntervalMinutes;
+        this.reconcileBatchSize = Math.max(1, reconcileBatchSize);
+
+        // One thread: purges and reconcile passes never overlap
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "document-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Delete a document: its ingestion job, chunks and keyword index entries now, its
+     * vectors in the background. Searches exclude the document from now on. If deleting
+     * the rows fails, the document is kept as it is and nothing is purged.
+     *
+     * @param documentId ID of the document to delete
+     */
+    public void deleteDocument(String documentId) {
+        // Tombstoned while the rows are deleted, so searches stop returning the document now
+        pendingPurges.put(documentId, Set.of());
+        CompletableFuture<Void> jobStopped;
+        List<ChunkVectorInfo> chunks;
+        Set<String> vectorIds;
+        try {
+            jobStopped = ingestionJobService.cancel(documentId);
+            chunks = chunkRepository.findVectorInfoByDocumentId(documentId);
+            vectorIds = ingestionService.deleteChunks(documentId, chunks);
+            // The cancelled job saves no more chunks (see IngestionJobService.cancel)
+            documentRepository.deleteById(documentId);
+        } catch (RuntimeException e) {
+            // The document stays: never purge its vectors (those of chunks already deleted
+            // are left to the reconcile pass as orphans)
+            pendingPurges.remove(documentId);
+            throw e;
+        }
+        pendingPurges.put(documentId, vectorIds);
+        lexicalSearchService.removeDocument(documentId);
+        answerCache.invalidateDocument(documentId);
+
+        // Purge once a job of the document running on this node has stopped (its last
+        // window may still update references and keyword index entries)
+        awaitingJobStop.add(documentId);
+        jobStopped.whenComplete((result, error) -> {
+            awaitingJobStop.remove(documentId);
+            schedulePurge(documentId);
+        });
+        logger.info("Deleted document " + documentId + " (" + chunks.size() + " chunks); purging " +
+                   vectorIds.size() + " vectors in the background");
+    }
+
+    /**
+     * The filter with deleted documents whose vectors are not purged yet excluded.
+     *
+     * @param filter Search filter (null = search all)
+     * @return Filter to search with (the given filter if nothing is pending)
+     */
+    public SearchFilter excludeDeleted(SearchFilter filter) {
+        if (pendingPurges.isEmpty()) {
+            return filter;
+        }
+        Set<String> deleted = Set.copyOf(pendingPurges.keySet());
+        return (filter != null ? filter : new SearchFilter()).excluding(deleted);
+    }
+
+    /**
+     * Start the reconcile passes once the application is up (interval-minutes <= 0 disables them).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (reconcileIntervalMinutes > 0) {
+            executor.scheduleWithFixedDelay(this::reconcile, reconcileIntervalMinutes, reconcileIntervalMinutes,
+                    TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        executor.shutdownNow();
+    }
+
+    // ==================== Helper Methods ====================
+
+    private void schedulePurge(String documentId) {
+        try {
+            executor.execute(() -> purge(documentId));
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the tombstone is lost with this node's memory
+            logger.fine("Purge of document " + documentId + " not scheduled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Purge a deleted document's vectors; the tombstone is dropped once this succeeds.
+     */
+    private void purge(String documentId) {
+        Set<String> vectorIds = pendingPurges.get(documentId);
+        if (vectorIds == null) {
+            return;
+        }
+        // Entries a cancelled job's last window added after the delete
+        lexicalSearchService.removeDocument(documentId);
+        boolean refreshed = vectorIds.isEmpty() || ingestionService.refreshReferences(vectorIds);
+        try {
+            ingestionService.deleteDocumentVectors(documentId);
+        } catch (Exception e) {
+            logger.warning("Failed to delete vectors of document " + documentId + " (will retry): " + e.getMessage());
+            return;
+        }
+        if (refreshed) {
+            pendingPurges.remove(documentId);
+        }
+    }
+
+    /**
+     * Retry failed purges, delete orphaned vectors seen by the previous pass too, then
+     * compact the store.
+     */
+    private void reconcile() {
+        try {
+            for (String documentId : Set.copyOf(pendingPurges.keySet())) {
+                if (!awaitingJobStop.contains(documentId)) {
+                    purge(documentId);
+                }
+            }
+
+            long start = System.currentTimeMillis();
+            Set<String> orphans = new HashSet<>();
+            long scanned = 0;
+            String cursor = null;
+            do {
+                VectorIdPage page = vectorStoreClient.listVectorIds(cursor, reconcileBatchSize);
+                if (!page.getVectorIds().isEmpty()) {
+                    Set<String> referenced = new HashSet<>(chunkRepository.findReferencedVectorIds(page.getVectorIds()));
+                    for (String vectorId : page.getVectorIds()) {
+                        if (!referenced.contains(vectorId)) {
+                            orphans.add(vectorId);
+                        }
+                    }
+                    scanned += page.getVectorIds().size();
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null && !stopping);
+            if (stopping) {
+                return;
+            }
+
+            Set<String> confirmed = new HashSet<>(orphans);
+            confirmed.retainAll(suspectedOrphans);
+            orphans.removeAll(confirmed);
+            suspectedOrphans = orphans;
+            // Re-checked against the chunks under the references lock; still unreferenced = deleted
+            if (!confirmed.isEmpty()) {
+                ingestionService.refreshReferences(confirmed);
+            }
+            vectorStoreClient.compact();
+
+            logger.info("Vector reconcile: scanned " + scanned + " vectors, deleted " + confirmed.size() +
+                       " orphans, " + suspectedOrphans.size() + " suspected (" +
+                       (System.currentTimeMillis() - start) + "ms)");
+        } catch (Exception e) {
+            logger.warning("Vector reconcile failed: " + e.getMessage());
+        }
+    }
+}
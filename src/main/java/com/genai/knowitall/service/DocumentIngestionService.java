@@ -1,36 +1,72 @@
 package com.genai.knowitall.service;
 
+import com.genai.knowitall.cache.SemanticAnswerCache;
 import com.genai.knowitall.model.Document;
 import com.genai.knowitall.model.DocumentChunk;
 import com.genai.knowitall.model.DocumentStatus;
+import com.genai.knowitall.model.IngestionJob;
+import com.genai.knowitall.model.IngestionJobStatus;
+import com.genai.knowitall.model.SharedVector;
 import com.genai.knowitall.repository.DocumentChunkRepository;
+import com.genai.knowitall.repository.DocumentChunkRepository.ChunkVectorInfo;
+import com.genai.knowitall.repository.DocumentChunkRepository.VectorReferenceInfo;
 import com.genai.knowitall.repository.DocumentRepository;
+import com.genai.knowitall.repository.IngestionJobRepository;
+import com.genai.knowitall.repository.SharedVectorRepository;
+import com.genai.knowitall.search.LexicalSearchService;
 import com.genai.knowitall.service.exception.DocumentProcessingException;
+import com.genai.knowitall.vectorstore.VectorRecord;
+import com.genai.knowitall.vectorstore.VectorReference;
 import com.genai.knowitall.vectorstore.VectorStoreClient;
-import org.springframework.scheduling.annotation.Async;
+import com.genai.knowitall.vectorstore.VectorStoreException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
  * Async service for orchestrating document ingestion pipeline.
  *
  * Pipeline stages:
- * 1. Update status → PROCESSING
- * 2. Extract text from document
- * 3. Chunk document into overlapping segments
- * 4. Generate embeddings for each chunk
- * 5. Store embeddings in Qdrant vector store
- * 6. Save chunks with vectorId to database
+ * 1. Extract text from the spooled upload (extraction pool) and update status → PROCESSING
+ * 2. Read the extracted text as a stream
+ * 3. Chunk document into overlapping segments (emitted as the text is read)
+ * 4. Generate embeddings per window of chunks (batched, concurrent provider requests);
+ *    chunks whose content already has a vector (any document) reuse it instead
+ * 5. Store the window's new embeddings in the vector store (one bulk write)
+ * 6. Save the window's chunks to database (one transaction, batched inserts), add them to the lexical (BM25) index
  * 7. Update status → READY or FAILED
  *
- * Uses @Async for non-blocking processing.
+ * A re-upload (incremental job) writes the document's next chunk revision beside the
+ * current one: chunks whose content the document already had keep their vector, only
+ * new or changed content is embedded, and when the job completes the previous revision
+ * is removed along with the vectors nothing references any more.
+ *
+ * Jobs are run by IngestionJobService workers (runJob), off the request threads.
  * Error handling: "best effort" - skip failed chunks, continue processing.
  */
 @Service
@@ -38,111 +74,821 @@ public class DocumentIngestionService {
 
     private static final Logger logger = Logger.getLogger(DocumentIngestionService.class.getName());
 
+    /** Chunk (or vector) IDs per statement when removing chunks and their vectors */
+    private static final int DELETE_BATCH = 1000;
+
+    /** Stripes of the reference locks (vector IDs hash to one each) */
+    private static final int REFERENCE_LOCK_STRIPES = 1024;
+
     private final DocumentRepository documentRepository;
     private final DocumentChunkRepository chunkRepository;
+    private final IngestionJobRepository jobRepository;
+    private final TextExtractionService textExtractionService;
     private final DocumentChunkingService chunkingService;
     private final EmbeddingService embeddingService;
     private final VectorStoreClient vectorStoreClient;
+    private final SemanticAnswerCache answerCache;
+    private final LexicalSearchService lexicalSearchService;
+    private final SharedVectorRepository sharedVectorRepository;
+    private final TransactionTemplate transactionTemplate;
+    // Reference locks: updates of a vector's references (window saves, refreshes) are
+    // serialized per stripe of vector IDs, so windows sharing no vectors run concurrently.
+    // java.util.concurrent locks, not monitors: holders block on JDBC and the vector store,
+    // and a virtual thread blocked in a monitor would pin its carrier.
+    private final ReentrantLock[] referenceLocks = new ReentrantLock[REFERENCE_LOCK_STRIPES];
+    // Shared by holders of reference locks; exclusive for a document's purge, whose vectors are not known up front
+    private final ReentrantReadWriteLock documentVectorsLock = new ReentrantReadWriteLock();
+    private final boolean dedupEnabled;
+    private final int windowChunks;
+    private final int pipeCapacity;
+    private final long pipeTimeoutMs;
 
     public DocumentIngestionService(
             DocumentRepository documentRepository,
             DocumentChunkRepository chunkRepository,
+            IngestionJobRepository jobRepository,
             TextExtractionService textExtractionService,
             DocumentChunkingService chunkingService,
             EmbeddingService embeddingService,
-            VectorStoreClient vectorStoreClient) {
+            VectorStoreClient vectorStoreClient,
+            SemanticAnswerCache answerCache,
+            LexicalSearchService lexicalSearchService,
+            SharedVectorRepository sharedVectorRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${doc.ingestion.dedup.enabled:true}") boolean dedupEnabled,
+            @Value("${doc.ingestion.window.chunks:64}") int windowChunks,
+            @Value("${doc.ingestion.pipe.capacity:64}") int pipeCapacity,
+            @Value("${doc.ingestion.pipe.timeout-seconds:600}") long pipeTimeoutSeconds) {
 
         this.documentRepository = documentRepository;
         this.chunkRepository = chunkRepository;
+        this.jobRepository = jobRepository;
+        this.textExtractionService = textExtractionService;
         this.chunkingService = chunkingService;
         this.embeddingService = embeddingService;
         this.vectorStoreClient = vectorStoreClient;
+        this.answerCache = answerCache;
+        this.lexicalSearchService = lexicalSearchService;
+        this.sharedVectorRepository = sharedVectorRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dedupEnabled = dedupEnabled;
+        this.windowChunks = Math.max(1, windowChunks);
+        this.pipeCapacity = pipeCapacity;
+        this.pipeTimeoutMs = pipeTimeoutSeconds * 1000;
+        for (int i = 0; i < referenceLocks.length; i++) {
+            this.referenceLocks[i] = new ReentrantLock();
+        }
     }
 
     /**
-     * Asynchronously process a document through the ingestion pipeline.
-     * @param documentId ID of the document to process
-     * @param textContent Extracted text content of the document
+     * Run (or resume) the ingestion job of an uploaded document on the calling thread.
+     *
+     * Stage 1 (text extraction, CPU-bound) runs on the extraction pool and feeds the
+     * rest of the pipeline through a bounded TextPipe. A resumed job re-extracts the
+     * spooled upload but skips chunks that are already stored (chunking is
+     * deterministic), so nothing embedded before the interruption is embedded again;
+     * once chunking is complete, a resumed job only embeds the chunks that still have
+     * no vector. The spool file is deleted when the document reaches a final state.
+     * An incremental job does the same for the revision it writes.
+     *
+     * @param job Job leased by the caller
+     * @param stopReason Why the job has to stop (null while it may go on); the pipeline
+     *                   then stops between windows
+     * @return Final document status (READY or FAILED), or null if stopped (for shutdown,
+     *         or because the job was cancelled or its lease lost)
      */
-    @Async
-    public void processDocumentAsync(String documentId, String textContent) {
-        logger.info("Starting async processing for document: " + documentId);
-
-        try {
-            // Stage 1: Update status to PROCESSING
-            updateDocumentStatus(documentId, DocumentStatus.PROCESSING, null);
+    public DocumentStatus runJob(IngestionJob job, Supplier<StopReason> stopReason) {
+        String documentId = job.getDocumentId();
+        Path spoolFile = Paths.get(job.getSpoolPath());
+        boolean resuming = job.getAttempts() > 1;
+        if (resuming) {
+            logger.info("Resuming ingestion of document " + documentId + " (attempt " + job.getAttempts() +
+                       ", " + job.getChunksCheckpoint() + " chunks checkpointed)");
+        }
 
-            // Stage 2: Chunk document
-            logger.info("Chunking document: " + documentId);
-            List<DocumentChunk> chunks = chunkingService.chunkDocument(documentId, textContent);
+        DocumentStatus result;
+        if (Boolean.TRUE.equals(job.getChunkingComplete())) {
+            result = processDocument(documentId, null, null, job, stopReason);
+        } else if (!Files.exists(spoolFile)) {
+            String errorMsg = "Upload is no longer available to resume ingestion";
+            updateDocumentStatus(documentId, DocumentStatus.FAILED, errorMsg);
+            logger.severe(errorMsg + ": " + documentId + " (" + spoolFile + ")");
+            result = DocumentStatus.FAILED;
+        } else {
+            TextPipe textPipe = new TextPipe(pipeCapacity, pipeTimeoutMs);
+            CompletableFuture<Long> extraction = textExtractionService
+                    .extractAsync(spoolFile, job.getContentType(), job.getFilename(), textPipe)
+                    .whenComplete((chars, error) -> {
+                        if (error != null) {
+                            textPipe.fail(error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error);
+                            return;
+                        }
+                        try {
+                            textPipe.finish();
+                        } catch (RuntimeException e) {
+                            textPipe.fail(e);
+                        }
+                    });
+            try {
+                result = processDocument(documentId, textPipe, textPipe.pages(), job, stopReason);
+            } finally {
+                // The pipe is closed now, so a still-running extractor fails on its next write;
+                // wait for it to let go of the file before deleting it
+                extraction.handle((chars, error) -> null).join();
+            }
+        }
 
-            if (chunks.isEmpty()) {
-                throw new DocumentProcessingException("No chunks generated for document", documentId);
+        if (result != null) {
+            try {
+                Files.deleteIfExists(spoolFile);
+            } catch (IOException e) {
+                logger.warning("Failed to delete spool file " + spoolFile + ": " + e.getMessage());
             }
+        }
+        return result;
+    }
+
+    /**
+     * Stages 2-7 of the pipeline on the calling thread.
+     *
+     * Text is consumed as a stream: chunks are embedded and stored in windows of
+     * doc.ingestion.window.chunks while the rest of the text is still being read, so
+     * memory use does not grow with document size and embedding starts before
+     * extraction has finished.
+     *
+     * @param text Text of the document (the TextPipe fed by the extractor; closed when
+     *             done), or null when a job has already stored all its chunks
+     * @param pages Page starts in text, for page numbers on chunks (may be null)
+     * @param job Job being run, for checkpoints and resume
+     * @param stopReason Why the pipeline has to stop (null while it may go on)
+     * @return Final document status, or null if stopped
+     */
+    private DocumentStatus processDocument(String documentId, Reader text, PageOffsets pages,
+                                           IngestionJob job, Supplier<StopReason> stopReason) {
+        logger.info("Starting async processing for document: " + documentId);
 
-            // Update total chunks count
-            updateDocumentTotalChunks(documentId, chunks.size());
-            logger.info("Created " + chunks.size() + " chunks for document: " + documentId);
+        boolean resuming = job.getAttempts() > 1;
+        boolean incremental = Boolean.TRUE.equals(job.getIncremental());
+        int revision = job.getRevision() != null ? job.getRevision() : 0;
+        try (Reader input = text) {
+            // Stage 1: Update status to PROCESSING
+            updateDocumentStatus(documentId, DocumentStatus.PROCESSING, null);
 
-            // Stage 3 & 4 & 5: Generate embeddings and store (best effort)
-            int successCount = 0;
-            int failedCount = 0;
             String embeddingModelName = embeddingService.getEmbeddingModelName();
+            String owner = documentRepository.findById(documentId)
+                    .map(Document::getOwner)
+                    .orElse(null);
 
-            for (DocumentChunk chunk : chunks) {
-                try {
-                    // Generate embedding for this chunk
-                    List<Float> embedding = embeddingService.generateEmbedding(chunk.getContent());
+            // A re-upload reuses the vectors of content the document already has
+            Map<String, String> previousVectors = incremental
+                    ? findPreviousVectors(documentId, revision, embeddingModelName)
+                    : Map.of();
 
-                    // Prepare metadata for vector store
-                    Map<String, Object> metadata = new HashMap<>();
-                    metadata.put("document_id", documentId);
-                    metadata.put("chunk_index", chunk.getChunkIndex());
-                    metadata.put("content", chunk.getContent());
-                    metadata.put("token_count", chunk.getTokenCount());
+            IngestionCounts counts = new IngestionCounts();
+            int totalChunks;
+            if (input != null) {
+                // A resumed job keeps the chunks (and index entries) it already stored;
+                // otherwise re-ingestion replaces the document's keyword index entries
+                // (a re-upload replaces them chunk by chunk when it completes)
+                Set<Integer> stored = resuming
+                        ? new HashSet<>(chunkRepository.findChunkIndexesByDocumentIdAndRevision(documentId, revision))
+                        : Set.of();
+                if (!resuming && !incremental) {
+                    lexicalSearchService.removeDocument(documentId);
+                }
 
-                    // Store in Qdrant
-                    vectorStoreClient.storeEmbedding(chunk.getId(), embedding, metadata);
+                // Stages 2-6, streamed: chunk, then embed + store each full window
+                List<DocumentChunk> window = new ArrayList<>(windowChunks);
+                totalChunks = chunkingService.chunkDocument(documentId, input, pages, chunk -> {
+                    if (!stored.contains(chunk.getChunkIndex())) {
+                        chunk.setRevision(revision);
+                        window.add(chunk);
+                    }
+                    if (window.size() >= windowChunks) {
+                        checkStopping(stopReason);
+                        // Running total (the final count is only known at the end of the text)
+                        int produced = chunk.getChunkIndex() + 1;
+                        ingestWindow(job, owner, embeddingModelName, window, previousVectors, counts,
+                                () -> recordProgress(documentId, job, produced, false));
+                        window.clear();
+                    }
+                });
 
-                    // Update chunk with vector ID and embedding model
-                    chunk.setVectorId(chunk.getId());
-                    chunk.setEmbeddingModel(embeddingModelName);
+                if (totalChunks == 0) {
+                    throw new DocumentProcessingException("No chunks generated for document", documentId);
+                }
 
-                    // Save chunk to database
-                    chunkRepository.save(chunk);
+                // Last window, with the final chunk count
+                int total = totalChunks;
+                Runnable chunkingDone = () -> recordProgress(documentId, job, total, true);
+                if (!window.isEmpty()) {
+                    ingestWindow(job, owner, embeddingModelName, window, previousVectors, counts, chunkingDone);
+                } else {
+                    transactionTemplate.executeWithoutResult(tx -> chunkingDone.run());
+                }
+                logger.info("Created " + totalChunks + " chunks for document: " + documentId);
+            } else {
+                totalChunks = chunkRepository.countByDocumentIdAndRevision(documentId, revision).intValue();
+            }
 
-                    successCount++;
-                    logger.fine("Processed chunk " + (chunk.getChunkIndex() + 1) + "/" + chunks.size() +
-                               " for document: " + documentId);
+            if (resuming) {
+                // Embed what is left: chunks stored without a vector before the interruption
+                List<DocumentChunk> remaining =
+                        chunkRepository.findByDocumentIdAndRevisionAndVectorIdIsNull(documentId, revision);
+                if (!remaining.isEmpty()) {
+                    logger.info("Embedding " + remaining.size() + " remaining chunks of document " + documentId);
+                }
+                for (int start = 0; start < remaining.size(); start += windowChunks) {
+                    checkStopping(stopReason);
+                    ingestWindow(job, owner, embeddingModelName,
+                            remaining.subList(start, Math.min(start + windowChunks, remaining.size())),
+                            previousVectors, counts, null);
+                }
+            }
 
-                } catch (Exception e) {
-                    failedCount++;
-                    logger.warning("Failed to process chunk " + chunk.getChunkIndex() +
-                                 " for document " + documentId + ": " + e.getMessage() +
-                                 " (continuing with best effort)");
-                    // Continue processing other chunks (best effort strategy)
+            // Stage 7: Update final status
+            long embedded = chunkRepository.countByDocumentIdAndRevisionAndVectorIdIsNotNull(documentId, revision);
+            if (incremental) {
+                // Switch to the new revision, or keep the previous one if nothing of the new one is searchable
+                if (embedded > 0) {
+                    removeChunks(documentId, chunkRepository.findVectorInfoBeforeRevision(documentId, revision));
+                } else {
+                    discardRevision(documentId, revision);
                 }
+                answerCache.invalidateDocument(documentId);
+            } else if (counts.success > 0) {
+                // Cached answers citing (or missing) this document are now outdated
+                answerCache.invalidateDocument(documentId);
             }
 
-            // Stage 6: Update final status
-            if (successCount == 0) {
+            if (embedded == 0) {
                 // All chunks failed - mark document as FAILED
-                String errorMsg = "Failed to process all " + chunks.size() + " chunks";
+                String errorMsg = "Failed to process all " + totalChunks + " chunks" +
+                        (incremental ? " (the previous version of the document is kept)" : "");
                 updateDocumentStatus(documentId, DocumentStatus.FAILED, errorMsg);
                 logger.severe("Document processing failed completely: " + documentId);
-            } else {
-                // At least some chunks succeeded - mark as READY
-                updateDocumentStatus(documentId, DocumentStatus.READY, null);
-                logger.info("Document processing completed: " + documentId +
-                          " (success: " + successCount + "/" + chunks.size() +
-                          ", failed: " + failedCount + ")");
+                return DocumentStatus.FAILED;
             }
+            // At least some chunks succeeded - mark as READY
+            updateDocumentStatus(documentId, DocumentStatus.READY, null);
+            logger.info("Document processing completed: " + documentId +
+                      " (embedded: " + embedded + "/" + totalChunks +
+                      (incremental ? ", unchanged from the previous version: " + counts.unchanged : "") +
+                      ", reused shared vectors this run: " + counts.reused +
+                      ", failed this run: " + counts.failed + ")");
+            return DocumentStatus.READY;
 
         } catch (Exception e) {
+            StopReason reason = stopReason.get();
+            if (reason != null) {
+                // Leave the document PROCESSING: a resumed job, or whoever cancelled it, decides its status
+                logger.info("Ingestion of document " + documentId + " stopped: " + reason.getDescription());
+                return null;
+            }
+            if (e instanceof CancellationException) {
+                // A window found the job cancelled or leased by another worker: that one decides the status
+                logger.info("Ingestion of document " + documentId + " stopped: " + e.getMessage());
+                return null;
+            }
             // Fatal error during processing
             logger.severe("Document processing failed for " + documentId + ": " + e.getMessage());
             String errorMsg = "Processing failed: " + e.getMessage();
             updateDocumentStatus(documentId, DocumentStatus.FAILED, errorMsg);
+            return DocumentStatus.FAILED;
+        }
+    }
+
+    /**
+     * Embed, store and save one window of chunks (best effort: failed chunks are
+     * counted and saved without a vector, so a resumed job can retry them).
+     *
+     * Chunks are content-addressed (doc.ingestion.dedup.enabled): a chunk whose content
+     * hash already has a vector for this embedding model, from any document, reuses it
+     * instead of being embedded and stored again, and of several chunks with the same
+     * new content only the first is embedded. Vectors that gain references from another
+     * document get their reference list updated in the vector store. Independently of
+     * that setting, a re-upload reuses the vectors of the content its previous revision had.
+     *
+     * The window's database writes happen in one transaction: new chunks are inserted in
+     * JDBC batches (hibernate.jdbc.batch_size), chunks stored by an earlier attempt get
+     * bulk UPDATEs, new shared vectors are recorded and progress is recorded alongside.
+     * The transaction first locks the job's row, and saves nothing if the job was
+     * cancelled (its document is being deleted) or its lease lost. It runs under the
+     * reference locks of the window's vectors after checking that the shared vectors
+     * the window reuses still exist: a delete may have released one while the window was
+     * being embedded. If so, nothing is saved and the window is planned again (the
+     * content is embedded anew or reuses another vector; embeddings already generated
+     * come from the embedding cache).
+     *
+     * @param previousVectors Vectors of the document's previous revision, by content hash
+     * @param progress Progress update to run in the window's transaction (may be null)
+     */
+    private void ingestWindow(IngestionJob job, String owner, String embeddingModelName,
+                              List<DocumentChunk> chunks, Map<String, String> previousVectors,
+                              IngestionCounts counts, Runnable progress) {
+        String documentId = job.getDocumentId();
+        WindowPlan plan;
+        while (true) {
+            plan = planWindow(documentId, owner, embeddingModelName, chunks, previousVectors);
+            Set<String> released;
+            try {
+                released = saveWindow(job, plan, embeddingModelName, progress);
+            } catch (CancellationException e) {
+                throw e;
+            } catch (Exception e) {
+                counts.failed += plan.embeddedChunks.size();
+                countFailures(documentId, plan, counts);
+                logger.warning("Failed to save " + chunks.size() + " chunks for document " + documentId +
+                             ": " + e.getMessage() + " (continuing with best effort)");
+                if (progress != null) {
+                    try {
+                        transactionTemplate.executeWithoutResult(tx -> progress.run());
+                    } catch (Exception progressError) {
+                        logger.warning("Failed to record progress for document " + documentId + ": " +
+                                     progressError.getMessage());
+                    }
+                }
+                return;
+            }
+            if (released.isEmpty()) {
+                break;
+            }
+            logger.info(released.size() + " shared vectors reused by a window of document " + documentId +
+                       " were released meanwhile; planning the window again");
+        }
+        countFailures(documentId, plan, counts);
+
+        List<DocumentChunk> embeddedChunks = plan.embeddedChunks;
+        int reused = embeddedChunks.size() - plan.stored - plan.unchanged;
+        counts.success += embeddedChunks.size();
+        counts.reused += reused;
+        counts.unchanged += plan.unchanged;
+        logger.fine("Processed " + embeddedChunks.size() + " chunks for document: " + documentId +
+                   " (" + plan.unchanged + " unchanged, " + reused + " reused shared vectors)");
+
+        if (!plan.sharedVectorIds.isEmpty()) {
+            refreshReferences(plan.sharedVectorIds);
+        }
+
+        // Keyword index mirrors the chunks that are retrievable by vector search
+        if (!embeddedChunks.isEmpty()) {
+            lexicalSearchService.addChunks(documentId, owner, embeddedChunks);
+        }
+    }
+
+    /**
+     * Look up reusable vectors for a window, embed and store the rest, and assign every
+     * chunk its vector ID (chunks whose embedding failed get none).
+     */
+    private WindowPlan planWindow(String documentId, String owner, String embeddingModelName,
+                                  List<DocumentChunk> chunks, Map<String, String> previousVectors) {
+        // Vectors this window can reuse, and one chunk to embed per remaining content
+        Map<String, String> reusableVectors = new HashMap<>(findSharedVectors(chunks, embeddingModelName));
+        Set<String> unchangedKeys = new HashSet<>();
+        if (!previousVectors.isEmpty()) {
+            for (DocumentChunk chunk : chunks) {
+                String previous = previousVectors.get(contentHash(chunk));
+                if (previous != null) {
+                    String key = contentKey(chunk);
+                    reusableVectors.put(key, previous);
+                    unchangedKeys.add(key);
+                }
+            }
+        }
+        Map<String, DocumentChunk> toEmbed = new LinkedHashMap<>();
+        for (DocumentChunk chunk : chunks) {
+            String key = contentKey(chunk);
+            if (!reusableVectors.containsKey(key)) {
+                toEmbed.putIfAbsent(key, chunk);
+            }
+        }
+
+        // Embed in batched requests (null = batch failed after retries)
+        List<float[]> embeddings = toEmbed.isEmpty()
+                ? List.of()
+                : embeddingService.generateEmbeddings(toEmbed.values().stream().map(DocumentChunk::getContent).toList());
+
+        List<VectorRecord> records = new ArrayList<>(toEmbed.size());
+        List<SharedVector> newVectors = new ArrayList<>(toEmbed.size());
+        Map<String, String> storedVectors = new HashMap<>();
+        int i = 0;
+        for (Map.Entry<String, DocumentChunk> entry : toEmbed.entrySet()) {
+            DocumentChunk chunk = entry.getValue();
+            float[] embedding = embeddings.get(i++);
+            if (embedding == null) {
+                continue;
+            }
+
+            // Prepare metadata for vector store
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("document_id", documentId);
+            metadata.put("chunk_index", chunk.getChunkIndex());
+            metadata.put("content", chunk.getContent());
+            metadata.put("token_count", chunk.getTokenCount());
+            if (chunk.getPageStart() != null) {
+                metadata.put("page_start", chunk.getPageStart());
+                metadata.put("page_end", chunk.getPageEnd());
+            }
+            if (owner != null) {
+                metadata.put("owner", owner);
+            }
+
+            records.add(new VectorRecord(chunk.getId(), embedding, metadata));
+            storedVectors.put(entry.getKey(), chunk.getId());
+            if (dedupEnabled) {
+                newVectors.add(SharedVector.builder()
+                        .vectorId(chunk.getId())
+                        .contentHash(entry.getKey())
+                        .embeddingModel(embeddingModelName)
+                        .build());
+            }
+        }
+
+        // Store in vector store with one bulk (batched, pipelined) write
+        if (!records.isEmpty()) {
+            try {
+                vectorStoreClient.storeEmbeddings(records);
+            } catch (Exception e) {
+                logger.warning("Failed to store " + records.size() + " embeddings for document " +
+                             documentId + ": " + e.getMessage());
+                storedVectors.clear();
+                newVectors.clear();
+            }
+        }
+
+        // Update chunks with vector ID (own, reused or shared within the window) and embedding model
+        WindowPlan plan = new WindowPlan(chunks.size(), newVectors, storedVectors.size());
+        for (DocumentChunk chunk : chunks) {
+            String key = contentKey(chunk);
+            String vectorId = reusableVectors.get(key);
+            if (unchangedKeys.contains(key)) {
+                // Already referenced by this document; references are refreshed when the revision completes
+                plan.unchanged++;
+            } else if (vectorId != null) {
+                plan.sharedVectorIds.add(vectorId);
+            } else {
+                vectorId = storedVectors.get(key);
+            }
+            if (vectorId == null) {
+                chunk.setVectorId(null);
+                chunk.setEmbeddingModel(null);
+                plan.unembeddedChunks.add(chunk);
+                continue;
+            }
+            chunk.setVectorId(vectorId);
+            chunk.setEmbeddingModel(embeddingModelName);
+            plan.embeddedChunks.add(chunk);
+        }
+        return plan;
+    }
+
+    /**
+     * Save a planned window in one transaction, under the reference locks of its vectors
+     * so a concurrent refreshReferences cannot release a reused vector between the check
+     * and the save.
+     * The job's row stays locked until the window is committed, so a cancel (which
+     * deletes the row before the document's chunks) either waits for the window and
+     * then deletes its chunks too, or makes the save fail.
+     *
+     * @return Shared vectors the plan reuses that were released since the lookup
+     *         (nothing was saved), or an empty set once the window is saved
+     * @throws CancellationException if the job was cancelled or its lease lost
+     */
+    private Set<String> saveWindow(IngestionJob job, WindowPlan plan, String embeddingModelName,
+                                   Runnable progress) {
+        Set<String> vectorIds = new HashSet<>(plan.sharedVectorIds);
+        for (DocumentChunk chunk : plan.embeddedChunks) {
+            vectorIds.add(chunk.getVectorId());
+        }
+        return withReferenceLocks(vectorIds, () -> {
+            if (!plan.sharedVectorIds.isEmpty()) {
+                Set<String> released = new HashSet<>(plan.sharedVectorIds);
+                sharedVectorRepository.findExistingVectorIds(plan.sharedVectorIds).forEach(released::remove);
+                if (!released.isEmpty()) {
+                    return released;
+                }
+            }
+            transactionTemplate.executeWithoutResult(tx -> {
+                if (jobRepository.lockLease(job.getDocumentId(), job.getLeaseOwner(), LocalDateTime.now(),
+                        IngestionJobStatus.RUNNING) == 0) {
+                    throw new CancellationException("Ingestion job was cancelled or its lease lost");
+                }
+                saveChunks(plan.embeddedChunks, plan.unembeddedChunks, embeddingModelName);
+                if (!plan.newVectors.isEmpty()) {
+                    sharedVectorRepository.saveAll(plan.newVectors);
+                }
+                if (progress != null) {
+                    progress.run();
+                }
+            });
+            return Set.<String>of();
+        });
+    }
+
+    /**
+     * Count and log the chunks of a window that could not be embedded.
+     */
+    private void countFailures(String documentId, WindowPlan plan, IngestionCounts counts) {
+        for (DocumentChunk chunk : plan.unembeddedChunks) {
+            counts.failed++;
+            logger.warning("Failed to embed chunk " + chunk.getChunkIndex() +
+                         " for document " + documentId + " (continuing with best effort)");
+        }
+    }
+
+    /**
+     * Write a window's chunks (caller's transaction). New chunks, embedded or not, are
+     * inserted; chunks that already have a row only need their vector recorded (one
+     * UPDATE for those with a vector of their own, one per reused vector for the rest).
+     */
+    private void saveChunks(List<DocumentChunk> embeddedChunks, List<DocumentChunk> unembeddedChunks,
+                            String embeddingModelName) {
+        List<DocumentChunk> inserts = new ArrayList<>(embeddedChunks.size() + unembeddedChunks.size());
+        List<String> embeddedIds = new ArrayList<>();
+        Map<String, List<String>> idsByReusedVector = new HashMap<>();
+        for (DocumentChunk chunk : embeddedChunks) {
+            if (chunk.isNew()) {
+                inserts.add(chunk);
+            } else if (chunk.getVectorId().equals(chunk.getId())) {
+                embeddedIds.add(chunk.getId());
+            } else {
+                idsByReusedVector.computeIfAbsent(chunk.getVectorId(), k -> new ArrayList<>()).add(chunk.getId());
+            }
+        }
+        for (DocumentChunk chunk : unembeddedChunks) {
+            if (chunk.isNew()) {
+                inserts.add(chunk);
+            }
+        }
+
+        if (!inserts.isEmpty()) {
+            chunkRepository.saveAll(inserts);
+        }
+        if (!embeddedIds.isEmpty()) {
+            chunkRepository.markEmbedded(embeddedIds, embeddingModelName);
+        }
+        idsByReusedVector.forEach((vectorId, ids) -> chunkRepository.assignVector(ids, vectorId, embeddingModelName));
+    }
+
+    /**
+     * Vectors already stored for the window's content, by content hash (empty when
+     * deduplication is disabled). With a store that does not persist its vectors, the
+     * records of vectors lost in a restart are skipped and deleted.
+     */
+    private Map<String, String> findSharedVectors(List<DocumentChunk> chunks, String embeddingModelName) {
+        if (!dedupEnabled) {
+            return Map.of();
+        }
+        Set<String> hashes = new HashSet<>();
+        for (DocumentChunk chunk : chunks) {
+            hashes.add(contentKey(chunk));
+        }
+        Map<String, String> vectorIds = new HashMap<>();
+        try {
+            boolean persistent = vectorStoreClient.isPersistent();
+            List<String> lost = new ArrayList<>();
+            for (SharedVector vector : sharedVectorRepository
+                    .findByEmbeddingModelAndContentHashInOrderByCreatedAtAsc(embeddingModelName, hashes)) {
+                if (vectorIds.containsKey(vector.getContentHash())) {
+                    continue;
+                }
+                if (!persistent && !vectorStoreClient.exists(vector.getVectorId())) {
+                    lost.add(vector.getVectorId());
+                    continue;
+                }
+                vectorIds.put(vector.getContentHash(), vector.getVectorId());
+            }
+            if (!lost.isEmpty()) {
+                logger.info("Dropping " + lost.size() + " shared vector records whose vectors are no longer stored");
+                withReferenceLocks(lost, () -> {
+                    sharedVectorRepository.deleteAllByIdInBatch(lost);
+                    return null;
+                });
+            }
+        } catch (Exception e) {
+            logger.warning("Shared vector lookup failed (embedding the window in full): " + e.getMessage());
+            return Map.of();
+        }
+        return vectorIds;
+    }
+
+    /**
+     * Vectors of a document's chunks from revisions before the given one, by content
+     * hash (only vectors of the current embedding model, and with a store that does not
+     * persist its vectors only those still stored, can be reused).
+     */
+    private Map<String, String> findPreviousVectors(String documentId, int revision, String embeddingModelName) {
+        boolean persistent = vectorStoreClient.isPersistent();
+        Map<String, String> vectorIds = new HashMap<>();
+        for (ChunkVectorInfo info : chunkRepository.findVectorInfoBeforeRevision(documentId, revision)) {
+            if (info.getVectorId() != null && info.getContentHash() != null &&
+                    embeddingModelName.equals(info.getEmbeddingModel()) &&
+                    !vectorIds.containsKey(info.getContentHash()) &&
+                    (persistent || vectorStoreClient.exists(info.getVectorId()))) {
+                vectorIds.put(info.getContentHash(), info.getVectorId());
+            }
+        }
+        return vectorIds;
+    }
+
+    /**
+     * Key that chunks sharing a vector have in common: the content hash, or the chunk ID
+     * when deduplication is disabled.
+     */
+    private String contentKey(DocumentChunk chunk) {
+        return dedupEnabled ? contentHash(chunk) : chunk.getId();
+    }
+
+    /**
+     * Content hash of a chunk; chunks stored before content hashing get it computed here.
+     */
+    private static String contentHash(DocumentChunk chunk) {
+        if (chunk.getContentHash() == null) {
+            chunk.setContentHash(DocumentChunkingService.contentHash(chunk.getContent()));
+        }
+        return chunk.getContentHash();
+    }
+
+    /**
+     * Delete chunks of a document (rows and keyword index entries), then refresh the
+     * references of the vectors they used: vectors no chunk references any more are
+     * removed from the vector store.
+     */
+    private void removeChunks(String documentId, List<ChunkVectorInfo> chunks) {
+        Set<String> vectorIds = deleteChunks(documentId, chunks);
+        if (!vectorIds.isEmpty()) {
+            refreshReferences(vectorIds);
+        }
+    }
+
+    /**
+     * Delete chunks of a document: their rows (one transaction, batched DELETEs) and
+     * keyword index entries. The vector store is not touched (see refreshReferences).
+     *
+     * @param documentId Document ID
+     * @param chunks Chunks to delete
+     * @return IDs of the vectors the deleted chunks referenced
+     */
+    public Set<String> deleteChunks(String documentId, List<ChunkVectorInfo> chunks) {
+        if (chunks.isEmpty()) {
+            return Set.of();
+        }
+        List<String> chunkIds = new ArrayList<>(chunks.size());
+        Set<String> vectorIds = new HashSet<>();
+        for (ChunkVectorInfo info : chunks) {
+            chunkIds.add(info.getChunkId());
+            if (info.getVectorId() != null) {
+                vectorIds.add(info.getVectorId());
+            }
+        }
+        transactionTemplate.executeWithoutResult(tx -> {
+            for (int start = 0; start < chunkIds.size(); start += DELETE_BATCH) {
+                chunkRepository.deleteAllByIdInBatch(chunkIds.subList(start, Math.min(start + DELETE_BATCH, chunkIds.size())));
+            }
+        });
+        lexicalSearchService.removeChunks(chunkIds);
+        logger.info("Removed " + chunkIds.size() + " chunks of document " + documentId +
+                   " (" + vectorIds.size() + " vectors referenced)");
+        return vectorIds;
+    }
+
+    /**
+     * Discard a revision of a document that did not complete, keeping the previous one.
+     *
+     * @param documentId Document ID
+     * @param revision Revision written by the failed (incremental) job
+     */
+    public void discardRevision(String documentId, int revision) {
+        try {
+            removeChunks(documentId, chunkRepository.findVectorInfoByRevision(documentId, revision));
+        } catch (Exception e) {
+            logger.warning("Failed to discard revision " + revision + " of document " + documentId + ": " +
+                         e.getMessage());
+        }
+    }
+
+    /**
+     * Revision a re-upload of the document writes: one past the latest stored revision.
+     */
+    public int nextRevision(String documentId) {
+        Integer latest = chunkRepository.findMaxRevision(documentId);
+        return latest != null ? latest + 1 : 0;
+    }
+
+    /**
+     * Remove a deleted document from the vector store: its own vectors, and its
+     * references on vectors other documents still share. Excludes every reference
+     * lock holder (the document's shared vectors are not known here), so the store's read-modify-write of a shared vector's
+     * references cannot interleave with (and undo) a window's reference update.
+     *
+     * @param documentId Document ID (its chunks must already be deleted)
+     * @throws VectorStoreException if the delete fails (it can be retried)
+     */
+    public void deleteDocumentVectors(String documentId) {
+        documentVectorsLock.writeLock().lock();
+        try {
+            vectorStoreClient.deleteDocument(documentId);
+        } finally {
+            documentVectorsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Send the vector store the current references of vectors whose references changed
+     * (one per referencing document: its first chunk), so searches filtered to any of
+     * those documents or their owners find them. Vectors with no references left are
+     * removed, along with their shared vector records. Serialized per vector (reference
+     * locks), so the reference lists of concurrent windows are never written out of order.
+     * Best effort: on failure the vectors keep matching the documents they matched before.
+     *
+     * @param vectorIds IDs of the vectors to refresh
+     * @return Whether the vector store was updated
+     */
+    public boolean refreshReferences(Set<String> vectorIds) {
+        List<String> ids = new ArrayList<>(vectorIds);
+        boolean updated = true;
+        for (int start = 0; start < ids.size(); start += DELETE_BATCH) {
+            updated &= refreshReferenceBatch(ids.subList(start, Math.min(start + DELETE_BATCH, ids.size())));
+        }
+        return updated;
+    }
+
+    /**
+     * refreshReferences for at most DELETE_BATCH vectors (bounds the IN lists).
+     */
+    private boolean refreshReferenceBatch(List<String> vectorIds) {
+        return withReferenceLocks(vectorIds, () -> {
+            try {
+                Map<String, List<VectorReference>> references = new HashMap<>();
+                Map<String, Set<String>> documentsByVector = new HashMap<>();
+                for (String vectorId : vectorIds) {
+                    references.put(vectorId, new ArrayList<>());
+                    documentsByVector.put(vectorId, new HashSet<>());
+                }
+                for (VectorReferenceInfo info : chunkRepository.findReferencesByVectorIds(vectorIds)) {
+                    if (documentsByVector.get(info.getVectorId()).add(info.getDocumentId())) {
+                        references.get(info.getVectorId())
+                                .add(new VectorReference(info.getChunkId(), info.getDocumentId(),
+                                        info.getOwner(), info.getChunkIndex()));
+                    }
+                }
+                List<String> released = references.entrySet().stream()
+                        .filter(entry -> entry.getValue().isEmpty())
+                        .map(Map.Entry::getKey)
+                        .toList();
+                vectorStoreClient.updateReferences(references);
+                if (!released.isEmpty()) {
+                    sharedVectorRepository.deleteAllByIdInBatch(released);
+                    logger.fine("Removed " + released.size() + " vectors no chunk references");
+                }
+                return true;
+            } catch (Exception e) {
+                logger.warning("Failed to update references of " + vectorIds.size() + " vectors: " +
+                             e.getMessage());
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Run an action holding the reference locks of the given vectors. Stripes are locked
+     * in ascending order, so callers locking overlapping sets cannot deadlock.
+     */
+    private <T> T withReferenceLocks(Collection<String> vectorIds, Supplier<T> action) {
+        int[] stripes = vectorIds.stream()
+                .mapToInt(vectorId -> Math.floorMod(vectorId.hashCode(), referenceLocks.length))
+                .distinct()
+                .sorted()
+                .toArray();
+        documentVectorsLock.readLock().lock();
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                referenceLocks[stripe].lock();
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                referenceLocks[stripes[i]].unlock();
+            }
+            documentVectorsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Record chunking progress: the document's chunk count and the job's checkpoint.
+     */
+    private void recordProgress(String documentId, IngestionJob job, int chunks, boolean complete) {
+        documentRepository.updateTotalChunks(documentId, chunks);
+        jobRepository.updateCheckpoint(job.getDocumentId(), job.getLeaseOwner(), chunks, complete, LocalDateTime.now());
+    }
+
+    private static void checkStopping(Supplier<StopReason> stopReason) {
+        StopReason reason = stopReason.get();
+        if (reason != null) {
+            throw new CancellationException("Ingestion " + reason.getDescription());
         }
     }
 
@@ -164,17 +910,6 @@ public class DocumentIngestionService {
         });
     }
 
-    /**
-     * Update document total chunks count.
-     */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    protected void updateDocumentTotalChunks(String documentId, int totalChunks) {
-        documentRepository.findById(documentId).ifPresent(doc -> {
-            doc.setTotalChunks(totalChunks);
-            documentRepository.save(doc);
-        });
-    }
-
     /**
      * Get processing progress for a document.
      *
@@ -191,7 +926,9 @@ public class DocumentIngestionService {
         }
 
         int totalChunks = doc.getTotalChunks() != null ? doc.getTotalChunks() : 0;
-        long processedChunks = chunkRepository.countByDocumentIdAndVectorIdIsNotNull(documentId);
+        // During a re-upload, progress is that of the revision being written
+        int revision = nextRevision(documentId) - 1;
+        long processedChunks = chunkRepository.countByDocumentIdAndRevisionAndVectorIdIsNotNull(documentId, revision);
 
         progress.put("totalChunks", totalChunks);
         progress.put("processedChunks", processedChunks);
@@ -199,4 +936,52 @@ public class DocumentIngestionService {
 
         return progress;
     }
+
+    /**
+     * Why a running job was told to stop (see runJob).
+     */
+    public enum StopReason {
+        SHUTDOWN("stopped for shutdown; it will be resumed"),
+        CANCELLED("cancelled"),
+        LEASE_LOST("stopped: its lease was taken over; the new owner resumes it");
+
+        private final String description;
+
+        StopReason(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * A window's chunks with their vectors assigned, ready to be saved.
+     */
+    private static final class WindowPlan {
+        private final List<DocumentChunk> embeddedChunks;
+        private final List<DocumentChunk> unembeddedChunks = new ArrayList<>();
+        private final List<SharedVector> newVectors;
+        // Vectors of other chunks (from the shared vector lookup) the window reuses
+        private final Set<String> sharedVectorIds = new HashSet<>();
+        private final int stored;
+        private int unchanged;
+
+        private WindowPlan(int chunks, List<SharedVector> newVectors, int stored) {
+            this.embeddedChunks = new ArrayList<>(chunks);
+            this.newVectors = newVectors;
+            this.stored = stored;
+        }
+    }
+
+    /**
+     * Running totals for one ingestion.
+     */
+    private static final class IngestionCounts {
+        private int success;
+        private int reused;
+        private int unchanged;
+        private int failed;
+    }
 }
@@ -1,9 +1,13 @@
 package com.genai.knowitall.service;
 
+import com.genai.knowitall.cache.EmbeddingCache;
+import com.genai.knowitall.config.BlockingCallGuard;
 import com.genai.knowitall.service.exception.EmbeddingException;
 import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -11,10 +15,34 @@ import org.springframework.stereotype.Service;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
  * Service for generating text embeddings using OpenAI models via LangChain4j.
+ *
+ * Batch API: generateEmbeddings() packs many texts into each provider request
+ * (bounded by doc.embedding.batch.max-tokens / max-inputs) and runs up to
+ * doc.embedding.max-in-flight requests concurrently on a dedicated pool.
+ *
+ * Both APIs consult EmbeddingCache first (keyed by model + text hash), so repeated
+ * questions and unchanged chunks are never sent to the provider twice.
+ *
+ * Provider requests (including retries) pass through token buckets sized to the
+ * provider's rate limits (doc.embedding.rate-limit.tpm / rpm): a bulk import is
+ * paced to the quota instead of running into 429s and cascading retries. Request
+ * sizes are exact BPE token counts (TokenCounter), so text with many tokens per
+ * character (code, CJK) is not under-counted. Ingestion batches are capped at
+ * (1 - doc.embedding.rate-limit.query-reserve) of both limits, while query embeddings
+ * (generateEmbedding) draw from the full limits: the reserve is a floor for queries,
+ * not a ceiling, and when no ingestion runs they can use all of it. A query waits at
+ * most doc.embedding.rate-limit.query-max-wait-ms for its permits.
  */
 @Service
 public class EmbeddingService {
@@ -30,18 +58,57 @@ public class EmbeddingService {
     private final String embeddingModelName;
     private final int maxRetries;
     private final long retryBackoffMs;
+    private final int batchMaxTokens;
+    private final int batchMaxInputs;
+    private final ExecutorService batchExecutor;
+    private final EmbeddingCache embeddingCache;
+    private final BlockingCallGuard blockingCallGuard;
+    // Full provider limits, drawn on by every request
+    private final RateLimits providerLimits;
+    // Ingestion's share of the limits, drawn on by batches before providerLimits
+    private final RateLimits batchLimits;
+    private final long queryMaxWaitMs;
+    private final TokenCounter tokenCounter;
 
     public EmbeddingService(
             @Value("${openai.api.key:}") String apiKey,
             @Value("${openai.embedding.model:text-embedding-3-small}") String modelName,
             @Value("${doc.embedding.retry.max-attempts:3}") int maxRetries,
-            @Value("${doc.embedding.retry.backoff-ms:1000}") long retryBackoffMs) {
+            @Value("${doc.embedding.retry.backoff-ms:1000}") long retryBackoffMs,
+            @Value("${doc.embedding.batch.max-tokens:20000}") int batchMaxTokens,
+            @Value("${doc.embedding.batch.max-inputs:256}") int batchMaxInputs,
+            @Value("${doc.embedding.max-in-flight:4}") int maxInFlight,
+            @Value("${doc.embedding.rate-limit.tpm:1000000}") long rateLimitTpm,
+            @Value("${doc.embedding.rate-limit.rpm:3000}") long rateLimitRpm,
+            @Value("${doc.embedding.rate-limit.query-reserve:0.05}") double queryReserve,
+            @Value("${doc.embedding.rate-limit.query-max-wait-ms:2000}") long queryMaxWaitMs,
+            EmbeddingCache embeddingCache,
+            BlockingCallGuard blockingCallGuard,
+            TokenCounter tokenCounter) {
 
         this.embeddingModelName = modelName;
         this.maxRetries = maxRetries;
         this.retryBackoffMs = retryBackoffMs;
+        this.batchMaxTokens = batchMaxTokens;
+        this.batchMaxInputs = batchMaxInputs;
+        this.batchExecutor = Executors.newFixedThreadPool(Math.max(1, maxInFlight), namedThreadFactory("embedding-batch-"));
+        this.embeddingCache = embeddingCache;
+        this.blockingCallGuard = blockingCallGuard;
+        this.tokenCounter = tokenCounter;
+        this.queryMaxWaitMs = Math.max(0, queryMaxWaitMs);
+        this.providerLimits = new RateLimits(
+                rateLimitTpm > 0 ? new TokenBucket(rateLimitTpm) : null,
+                rateLimitRpm > 0 ? new TokenBucket(rateLimitRpm) : null);
+        // Batches never take the reserved share, so it is always left for queries (0 = no cap)
+        double reserve = Math.min(0.5, Math.max(0.0, queryReserve));
+        this.batchLimits = new RateLimits(
+                rateLimitTpm > 0 && reserve > 0 ? new TokenBucket(Math.round(rateLimitTpm * (1 - reserve))) : null,
+                rateLimitRpm > 0 && reserve > 0 ? new TokenBucket(Math.round(rateLimitRpm * (1 - reserve))) : null);
 
-        logger.info("Initializing EmbeddingService with model: " + modelName);
+        logger.info("Initializing EmbeddingService with model: " + modelName + " (rate limit: " +
+                   (rateLimitTpm > 0 ? rateLimitTpm : "unlimited") + " TPM, " +
+                   (rateLimitRpm > 0 ? rateLimitRpm : "unlimited") + " RPM, " +
+                   Math.round(reserve * 100) + "% reserved for queries)");
 
         try {
             if (apiKey == null || apiKey.isEmpty()) {
@@ -53,7 +120,10 @@ public class EmbeddingService {
                     .apiKey(apiKey)
                     .modelName(modelName)
                     .timeout(Duration.ofSeconds(60))
-                    .maxRetries(3)
+                    // One attempt per call: retries go through withRetry, so each one takes
+                    // its share of the rate limits (LangChain4j counts attempts here, and 0
+                    // would retry without end)
+                    .maxRetries(1)
                     .logRequests(false)
                     .logResponses(false)
                     .build();
@@ -67,35 +137,200 @@ public class EmbeddingService {
 
     /**
      * Generate embedding for the given text.
-     * Retry on transient failures with exponential backoff.
+     * Retry on transient failures with exponential backoff. Draws on the full rate
+     * limits (ingestion leaves the reserved share free), waiting at most
+     * doc.embedding.rate-limit.query-max-wait-ms per attempt.
      * @param text Input text to embed
-     * @return List of Float representing the embedding vector
-     * @throws EmbeddingException if embedding generation fails
+     * @return The embedding vector. May be shared with the embedding cache: callers must not modify it.
+     * @throws EmbeddingException if embedding generation fails, or the rate limits leave no room in time
      */
-    public List<Float> generateEmbedding(String text) {
+    public float[] generateEmbedding(String text) {
         if (text == null || text.trim().isEmpty()) {
             throw new EmbeddingException("Cannot generate embedding for empty text");
         }
 
+        float[] cached = embeddingCache.get(embeddingModelName, text);
+        if (cached != null) {
+            logger.fine("Embedding cache hit (length: " + text.length() + " chars)");
+            return cached;
+        }
+
         logger.fine("Generating embedding for text (length: " + text.length() + " chars)");
 
+        int tokens = tokenCounter.count(text);
+        float[] vector = withRetry("Embedding generation", () -> acquireForQuery(tokens), () -> {
+            // Generate embedding using LangChain4j
+            Embedding embedding = embeddingModel.embed(text).content();
+            return embedding.vector();
+        });
+        embeddingCache.put(embeddingModelName, text, vector);
+
+        logger.fine("Successfully generated embedding (dimensions: " + vector.length + ")");
+        return vector;
+    }
+
+    /**
+     * Generate embeddings for many texts using batched provider requests.
+     *
+     * Texts are packed in order into batches bounded by token budget and input count;
+     * batches run concurrently (at most doc.embedding.max-in-flight at a time), each
+     * with the same retry/backoff policy as generateEmbedding().
+     *
+     * @param texts Input texts to embed (none may be empty)
+     * @return Embeddings aligned with the input list (must not be modified). An entry is null when its batch
+     *         still failed after all retries, so callers can skip it (best effort).
+     * @throws EmbeddingException if any text is empty
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        for (String text : texts) {
+            if (text == null || text.trim().isEmpty()) {
+                throw new EmbeddingException("Cannot generate embedding for empty text");
+            }
+        }
+
+        // Serve cached vectors; only the misses go to the provider
+        List<float[]> results = new ArrayList<>(texts.size());
+        List<String> misses = new ArrayList<>();
+        List<Integer> missPositions = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            float[] cached = embeddingCache.get(embeddingModelName, texts.get(i));
+            results.add(cached);
+            if (cached == null) {
+                misses.add(texts.get(i));
+                missPositions.add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            logger.fine("All " + texts.size() + " embeddings served from cache");
+            return results;
+        }
+
+        int[] tokens = new int[misses.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = tokenCounter.count(misses.get(i));
+        }
+        List<int[]> batches = planBatches(tokens);
+        logger.fine("Generating " + misses.size() + " embeddings in " + batches.size() + " batches (" +
+                   (texts.size() - misses.size()) + " cached)");
+
+        List<CompletableFuture<float[][]>> futures = new ArrayList<>(batches.size());
+        for (int[] range : batches) {
+            List<String> batch = misses.subList(range[0], range[1]);
+            int batchTokens = 0;
+            for (int j = range[0]; j < range[1]; j++) {
+                batchTokens += tokens[j];
+            }
+            int requestTokens = batchTokens;
+            futures.add(CompletableFuture.supplyAsync(() -> embedBatch(batch, requestTokens), batchExecutor));
+        }
+
+        for (int i = 0; i < batches.size(); i++) {
+            int[] range = batches.get(i);
+            try {
+                float[][] vectors = futures.get(i).join();
+                for (int j = range[0]; j < range[1]; j++) {
+                    results.set(missPositions.get(j), vectors[j - range[0]]);
+                }
+            } catch (Exception e) {
+                // Entries stay null (best effort)
+                logger.warning("Embedding batch [" + range[0] + ", " + range[1] + ") failed: " + e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Release the batch worker threads on shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdown();
+    }
+
+    // ==================== Helper Methods ====================
+
+    /**
+     * Embed one batch in a single provider request (with retries).
+     * @param batchTokens Tokens in the batch (taken from the rate limit per attempt)
+     */
+    private float[][] embedBatch(List<String> batch, int batchTokens) {
+        List<TextSegment> segments = new ArrayList<>(batch.size());
+        for (String text : batch) {
+            segments.add(TextSegment.from(text));
+        }
+
+        List<Embedding> embeddings = withRetry("Batch embedding generation", () -> {
+            batchLimits.acquire(batchTokens);
+            providerLimits.acquire(batchTokens);
+        }, () -> embeddingModel.embedAll(segments).content());
+
+        if (embeddings.size() != batch.size()) {
+            throw new EmbeddingException("Provider returned " + embeddings.size() +
+                    " embeddings for a batch of " + batch.size());
+        }
+
+        float[][] vectors = new float[embeddings.size()][];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = embeddings.get(i).vector();
+            embeddingCache.put(embeddingModelName, batch.get(i), vectors[i]);
+        }
+        return vectors;
+    }
+
+    /**
+     * Split texts into contiguous [start, end) ranges that respect the per-request
+     * token budget and input limit. An oversized text gets a batch of its own.
+     * @param textTokens Token count of each text
+     */
+    private List<int[]> planBatches(int[] textTokens) {
+        List<int[]> batches = new ArrayList<>();
+        int start = 0;
+        int tokens = 0;
+
+        for (int i = 0; i < textTokens.length; i++) {
+            boolean full = i - start >= batchMaxInputs || tokens + textTokens[i] > batchMaxTokens;
+            if (i > start && full) {
+                batches.add(new int[]{start, i});
+                start = i;
+                tokens = 0;
+            }
+            tokens += textTokens[i];
+        }
+        if (start < textTokens.length) {
+            batches.add(new int[]{start, textTokens.length});
+        }
+        return batches;
+    }
+
+    /**
+     * Take a query's permits from the full rate limits, waiting at most queryMaxWaitMs.
+     * @throws EmbeddingException if the limits leave no room in time
+     */
+    private void acquireForQuery(int tokens) throws InterruptedException {
+        if (!providerLimits.tryAcquire(tokens, TimeUnit.MILLISECONDS.toNanos(queryMaxWaitMs))) {
+            throw new EmbeddingException("Embedding rate limit reached: no capacity for the query within " +
+                    queryMaxWaitMs + "ms");
+        }
+    }
+
+    /**
+     * Run a provider call, retrying on transient failures with exponential backoff.
+     * Each attempt first takes its rate limit permits, then goes through
+     * BlockingCallGuard (the OkHttp client pins virtual threads).
+     */
+    private <T> T withRetry(String operation, RatePermits permits, Supplier<T> call) {
         int attempt = 0;
         Exception lastException = null;
 
         while (attempt < maxRetries) {
             try {
-                // Generate embedding using LangChain4j
-                Embedding embedding = embeddingModel.embed(text).content();
-
-                // Convert to List<Float>
-                float[] vector = embedding.vector();
-                List<Float> embeddingList = new ArrayList<>(vector.length);
-                for (float value : vector) {
-                    embeddingList.add(value);
-                }
-
-                logger.fine("Successfully generated embedding (dimensions: " + embeddingList.size() + ")");
-                return embeddingList;
+                permits.acquire();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new EmbeddingException(operation + " interrupted", ie);
+            }
+            try {
+                return blockingCallGuard.call(call);
 
             } catch (Exception e) {
                 lastException = e;
@@ -103,17 +338,17 @@ public class EmbeddingService {
 
                 if (attempt < maxRetries) {
                     long backoff = retryBackoffMs * (long) Math.pow(2, attempt - 1);
-                    logger.warning("Embedding generation failed (attempt " + attempt + "/" + maxRetries +
+                    logger.warning(operation + " failed (attempt " + attempt + "/" + maxRetries +
                                  "), retrying in " + backoff + "ms: " + e.getMessage());
 
                     try {
                         Thread.sleep(backoff);
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
-                        throw new EmbeddingException("Embedding generation interrupted", ie);
+                        throw new EmbeddingException(operation + " interrupted", ie);
                     }
                 } else {
-                    logger.severe("Embedding generation failed after " + maxRetries + " attempts: " + e.getMessage());
+                    logger.severe(operation + " failed after " + maxRetries + " attempts: " + e.getMessage());
                 }
             }
         }
@@ -121,4 +356,55 @@ public class EmbeddingService {
         throw new EmbeddingException("Failed to generate embedding after " + maxRetries + " attempts", lastException);
     }
 
+    /**
+     * Takes the rate limit permits for one provider attempt.
+     */
+    @FunctionalInterface
+    private interface RatePermits {
+        void acquire() throws InterruptedException;
+    }
+
+    /**
+     * Token and request buckets (either may be null = unlimited).
+     */
+    private record RateLimits(TokenBucket tokensPerMinute, TokenBucket requestsPerMinute) {
+
+        void acquire(int tokens) throws InterruptedException {
+            if (requestsPerMinute != null) {
+                requestsPerMinute.acquire(1);
+            }
+            if (tokensPerMinute != null) {
+                tokensPerMinute.acquire(tokens);
+            }
+        }
+
+        /**
+         * Take the permits of both buckets within the timeout, or neither.
+         */
+        boolean tryAcquire(int tokens, long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            if (requestsPerMinute != null
+                    && !requestsPerMinute.tryAcquire(1, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            if (tokensPerMinute != null
+                    && !tokensPerMinute.tryAcquire(tokens, deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                if (requestsPerMinute != null) {
+                    requestsPerMinute.release(1);
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
 }
@@ -0,0 +1,461 @@
+package com.genai.knowitall.service;
+
+import com.genai.knowitall.model.Document;
+import com.genai.knowitall.model.DocumentStatus;
+import com.genai.knowitall.model.IngestionJob;
+import com.genai.knowitall.model.IngestionJobStatus;
+import com.genai.knowitall.repository.DocumentRepository;
+import com.genai.knowitall.repository.IngestionJobRepository;
+import com.genai.knowitall.service.DocumentIngestionService.StopReason;
+import com.genai.knowitall.service.exception.IngestionQueueFullException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Durable queue of document ingestion jobs.
+ *
+ * Uploads are recorded as IngestionJob rows instead of being handed to the in-memory
+ * @Async executor, so queued and in-flight documents survive a restart. Workers on this
+ * node poll for claimable jobs and lease them with a conditional update (safe with
+ * several nodes on one database); leases are renewed while a job runs. A job whose
+ * lease expires, because its node died or was redeployed, is leased again and resumed
+ * from its checkpoint (DocumentIngestionService.runJob): chunks already embedded are
+ * not embedded again. Jobs that keep failing are given up after max-attempts.
+ *
+ * The queue is a bounded priority queue:
+ * - Jobs are leased in priorityAt order: enqueue time plus size-penalty-seconds-per-mb
+ *   for each MB of upload, so small documents jump ahead of huge ones without starving them.
+ * - admit() refuses new uploads (IngestionQueueFullException, surfaced as 429 with
+ *   Retry-After) once queued jobs reach max-jobs or max-bytes, and the check is made
+ *   again in the transaction that queues the job. Throughput is then set by the
+ *   workers and the embedding rate limits rather than by the arrival rate.
+ *
+ * A re-upload of an existing document (submitUpdate) is an incremental job: it writes
+ * the next chunk revision and only embeds content the document did not have before.
+ *
+ * With spring.threads.virtual.enabled, jobs run on virtual threads; the number of jobs
+ * running at once is still doc.ingestion.jobs.workers.
+ */
+@Service
+public class IngestionJobService {
+
+    private static final Logger logger = Logger.getLogger(IngestionJobService.class.getName());
+
+    private final IngestionJobRepository jobRepository;
+    private final DocumentRepository documentRepository;
+    private final DocumentIngestionService ingestionService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int workers;
+    private final long leaseSeconds;
+    private final long pollIntervalMs;
+    private final int maxAttempts;
+    private final long sizePenaltySecondsPerMb;
+    private final long maxQueuedJobs;
+    private final long maxQueuedBytes;
+    private final long retryAfterSeconds;
+
+    // Identifies this node's leases; a restarted node gets a new ID, so its old leases expire
+    private final String workerId = UUID.randomUUID().toString();
+    private final ExecutorService workerPool;
+    private final ScheduledExecutorService scheduler;
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    // Why a job running on this node was told to stop (cancel, lost lease)
+    private final Map<String, StopReason> stopReasons = new ConcurrentHashMap<>();
+    // Completed when the worker running a job on this node is done with it
+    private final Map<String, CompletableFuture<Void>> workerDone = new ConcurrentHashMap<>();
+    private final AtomicInteger active = new AtomicInteger();
+    // Serializes the capacity check and insert of jobs queued on this node
+    private final ReentrantLock admissionLock = new ReentrantLock();
+    private volatile boolean stopping;
+
+    public IngestionJobService(
+            IngestionJobRepository jobRepository,
+            DocumentRepository documentRepository,
+            DocumentIngestionService ingestionService,
+            PlatformTransactionManager transactionManager,
+            @Value("${doc.ingestion.jobs.workers:4}") int workers,
+            @Value("${doc.ingestion.jobs.lease-seconds:60}") long leaseSeconds,
+            @Value("${doc.ingestion.jobs.poll-interval-ms:2000}") long pollIntervalMs,
+            @Value("${doc.ingestion.jobs.max-attempts:3}") int maxAttempts,
+            @Value("${doc.ingestion.jobs.size-penalty-seconds-per-mb:10}") long sizePenaltySecondsPerMb,
+            @Value("${doc.ingestion.queue.max-jobs:100}") long maxQueuedJobs,
+            @Value("${doc.ingestion.queue.max-bytes:1073741824}") long maxQueuedBytes,
+            @Value("${doc.ingestion.queue.retry-after-seconds:30}") long retryAfterSeconds,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.jobRepository = jobRepository;
+        this.documentRepository = documentRepository;
+        this.ingestionService = ingestionService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.workers = Math.max(1, workers);
+        this.leaseSeconds = Math.max(3, leaseSeconds);
+        this.pollIntervalMs = Math.max(100, pollIntervalMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.sizePenaltySecondsPerMb = Math.max(0, sizePenaltySecondsPerMb);
+        this.maxQueuedJobs = maxQueuedJobs;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+
+        // poll() never runs more than `workers` jobs at once, so virtual threads need no pool bound
+        AtomicInteger counter = new AtomicInteger();
+        this.workerPool = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ingestion-worker-", 1).factory())
+                : Executors.newFixedThreadPool(this.workers, runnable -> {
+                    Thread thread = new Thread(runnable, "ingestion-worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-jobs");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("IngestionJobService initialized (workers: " + this.workers +
+                   (virtualThreads ? " virtual" : "") + ", lease: " +
+                   this.leaseSeconds + "s, worker ID: " + workerId + ")");
+    }
+
+    /**
+     * Admission control: check that the queue can take an upload of this size. An early
+     * check, before the upload is spooled; submit and submitUpdate check again when
+     * they queue the job (serialized on this node, so concurrent uploads cannot all
+     * pass; with several nodes each may overshoot by the uploads it is queuing).
+     *
+     * @param sizeBytes Size of the upload
+     * @throws IngestionQueueFullException if the queue is saturated
+     */
+    public void admit(long sizeBytes) {
+        long queuedJobs = jobRepository.countByStatus(IngestionJobStatus.QUEUED);
+        if (queuedJobs >= maxQueuedJobs) {
+            throw new IngestionQueueFullException(
+                    "Ingestion queue is full (" + queuedJobs + " documents waiting)", retryAfterSeconds);
+        }
+        long queuedBytes = jobRepository.sumSizeBytesByStatus(IngestionJobStatus.QUEUED);
+        // A single upload larger than the byte budget is still admitted into an empty queue
+        if (queuedBytes > 0 && queuedBytes + sizeBytes > maxQueuedBytes) {
+            throw new IngestionQueueFullException(
+                    "Ingestion queue is full (" + (queuedBytes / 1024 / 1024) + " MB waiting)", retryAfterSeconds);
+        }
+    }
+
+    /**
+     * Save a new document and queue ingestion of its spooled upload, in one transaction:
+     * if queuing fails, the document is not saved either. The job is persisted before
+     * this returns, so it is processed even if the node restarts before a worker picks it up.
+     *
+     * @param document The new document (status UPLOADING)
+     * @param spoolFile Spooled upload; owned (and deleted) by the job once queued
+     * @param contentType MIME content type of the upload
+     * @param filename Original filename
+     * @throws IngestionQueueFullException if the queue is saturated (nothing was written)
+     */
+    public void submit(Document document, Path spoolFile, String contentType, String filename) throws IOException {
+        IngestionJob job = newJob(document.getId(), spoolFile, contentType, filename, false, 0);
+        admissionLock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                admit(job.getSizeBytes());
+                documentRepository.save(document);
+                jobRepository.save(job);
+            });
+        } finally {
+            admissionLock.unlock();
+        }
+        queued(job);
+    }
+
+    /**
+     * Queue incremental re-ingestion of an existing document from a new upload. The
+     * document keeps serving its current chunks until the job completes; then chunks
+     * whose content is gone are removed. Replaces the document's finished job, if any.
+     *
+     * The job is written with a conditional update (or an insert when the document has
+     * no job), in one transaction with the document, so of concurrent re-uploads only
+     * one is queued and none replaces a job that is still queued or running.
+     *
+     * @param document The existing document, with its fields updated for the new upload
+     * @param spoolFile Spooled upload; owned (and deleted) by the job once queued
+     * @param contentType MIME content type of the upload
+     * @param filename Original filename
+     * @return false if the document has a pending job (nothing was written, the caller
+     *         still owns the spool file)
+     * @throws IngestionQueueFullException if the queue is saturated (nothing was written)
+     */
+    public boolean submitUpdate(Document document, Path spoolFile, String contentType, String filename)
+            throws IOException {
+        String documentId = document.getId();
+        int revision = ingestionService.nextRevision(documentId);
+        IngestionJob job = newJob(documentId, spoolFile, contentType, filename, true, revision);
+        Boolean queued;
+        admissionLock.lock();
+        try {
+            queued = transactionTemplate.execute(tx -> {
+                admit(job.getSizeBytes());
+                int replaced = jobRepository.requeueFinished(documentId, job.getSpoolPath(), contentType, filename,
+                        job.getSizeBytes(), true, revision, job.getCreatedAt(), job.getPriorityAt(),
+                        IngestionJobStatus.QUEUED, IngestionJobStatus.RUNNING);
+                if (replaced == 0) {
+                    if (jobRepository.existsById(documentId)) {
+                        return false;
+                    }
+                    jobRepository.saveAndFlush(job);
+                }
+                documentRepository.save(document);
+                return true;
+            });
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent re-upload inserted the document's first job
+            queued = false;
+        } finally {
+            admissionLock.unlock();
+        }
+        if (!Boolean.TRUE.equals(queued)) {
+            return false;
+        }
+        queued(job);
+        return true;
+    }
+
+    /**
+     * Whether the document has a job that is queued or running (a snapshot: submitUpdate
+     * makes the authoritative check when it writes the job).
+     */
+    public boolean isPending(String documentId) {
+        return jobRepository.findById(documentId)
+                .map(job -> job.getStatus() == IngestionJobStatus.QUEUED || job.getStatus() == IngestionJobStatus.RUNNING)
+                .orElse(false);
+    }
+
+    /**
+     * Cancel a document's job (e.g. the document was deleted). Once this returns, the
+     * job saves no more chunks: a window's save locks the job's row and finds it gone
+     * (see DocumentIngestionService.saveWindow). A job running on this node stops at
+     * its next window; one running elsewhere stops when its lease renewal or next
+     * window finds the job gone. Does not wait for the job to stop.
+     *
+     * @return Completes once this node's worker is done with the job (already complete
+     *         if the job was not running here)
+     */
+    public CompletableFuture<Void> cancel(String documentId) {
+        IngestionJob job = jobRepository.findById(documentId).orElse(null);
+        if (job == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        jobRepository.delete(job);
+        CompletableFuture<Void> stopped = workerDone.get(documentId);
+        stopReasons.put(documentId, StopReason.CANCELLED);
+        if (!running.remove(documentId)) {
+            stopReasons.remove(documentId);
+            if (job.getStatus() == IngestionJobStatus.QUEUED) {
+                deleteSpoolFile(job);
+            }
+        }
+        logger.info("Cancelled ingestion job for document: " + documentId);
+        return stopped != null ? stopped : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Start polling once the application is up (includes jobs left over from a previous run).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        long renewMs = leaseSeconds * 1000 / 3;
+        scheduler.scheduleWithFixedDelay(this::renewLeases, renewMs, renewMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop taking jobs and interrupt running ones; their leases expire and they are
+     * resumed (here after a restart, or by another node).
+     */
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        scheduler.shutdownNow();
+        workerPool.shutdownNow();
+    }
+
+    // ==================== Helper Methods ====================
+
+    private IngestionJob newJob(String documentId, Path spoolFile, String contentType, String filename,
+                                boolean incremental, int revision) throws IOException {
+        long sizeBytes = Files.size(spoolFile);
+        LocalDateTime now = LocalDateTime.now();
+        long penaltySeconds = sizeBytes * sizePenaltySecondsPerMb / (1024 * 1024);
+        return IngestionJob.builder()
+                .documentId(documentId)
+                .status(IngestionJobStatus.QUEUED)
+                .spoolPath(spoolFile.toAbsolutePath().toString())
+                .contentType(contentType)
+                .filename(filename)
+                .sizeBytes(sizeBytes)
+                .incremental(incremental)
+                .revision(revision)
+                .chunksCheckpoint(0)
+                .chunkingComplete(false)
+                .attempts(0)
+                .createdAt(now)
+                .priorityAt(now.plusSeconds(penaltySeconds))
+                .build();
+    }
+
+    private void queued(IngestionJob job) {
+        String kind = job.getIncremental()
+                ? "incremental re-ingestion (revision " + job.getRevision() + ")"
+                : "ingestion";
+        logger.info("Queued " + kind + " job for document: " + job.getDocumentId());
+        // Pick it up now instead of at the next poll
+        if (!stopping) {
+            scheduler.execute(this::poll);
+        }
+    }
+
+    /**
+     * Lease claimable jobs, up to the number of idle workers. Runs on the scheduler thread only.
+     */
+    private void poll() {
+        try {
+            int idle = workers - active.get();
+            if (stopping || idle <= 0) {
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            List<String> candidates = jobRepository.findClaimableIds(
+                    IngestionJobStatus.QUEUED, IngestionJobStatus.RUNNING, now, PageRequest.of(0, idle * 2));
+            for (String documentId : candidates) {
+                if (idle <= 0) {
+                    break;
+                }
+                int claimed = jobRepository.claim(documentId, workerId, now.plusSeconds(leaseSeconds), now,
+                        IngestionJobStatus.QUEUED, IngestionJobStatus.RUNNING);
+                if (claimed == 1) {
+                    idle--;
+                    active.incrementAndGet();
+                    stopReasons.remove(documentId);
+                    running.add(documentId);
+                    workerDone.put(documentId, new CompletableFuture<>());
+                    workerPool.execute(() -> run(documentId));
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Failed to poll ingestion jobs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run one leased job to a final state (or until shutdown).
+     */
+    private void run(String documentId) {
+        try {
+            IngestionJob job = jobRepository.findById(documentId).orElse(null);
+            if (job == null || !workerId.equals(job.getLeaseOwner())) {
+                return;
+            }
+            if (job.getAttempts() > maxAttempts) {
+                String errorMsg = "Ingestion gave up after " + maxAttempts + " attempts";
+                logger.severe(errorMsg + ": " + documentId);
+                if (Boolean.TRUE.equals(job.getIncremental())) {
+                    // The previous revision stays in place
+                    ingestionService.discardRevision(documentId, job.getRevision());
+                }
+                markDocumentFailed(documentId, errorMsg);
+                jobRepository.finish(documentId, workerId, IngestionJobStatus.FAILED, errorMsg, LocalDateTime.now());
+                return;
+            }
+
+            DocumentStatus result = ingestionService.runJob(job,
+                    () -> stopReasons.getOrDefault(documentId, stopping ? StopReason.SHUTDOWN : null));
+            if (result == null) {
+                if (!jobRepository.existsById(documentId)) {
+                    // Cancelled: nothing will resume it
+                    deleteSpoolFile(job);
+                }
+                // Otherwise stopped: the lease is left to expire and the job is resumed later
+                return;
+            }
+            String error = result == DocumentStatus.FAILED
+                    ? documentRepository.findById(documentId).map(Document::getErrorMessage).orElse(null)
+                    : null;
+            jobRepository.finish(documentId, workerId,
+                    result == DocumentStatus.READY ? IngestionJobStatus.COMPLETED : IngestionJobStatus.FAILED,
+                    error, LocalDateTime.now());
+        } catch (Exception e) {
+            if (!stopping) {
+                logger.severe("Ingestion job failed for document " + documentId + ": " + e.getMessage());
+            }
+        } finally {
+            running.remove(documentId);
+            stopReasons.remove(documentId);
+            CompletableFuture<Void> done = workerDone.remove(documentId);
+            if (done != null) {
+                done.complete(null);
+            }
+            active.decrementAndGet();
+            if (!stopping) {
+                scheduler.execute(this::poll);
+            }
+        }
+    }
+
+    /**
+     * Extend the leases of jobs running on this node. A lease that could not be
+     * renewed has been taken over; its job is told to stop.
+     */
+    private void renewLeases() {
+        LocalDateTime until = LocalDateTime.now().plusSeconds(leaseSeconds);
+        for (String documentId : running) {
+            try {
+                if (jobRepository.renewLease(documentId, workerId, until, IngestionJobStatus.RUNNING) == 0) {
+                    logger.warning("Lost lease on ingestion job for document " + documentId + "; stopping it");
+                    stopReasons.put(documentId, StopReason.LEASE_LOST);
+                    running.remove(documentId);
+                }
+            } catch (Exception e) {
+                logger.warning("Failed to renew lease for document " + documentId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void deleteSpoolFile(IngestionJob job) {
+        try {
+            Files.deleteIfExists(Paths.get(job.getSpoolPath()));
+        } catch (IOException e) {
+            logger.warning("Failed to delete spool file " + job.getSpoolPath() + ": " + e.getMessage());
+        }
+    }
+
+    private void markDocumentFailed(String documentId, String errorMessage) {
+        documentRepository.findById(documentId).ifPresent(doc -> {
+            doc.setStatus(DocumentStatus.FAILED);
+            doc.setErrorMessage(errorMessage);
+            doc.setProcessedAt(LocalDateTime.now());
+            documentRepository.save(doc);
+        });
+    }
+}
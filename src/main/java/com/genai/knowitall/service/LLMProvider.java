@@ -1,11 +1,21 @@
 package com.genai.knowitall.service;
 
+import com.genai.knowitall.config.BlockingCallGuard;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.Response;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Logger;
 
 /**
@@ -27,18 +37,22 @@ public class LLMProvider {
     private static final Logger logger = Logger.getLogger(LLMProvider.class.getName());
 
     private final ChatLanguageModel chatModel;
+    private final StreamingChatLanguageModel streamingChatModel;
     private final String modelName;
     private final Double temperature;
     private final Integer maxTokens;
+    private final BlockingCallGuard blockingCallGuard;
 
     public LLMProvider(
             @Value("${openai.model.name:gpt-3.5-turbo}") String modelName,
             @Value("${openai.temperature:0.7}") Double temperature,
-            @Value("${openai.max.tokens:1000}") Integer maxTokens) {
+            @Value("${openai.max.tokens:1000}") Integer maxTokens,
+            BlockingCallGuard blockingCallGuard) {
 
         this.modelName = modelName;
         this.temperature = temperature;
         this.maxTokens = maxTokens;
+        this.blockingCallGuard = blockingCallGuard;
 
         logger.info("Initializing LLMProvider with model: " + modelName +
                    ", temperature: " + temperature + ", maxTokens: " + maxTokens);
@@ -61,6 +75,16 @@ public class LLMProvider {
                     .logResponses(false)
                     .build();
 
+            this.streamingChatModel = OpenAiStreamingChatModel.builder()
+                    .apiKey(apiKey)
+                    .modelName(modelName)
+                    .temperature(temperature)
+                    .maxTokens(maxTokens)
+                    .timeout(Duration.ofSeconds(60))
+                    .logRequests(false)
+                    .logResponses(false)
+                    .build();
+
             logger.info("✓ LLMProvider initialized successfully");
 
         } catch (Exception e) {
@@ -83,7 +107,8 @@ public class LLMProvider {
 
         try {
             // Create messages array: system role + user message
-            String response = chatModel.generate(userMessage);
+            // Blocking OkHttp call: kept off virtual threads to avoid pinning
+            String response = blockingCallGuard.call(() -> chatModel.generate(userMessage));
 
             logger.fine("Generated response: " + response.length() + " chars");
             return response;
@@ -94,6 +119,58 @@ public class LLMProvider {
         }
     }
 
+    /**
+     * Stream a response from the LLM token by token.
+     * Returns immediately; the handler is called from the HTTP client's threads as
+     * tokens arrive, so no caller thread is held while the model generates. Once the
+     * handler reports itself cancelled, the next token aborts the stream: the exception
+     * thrown from the client's callback makes it close the HTTP response, and the
+     * handler gets onError.
+     *
+     * @param systemPrompt System message (instructions for behavior)
+     * @param userMessage User's question or prompt
+     * @param handler Receives tokens, then exactly one of onComplete / onError
+     */
+    public void generateResponseStreaming(String systemPrompt, String userMessage, StreamHandler handler) {
+        logger.fine("Streaming response. System: " + systemPrompt.length() +
+                   " chars, User: " + userMessage.length() + " chars");
+
+        try {
+            streamingChatModel.generate(
+                    List.of(SystemMessage.from(systemPrompt), UserMessage.from(userMessage)),
+                    new StreamingResponseHandler<AiMessage>() {
+                        @Override
+                        public void onNext(String token) {
+                            if (handler.isCancelled()) {
+                                throw new CancellationException("Streaming consumer went away");
+                            }
+                            handler.onToken(token);
+                        }
+
+                        @Override
+                        public void onComplete(Response<AiMessage> response) {
+                            String text = response.content() != null ? response.content().text() : "";
+                            logger.fine("Streamed response: " + text.length() + " chars");
+                            handler.onComplete(text);
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            if (handler.isCancelled()) {
+                                logger.fine("LLM stream aborted: " + error.getMessage());
+                            } else {
+                                logger.severe("LLM streaming failed: " + error.getMessage());
+                            }
+                            handler.onError(error);
+                        }
+                    });
+
+        } catch (Exception e) {
+            logger.severe("LLM streaming failed to start: " + e.getMessage());
+            handler.onError(e);
+        }
+    }
+
     /**
      * Get the name of the configured LLM model.
      */
@@ -115,4 +192,32 @@ public class LLMProvider {
     public Integer getMaxTokens() {
         return maxTokens;
     }
+
+    /**
+     * Callback for streamed generations.
+     */
+    public interface StreamHandler {
+
+        /**
+         * Called for each token (or token fragment) as it arrives.
+         */
+        void onToken(String token);
+
+        /**
+         * Called once with the full generated text after the last token.
+         */
+        void onComplete(String fullText);
+
+        /**
+         * Called once if generation fails; no further callbacks follow.
+         */
+        void onError(Throwable error);
+
+        /**
+         * Whether the caller no longer wants the response (stops the stream at the next token).
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,57 @@
+package com.genai.knowitall.service;
+
+import java.util.Arrays;
+
+/**
+ * Maps character offsets in a document's extracted text to page numbers.
+ *
+ * The extractor marks where each page starts as it writes text; the chunker, reading
+ * the same text (possibly on another thread), looks up the pages a chunk spans. Marks
+ * are appended in offset order, and a page is always marked before its text is written,
+ * so every offset the reader has seen is already covered.
+ */
+public class PageOffsets {
+
+    private long[] offsets = new long[64];
+    private int[] pages = new int[64];
+    private int size;
+
+    /**
+     * Record that page starts at the given character offset.
+     * A page with no text is replaced by the next page marked at the same offset.
+     */
+    public synchronized void mark(long offset, int page) {
+        if (size > 0 && offsets[size - 1] == offset) {
+            pages[size - 1] = page;
+            return;
+        }
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            pages = Arrays.copyOf(pages, size * 2);
+        }
+        offsets[size] = offset;
+        pages[size] = page;
+        size++;
+    }
+
+    /**
+     * Page containing the character at offset, or null if no page starts at or before it.
+     */
+    public synchronized Integer pageAt(long offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid] <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 ? pages[high] : null;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,41 @@
+package com.genai.knowitall.service;
+
+import com.genai.knowitall.controller.dto.QueryResponse;
+
+/**
+ * Receives the stages of a streamed RAG query (RAGService.streamQuery).
+ *
+ * Order: onSources once, then onToken zero or more times, then exactly one of
+ * onComplete / onError. onError may also follow onSources directly (or replace it
+ * entirely if retrieval fails). Token callbacks run on the LLM client's threads.
+ */
+public interface QueryStreamListener {
+
+    /**
+     * Retrieval finished: confidence, grounding, sources and retrieval time are set; answer is null.
+     */
+    void onSources(QueryResponse retrieval);
+
+    /**
+     * Next answer token from the LLM.
+     */
+    void onToken(String token);
+
+    /**
+     * Generation finished: the full response including answer and timings.
+     */
+    void onComplete(QueryResponse response);
+
+    /**
+     * Retrieval or generation failed.
+     */
+    void onError(Throwable error);
+
+    /**
+     * Whether the consumer has gone away (client disconnected, stream timed out). Once
+     * true, no more tokens are forwarded and the LLM stream is aborted.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -1,15 +1,33 @@
 package com.genai.knowitall.service;
 
+import com.genai.knowitall.cache.SemanticAnswerCache;
 import com.genai.knowitall.controller.dto.QueryResponse;
 import com.genai.knowitall.controller.dto.SourceReference;
 import com.genai.knowitall.model.DocumentChunk;
 import com.genai.knowitall.repository.DocumentChunkRepository;
+import com.genai.knowitall.repository.DocumentChunkRepository.ChunkSourceInfo;
+import com.genai.knowitall.search.LexicalSearchService;
+import com.genai.knowitall.search.Reranker;
+import com.genai.knowitall.vectorstore.SearchFilter;
 import com.genai.knowitall.vectorstore.VectorSearchResult;
 import com.genai.knowitall.vectorstore.VectorStoreClient;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -17,11 +35,16 @@ import java.util.stream.Collectors;
  * Core RAG (Retrieval-Augmented Generation) Service.
  *
  * Orchestrates the complete RAG pipeline:
- * 1. Embed user question
- * 2. Retrieve top-K similar document chunks from Qdrant
+ * 1. Embed user question (and serve near-duplicate questions from SemanticAnswerCache)
+ * 2. Retrieve top-K document chunks: vector and (optionally) BM25 keyword legs run in
+ *    parallel and are fused with Reciprocal Rank Fusion, then reranked (optional,
+ *    time-boxed: falls back to fused order when over budget)
  * 3. Score confidence based on similarity
  * 4. Generate LLM response grounded in retrieved context
- * 5. Attach source references
+ * 5. Attach source references (resolved concurrently with step 4)
+ *
+ * Independent stages run on a pipeline executor (CompletableFuture); per-stage
+ * timings are returned in QueryResponse.stageTimingsMs.
  *
  * Error Handling Strategy: "Best Effort"
  * - If no high-confidence context found: still generate answer (low confidence flag)
@@ -32,11 +55,21 @@ import java.util.stream.Collectors;
 public class RAGService {
 
     private static final Logger logger = Logger.getLogger(RAGService.class.getName());
+    private static final AtomicInteger PIPELINE_THREADS = new AtomicInteger();
+    private static final AtomicInteger RERANK_THREADS = new AtomicInteger();
 
     private final VectorStoreClient vectorStoreClient;
+    private final DocumentDeletionService deletionService;
     private final EmbeddingService embeddingService;
     private final LLMProvider llmProvider;
     private final DocumentChunkRepository chunkRepository;
+    private final SemanticAnswerCache answerCache;
+    private final TokenCounter tokenCounter;
+    private final ExecutorService pipelineExecutor;
+    private final Map<String, RetrievalLeg> retrievalLegs;
+    private final Reranker reranker;
+    private final Semaphore rerankPermits;
+    private final ExecutorService rerankExecutor;
 
     @Value("${rag.retrieval.top.k:5}")
     private Integer defaultTopK;
@@ -47,32 +80,102 @@ public class RAGService {
     @Value("${rag.max.context.tokens:2000}")
     private Integer maxContextTokens;
 
+    @Value("${rag.hybrid.rrf.k:60}")
+    private Integer rrfK;
+
+    @Value("${rag.hybrid.candidates.multiplier:3}")
+    private Integer candidatesMultiplier;
+
+    @Value("${rag.rerank.candidates:20}")
+    private Integer rerankCandidates;
+
+    @Value("${rag.rerank.budget.ms:50}")
+    private Long rerankBudgetMs;
+
     public RAGService(
             VectorStoreClient vectorStoreClient,
             EmbeddingService embeddingService,
             LLMProvider llmProvider,
-            DocumentChunkRepository chunkRepository) {
+            DocumentChunkRepository chunkRepository,
+            SemanticAnswerCache answerCache,
+            TokenCounter tokenCounter,
+            LexicalSearchService lexicalSearchService,
+            DocumentDeletionService deletionService,
+            Optional<Reranker> reranker,
+            @Value("${rag.rerank.max.concurrent:16}") int rerankMaxConcurrent,
+            @Value("${rag.pipeline.threads:32}") int pipelineThreads,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
 
         this.vectorStoreClient = vectorStoreClient;
         this.embeddingService = embeddingService;
         this.llmProvider = llmProvider;
         this.chunkRepository = chunkRepository;
+        this.answerCache = answerCache;
+        this.tokenCounter = tokenCounter;
+        this.deletionService = deletionService;
+        this.pipelineExecutor = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(Math.max(1, pipelineThreads), runnable -> {
+                    Thread thread = new Thread(runnable, "rag-pipeline-" + PIPELINE_THREADS.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Fusion keeps the first leg's copy of a chunk, so the vector leg (with content and
+        // similarity score) goes first
+        this.retrievalLegs = new LinkedHashMap<>();
+        retrievalLegs.put("vector", (question, embedding, topK, filter) -> vectorStoreClient.search(embedding, topK, filter));
+        if (lexicalSearchService.isEnabled()) {
+            // BM25 scores are not similarities: only the rank is used (fusion), and
+            // keyword-only hits count as 0.0 towards confidence
+            retrievalLegs.put("lexical", (question, embedding, topK, filter) ->
+                    lexicalSearchService.search(question, topK, filter).stream()
+                            .map(result -> result.toBuilder().score(0.0).build())
+                            .toList());
+        }
+
+        this.reranker = reranker.orElse(null);
+        this.rerankPermits = new Semaphore(Math.max(1, rerankMaxConcurrent));
+        // One thread per permit: a rerank never waits in a queue (its budget is spent
+        // reranking) and never holds up retrieval legs or source enrichment
+        this.rerankExecutor = this.reranker != null
+                ? Executors.newFixedThreadPool(Math.max(1, rerankMaxConcurrent), runnable -> {
+                    Thread thread = new Thread(runnable, "rag-rerank-" + RERANK_THREADS.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
 
-        logger.info("RAGService initialized");
+        logger.info("RAGService initialized (retrieval legs: " + retrievalLegs.keySet() +
+                   ", reranker: " + reranker.map(Reranker::name).orElse("none") + ")");
+    }
+
+    /**
+     * Release the pipeline threads on shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        pipelineExecutor.shutdown();
+        if (rerankExecutor != null) {
+            rerankExecutor.shutdown();
+        }
     }
 
     /**
      * Process a query end-to-end using RAG pipeline.
      *
+     * Stages overlap where they are independent: retrieval legs run in parallel, and
+     * source enrichment (DB lookup) runs while the LLM generates. Per-stage timings are
+     * reported in QueryResponse.stageTimingsMs.
+     *
      * @param question User's question
      * @param topK Number of chunks to retrieve
      * @param confidenceThreshold Minimum similarity to consider context valid
-     * @param documentFilter Optional: filter to specific document ID
+     * @param filter Optional: document/owner restrictions (null = search all)
      * @return QueryResponse with answer, confidence, and sources
      */
-    public QueryResponse query(String question, Integer topK, Double confidenceThreshold, String documentFilter) {
+    public QueryResponse query(String question, Integer topK, Double confidenceThreshold, SearchFilter filter) {
         long startTime = System.currentTimeMillis();
-        long retrievalStartTime = startTime;
+        StageTimings timings = new StageTimings();
 
         logger.info("Processing query: " + question + " (topK: " + topK + ", threshold: " + confidenceThreshold + ")");
 
@@ -81,69 +184,46 @@ public class RAGService {
             if (topK == null) topK = defaultTopK;
             if (confidenceThreshold == null) confidenceThreshold = defaultConfidenceThreshold;
 
-            // Stage 1: Embed question
-            logger.fine("Embedding question...");
-            List<Float> questionEmbedding = embeddingService.generateEmbedding(question);
-
-            // Stage 2: Retrieve similar chunks from Qdrant
-            logger.fine("Retrieving top-" + topK + " chunks from vector store...");
-            List<VectorSearchResult> searchResults = vectorStoreClient.search(
-                    questionEmbedding,
-                    topK,
-                    documentFilter
-            );
-
-            long retrievalEndTime = System.currentTimeMillis();
-            long retrievalTimeMs = retrievalEndTime - retrievalStartTime;
-
-            logger.fine("Retrieved " + searchResults.size() + " chunks in " + retrievalTimeMs + "ms");
-
-            // Stage 3: Score confidence
-            Double confidence = 0.0;
-            Boolean isGrounded = false;
-
-            if (!searchResults.isEmpty()) {
-                // Get max similarity as confidence score
-                confidence = searchResults.stream()
-                        .mapToDouble(VectorSearchResult::getScore)
-                        .max()
-                        .orElse(0.0);
-
-                // Check if confidence meets threshold
-                isGrounded = confidence >= confidenceThreshold;
+            // Stages 1-3: embed, answer cache, parallel retrieval legs, confidence
+            RetrievalOutcome outcome = runRetrieval(question, topK, confidenceThreshold, filter, timings);
+            if (outcome.cachedResponse() != null) {
+                logger.info("Query served from answer cache in " + (System.currentTimeMillis() - startTime) + "ms");
+                return fromCache(outcome.cachedResponse(), startTime, timings);
             }
+            Retrieval retrieval = outcome.retrieval();
+            List<VectorSearchResult> searchResults = retrieval.results();
 
-            logger.fine("Confidence score: " + confidence + ", Grounded: " + isGrounded);
-
-            // Stage 4: Build context from retrieved chunks
-            String context = buildContext(searchResults);
-            List<SourceReference> sources = buildSourceReferences(searchResults);
-
-            // Stage 5: Generate answer via LLM
-            long generationStartTime = System.currentTimeMillis();
+            // Stage 4: Build context; resolve source metadata (one DB query) in the
+            // background while the LLM generates
+            String context = timings.time("context", () -> buildContext(searchResults));
+            CompletableFuture<List<SourceReference>> sourcesStage = CompletableFuture.supplyAsync(
+                    () -> timings.time("sources", () -> buildSourceReferences(searchResults)), pipelineExecutor);
 
-            String answer = generateAnswer(question, context, isGrounded);
+            // Stage 5: Generate answer via LLM (on this thread)
+            String answer = timings.time("generation",
+                    () -> generateAnswer(question, context, retrieval.grounded()));
+            List<SourceReference> sources = await(sourcesStage);
 
-            long generationEndTime = System.currentTimeMillis();
-            long generationTimeMs = generationEndTime - generationStartTime;
-
-            long totalTimeMs = generationEndTime - startTime;
-
-            logger.info("Query processed successfully in " + totalTimeMs + "ms " +
-                       "(retrieval: " + retrievalTimeMs + "ms, generation: " + generationTimeMs + "ms)");
+            long totalTimeMs = System.currentTimeMillis() - startTime;
+            logger.info("Query processed successfully in " + totalTimeMs + "ms (stages: " + timings.snapshot() + ")");
 
             // Stage 6: Build response
-            return QueryResponse.builder()
+            QueryResponse response = QueryResponse.builder()
                     .answer(answer)
-                    .confidence(confidence)
-                    .isGrounded(isGrounded)
+                    .confidence(retrieval.confidence())
+                    .isGrounded(retrieval.grounded())
                     .sources(sources)
                     .chunksRetrieved(searchResults.size())
-                    .retrievalTimeMs(retrievalTimeMs)
-                    .generationTimeMs(generationTimeMs)
+                    .retrievalTimeMs(retrieval.retrievalTimeMs())
+                    .generationTimeMs(timings.get("generation"))
                     .totalTimeMs(totalTimeMs)
+                    .stageTimingsMs(timings.snapshot())
+                    .cached(false)
                     .build();
 
+            answerCache.put(outcome.cacheScope(), outcome.embedding(), response, outcome.cacheVersion());
+            return response;
+
         } catch (Exception e) {
             logger.severe("Query processing failed: " + e.getMessage());
             long totalTimeMs = System.currentTimeMillis() - startTime;
@@ -155,11 +235,349 @@ public class RAGService {
                     .sources(List.of())
                     .chunksRetrieved(0)
                     .totalTimeMs(totalTimeMs)
+                    .stageTimingsMs(timings.snapshot())
                     .error("Failed to process query: " + e.getMessage())
                     .build();
         }
     }
 
+    /**
+     * Process a query with a streamed answer.
+     *
+     * Retrieval runs through the same staged pipeline as query() and its result
+     * (sources, confidence) is delivered first; the LLM call is then started
+     * asynchronously and answer tokens are pushed to the listener as they arrive.
+     * Returns as soon as generation has started, so the caller's thread is not held
+     * for the length of the generation.
+     *
+     * @param question User's question
+     * @param topK Number of chunks to retrieve
+     * @param confidenceThreshold Minimum similarity to consider context valid
+     * @param filter Optional: document/owner restrictions (null = search all)
+     * @param listener Receives sources, tokens, and the final response or error
+     */
+    public void streamQuery(String question, Integer topK, Double confidenceThreshold,
+                            SearchFilter filter, QueryStreamListener listener) {
+        long startTime = System.currentTimeMillis();
+        StageTimings timings = new StageTimings();
+
+        logger.info("Processing streaming query: " + question + " (topK: " + topK + ", threshold: " + confidenceThreshold + ")");
+
+        RetrievalOutcome outcome;
+        List<SourceReference> sources;
+        String systemPrompt;
+        String userMessage;
+        try {
+            // Resolve defaults
+            if (topK == null) topK = defaultTopK;
+            if (confidenceThreshold == null) confidenceThreshold = defaultConfidenceThreshold;
+
+            outcome = runRetrieval(question, topK, confidenceThreshold, filter, timings);
+
+            // Cache hit: replay the cached answer as a single token
+            if (outcome.cachedResponse() != null) {
+                QueryResponse response = fromCache(outcome.cachedResponse(), startTime, timings);
+                listener.onSources(response.toBuilder().answer(null).build());
+                listener.onToken(response.getAnswer());
+                listener.onComplete(response);
+                return;
+            }
+
+            // Sources are the first event, so enrichment overlaps only with prompt assembly
+            List<VectorSearchResult> results = outcome.retrieval().results();
+            CompletableFuture<List<SourceReference>> sourcesStage = CompletableFuture.supplyAsync(
+                    () -> timings.time("sources", () -> buildSourceReferences(results)), pipelineExecutor);
+            systemPrompt = outcome.retrieval().grounded() ? buildSystemPromptGrounded() : buildSystemPromptUngrounded();
+            userMessage = buildUserMessage(question, timings.time("context", () -> buildContext(results)));
+            sources = await(sourcesStage);
+
+        } catch (Exception e) {
+            logger.severe("Streaming query retrieval failed: " + e.getMessage());
+            listener.onError(e);
+            return;
+        }
+
+        Retrieval retrieval = outcome.retrieval();
+        listener.onSources(QueryResponse.builder()
+                .confidence(retrieval.confidence())
+                .isGrounded(retrieval.grounded())
+                .sources(sources)
+                .chunksRetrieved(retrieval.results().size())
+                .retrievalTimeMs(retrieval.retrievalTimeMs())
+                .stageTimingsMs(timings.snapshot())
+                .build());
+
+        long generationStartTime = System.currentTimeMillis();
+
+        llmProvider.generateResponseStreaming(systemPrompt, userMessage, new LLMProvider.StreamHandler() {
+            private boolean firstToken = true;
+
+            @Override
+            public void onToken(String token) {
+                if (firstToken) {
+                    firstToken = false;
+                    timings.record("first_token", System.currentTimeMillis() - generationStartTime);
+                }
+                if (!listener.isCancelled()) {
+                    listener.onToken(token);
+                }
+            }
+
+            @Override
+            public void onComplete(String fullText) {
+                long endTime = System.currentTimeMillis();
+                timings.record("generation", endTime - generationStartTime);
+                logger.info("Streaming query completed in " + (endTime - startTime) + "ms (stages: " +
+                           timings.snapshot() + ")");
+
+                QueryResponse response = QueryResponse.builder()
+                        .answer(fullText)
+                        .confidence(retrieval.confidence())
+                        .isGrounded(retrieval.grounded())
+                        .sources(sources)
+                        .chunksRetrieved(retrieval.results().size())
+                        .retrievalTimeMs(retrieval.retrievalTimeMs())
+                        .generationTimeMs(endTime - generationStartTime)
+                        .totalTimeMs(endTime - startTime)
+                        .stageTimingsMs(timings.snapshot())
+                        .cached(false)
+                        .build();
+
+                answerCache.put(outcome.cacheScope(), outcome.embedding(), response, outcome.cacheVersion());
+                listener.onComplete(response);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                listener.onError(error);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return listener.isCancelled();
+            }
+        });
+    }
+
+    /**
+     * Stages 1-3: embed the question, check the answer cache, then fan out all
+     * retrieval legs in parallel, fuse their results and score confidence.
+     */
+    private RetrievalOutcome runRetrieval(String question, int topK, double confidenceThreshold,
+                                          SearchFilter filter, StageTimings timings) {
+        long cacheVersion = answerCache.currentVersion();
+        String cacheScope = cacheScope(topK, confidenceThreshold, filter);
+
+        // Stage 1: Embed question, then look for a near-duplicate answered recently
+        logger.fine("Embedding question...");
+        float[] questionEmbedding = timings.time("embedding", () -> embeddingService.generateEmbedding(question));
+        Optional<QueryResponse> cached = timings.time("cache_lookup",
+                () -> answerCache.lookup(cacheScope, questionEmbedding));
+        if (cached.isPresent()) {
+            return new RetrievalOutcome(questionEmbedding, cacheScope, cacheVersion, cached.get(), null);
+        }
+
+        // Stage 2: Retrieval legs run concurrently
+        long retrievalStartTime = System.currentTimeMillis();
+        logger.fine("Retrieving top-" + topK + " chunks from " + retrievalLegs.size() + " retrieval legs...");
+
+        // The reranker chooses topK out of a larger pool. With several legs, each returns
+        // extra candidates so fusion can promote chunks ranked moderately by both legs
+        // over chunks ranked highly by one
+        int pool = reranker != null ? Math.max(topK, rerankCandidates) : topK;
+        int candidates = retrievalLegs.size() > 1 ? pool * Math.max(1, candidatesMultiplier) : pool;
+        // Deleted documents stay out of results while their vectors are being purged
+        SearchFilter legFilter = deletionService.excludeDeleted(filter);
+        Map<String, CompletableFuture<List<VectorSearchResult>>> legResults = new LinkedHashMap<>();
+        retrievalLegs.forEach((name, leg) -> legResults.put(name, CompletableFuture.supplyAsync(
+                () -> timings.time("retrieval." + name, () -> leg.retrieve(question, questionEmbedding, candidates, legFilter)),
+                pipelineExecutor)));
+        await(CompletableFuture.allOf(legResults.values().toArray(new CompletableFuture[0])));
+
+        List<VectorSearchResult> fused = fuse(legResults.values().stream().map(CompletableFuture::join).toList(), pool);
+        List<VectorSearchResult> hydrated = fused.stream().anyMatch(result -> result.getContent() == null)
+                ? timings.time("hydration", () -> hydrate(fused))
+                : fused;
+        List<VectorSearchResult> searchResults = rerank(question, hydrated, topK, timings);
+
+        long retrievalTimeMs = System.currentTimeMillis() - retrievalStartTime;
+        timings.record("retrieval", retrievalTimeMs);
+        logger.fine("Retrieved " + searchResults.size() + " chunks in " + retrievalTimeMs + "ms");
+
+        // Stage 3: Score confidence (max similarity)
+        double confidence = searchResults.stream()
+                .mapToDouble(VectorSearchResult::getScore)
+                .max()
+                .orElse(0.0);
+        boolean isGrounded = !searchResults.isEmpty() && confidence >= confidenceThreshold;
+
+        logger.fine("Confidence score: " + confidence + ", Grounded: " + isGrounded);
+
+        Retrieval retrieval = new Retrieval(searchResults, confidence, isGrounded, retrievalTimeMs);
+        return new RetrievalOutcome(questionEmbedding, cacheScope, cacheVersion, null, retrieval);
+    }
+
+    /**
+     * Merge the results of all retrieval legs with Reciprocal Rank Fusion:
+     * fused(chunk) = sum over legs of 1 / (k + rank), rank starting at 1. Only ranks are
+     * used, so legs with incomparable scores (cosine vs BM25) combine cleanly.
+     * Results are keyed by vector ID, which chunks with identical content share, so the
+     * same text found in several documents (or by both legs) takes one slot.
+     * Returns one entry per vector (the first leg's copy), best first, at most topK.
+     */
+    private List<VectorSearchResult> fuse(List<List<VectorSearchResult>> legResults, int topK) {
+        if (legResults.size() == 1) {
+            return legResults.get(0);
+        }
+        Map<String, VectorSearchResult> firstSeen = new HashMap<>();
+        Map<String, Double> fusedScores = new HashMap<>();
+        for (List<VectorSearchResult> results : legResults) {
+            for (int rank = 0; rank < results.size(); rank++) {
+                VectorSearchResult result = results.get(rank);
+                firstSeen.putIfAbsent(result.getVectorId(), result);
+                fusedScores.merge(result.getVectorId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        return fusedScores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(topK)
+                .map(entry -> firstSeen.get(entry.getKey()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Rerank the candidate pool and keep the best topK.
+     *
+     * Bounded by rag.rerank.budget.ms: when the reranker does not finish in time it is
+     * cancelled and the first-stage order is kept. At most rag.rerank.max.concurrent
+     * reranks run at once; beyond that queries skip reranking rather than queue for it.
+     * A rerank keeps its permit until it has actually stopped, so one that overruns its
+     * budget (and ignores the interrupt) still counts against the limit.
+     */
+    private List<VectorSearchResult> rerank(String question, List<VectorSearchResult> candidates, int topK,
+                                            StageTimings timings) {
+        if (reranker == null || candidates.size() <= 1) {
+            return limit(candidates, topK);
+        }
+        if (!rerankPermits.tryAcquire()) {
+            logger.fine("Rerank skipped: concurrency limit reached");
+            return limit(candidates, topK);
+        }
+
+        long startTime = System.currentTimeMillis();
+        // The permit is released by whoever claims it: the task when it finishes, or the
+        // caller when it cancels the task before it started (the task then never runs)
+        AtomicBoolean permitClaimed = new AtomicBoolean();
+        Future<List<VectorSearchResult>> task;
+        try {
+            task = rerankExecutor.submit(() -> {
+                if (!permitClaimed.compareAndSet(false, true)) {
+                    return candidates;
+                }
+                try {
+                    return reranker.rerank(question, candidates);
+                } finally {
+                    rerankPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rerankPermits.release();
+            return limit(candidates, topK);
+        }
+        try {
+            return limit(task.get(rerankBudgetMs, TimeUnit.MILLISECONDS), topK);
+        } catch (TimeoutException e) {
+            cancelRerank(task, permitClaimed);
+            logger.warning("Rerank exceeded " + rerankBudgetMs + "ms budget; using retrieval order");
+            return limit(candidates, topK);
+        } catch (InterruptedException e) {
+            cancelRerank(task, permitClaimed);
+            Thread.currentThread().interrupt();
+            return limit(candidates, topK);
+        } catch (ExecutionException e) {
+            logger.warning("Rerank failed (using retrieval order): " + e.getCause().getMessage());
+            return limit(candidates, topK);
+        } finally {
+            timings.record("rerank", System.currentTimeMillis() - startTime);
+        }
+    }
+
+    private void cancelRerank(Future<?> task, AtomicBoolean permitClaimed) {
+        task.cancel(true);
+        if (permitClaimed.compareAndSet(false, true)) {
+            rerankPermits.release();
+        }
+    }
+
+    private static List<VectorSearchResult> limit(List<VectorSearchResult> results, int topK) {
+        return results.size() <= topK ? results : new ArrayList<>(results.subList(0, topK));
+    }
+
+    /**
+     * Fill content and chunk index of results that only a keyword leg returned, with one
+     * DB query. Results whose chunk no longer exists are dropped.
+     */
+    private List<VectorSearchResult> hydrate(List<VectorSearchResult> results) {
+        Set<String> missing = results.stream()
+                .filter(result -> result.getContent() == null)
+                .map(VectorSearchResult::resolvedChunkId)
+                .collect(Collectors.toSet());
+        Map<String, DocumentChunk> chunks = new HashMap<>();
+        for (DocumentChunk chunk : chunkRepository.findAllById(missing)) {
+            chunks.put(chunk.getId(), chunk);
+        }
+
+        List<VectorSearchResult> hydrated = new ArrayList<>(results.size());
+        for (VectorSearchResult result : results) {
+            if (result.getContent() == null) {
+                DocumentChunk chunk = chunks.get(result.resolvedChunkId());
+                if (chunk == null) {
+                    continue;
+                }
+                result.setContent(chunk.getContent());
+                result.setChunkIndex(chunk.getChunkIndex());
+            }
+            hydrated.add(result);
+        }
+        return hydrated;
+    }
+
+    /**
+     * Wait for a pipeline stage, rethrowing its own exception rather than a CompletionException.
+     */
+    private static <T> T await(CompletableFuture<T> stage) {
+        try {
+            return stage.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Answer cache scope for the resolved retrieval settings.
+     */
+    private String cacheScope(int topK, double confidenceThreshold, SearchFilter filter) {
+        return filter == null
+                ? SemanticAnswerCache.scopeKey(topK, confidenceThreshold, null, null)
+                : SemanticAnswerCache.scopeKey(topK, confidenceThreshold, filter.getDocumentIds(), filter.getOwners());
+    }
+
+    /**
+     * Cached response with this request's timings.
+     */
+    private QueryResponse fromCache(QueryResponse cached, long startTime, StageTimings timings) {
+        return cached.toBuilder()
+                .retrievalTimeMs(0L)
+                .generationTimeMs(0L)
+                .totalTimeMs(System.currentTimeMillis() - startTime)
+                .stageTimingsMs(timings.snapshot())
+                .cached(true)
+                .build();
+    }
+
     /**
      * Build context string from retrieved chunks.
      * It is done by concatenating chunk contents, prefixed with metadata (document ID, chunk index, similarity).
@@ -176,28 +594,30 @@ public class RAGService {
         int totalTokens = 0;
 
         for (VectorSearchResult result : searchResults) {
-            if (totalTokens >= maxContextTokens) {
+            String header = "[Document: " + result.getDocumentId() +
+                    " | Chunk " + result.getChunkIndex() +
+                    " | Similarity: " + String.format("%.2f", result.getScore()) + "]\n";
+            int headerTokens = tokenCounter.count(header);
+            if (totalTokens + headerTokens >= maxContextTokens) {
                 logger.fine("Context token limit reached");
                 break;
             }
 
             String chunkText = result.getContent();
-            int chunkTokens = estimateTokens(chunkText);
+            int chunkTokens = tokenCounter.count(chunkText);
 
-            if (totalTokens + chunkTokens > maxContextTokens) {
-                // Truncate this chunk to fit
-                int remainingTokens = maxContextTokens - totalTokens;
+            if (totalTokens + headerTokens + chunkTokens > maxContextTokens) {
+                // Truncate this chunk to fit the remaining budget exactly
+                int remainingTokens = maxContextTokens - totalTokens - headerTokens;
                 chunkText = truncateByTokens(chunkText, remainingTokens);
+                chunkTokens = tokenCounter.count(chunkText);
             }
 
-            contextBuilder.append("[Document: ").append(result.getDocumentId())
-                    .append(" | Chunk ").append(result.getChunkIndex())
-                    .append(" | Similarity: ").append(String.format("%.2f", result.getScore()))
-                    .append("]\n")
+            contextBuilder.append(header)
                     .append(chunkText)
                     .append("\n\n");
 
-            totalTokens += chunkTokens;
+            totalTokens += headerTokens + chunkTokens;
         }
 
         return contextBuilder.toString();
@@ -205,14 +625,26 @@ public class RAGService {
 
     /**
      * Build source references from search results.
-     * Includes document metadata and excerpts.
+     * Includes document metadata and excerpts. Token counts and document titles for all
+     * results come from a single projection query (best effort: omitted if it fails).
      */
     private List<SourceReference> buildSourceReferences(List<VectorSearchResult> searchResults) {
+        Map<String, ChunkSourceInfo> sourceInfo = new HashMap<>();
+        if (!searchResults.isEmpty()) {
+            try {
+                Set<String> chunkIds = searchResults.stream()
+                        .map(VectorSearchResult::resolvedChunkId)
+                        .collect(Collectors.toSet());
+                for (ChunkSourceInfo info : chunkRepository.findSourceInfoByIds(chunkIds)) {
+                    sourceInfo.put(info.getChunkId(), info);
+                }
+            } catch (Exception e) {
+                logger.warning("Failed to load source metadata (continuing without it): " + e.getMessage());
+            }
+        }
+
         return searchResults.stream()
                 .map(result -> {
-                    // Fetch full chunk for metadata
-                    Optional<DocumentChunk> chunk = chunkRepository.findById(result.getVectorId());
-
                     SourceReference.SourceReferenceBuilder builder = SourceReference.builder()
                             .documentId(result.getDocumentId())
                             .chunkIndex(result.getChunkIndex())
@@ -220,13 +652,10 @@ public class RAGService {
                             .excerpt(truncateExcerpt(result.getContent(), 200));
 
                     // Add additional metadata if chunk found in DB
-                    if (chunk.isPresent()) {
-                        DocumentChunk dc = chunk.get();
-                        builder.tokenCount(dc.getTokenCount());
-                        // Optionally fetch document title from relationship
-                        if (dc.getDocument() != null) {
-                            builder.documentTitle(dc.getDocument().getTitle());
-                        }
+                    ChunkSourceInfo info = sourceInfo.get(result.resolvedChunkId());
+                    if (info != null) {
+                        builder.tokenCount(info.getTokenCount())
+                                .documentTitle(info.getDocumentTitle());
                     }
 
                     return builder.build();
@@ -304,32 +733,21 @@ public class RAGService {
     }
 
     /**
-     * Estimate token count for text (1 token ≈ 4 characters).
-     */
-    private int estimateTokens(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
-        }
-        return (int) Math.ceil(text.length() / 4.0);
-    }
-
-    /**
-     * Truncate text to approximately N tokens.
+     * Truncate text to at most N tokens, preferring to end at a sentence boundary.
      */
     private String truncateByTokens(String text, int maxTokens) {
-        int maxChars = maxTokens * 4;
-        if (text.length() <= maxChars) {
+        String truncated = tokenCounter.truncate(text, maxTokens);
+        if (truncated.length() == text.length()) {
             return text;
         }
 
-        String truncated = text.substring(0, maxChars);
         // Try to break at sentence boundary
         int lastPeriod = truncated.lastIndexOf('.');
         if (lastPeriod > 0) {
             return truncated.substring(0, lastPeriod + 1);
         }
 
-        return truncated + "...";
+        return truncated;
     }
 
     /**
@@ -348,4 +766,27 @@ public class RAGService {
 
         return truncated + "...";
     }
+
+    /**
+     * One independent retrieval source. All legs run in parallel and their results are fused.
+     */
+    @FunctionalInterface
+    private interface RetrievalLeg {
+        List<VectorSearchResult> retrieve(String question, float[] questionEmbedding, int topK, SearchFilter filter);
+    }
+
+    /**
+     * Outcome of stages 1-3: either a cached response or a fresh retrieval, plus what
+     * is needed to cache the final answer.
+     */
+    private record RetrievalOutcome(float[] embedding, String cacheScope, long cacheVersion,
+                                    QueryResponse cachedResponse, Retrieval retrieval) {
+    }
+
+    /**
+     * Result of the retrieval stages (1-3) of the pipeline.
+     */
+    private record Retrieval(List<VectorSearchResult> results, double confidence,
+                             boolean grounded, long retrievalTimeMs) {
+    }
 }
@@ -0,0 +1,40 @@
+package com.genai.knowitall.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Per-request stage timings for the RAG pipeline (stage name → elapsed milliseconds).
+ *
+ * Stages may run on different threads concurrently, so recording is synchronized.
+ * Entries keep the order in which stages finished.
+ */
+class StageTimings {
+
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+
+    /**
+     * Run a stage and record its duration (also when it throws).
+     */
+    <T> T time(String stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    synchronized void record(String stage, long elapsedMs) {
+        timings.put(stage, elapsedMs);
+    }
+
+    synchronized long get(String stage) {
+        return timings.getOrDefault(stage, 0L);
+    }
+
+    synchronized Map<String, Long> snapshot() {
+        return new LinkedHashMap<>(timings);
+    }
+}
@@ -1,14 +1,34 @@
 package com.genai.knowitall.service;
 
 import com.genai.knowitall.service.exception.TextExtractionException;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 /**
@@ -18,37 +38,153 @@ import java.util.logging.Logger;
  * - PDF (using Apache PDFBox)
  * - DOCX (using Apache POI)
  *
- * Text is extracted page-by-page with metadata preservation.
+ * Text is streamed to a TextSink as it is extracted (one segment per PDF page, DOCX
+ * paragraph or block of plain text), so the full text of a document is never held
+ * in memory. PDF parsing buffers at most doc.extraction.pdf.max-main-memory-bytes on
+ * the heap and spills the rest to temp files.
+ *
+ * Extraction is CPU-bound, so extractAsync runs it on a dedicated pool
+ * (doc.extraction.threads, default: one per core) sized independently of the
+ * I/O-bound ingestion and embedding executors.
+ *
+ * Large PDFs read from a file can be extracted in parallel: each batch of pages is
+ * split into one contiguous slice per worker (doc.extraction.pdf.parallelism), and
+ * each worker opens its own PDDocument (not thread-safe) and stripper once and reuses
+ * them for its slice of every batch. Page texts are
+ * stitched back together in order, one batch ahead of the sink, and page starts are
+ * reported to the sink so chunks can carry page numbers.
  */
 @Service
 public class TextExtractionService {
 
     private static final Logger logger = Logger.getLogger(TextExtractionService.class.getName());
 
+    private static final int TEXT_BLOCK_CHARS = 64 * 1024;
+
+    private final long pdfMaxMainMemoryBytes;
+    private final ExecutorService extractionExecutor;
+    private final ForkJoinPool pdfPagePool;
+    private final boolean pdfParallelEnabled;
+    private final int pdfParallelMinPages;
+    private final int pdfPagesPerTask;
+
+    public TextExtractionService(
+            @Value("${doc.extraction.pdf.max-main-memory-bytes:67108864}") long pdfMaxMainMemoryBytes,
+            @Value("${doc.extraction.threads:0}") int extractionThreads,
+            @Value("${doc.extraction.pdf.parallel.enabled:true}") boolean pdfParallelEnabled,
+            @Value("${doc.extraction.pdf.parallelism:0}") int pdfParallelism,
+            @Value("${doc.extraction.pdf.parallel.min-pages:32}") int pdfParallelMinPages,
+            @Value("${doc.extraction.pdf.pages-per-task:8}") int pdfPagesPerTask) {
+        this.pdfMaxMainMemoryBytes = pdfMaxMainMemoryBytes;
+        int threads = extractionThreads > 0 ? extractionThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.extractionExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "doc-extraction-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int parallelism = pdfParallelism > 0 ? pdfParallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerCounter = new AtomicInteger();
+        this.pdfPagePool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("pdf-pages-" + workerCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.pdfParallelEnabled = pdfParallelEnabled;
+        this.pdfParallelMinPages = pdfParallelMinPages;
+        this.pdfPagesPerTask = Math.max(1, pdfPagesPerTask);
+
+        logger.info("TextExtractionService initialized (extraction threads: " + threads +
+                   ", parallel PDF: " + (pdfParallelEnabled ? parallelism + " workers" : "off") + ")");
+    }
+
     /**
-     * Extract text from a PDF document.
-     *
-     * @param inputStream PDF file input stream
-     * @param filename Original filename for error messages
-     * @return Extracted text content
-     * @throws TextExtractionException if extraction fails
+     * Release the extraction threads on shutdown.
      */
-    public String extractFromPdf(InputStream inputStream, String filename) {
-        logger.info("Extracting text from PDF: " + filename);
+    @PreDestroy
+    public void shutdown() {
+        extractionExecutor.shutdown();
+        pdfPagePool.shutdown();
+    }
 
-        try (PDDocument document = PDDocument.load(inputStream)) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            stripper.setSortByPosition(true);
+    /**
+     * Receives extracted text in document order.
+     */
+    @FunctionalInterface
+    public interface TextSink {
+        void accept(String text);
 
-            String text = stripper.getText(document);
+        /**
+         * Called before the text of each page (paged formats only), page numbers from 1.
+         */
+        default void startPage(int page) {
+        }
+    }
+
+    /**
+     * Extract text from a spooled file on the extraction pool.
+     *
+     * @param file Spooled upload (must stay in place until the returned future completes)
+     * @param contentType MIME content type
+     * @param filename Original filename
+     * @param sink Receives the extracted text in document order (called on an extraction thread)
+     * @return Future of the number of characters extracted; completes exceptionally on failure
+     */
+    public CompletableFuture<Long> extractAsync(Path file, String contentType, String filename, TextSink sink) {
+        return CompletableFuture.supplyAsync(() -> extractText(file, contentType, filename, sink), extractionExecutor);
+    }
 
-            if (text == null || text.trim().isEmpty()) {
-                throw new TextExtractionException("PDF contains no extractable text: " + filename);
+    /**
+     * Extract text from a file. PDFs are parsed straight from the file (random access,
+     * not read into memory first), in parallel when large enough; other formats are streamed.
+     *
+     * @param file Document file
+     * @param contentType MIME content type
+     * @param filename Original filename
+     * @param sink Receives the extracted text in document order
+     * @return Number of characters extracted
+     * @throws TextExtractionException if extraction fails or format is unsupported
+     */
+    public long extractText(Path file, String contentType, String filename, TextSink sink) {
+        if ("application/pdf".equals(contentType)) {
+            logger.info("Extracting text from document: " + filename + " (type: " + contentType + ")");
+            try {
+                int pageCount;
+                try (PDDocument document = PDDocument.load(file.toFile(), MemoryUsageSetting.setupMixed(pdfMaxMainMemoryBytes))) {
+                    pageCount = document.getNumberOfPages();
+                    if (!pdfParallelEnabled || pageCount < pdfParallelMinPages) {
+                        return extractFromPdf(document, filename, sink);
+                    }
+                }
+                return extractFromPdfParallel(file, pageCount, filename, sink);
+            } catch (IOException e) {
+                logger.severe("Failed to extract text from PDF: " + filename + " - " + e.getMessage());
+                throw new TextExtractionException("Failed to extract text from PDF: " + filename, e);
             }
+        }
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file))) {
+            return extractText(inputStream, contentType, filename, sink);
+        } catch (IOException e) {
+            throw new TextExtractionException("Failed to read spooled file for: " + filename, e);
+        }
+    }
 
-            logger.info("Successfully extracted " + text.length() + " characters from PDF: " + filename);
-            return text;
+    /**
+     * Extract text from a PDF document, one page at a time.
+     *
+     * @param inputStream PDF file input stream
+     * @param filename Original filename for error messages
+     * @param sink Receives the text of each page
+     * @return Number of characters extracted
+     * @throws TextExtractionException if extraction fails
+     */
+    public long extractFromPdf(InputStream inputStream, String filename, TextSink sink) {
+        logger.info("Extracting text from PDF: " + filename);
 
+        try (PDDocument document = PDDocument.load(inputStream, MemoryUsageSetting.setupMixed(pdfMaxMainMemoryBytes))) {
+            return extractFromPdf(document, filename, sink);
         } catch (IOException e) {
             logger.severe("Failed to extract text from PDF: " + filename + " - " + e.getMessage());
             throw new TextExtractionException("Failed to extract text from PDF: " + filename, e);
@@ -56,35 +192,35 @@ public class TextExtractionService {
     }
 
     /**
-     * Extract text from a DOCX document.
+     * Extract text from a DOCX document, one paragraph at a time.
+     * (POI parses the whole document model up front; only the text is streamed.)
      *
      * @param inputStream DOCX file input stream
      * @param filename Original filename for error messages
-     * @return Extracted text content
+     * @param sink Receives the text of each non-empty paragraph
+     * @return Number of characters extracted
      * @throws TextExtractionException if extraction fails
      */
-    public String extractFromDocx(InputStream inputStream, String filename) {
+    public long extractFromDocx(InputStream inputStream, String filename, TextSink sink) {
         logger.info("Extracting text from DOCX: " + filename);
 
         try (XWPFDocument document = new XWPFDocument(inputStream)) {
-            StringBuilder textBuilder = new StringBuilder();
+            ExtractionCounter counter = new ExtractionCounter(sink);
 
             // Extract text from all paragraphs
             for (XWPFParagraph paragraph : document.getParagraphs()) {
                 String paragraphText = paragraph.getText();
                 if (paragraphText != null && !paragraphText.trim().isEmpty()) {
-                    textBuilder.append(paragraphText).append("\n");
+                    counter.accept(paragraphText + "\n");
                 }
             }
 
-            String text = textBuilder.toString();
-
-            if (text.trim().isEmpty()) {
+            if (!counter.hasText()) {
                 throw new TextExtractionException("DOCX contains no extractable text: " + filename);
             }
 
-            logger.info("Successfully extracted " + text.length() + " characters from DOCX: " + filename);
-            return text;
+            logger.info("Successfully extracted " + counter.chars + " characters from DOCX: " + filename);
+            return counter.chars;
 
         } catch (IOException e) {
             logger.severe("Failed to extract text from DOCX: " + filename + " - " + e.getMessage());
@@ -98,10 +234,11 @@ public class TextExtractionService {
      * @param inputStream Document input stream
      * @param contentType MIME content type
      * @param filename Original filename
-     * @return Extracted text content
+     * @param sink Receives the extracted text in document order
+     * @return Number of characters extracted
      * @throws TextExtractionException if extraction fails or format is unsupported
      */
-    public String extractText(InputStream inputStream, String contentType, String filename) {
+    public long extractText(InputStream inputStream, String contentType, String filename, TextSink sink) {
         logger.info("Extracting text from document: " + filename + " (type: " + contentType + ")");
 
         if (contentType == null) {
@@ -109,34 +246,251 @@ public class TextExtractionService {
         }
 
         if (contentType.equals("application/pdf")) {
-            return extractFromPdf(inputStream, filename);
+            return extractFromPdf(inputStream, filename, sink);
         } else if (contentType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
-            return extractFromDocx(inputStream, filename);
+            return extractFromDocx(inputStream, filename, sink);
         } else if (contentType.equals("text/plain")) {
-            return extractFromText(inputStream, filename);
+            return extractFromText(inputStream, filename, sink);
         } else {
             throw new TextExtractionException("Unsupported content type: " + contentType + " for file: " + filename);
         }
     }
 
     /**
-     * Extract text from a plain text file (for testing).
+     * Extract text from a plain text file (for testing), in blocks of 64K characters.
      */
-    private String extractFromText(InputStream inputStream, String filename) {
+    private long extractFromText(InputStream inputStream, String filename, TextSink sink) {
         logger.info("Extracting text from plain text file: " + filename);
         try {
-            byte[] bytes = inputStream.readAllBytes();
-            String text = new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+            Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+            ExtractionCounter counter = new ExtractionCounter(sink);
+            char[] buffer = new char[TEXT_BLOCK_CHARS];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                counter.accept(new String(buffer, 0, read));
+            }
 
-            if (text.trim().isEmpty()) {
+            if (!counter.hasText()) {
                 throw new TextExtractionException("Text file is empty: " + filename);
             }
 
-            logger.info("Successfully extracted " + text.length() + " characters from text file: " + filename);
-            return text;
+            logger.info("Successfully extracted " + counter.chars + " characters from text file: " + filename);
+            return counter.chars;
         } catch (IOException e) {
             logger.severe("Failed to read text file: " + filename + " - " + e.getMessage());
             throw new TextExtractionException("Failed to read text file: " + filename, e);
         }
     }
+
+    // ==================== Helper Methods ====================
+
+    private long extractFromPdf(PDDocument document, String filename, TextSink sink) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setSortByPosition(true);
+
+        ExtractionCounter counter = new ExtractionCounter(sink);
+        int pageCount = document.getNumberOfPages();
+        for (int page = 1; page <= pageCount; page++) {
+            stripper.setStartPage(page);
+            stripper.setEndPage(page);
+            counter.startPage(page);
+            counter.accept(stripper.getText(document));
+        }
+
+        if (!counter.hasText()) {
+            throw new TextExtractionException("PDF contains no extractable text: " + filename);
+        }
+
+        logger.info("Successfully extracted " + counter.chars + " characters from " + pageCount +
+                   " pages of PDF: " + filename);
+        return counter.chars;
+    }
+
+    /**
+     * Extract pages in batches of (workers x pages-per-task), each worker extracting a
+     * contiguous slice of pages-per-task pages of every batch with its own document.
+     * The next batch is extracted while the current one is handed to the sink, so at
+     * most two batches of page text are held at once.
+     */
+    private long extractFromPdfParallel(Path file, int pageCount, String filename, TextSink sink) {
+        long startTime = System.currentTimeMillis();
+        int parallelism = pdfPagePool.getParallelism();
+        int batchPages = parallelism * pdfPagesPerTask;
+        // Each worker holds its own document, so split the heap budget between them
+        long workerMemoryBytes = Math.max(1024 * 1024, pdfMaxMainMemoryBytes / parallelism);
+        List<PdfPageWorker> workers = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(new PdfPageWorker(file, workerMemoryBytes));
+        }
+
+        ExtractionCounter counter = new ExtractionCounter(sink);
+        List<CompletableFuture<List<String>>> current = submitBatch(workers, null, 1, pageCount);
+        List<CompletableFuture<List<String>>> next = null;
+        try {
+            int page = 1;
+            for (int first = 1; first <= pageCount; first += batchPages) {
+                int nextFirst = first + batchPages;
+                next = nextFirst <= pageCount ? submitBatch(workers, current, nextFirst, pageCount) : null;
+
+                for (CompletableFuture<List<String>> slice : current) {
+                    for (String text : joinSlice(slice)) {
+                        counter.startPage(page++);
+                        counter.accept(text);
+                    }
+                }
+                current = next;
+                next = null;
+            }
+        } finally {
+            cancelSlices(current);
+            cancelSlices(next);
+            // Waits for a slice still being extracted to let go of its document
+            for (PdfPageWorker worker : workers) {
+                worker.close();
+            }
+        }
+
+        if (!counter.hasText()) {
+            throw new TextExtractionException("PDF contains no extractable text: " + filename);
+        }
+
+        logger.info("Successfully extracted " + counter.chars + " characters from " + pageCount +
+                   " pages of PDF: " + filename + " (parallel, " + (System.currentTimeMillis() - startTime) + "ms)");
+        return counter.chars;
+    }
+
+    /**
+     * Submit the slices of the batch starting at page first, one per worker. A worker's
+     * slice runs after its slice of the previous batch, so its document is never used
+     * by two threads at once.
+     */
+    private List<CompletableFuture<List<String>>> submitBatch(List<PdfPageWorker> workers,
+                                                              List<CompletableFuture<List<String>>> previous,
+                                                              int first, int pageCount) {
+        List<CompletableFuture<List<String>>> slices = new ArrayList<>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            int sliceFirst = first + i * pdfPagesPerTask;
+            if (sliceFirst > pageCount) {
+                break;
+            }
+            int sliceLast = Math.min(pageCount, sliceFirst + pdfPagesPerTask - 1);
+            PdfPageWorker worker = workers.get(i);
+            slices.add(previous != null
+                    ? previous.get(i).thenApplyAsync(pages -> worker.extract(sliceFirst, sliceLast), pdfPagePool)
+                    : CompletableFuture.supplyAsync(() -> worker.extract(sliceFirst, sliceLast), pdfPagePool));
+        }
+        return slices;
+    }
+
+    private static List<String> joinSlice(CompletableFuture<List<String>> slice) {
+        try {
+            return slice.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private static void cancelSlices(List<CompletableFuture<List<String>>> slices) {
+        if (slices != null) {
+            slices.forEach(slice -> slice.cancel(true));
+        }
+    }
+
+    /**
+     * One worker of a parallel PDF extraction: opens the file on its first slice and
+     * keeps the document and stripper for the rest. Once closed, slices not yet started
+     * fail with a CancellationException.
+     */
+    private static final class PdfPageWorker {
+        private final Path file;
+        private final long memoryBytes;
+        private final ReentrantLock lock = new ReentrantLock();
+        private PDDocument document;
+        private PDFTextStripper stripper;
+        private boolean closed;
+
+        PdfPageWorker(Path file, long memoryBytes) {
+            this.file = file;
+            this.memoryBytes = memoryBytes;
+        }
+
+        /**
+         * Text of pages [first, last], one entry per page.
+         */
+        List<String> extract(int first, int last) {
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new CancellationException("PDF extraction was abandoned");
+                }
+                if (document == null) {
+                    document = PDDocument.load(file.toFile(), MemoryUsageSetting.setupMixed(memoryBytes));
+                    stripper = new PDFTextStripper();
+                    stripper.setSortByPosition(true);
+                }
+                List<String> pages = new ArrayList<>(last - first + 1);
+                for (int page = first; page <= last; page++) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    pages.add(stripper.getText(document));
+                }
+                return pages;
+            } catch (IOException e) {
+                throw new TextExtractionException("Failed to extract pages " + first + "-" + last +
+                        " of PDF: " + file.getFileName(), e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                if (document != null) {
+                    document.close();
+                    document = null;
+                }
+            } catch (IOException e) {
+                logger.fine("Failed to close PDF " + file.getFileName() + ": " + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Forwards segments to the sink, counting characters and whether any are non-blank.
+     */
+    private static final class ExtractionCounter implements TextSink {
+        private final TextSink sink;
+        private long chars;
+        private boolean nonBlank;
+
+        ExtractionCounter(TextSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void startPage(int page) {
+            sink.startPage(page);
+        }
+
+        @Override
+        public void accept(String text) {
+            if (text == null || text.isEmpty()) {
+                return;
+            }
+            chars += text.length();
+            nonBlank = nonBlank || !text.isBlank();
+            sink.accept(text);
+        }
+
+        boolean hasText() {
+            return nonBlank;
+        }
+    }
 }
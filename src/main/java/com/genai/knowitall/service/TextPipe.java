@@ -0,0 +1,153 @@
+package com.genai.knowitall.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-off of extracted text from an extractor thread to the ingestion pipeline.
+ *
+ * The producer writes text segments (pages, paragraphs) and then calls finish(), or
+ * fail() if extraction breaks; the consumer reads the concatenated text as a Reader.
+ * At most `capacity` segments are buffered, so heap use per document is bounded and a
+ * fast extractor waits for a slow consumer. Neither side blocks forever: writes and
+ * reads give up after the timeout, and closing the reader makes later writes fail.
+ *
+ * Page starts reported by the extractor are recorded as character offsets (pages()).
+ */
+public class TextPipe extends Reader implements TextExtractionService.TextSink {
+
+    // End-of-text marker; compared by identity, so a segment with the same text is not mistaken for it
+    private static final String END = new String("<end>");
+
+    private final BlockingQueue<String> segments;
+    private final long timeoutMs;
+
+    private volatile Throwable failure;
+    private volatile boolean readerClosed;
+
+    private final PageOffsets pages = new PageOffsets();
+    private long written;
+
+    private String current = "";
+    private int position;
+    private boolean ended;
+
+    public TextPipe(int capacity, long timeoutMs) {
+        this.segments = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.timeoutMs = timeoutMs;
+    }
+
+    // ==================== Producer side ====================
+
+    /**
+     * Append a segment, waiting while the buffer is full.
+     * @throws IllegalStateException if the consumer has gone away or does not catch up in time
+     */
+    public void write(String segment) {
+        if (segment == null || segment.isEmpty()) {
+            return;
+        }
+        offer(segment);
+        written += segment.length();
+    }
+
+    @Override
+    public void accept(String text) {
+        write(text);
+    }
+
+    /**
+     * Record that the text written next belongs to the given page.
+     */
+    @Override
+    public void startPage(int page) {
+        pages.mark(written, page);
+    }
+
+    /**
+     * Signal end of text.
+     */
+    public void finish() {
+        offer(END);
+    }
+
+    /**
+     * Signal that extraction failed; the consumer's next read throws with this cause.
+     */
+    public void fail(Throwable cause) {
+        failure = cause;
+        // Buffered text is useless now; make room so the marker is seen immediately
+        segments.clear();
+        segments.offer(END);
+    }
+
+    // ==================== Consumer side ====================
+
+    /**
+     * Page starts reported so far, by character offset in the text read from this pipe.
+     */
+    public PageOffsets pages() {
+        return pages;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position >= current.length()) {
+            if (ended) {
+                return -1;
+            }
+            String next;
+            try {
+                next = segments.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for extracted text");
+            }
+            if (next == null) {
+                throw new IOException("Timed out waiting for extracted text");
+            }
+            if (next == END) {
+                ended = true;
+                if (failure != null) {
+                    throw new IOException("Text extraction failed: " + failure.getMessage(), failure);
+                }
+                return -1;
+            }
+            current = next;
+            position = 0;
+        }
+        int count = Math.min(length, current.length() - position);
+        current.getChars(position, position + count, buffer, offset);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Stop consuming; pending and later writes are discarded and fail the producer.
+     */
+    @Override
+    public void close() {
+        readerClosed = true;
+        segments.clear();
+    }
+
+    // ==================== Helper Methods ====================
+
+    private void offer(String segment) {
+        try {
+            if (readerClosed || !segments.offer(segment, timeoutMs, TimeUnit.MILLISECONDS) || readerClosed) {
+                throw new IllegalStateException("Ingestion pipeline is not consuming extracted text");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while handing off extracted text", e);
+        }
+    }
+}
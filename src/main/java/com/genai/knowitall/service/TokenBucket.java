@@ -0,0 +1,106 @@
+package com.genai.knowitall.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking token-bucket rate limiter.
+ *
+ * Holds up to one minute's worth of permits and refills continuously at `ratePerMinute`.
+ * acquire() waits until enough permits have accumulated. A request larger than the
+ * bucket waits for a full bucket and then drives the balance negative: it is admitted,
+ * and whoever comes next is delayed by the overdraft. Waiters are served in arrival
+ * order (fair lock, held while waiting), so a large request is not starved by small ones.
+ * tryAcquire() gives up instead once the permits cannot be had within its timeout.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double permitsPerNano;
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private double available;
+    private long lastRefillNanos;
+
+    public TokenBucket(long ratePerMinute) {
+        this.capacity = Math.max(1, ratePerMinute);
+        this.permitsPerNano = capacity / TimeUnit.MINUTES.toNanos(1);
+        this.available = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Take permits, waiting as long as needed.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(long permits) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            take(permits, Long.MAX_VALUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take permits if they can be had within the timeout (queueing behind earlier
+     * waiters included). Returns at once, without taking anything, when the refill
+     * would not reach them in time.
+     * @return false if the permits were not taken
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean tryAcquire(long permits, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!lock.tryLock(timeout, unit)) {
+            return false;
+        }
+        try {
+            return take(permits, deadline);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back permits taken but not used (never beyond a full bucket). Best effort:
+     * skipped rather than waited for while another caller holds the bucket.
+     */
+    public void release(long permits) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            refill();
+            available = Math.min(capacity, available + permits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ==================== Helper Methods ====================
+
+    /**
+     * Wait for the permits and take them, unless that would take past the deadline
+     * (System.nanoTime(); Long.MAX_VALUE = no deadline). Called with the lock held.
+     */
+    private boolean take(long permits, long deadline) throws InterruptedException {
+        double needed = Math.min(permits, capacity);
+        refill();
+        while (available < needed) {
+            long wait = (long) Math.ceil((needed - available) / permitsPerNano);
+            if (deadline != Long.MAX_VALUE && System.nanoTime() + wait - deadline > 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(wait);
+            refill();
+        }
+        available -= permits;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,181 @@
+package com.genai.knowitall.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.GptBytePairEncodingParams;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Exact BPE token counting for OpenAI models, shared by chunking and context building.
+ *
+ * Uses jtokkit (the tiktoken algorithm in Java; vocabulary loaded once per process):
+ * - cl100k_base (default): bundled with jtokkit.
+ * - o200k_base: jtokkit 0.6 (the version LangChain4j 0.27 is built against) does not
+ *   bundle it, so the vocabulary is read from tokenizer.vocab.file (the standard
+ *   o200k_base.tiktoken file) and registered as a custom encoding.
+ *
+ * Special tokens in text are counted as ordinary text (user content never contains
+ * real control tokens).
+ */
+@Service
+public class TokenCounter {
+
+    private static final Logger logger = Logger.getLogger(TokenCounter.class.getName());
+
+    private static final String O200K_BASE = "o200k_base";
+
+    // Pre-tokenization pattern of o200k_base (from tiktoken)
+    private static final Pattern O200K_PATTERN = Pattern.compile(String.join("|",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "\\p{N}{1,3}",
+            " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*",
+            "\\s*[\\r\\n]+",
+            "\\s+(?!\\S)",
+            "\\s+"), Pattern.UNICODE_CHARACTER_CLASS);
+
+    private final Encoding encoding;
+
+    public TokenCounter(
+            @Value("${tokenizer.encoding:cl100k_base}") String encodingName,
+            @Value("${tokenizer.vocab.file:}") String vocabFile) {
+        this.encoding = loadEncoding(encodingName, vocabFile);
+        logger.info("TokenCounter initialized (encoding: " + encoding.getName() + ")");
+    }
+
+    /**
+     * Number of tokens in text.
+     */
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encoding.countTokensOrdinary(text);
+    }
+
+    /**
+     * Longest prefix of text that fits in maxTokens tokens.
+     * A character split across the cut is dropped rather than emitted half-decoded.
+     */
+    public String truncate(String text, int maxTokens) {
+        if (text == null || text.isEmpty() || maxTokens <= 0) {
+            return "";
+        }
+        List<Integer> tokens = encoding.encodeOrdinary(text);
+        if (tokens.size() <= maxTokens) {
+            return text;
+        }
+        String prefix = encoding.decode(tokens.subList(0, maxTokens));
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == '\uFFFD') {
+            end--;
+        }
+        return prefix.substring(0, end);
+    }
+
+    /**
+     * Split text into consecutive pieces of at most maxTokens tokens each.
+     * Used for text with no usable sentence or word boundary.
+     */
+    public List<String> split(String text, int maxTokens) {
+        List<String> pieces = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return pieces;
+        }
+        List<Integer> tokens = encoding.encodeOrdinary(text);
+        int window = Math.max(1, maxTokens);
+
+        // Encode once, decode window by window. A character whose bytes straddle two
+        // windows is carried into the next piece so pieces concatenate back to text.
+        byte[] carry = new byte[0];
+        for (int start = 0; start < tokens.size(); start += window) {
+            byte[] decoded = encoding.decodeBytes(tokens.subList(start, Math.min(start + window, tokens.size())));
+            byte[] bytes = new byte[carry.length + decoded.length];
+            System.arraycopy(carry, 0, bytes, 0, carry.length);
+            System.arraycopy(decoded, 0, bytes, carry.length, decoded.length);
+
+            int complete = start + window >= tokens.size() ? bytes.length : completeUtf8Length(bytes);
+            if (complete > 0) {
+                pieces.add(new String(bytes, 0, complete, StandardCharsets.UTF_8));
+            }
+            carry = Arrays.copyOfRange(bytes, complete, bytes.length);
+        }
+        return pieces;
+    }
+
+    public String getEncodingName() {
+        return encoding.getName();
+    }
+
+    // ==================== Helper Methods ====================
+
+    /**
+     * Length of the longest prefix of bytes that ends on a UTF-8 character boundary.
+     */
+    private static int completeUtf8Length(byte[] bytes) {
+        int i = bytes.length - 1;
+        // Step back over continuation bytes (10xxxxxx) to the last lead byte
+        while (i >= 0 && (bytes[i] & 0xC0) == 0x80) {
+            i--;
+        }
+        if (i < 0) {
+            return 0;
+        }
+        int lead = bytes[i] & 0xFF;
+        int charLength = lead < 0x80 ? 1 : lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2;
+        return i + charLength <= bytes.length ? bytes.length : i;
+    }
+
+    private static Encoding loadEncoding(String encodingName, String vocabFile) {
+        EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
+        if (O200K_BASE.equals(encodingName)) {
+            if (vocabFile == null || vocabFile.isBlank()) {
+                throw new IllegalStateException("tokenizer.encoding=o200k_base requires tokenizer.vocab.file");
+            }
+            registry.registerGptBytePairEncoding(
+                    new GptBytePairEncodingParams(O200K_BASE, O200K_PATTERN, readVocabulary(vocabFile), Map.of()));
+            return registry.getEncoding(O200K_BASE).orElseThrow();
+        }
+        EncodingType type = EncodingType.fromName(encodingName)
+                .orElseThrow(() -> new IllegalStateException("Unknown tokenizer encoding: " + encodingName));
+        return registry.getEncoding(type);
+    }
+
+    /**
+     * Read a .tiktoken vocabulary: one "base64(token bytes) rank" pair per line.
+     */
+    private static Map<byte[], Integer> readVocabulary(String vocabFile) {
+        Map<byte[], Integer> encoder = new HashMap<>(262_144);
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(vocabFile), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                encoder.put(Base64.getDecoder().decode(line.substring(0, space)),
+                        Integer.parseInt(line.substring(space + 1).trim()));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read tokenizer vocabulary: " + vocabFile, e);
+        }
+        return encoder;
+    }
+}
@@ -0,0 +1,19 @@
+package com.genai.knowitall.service.exception;
+
+/**
+ * Exception thrown when an upload is refused because the ingestion queue is saturated.
+ * Carries how long the client should wait before retrying.
+ */
+public class IngestionQueueFullException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public IngestionQueueFullException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
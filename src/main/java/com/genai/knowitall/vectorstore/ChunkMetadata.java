@@ -0,0 +1,39 @@
+package com.genai.knowitall.vectorstore;
+
+import lombok.*;
+
+/**
+ * Chunk metadata stored alongside a vector (as Qdrant point payload).
+ * Read from the payload of search hits to enrich search results.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChunkMetadata {
+
+    /**
+     * Document ID this chunk belongs to
+     */
+    private String documentId;
+
+    /**
+     * Sequential index of this chunk within the document
+     */
+    private Integer chunkIndex;
+
+    /**
+     * The actual text content of the chunk
+     */
+    private String content;
+
+    /**
+     * Source/filename for reference
+     */
+    private String source;
+
+    /**
+     * Number of tokens in the chunk
+     */
+    private Integer tokenCount;
+}
@@ -0,0 +1,164 @@
+package com.genai.knowitall.vectorstore;
+
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.JsonWithInt.Value;
+import io.qdrant.client.grpc.Points.PointId;
+import io.qdrant.client.grpc.Points.RetrievedPoint;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.ValueFactory.list;
+import static io.qdrant.client.ValueFactory.nullValue;
+import static io.qdrant.client.ValueFactory.value;
+
+/**
+ * Chunk metadata layer for QdrantVectorStore.
+ *
+ * The source of truth is the Qdrant point payload written at upsert time, so metadata
+ * survives restarts and is never held on the heap: searches read it from the payload
+ * returned with each hit, and the static helpers here convert between payloads and
+ * chunk metadata or references. Safe for concurrent use.
+ */
+public class ChunkMetadataStore {
+
+    private final QdrantClient qdrantClient;
+    private final String collectionName;
+
+    public ChunkMetadataStore(QdrantClient qdrantClient, String collectionName) {
+        this.qdrantClient = qdrantClient;
+        this.collectionName = collectionName;
+    }
+
+    /**
+     * Check if a point exists, without fetching its payload.
+     */
+    public boolean exists(String vectorId) {
+        return !retrieve(List.of(id(UUID.fromString(vectorId))), false).isEmpty();
+    }
+
+    // ==================== Helper Methods ====================
+
+    private List<RetrievedPoint> retrieve(List<PointId> ids, boolean withPayload) {
+        try {
+            return qdrantClient.retrieveAsync(collectionName, ids, withPayload, false, null).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException("Interrupted while retrieving chunk metadata", e);
+        } catch (ExecutionException e) {
+            throw new VectorStoreException("Failed to retrieve metadata for " + ids.size() + " points", e.getCause());
+        }
+    }
+
+    /**
+     * Chunks referencing a point. A shared point holds its references as parallel lists
+     * (document_id, owner, chunk_id, chunk_index); any other point is referenced only by
+     * the chunk it was stored for, whose ID is the point ID.
+     */
+    static List<VectorReference> referencesFromPayload(String vectorId, Map<String, Value> payload) {
+        Value documentIds = payload.get("document_id");
+        if (documentIds == null || !documentIds.hasListValue()) {
+            return List.of(new VectorReference(vectorId, getString(payload, "document_id"),
+                    getString(payload, "owner"), getInteger(payload, "chunk_index")));
+        }
+        int count = documentIds.getListValue().getValuesCount();
+        List<VectorReference> references = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            references.add(new VectorReference(
+                    listString(payload, "chunk_id", i),
+                    listString(payload, "document_id", i),
+                    listString(payload, "owner", i),
+                    listInteger(payload, "chunk_index", i)));
+        }
+        return references;
+    }
+
+    /**
+     * Payload fields listing a shared point's references (see referencesFromPayload).
+     */
+    static Map<String, Value> referencesToPayload(List<VectorReference> references) {
+        List<Value> documentIds = new ArrayList<>(references.size());
+        List<Value> owners = new ArrayList<>(references.size());
+        List<Value> chunkIds = new ArrayList<>(references.size());
+        List<Value> chunkIndexes = new ArrayList<>(references.size());
+        for (VectorReference reference : references) {
+            documentIds.add(stringOrNull(reference.getDocumentId()));
+            owners.add(stringOrNull(reference.getOwner()));
+            chunkIds.add(stringOrNull(reference.getChunkId()));
+            chunkIndexes.add(reference.getChunkIndex() != null ? value(reference.getChunkIndex()) : nullValue());
+        }
+        return Map.of(
+                "document_id", list(documentIds),
+                "owner", list(owners),
+                "chunk_id", list(chunkIds),
+                "chunk_index", list(chunkIndexes));
+    }
+
+    /**
+     * Convert a Qdrant payload to chunk metadata (a shared point reports its first reference).
+     */
+    static ChunkMetadata fromPayload(Map<String, Value> payload) {
+        return ChunkMetadata.builder()
+                .documentId(getString(payload, "document_id"))
+                .chunkIndex(getInteger(payload, "chunk_index"))
+                .content(getString(payload, "content"))
+                .source(getString(payload, "source"))
+                .tokenCount(getInteger(payload, "token_count"))
+                .build();
+    }
+
+    private static String getString(Map<String, Value> payload, String key) {
+        Value value = payload.get(key);
+        if (value != null && value.hasListValue()) {
+            return listString(payload, key, 0);
+        }
+        return value != null && value.hasStringValue() ? value.getStringValue() : null;
+    }
+
+    private static Integer getInteger(Map<String, Value> payload, String key) {
+        Value value = payload.get(key);
+        if (value != null && value.hasListValue()) {
+            return listInteger(payload, key, 0);
+        }
+        return toInteger(value);
+    }
+
+    private static String listString(Map<String, Value> payload, String key, int index) {
+        Value value = listElement(payload, key, index);
+        return value != null && value.hasStringValue() ? value.getStringValue() : null;
+    }
+
+    private static Integer listInteger(Map<String, Value> payload, String key, int index) {
+        return toInteger(listElement(payload, key, index));
+    }
+
+    private static Value listElement(Map<String, Value> payload, String key, int index) {
+        Value value = payload.get(key);
+        if (value == null || !value.hasListValue() || index >= value.getListValue().getValuesCount()) {
+            return null;
+        }
+        return value.getListValue().getValues(index);
+    }
+
+    private static Value stringOrNull(String text) {
+        return text != null ? value(text) : nullValue();
+    }
+
+    private static Integer toInteger(Value value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.hasIntegerValue()) {
+            return (int) value.getIntegerValue();
+        }
+        if (value.hasStringValue()) {
+            try {
+                return Integer.parseInt(value.getStringValue());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,790 @@
+package com.genai.knowitall.vectorstore;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory HNSW (Hierarchical Navigable Small World) graph for cosine similarity search.
+ *
+ * Vectors are L2-normalized on insert and packed into fixed-size float[] slabs, so
+ * similarity is a plain dot product and no per-vector objects are allocated.
+ * Neighbor lists are primitive int[] arrays where slot 0 holds the neighbor count.
+ *
+ * Nodes are never physically removed: deleted nodes are tombstoned, still used for
+ * graph navigation, but never returned from a search.
+ *
+ * With quantization (VectorQuantization.INT8 or BINARY) the slabs hold compressed codes
+ * instead: int8 codes with a scale per node, or sign bits compared by Hamming distance.
+ * The graph is built and walked on the codes; a search collects oversampling times
+ * k candidates and rescores them exactly against the original vectors, which live in a
+ * MappedVectorFile rather than on the heap.
+ *
+ * Thread safety: concurrent searches are safe, but add/markDeleted/clear must not run
+ * concurrently with anything else. HnswVectorStore guards the index with a read-write lock.
+ */
+public class HnswIndex {
+
+    private static final int SLAB_SHIFT = 12;
+    private static final int SLAB_NODES = 1 << SLAB_SHIFT;
+    private static final int SLAB_MASK = SLAB_NODES - 1;
+    private static final int MAX_LEVEL_CAP = 16;
+
+    private final int dimension;
+    private final int maxConnections;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final VectorQuantization quantization;
+    private final double oversampling;
+    private final int words;
+    private final MappedVectorFile originals;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ConcurrentLinkedQueue<VisitedSet> visitedPool = new ConcurrentLinkedQueue<>();
+
+    // Vector slabs of the current encoding (NONE: floats, INT8: codes + scales, BINARY: bits)
+    private float[][] slabs = new float[0][];
+    private byte[][] codeSlabs = new byte[0][];
+    private float[][] scaleSlabs = new float[0][];
+    private long[][] bitSlabs = new long[0][];
+    private int[][][] links = new int[0][][];
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * @param dimension       Vector dimension (e.g. 1536 for text-embedding-3-small)
+     * @param maxConnections  M: max neighbors per node on upper layers (level 0 allows 2*M)
+     * @param efConstruction  Candidate list size used while building the graph
+     */
+    public HnswIndex(int dimension, int maxConnections, int efConstruction) {
+        this(dimension, maxConnections, efConstruction, VectorQuantization.NONE, 1.0, null);
+    }
+
+    /**
+     * @param dimension       Vector dimension (e.g. 1536 for text-embedding-3-small)
+     * @param maxConnections  M: max neighbors per node on upper layers (level 0 allows 2*M)
+     * @param efConstruction  Candidate list size used while building the graph
+     * @param quantization    Encoding of the in-memory vectors
+     * @param oversampling    Candidates rescored per requested result (quantized only, >= 1)
+     * @param originalsDir    Directory for the original vectors' file (quantized only, null = temp dir)
+     */
+    public HnswIndex(int dimension, int maxConnections, int efConstruction,
+                     VectorQuantization quantization, double oversampling, Path originalsDir) {
+        if (dimension <= 0 || maxConnections < 2 || efConstruction < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters: dimension=" + dimension +
+                    ", m=" + maxConnections + ", efConstruction=" + efConstruction);
+        }
+        this.dimension = dimension;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsLevel0 = maxConnections * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(maxConnections);
+        this.quantization = quantization;
+        this.oversampling = Math.max(1.0, oversampling);
+        this.words = (dimension + 63) >>> 6;
+        this.originals = quantization == VectorQuantization.NONE
+                ? null
+                : new MappedVectorFile(originalsDir, dimension, SLAB_NODES);
+    }
+
+    /**
+     * Insert a vector into the graph.
+     * @param vector Raw (not necessarily normalized) vector; it is copied
+     * @return Node id assigned to the vector
+     */
+    public int add(float[] vector) {
+        checkDimension(vector);
+
+        int node = size;
+        ensureCapacity(node + 1);
+        Query q = store(node, vector);
+
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + connectionsFor(l)];
+        }
+        links[node] = nodeLinks;
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int current = greedyDescend(q, entryPoint, maxLevel, level);
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap found = searchLayer(q, current, efConstruction, l, null);
+            int count = found.size();
+            int[] nodes = new int[count];
+            float[] scores = new float[count];
+            // Drain min-heap into descending order
+            for (int i = count - 1; i >= 0; i--) {
+                scores[i] = found.topScore();
+                nodes[i] = found.pop();
+            }
+
+            int[] selected = selectNeighbors(nodes, scores, count, maxConnections);
+            int[] own = links[node][l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+
+            for (int neighbor : selected) {
+                connect(neighbor, node, l);
+            }
+            current = nodes[0];
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * Find the k nearest live nodes to the query (scores are exact cosine similarities,
+     * also when quantized).
+     * @param query   Query vector (normalized internally)
+     * @param k       Number of results
+     * @param ef      Candidate list size (higher = better recall, slower)
+     * @param accept  Optional node filter applied during traversal (null = accept all)
+     * @return Hits sorted by similarity, highest first
+     */
+    public List<Hit> search(float[] query, int k, int ef, IntPredicate accept) {
+        checkDimension(query);
+        if (entryPoint < 0 || k <= 0) {
+            return List.of();
+        }
+
+        float[] normalized = normalizedCopy(query);
+        Query q = queryFor(normalized);
+        int current = greedyDescend(q, entryPoint, maxLevel, 0);
+
+        IntPredicate live = accept == null
+                ? node -> !deleted.get(node)
+                : node -> !deleted.get(node) && accept.test(node);
+
+        if (originals == null) {
+            NodeHeap found = searchLayer(q, current, Math.max(ef, k), 0, live);
+            while (found.size() > k) {
+                found.pop();
+            }
+
+            Hit[] hits = new Hit[found.size()];
+            for (int i = hits.length - 1; i >= 0; i--) {
+                float score = found.topScore();
+                hits[i] = new Hit(found.pop(), score);
+            }
+            return Arrays.asList(hits);
+        }
+
+        // Quantized: oversample on the codes, then rescore against the original vectors
+        int candidates = (int) Math.ceil(k * oversampling);
+        NodeHeap found = searchLayer(q, current, Math.max(ef, candidates), 0, live);
+        while (found.size() > candidates) {
+            found.pop();
+        }
+        NodeHeap rescored = new NodeHeap(k + 1, false);
+        while (found.size() > 0) {
+            int node = found.pop();
+            rescored.push(node, originals.dot(normalized, 0, node));
+            if (rescored.size() > k) {
+                rescored.pop();
+            }
+        }
+        Hit[] hits = new Hit[rescored.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            float score = rescored.topScore();
+            hits[i] = new Hit(rescored.pop(), score);
+        }
+        return Arrays.asList(hits);
+    }
+
+    /**
+     * Cosine similarity between an already-normalized query and a stored node (exact,
+     * from the original vector when quantized).
+     * Used for exact (brute-force) scoring of small filtered candidate sets.
+     */
+    public float similarity(float[] normalizedQuery, int node) {
+        return originals != null ? originals.dot(normalizedQuery, 0, node) : score(queryFor(normalizedQuery), node);
+    }
+
+    /**
+     * Tombstone a node so it is never returned from a search.
+     */
+    public void markDeleted(int node) {
+        if (node >= 0 && node < size && !deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * Copy of a stored vector (normalized, full precision), e.g. to re-insert it into a compacted graph.
+     */
+    public float[] vector(int node) {
+        if (originals != null) {
+            return originals.read(node);
+        }
+        float[] slab = slabs[node >>> SLAB_SHIFT];
+        int offset = (node & SLAB_MASK) * dimension;
+        return Arrays.copyOfRange(slab, offset, offset + dimension);
+    }
+
+    /**
+     * Drop all nodes and release the slabs.
+     */
+    public void clear() {
+        slabs = new float[0][];
+        codeSlabs = new byte[0][];
+        scaleSlabs = new float[0][];
+        bitSlabs = new long[0][];
+        if (originals != null) {
+            originals.clear();
+        }
+        links = new int[0][][];
+        deleted.clear();
+        size = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        visitedPool.clear();
+    }
+
+    /**
+     * Total nodes in the graph, including tombstoned ones.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Nodes that are not tombstoned.
+     */
+    public int liveSize() {
+        return size - deletedCount;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public VectorQuantization getQuantization() {
+        return quantization;
+    }
+
+    public double getOversampling() {
+        return oversampling;
+    }
+
+    /**
+     * Heap bytes per stored vector in the current encoding (excluding graph links).
+     */
+    public int vectorBytes() {
+        return switch (quantization) {
+            case NONE -> dimension * Float.BYTES;
+            case INT8 -> dimension + Float.BYTES;
+            case BINARY -> words * Long.BYTES;
+        };
+    }
+
+    /**
+     * Release the original vectors' file (quantized only). The index is unusable afterwards.
+     */
+    public void close() {
+        if (originals != null) {
+            originals.close();
+        }
+    }
+
+    /**
+     * Return an L2-normalized copy of a vector.
+     */
+    public static float[] normalizedCopy(float[] vector) {
+        float[] copy = Arrays.copyOf(vector, vector.length);
+        normalize(copy, 0, copy.length);
+        return copy;
+    }
+
+    // ==================== Graph Internals ====================
+
+    private int greedyDescend(Query q, int start, int fromLevel, int toLevel) {
+        int current = start;
+        float currentScore = score(q, current);
+        for (int l = fromLevel; l > toLevel; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbors = links[current][l];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    float s = score(q, neighbors[i]);
+                    if (s > currentScore) {
+                        currentScore = s;
+                        current = neighbors[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search on one layer. Returns a min-heap (worst on top) of at most ef
+     * accepted nodes. Rejected nodes are still expanded so filters don't disconnect the graph.
+     */
+    private NodeHeap searchLayer(Query q, int entry, int ef, int level, IntPredicate accept) {
+        VisitedSet visited = borrowVisited();
+        try {
+            NodeHeap candidates = new NodeHeap(ef * 2, true);
+            NodeHeap results = new NodeHeap(ef + 1, false);
+
+            visited.visit(entry);
+            float entryScore = score(q, entry);
+            candidates.push(entry, entryScore);
+            if (accept == null || accept.test(entry)) {
+                results.push(entry, entryScore);
+            }
+
+            while (candidates.size() > 0) {
+                float candidateScore = candidates.topScore();
+                if (results.size() >= ef && candidateScore < results.topScore()) {
+                    break;
+                }
+                int candidate = candidates.pop();
+
+                int[] neighbors = links[candidate][level];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    int neighbor = neighbors[i];
+                    if (!visited.visit(neighbor)) {
+                        continue;
+                    }
+                    float s = score(q, neighbor);
+                    if (results.size() < ef || s > results.topScore()) {
+                        candidates.push(neighbor, s);
+                        if (accept == null || accept.test(neighbor)) {
+                            results.push(neighbor, s);
+                            if (results.size() > ef) {
+                                results.pop();
+                            }
+                        }
+                    }
+                }
+            }
+            return results;
+        } finally {
+            visitedPool.offer(visited);
+        }
+    }
+
+    /**
+     * HNSW neighbor selection heuristic: keep a candidate only if it is closer to the base
+     * than to any already-selected neighbor, then backfill with the closest pruned ones.
+     * Candidates must be sorted by score descending.
+     */
+    private int[] selectNeighbors(int[] candidates, float[] scores, int count, int limit) {
+        if (count <= limit) {
+            return Arrays.copyOf(candidates, count);
+        }
+
+        int[] selected = new int[limit];
+        int selectedCount = 0;
+        boolean[] taken = new boolean[count];
+
+        for (int i = 0; i < count && selectedCount < limit; i++) {
+            int candidate = candidates[i];
+            Query base = nodeQuery(candidate);
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (score(base, selected[j]) > scores[i]) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = candidate;
+                taken[i] = true;
+            }
+        }
+
+        for (int i = 0; i < count && selectedCount < limit; i++) {
+            if (!taken[i]) {
+                selected[selectedCount++] = candidates[i];
+            }
+        }
+        return selectedCount == limit ? selected : Arrays.copyOf(selected, selectedCount);
+    }
+
+    /**
+     * Add a back-link from {@code from} to {@code to}, pruning {@code from}'s list if full.
+     */
+    private void connect(int from, int to, int level) {
+        int[] neighbors = links[from][level];
+        int limit = connectionsFor(level);
+        int count = neighbors[0];
+
+        if (count < limit) {
+            neighbors[count + 1] = to;
+            neighbors[0] = count + 1;
+            return;
+        }
+
+        Query base = nodeQuery(from);
+
+        int total = count + 1;
+        int[] nodes = new int[total];
+        float[] scores = new float[total];
+        System.arraycopy(neighbors, 1, nodes, 0, count);
+        nodes[count] = to;
+        for (int i = 0; i < total; i++) {
+            scores[i] = score(base, nodes[i]);
+        }
+        sortDescending(nodes, scores);
+
+        int[] selected = selectNeighbors(nodes, scores, total, limit);
+        neighbors[0] = selected.length;
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+    }
+
+    /**
+     * Similarity of a query to a node in the current encoding: exact cosine (NONE), cosine
+     * against the dequantized codes (INT8), or 1 - 2 * hamming / dimension on the sign
+     * bits (BINARY, an estimate that orders like the angle between the vectors).
+     */
+    private float score(Query q, int node) {
+        int slabIndex = node >>> SLAB_SHIFT;
+        int slot = node & SLAB_MASK;
+        switch (quantization) {
+            case INT8 -> {
+                byte[] codes = codeSlabs[slabIndex];
+                int offset = slot * dimension;
+                float sum = 0f;
+                for (int i = 0; i < dimension; i++) {
+                    sum += q.values[q.offset + i] * codes[offset + i];
+                }
+                return sum * scaleSlabs[slabIndex][slot];
+            }
+            case BINARY -> {
+                long[] bits = bitSlabs[slabIndex];
+                int offset = slot * words;
+                int hamming = 0;
+                for (int i = 0; i < words; i++) {
+                    hamming += Long.bitCount(q.bits[q.bitsOffset + i] ^ bits[offset + i]);
+                }
+                return 1f - 2f * hamming / dimension;
+            }
+            default -> {
+                float[] slab = slabs[slabIndex];
+                int offset = slot * dimension;
+                float sum = 0f;
+                for (int i = 0; i < dimension; i++) {
+                    sum += q.values[q.offset + i] * slab[offset + i];
+                }
+                return sum;
+            }
+        }
+    }
+
+    /**
+     * Store a node's vector (normalized) in the current encoding, plus the original when
+     * quantized, and return it as a query for building the node's links.
+     */
+    private Query store(int node, float[] vector) {
+        int slabIndex = node >>> SLAB_SHIFT;
+        int slot = node & SLAB_MASK;
+        if (quantization == VectorQuantization.NONE) {
+            float[] slab = slabs[slabIndex];
+            int offset = slot * dimension;
+            System.arraycopy(vector, 0, slab, offset, dimension);
+            normalize(slab, offset, dimension);
+            return new Query(slab, offset, null, 0);
+        }
+
+        float[] normalized = normalizedCopy(vector);
+        originals.write(node, normalized, 0);
+        if (quantization == VectorQuantization.INT8) {
+            float max = 0f;
+            for (float value : normalized) {
+                max = Math.max(max, Math.abs(value));
+            }
+            float scale = max > 0f ? max / 127f : 1f;
+            byte[] codes = codeSlabs[slabIndex];
+            int offset = slot * dimension;
+            for (int i = 0; i < dimension; i++) {
+                codes[offset + i] = (byte) Math.round(normalized[i] / scale);
+            }
+            scaleSlabs[slabIndex][slot] = scale;
+        } else {
+            encodeBits(normalized, bitSlabs[slabIndex], slot * words);
+        }
+        return queryFor(normalized);
+    }
+
+    /**
+     * Query form of a normalized vector for the current encoding.
+     */
+    private Query queryFor(float[] normalized) {
+        if (quantization != VectorQuantization.BINARY) {
+            return new Query(normalized, 0, null, 0);
+        }
+        long[] bits = new long[words];
+        encodeBits(normalized, bits, 0);
+        return new Query(normalized, 0, bits, 0);
+    }
+
+    /**
+     * Query form of a stored node (for scoring it against its neighbors).
+     */
+    private Query nodeQuery(int node) {
+        int slabIndex = node >>> SLAB_SHIFT;
+        int slot = node & SLAB_MASK;
+        return switch (quantization) {
+            case INT8 -> {
+                byte[] codes = codeSlabs[slabIndex];
+                int offset = slot * dimension;
+                float scale = scaleSlabs[slabIndex][slot];
+                float[] values = new float[dimension];
+                for (int i = 0; i < dimension; i++) {
+                    values[i] = codes[offset + i] * scale;
+                }
+                yield new Query(values, 0, null, 0);
+            }
+            case BINARY -> new Query(null, 0, bitSlabs[slabIndex], slot * words);
+            default -> new Query(slabs[slabIndex], slot * dimension, null, 0);
+        };
+    }
+
+    private void encodeBits(float[] values, long[] bits, int offset) {
+        Arrays.fill(bits, offset, offset + words, 0L);
+        for (int i = 0; i < dimension; i++) {
+            if (values[i] > 0f) {
+                bits[offset + (i >>> 6)] |= 1L << (i & 63);
+            }
+        }
+    }
+
+    private int connectionsFor(int level) {
+        return level == 0 ? maxConnectionsLevel0 : maxConnections;
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble();
+        return Math.min((int) (-Math.log(r) * levelMultiplier), MAX_LEVEL_CAP);
+    }
+
+    private void ensureCapacity(int nodes) {
+        int slabsNeeded = (nodes + SLAB_NODES - 1) >>> SLAB_SHIFT;
+        switch (quantization) {
+            case INT8 -> {
+                if (slabsNeeded > codeSlabs.length) {
+                    byte[][] grownCodes = Arrays.copyOf(codeSlabs, slabsNeeded);
+                    float[][] grownScales = Arrays.copyOf(scaleSlabs, slabsNeeded);
+                    for (int i = codeSlabs.length; i < slabsNeeded; i++) {
+                        grownCodes[i] = new byte[SLAB_NODES * dimension];
+                        grownScales[i] = new float[SLAB_NODES];
+                    }
+                    codeSlabs = grownCodes;
+                    scaleSlabs = grownScales;
+                }
+            }
+            case BINARY -> {
+                if (slabsNeeded > bitSlabs.length) {
+                    long[][] grown = Arrays.copyOf(bitSlabs, slabsNeeded);
+                    for (int i = bitSlabs.length; i < slabsNeeded; i++) {
+                        grown[i] = new long[SLAB_NODES * words];
+                    }
+                    bitSlabs = grown;
+                }
+            }
+            default -> {
+                if (slabsNeeded > slabs.length) {
+                    float[][] grown = Arrays.copyOf(slabs, slabsNeeded);
+                    for (int i = slabs.length; i < slabsNeeded; i++) {
+                        grown[i] = new float[SLAB_NODES * dimension];
+                    }
+                    slabs = grown;
+                }
+            }
+        }
+        if (nodes > links.length) {
+            links = Arrays.copyOf(links, Math.max(nodes, links.length * 2));
+        }
+    }
+
+    private VisitedSet borrowVisited() {
+        VisitedSet visited = visitedPool.poll();
+        if (visited == null) {
+            visited = new VisitedSet();
+        }
+        visited.reset(size);
+        return visited;
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            throw new IllegalArgumentException("Expected vector of dimension " + dimension +
+                    ", got " + (vector == null ? "null" : vector.length));
+        }
+    }
+
+    private static void normalize(float[] values, int offset, int length) {
+        double norm = 0.0;
+        for (int i = 0; i < length; i++) {
+            norm += values[offset + i] * values[offset + i];
+        }
+        if (norm == 0.0) {
+            return;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < length; i++) {
+            values[offset + i] *= inv;
+        }
+    }
+
+    private static void sortDescending(int[] nodes, float[] scores) {
+        // Insertion sort: lists are at most 2*M + 1 long
+        for (int i = 1; i < nodes.length; i++) {
+            int node = nodes[i];
+            float s = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < s) {
+                nodes[j + 1] = nodes[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+            scores[j + 1] = s;
+        }
+    }
+
+    // ==================== Helper Types ====================
+
+    /**
+     * A search hit: node id and cosine similarity.
+     */
+    public record Hit(int node, float score) {
+    }
+
+    /**
+     * A vector to score nodes against: floats at values[offset..] (NONE, INT8) or sign
+     * bits at bits[bitsOffset..] (BINARY).
+     */
+    private record Query(float[] values, int offset, long[] bits, int bitsOffset) {
+    }
+
+    /**
+     * Binary heap over (node, score) pairs backed by primitive arrays.
+     */
+    private static final class NodeHeap {
+        private final boolean maxHeap;
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+
+        NodeHeap(int capacity, boolean maxHeap) {
+            this.maxHeap = maxHeap;
+            this.nodes = new int[Math.max(capacity, 4)];
+            this.scores = new float[Math.max(capacity, 4)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            if (size > 0) {
+                int node = nodes[size];
+                float score = scores[size];
+                int i = 0;
+                int half = size >>> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    int right = child + 1;
+                    if (right < size && before(scores[right], scores[child])) {
+                        child = right;
+                    }
+                    if (!before(scores[child], score)) {
+                        break;
+                    }
+                    nodes[i] = nodes[child];
+                    scores[i] = scores[child];
+                    i = child;
+                }
+                nodes[i] = node;
+                scores[i] = score;
+            }
+            return top;
+        }
+
+        private boolean before(float a, float b) {
+            return maxHeap ? a > b : a < b;
+        }
+    }
+
+    /**
+     * Epoch-stamped visited marks, pooled so concurrent searches don't allocate per query.
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean visit(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
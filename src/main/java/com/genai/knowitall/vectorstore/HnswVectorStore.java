@@ -0,0 +1,773 @@
+package com.genai.knowitall.vectorstore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.logging.Logger;
+
+/**
+ * In-process implementation of VectorStoreClient backed by an HNSW graph (HnswIndex).
+ *
+ * Intended for single-node deployments: search is a local graph walk instead of a
+ * gRPC round trip to Qdrant. The index lives only in memory and is rebuilt by
+ * re-ingesting documents after a restart. It reports itself as not persistent, so
+ * ingestion checks that a recorded vector still exists before reusing it.
+ *
+ * A node shared by several chunks (identical content, see updateReferences) is listed
+ * under each referencing document and only removed once no document references it.
+ *
+ * Vectors can be quantized (int8 or binary, see HnswIndex): the heap then holds only
+ * the compressed codes, and the originals used for rescoring are memory-mapped.
+ *
+ * Deleted vectors are tombstoned in the graph; compact() rebuilds the graph without
+ * them once they make up COMPACTION_DELETED_RATIO of it, so the index does not keep
+ * growing (and searches do not keep walking dead nodes) as documents are replaced.
+ *
+ * Concurrency: searches share a read lock; writes and deletes take the write lock.
+ * compact() builds the new graph without holding either, and locks only to copy
+ * vectors and to swap.
+ */
+public class HnswVectorStore implements VectorStoreClient {
+
+    private static final Logger logger = Logger.getLogger(HnswVectorStore.class.getName());
+
+    /**
+     * Filtered searches over at most this many live candidates are scored exactly
+     * instead of walking the graph (cheaper and guarantees a full top-K).
+     */
+    private static final int BRUTE_FORCE_THRESHOLD = 10_000;
+
+    /**
+     * compact() rebuilds the graph once at least this share of its nodes is tombstoned.
+     */
+    private static final double COMPACTION_DELETED_RATIO = 0.2;
+
+    /**
+     * Nodes compact() copies per read-lock acquisition.
+     */
+    private static final int COMPACTION_BATCH = 1024;
+
+    private HnswIndex index;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final VectorQuantization quantization;
+    private final double oversampling;
+    private final Path originalsDir;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Incremented under the write lock when node numbers are reset (deleteAll, compaction swap) */
+    private long generation;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private Map<String, Integer> nodeByVectorId = new HashMap<>();
+    private Map<String, NodeList> nodesByDocument = new HashMap<>();
+    private List<ChunkEntry> entries = new ArrayList<>();
+
+    public HnswVectorStore(int dimension, int m, int efConstruction, int efSearch) {
+        this(dimension, m, efConstruction, efSearch, VectorQuantization.NONE, 1.0, null);
+    }
+
+    /**
+     * @param quantization  Encoding of the in-memory vectors
+     * @param oversampling  Candidates rescored per requested result when quantized
+     * @param originalsDir  Directory for the memory-mapped original vectors (null = temp dir)
+     */
+    public HnswVectorStore(int dimension, int m, int efConstruction, int efSearch,
+                           VectorQuantization quantization, double oversampling, Path originalsDir) {
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.quantization = quantization;
+        this.oversampling = oversampling;
+        this.originalsDir = originalsDir;
+        this.index = newIndex(dimension);
+        logger.info("HnswVectorStore initialized (dimension: " + dimension + ", m: " + m +
+                   ", efConstruction: " + efConstruction + ", efSearch: " + efSearch +
+                   ", quantization: " + quantization +
+                   (quantization != VectorQuantization.NONE ? " with " + index.getOversampling() + "x oversampling" : "") +
+                   ", " + index.vectorBytes() + " bytes per vector in memory)");
+    }
+
+    /**
+     * Store embedding vector with metadata. An existing vectorId is replaced.
+     * @param vectorId      Unique identifier for the vector (typically documentChunk.id)
+     * @param embedding     The embedding vector (e.g., 1536 dimensions for OpenAI)
+     * @param metadata      Key-value metadata (document_id, chunk_index, content, etc.)
+     */
+    @Override
+    public void storeEmbedding(String vectorId, float[] embedding, Map<String, Object> metadata) {
+        storeEmbeddings(List.of(new VectorRecord(vectorId, embedding, metadata)));
+    }
+
+    /**
+     * Store many chunks under a single write-lock acquisition.
+     * @param records   Vectors to store; existing vector IDs are replaced
+     */
+    @Override
+    public void storeEmbeddings(List<VectorRecord> records) {
+        lock.writeLock().lock();
+        try {
+            for (VectorRecord record : records) {
+                insert(record);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Semantic search restricted by document and/or owner.
+     * When the filter names documents with at most BRUTE_FORCE_THRESHOLD live chunks in
+     * total, those chunks are scored exactly; otherwise the filter is evaluated inside
+     * the graph walk. Either way up to topK matching chunks are returned.
+     * @param queryEmbedding    The query vector (same dimensions as stored embeddings)
+     * @param topK              Number of results to return (default: 5)
+     * @param filter            Document/owner restrictions (null or empty = search all)
+     * @return List of VectorSearchResult objects (sorted by similarity, highest first)
+     */
+    @Override
+    public List<VectorSearchResult> search(float[] queryEmbedding, int topK, SearchFilter filter) {
+        float[] query = queryEmbedding;
+        boolean filtered = filter != null && !filter.isEmpty();
+
+        lock.readLock().lock();
+        try {
+            List<HnswIndex.Hit> hits;
+            if (!filtered) {
+                hits = index.search(query, topK, efSearch, null);
+            } else {
+                IntPredicate accept = node -> matches(entries.get(node), filter);
+                List<NodeList> documentNodes = filter.hasDocumentIds() ? documentNodes(filter) : null;
+
+                if (documentNodes != null && documentNodes.isEmpty()) {
+                    return List.of();
+                }
+                if (documentNodes != null && totalSize(documentNodes) <= BRUTE_FORCE_THRESHOLD) {
+                    hits = exactSearch(query, topK, documentNodes, accept);
+                } else {
+                    hits = index.search(query, topK, efSearch, accept);
+                }
+            }
+
+            List<VectorSearchResult> results = new ArrayList<>(hits.size());
+            for (HnswIndex.Hit hit : hits) {
+                results.add(toSearchResult(hit, filtered ? filter : null));
+            }
+            return results;
+
+        } catch (IllegalArgumentException e) {
+            throw new VectorStoreException("Search operation failed", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the references of shared vectors, moving their nodes between the
+     * per-document node lists. Unknown vector IDs are ignored.
+     * @param referencesByVectorId  All references per vector; an empty list removes the vector
+     */
+    @Override
+    public void updateReferences(Map<String, List<VectorReference>> referencesByVectorId) {
+        lock.writeLock().lock();
+        try {
+            referencesByVectorId.forEach((vectorId, references) -> {
+                Integer node = nodeByVectorId.get(vectorId);
+                if (node == null) {
+                    return;
+                }
+                if (references.isEmpty()) {
+                    removeNode(vectorId);
+                    return;
+                }
+                ChunkEntry entry = entries.get(node);
+                Set<String> oldDocuments = entry.documentIds();
+                Set<String> newDocuments = new HashSet<>();
+                for (VectorReference reference : references) {
+                    String documentId = reference.getDocumentId();
+                    if (documentId != null && newDocuments.add(documentId) && !oldDocuments.contains(documentId)) {
+                        nodesByDocument.computeIfAbsent(documentId, k -> new NodeList()).add(node);
+                    }
+                }
+                for (String documentId : oldDocuments) {
+                    NodeList nodes = nodesByDocument.get(documentId);
+                    if (!newDocuments.contains(documentId) && nodes != null) {
+                        nodes.remove(node);
+                    }
+                }
+                entry.references = List.copyOf(references);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Delete a document's vectors. Shared vectors lose the document's references and
+     * are only removed when no other document references them.
+     * @param documentId    The ID of the document to delete
+     */
+    @Override
+    public void deleteDocument(String documentId) {
+        lock.writeLock().lock();
+        try {
+            NodeList nodes = nodesByDocument.remove(documentId);
+            if (nodes == null) {
+                return;
+            }
+            int deleted = 0;
+            int kept = 0;
+            for (int i = 0; i < nodes.size; i++) {
+                int node = nodes.values[i];
+                ChunkEntry entry = entries.get(node);
+                if (entry == null) {
+                    // Already removed
+                    continue;
+                }
+                List<VectorReference> remaining = entry.references.stream()
+                        .filter(reference -> !documentId.equals(reference.getDocumentId()))
+                        .toList();
+                if (!remaining.isEmpty()) {
+                    entry.references = remaining;
+                    kept++;
+                    continue;
+                }
+                nodeByVectorId.remove(entry.vectorId);
+                entries.set(node, null);
+                index.markDeleted(node);
+                deleted++;
+            }
+            logger.info("Deleted " + deleted + " vectors for document: " + documentId +
+                       " (" + kept + " shared vectors kept)");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Update an existing chunk's embedding (for reprocessing).
+     * @param vectorId      The vector ID to update
+     * @param embedding     The new embedding vector
+     * @param metadata      Updated metadata
+     */
+    @Override
+    public void updateEmbedding(String vectorId, float[] embedding, Map<String, Object> metadata) {
+        storeEmbedding(vectorId, embedding, metadata);
+    }
+
+    /**
+     * Check if a vector ID exists in the store.
+     * @param vectorId  The vector ID to check
+     * @return true if exists, false otherwise
+     */
+    @Override
+    public boolean exists(String vectorId) {
+        lock.readLock().lock();
+        try {
+            return nodeByVectorId.containsKey(vectorId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * List vector IDs in node order. The cursor is the node to continue from (valid
+     * until the next compaction).
+     * @param cursor    Cursor from the previous page (null = first page)
+     * @param limit     Maximum vector IDs per page
+     * @return The page and the cursor of the next one
+     */
+    @Override
+    public VectorIdPage listVectorIds(String cursor, int limit) {
+        lock.readLock().lock();
+        try {
+            int node = cursor != null ? Integer.parseInt(cursor) : 0;
+            List<String> vectorIds = new ArrayList<>(Math.min(limit, entries.size()));
+            while (node < entries.size() && vectorIds.size() < limit) {
+                ChunkEntry entry = entries.get(node++);
+                if (entry != null) {
+                    vectorIds.add(entry.vectorId);
+                }
+            }
+            return new VectorIdPage(vectorIds, node < entries.size() ? String.valueOf(node) : null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the graph from its live nodes if enough of it is tombstoned. The live
+     * vectors are copied COMPACTION_BATCH nodes at a time under the read lock and added
+     * to the new graph with no lock held, so searches and writes carry on during the
+     * rebuild. The write lock is only taken for the swap, which replays what changed in
+     * the meantime: vectors stored since are added to the new graph, removed ones are
+     * tombstoned in it, and references are taken from the current entries.
+     */
+    @Override
+    public void compact() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            HnswIndex compacted;
+            int[] compactedNode;
+            long generationBefore;
+            int before;
+            lock.readLock().lock();
+            try {
+                before = index.size();
+                if (before == 0 || before - index.liveSize() < before * COMPACTION_DELETED_RATIO) {
+                    return;
+                }
+                generationBefore = generation;
+                compacted = newIndex(index.getDimension());
+                compactedNode = new int[entries.size()];
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // Nodes are never reused, so a copied node keeps its vector until removed
+            Arrays.fill(compactedNode, -1);
+            List<float[]> vectors = new ArrayList<>(COMPACTION_BATCH);
+            for (int from = 0; from < compactedNode.length; from += COMPACTION_BATCH) {
+                int to = Math.min(compactedNode.length, from + COMPACTION_BATCH);
+                vectors.clear();
+                lock.readLock().lock();
+                try {
+                    if (generation != generationBefore) {
+                        compacted.close();
+                        return;
+                    }
+                    for (int node = from; node < to; node++) {
+                        vectors.add(isLive(node) ? index.vector(node) : null);
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                for (int node = from; node < to; node++) {
+                    float[] vector = vectors.get(node - from);
+                    if (vector != null) {
+                        compactedNode[node] = compacted.add(vector);
+                    }
+                }
+            }
+
+            if (!swapIn(compacted, compactedNode, generationBefore)) {
+                // Cleared while the new graph was built
+                compacted.close();
+                return;
+            }
+            logger.info("Compacted HNSW index: " + before + " -> " + compacted.size() + " nodes");
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Clear all embeddings from the index (use with caution - typically for testing).
+     */
+    @Override
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            index.clear();
+            entries.clear();
+            nodeByVectorId.clear();
+            nodesByDocument.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The index lives only in memory and is empty after a restart.
+     */
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+    /**
+     * The in-process index has no external dependency to fail.
+     */
+    @Override
+    public boolean isHealthy() {
+        return true;
+    }
+
+    // ==================== Helper Methods ====================
+
+    private HnswIndex newIndex(int dimension) {
+        return new HnswIndex(dimension, m, efConstruction, quantization, oversampling, originalsDir);
+    }
+
+    /**
+     * Insert one record, replacing any existing node for its vectorId (only once the new
+     * node is added, so a rejected vector leaves the old one in place). Caller holds the write lock.
+     */
+    private void insert(VectorRecord record) {
+        String vectorId = record.getVectorId();
+        Map<String, Object> metadata = record.getMetadata();
+        VectorReference reference = new VectorReference(
+                vectorId,
+                getStringValue(metadata, "document_id"),
+                getStringValue(metadata, "owner"),
+                getIntValue(metadata));
+        ChunkEntry entry = new ChunkEntry(
+                vectorId,
+                getStringValue(metadata, "content"),
+                getStringValue(metadata, "source"),
+                List.of(reference));
+
+        try {
+            int node = index.add(record.getEmbedding());
+            removeNode(vectorId);
+            entries.add(entry);
+            nodeByVectorId.put(vectorId, node);
+            if (reference.getDocumentId() != null) {
+                nodesByDocument.computeIfAbsent(reference.getDocumentId(), k -> new NodeList()).add(node);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new VectorStoreException("Failed to store embedding for vectorId: " + vectorId, e);
+        }
+    }
+
+    /**
+     * Replace the graph with one compacted from it, bringing the new graph up to date
+     * with the writes made since its nodes were copied.
+     * @param compactedNode Node in the new graph of each copied node (-1 = not copied)
+     * @return false if the store was cleared in the meantime (nothing was changed)
+     */
+    private boolean swapIn(HnswIndex compacted, int[] compactedNode, long generationBefore) {
+        lock.writeLock().lock();
+        try {
+            if (generation != generationBefore) {
+                return false;
+            }
+            generation++;
+            List<ChunkEntry> compactedEntries = new ArrayList<>(compacted.size());
+            for (int i = 0; i < compacted.size(); i++) {
+                compactedEntries.add(null);
+            }
+            Map<String, Integer> compactedNodes = new HashMap<>();
+            Map<String, NodeList> compactedDocuments = new HashMap<>();
+            for (int node = 0; node < entries.size(); node++) {
+                boolean copied = node < compactedNode.length && compactedNode[node] >= 0;
+                if (!isLive(node)) {
+                    if (copied) {
+                        // Removed after it was copied
+                        compacted.markDeleted(compactedNode[node]);
+                    }
+                    continue;
+                }
+                ChunkEntry entry = entries.get(node);
+                int newNode;
+                if (copied) {
+                    newNode = compactedNode[node];
+                    compactedEntries.set(newNode, entry);
+                } else {
+                    // Stored after the copy
+                    newNode = compacted.add(index.vector(node));
+                    compactedEntries.add(entry);
+                }
+                compactedNodes.put(entry.vectorId, newNode);
+                for (String documentId : entry.documentIds()) {
+                    compactedDocuments.computeIfAbsent(documentId, k -> new NodeList()).add(newNode);
+                }
+            }
+            index.close();
+            index = compacted;
+            entries = compactedEntries;
+            nodeByVectorId = compactedNodes;
+            nodesByDocument = compactedDocuments;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Whether a node holds a stored vector. Caller holds the lock.
+     */
+    private boolean isLive(int node) {
+        return entries.get(node) != null && !index.isDeleted(node);
+    }
+
+    /**
+     * Score every live, accepted node of a small candidate set exactly (a shared node
+     * listed under several of the documents is scored once).
+     */
+    private List<HnswIndex.Hit> exactSearch(float[] query, int topK, List<NodeList> candidates, IntPredicate accept) {
+        float[] normalized = HnswIndex.normalizedCopy(query);
+        List<HnswIndex.Hit> hits = new ArrayList<>(totalSize(candidates));
+        BitSet seen = candidates.size() > 1 ? new BitSet() : null;
+        for (NodeList nodes : candidates) {
+            for (int i = 0; i < nodes.size; i++) {
+                int node = nodes.values[i];
+                if (seen != null) {
+                    if (seen.get(node)) {
+                        continue;
+                    }
+                    seen.set(node);
+                }
+                if (!index.isDeleted(node) && accept.test(node)) {
+                    hits.add(new HnswIndex.Hit(node, index.similarity(normalized, node)));
+                }
+            }
+        }
+        hits.sort(Comparator.comparingDouble(HnswIndex.Hit::score).reversed());
+        return hits.size() > topK ? hits.subList(0, topK) : hits;
+    }
+
+    /**
+     * Node lists of the filter's documents that have any chunks. Caller holds the read lock.
+     */
+    private List<NodeList> documentNodes(SearchFilter filter) {
+        List<NodeList> lists = new ArrayList<>(filter.getDocumentIds().size());
+        for (String documentId : filter.getDocumentIds()) {
+            NodeList nodes = nodesByDocument.get(documentId);
+            if (nodes != null && nodes.size > 0) {
+                lists.add(nodes);
+            }
+        }
+        return lists;
+    }
+
+    private int totalSize(List<NodeList> lists) {
+        int total = 0;
+        for (NodeList nodes : lists) {
+            total += nodes.size;
+        }
+        return total;
+    }
+
+    private boolean matches(ChunkEntry entry, SearchFilter filter) {
+        return entry != null && entry.referenceFor(filter) != null;
+    }
+
+    /**
+     * Tombstone the node currently holding vectorId, if any. Caller holds the write lock.
+     */
+    private void removeNode(String vectorId) {
+        Integer existing = nodeByVectorId.remove(vectorId);
+        if (existing == null) {
+            return;
+        }
+        ChunkEntry old = entries.get(existing);
+        if (old != null) {
+            for (String documentId : old.documentIds()) {
+                NodeList nodes = nodesByDocument.get(documentId);
+                if (nodes != null) {
+                    nodes.remove(existing);
+                }
+            }
+        }
+        entries.set(existing, null);
+        index.markDeleted(existing);
+    }
+
+    /**
+     * Convert a hit to a search result. Cosine similarity is mapped to the same
+     * relevance score LangChain4j reports for Qdrant ((cos + 1) / 2), so confidence
+     * thresholds mean the same thing with either backend. A shared vector is reported
+     * as its first reference that passes the filter.
+     */
+    private VectorSearchResult toSearchResult(HnswIndex.Hit hit, SearchFilter filter) {
+        ChunkEntry entry = entries.get(hit.node());
+        VectorReference reference = entry.referenceFor(filter);
+        double relevance = (hit.score() + 1.0) / 2.0;
+        return VectorSearchResult.builder()
+                .vectorId(entry.vectorId)
+                .chunkId(reference.getChunkId())
+                .score(Math.max(0.0, Math.min(1.0, relevance)))
+                .documentId(reference.getDocumentId())
+                .chunkIndex(reference.getChunkIndex())
+                .content(entry.content)
+                .source(entry.source)
+                .build();
+    }
+
+    /**
+     * Extract string value from metadata map.
+     */
+    private String getStringValue(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Extract integer chunk_index value from metadata map.
+     */
+    private Integer getIntValue(Map<String, Object> map) {
+        Object value = map.get("chunk_index");
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (value instanceof Integer) {
+                return (Integer) value;
+            }
+            return Integer.parseInt(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Chunk metadata held per graph node. References are replaced (never mutated) under
+     * the write lock.
+     */
+    private static final class ChunkEntry {
+        private final String vectorId;
+        private final String content;
+        private final String source;
+        private List<VectorReference> references;
+
+        private ChunkEntry(String vectorId, String content, String source, List<VectorReference> references) {
+            this.vectorId = vectorId;
+            this.content = content;
+            this.source = source;
+            this.references = references;
+        }
+
+        /**
+         * First reference passing the filter (null filter = the first reference), or null.
+         */
+        private VectorReference referenceFor(SearchFilter filter) {
+            for (VectorReference reference : references) {
+                if (filter == null || filter.matches(reference.getDocumentId(), reference.getOwner())) {
+                    return reference;
+                }
+            }
+            return null;
+        }
+
+        private Set<String> documentIds() {
+            Set<String> documentIds = new HashSet<>();
+            for (VectorReference reference : references) {
+                if (reference.getDocumentId() != null) {
+                    documentIds.add(reference.getDocumentId());
+                }
+            }
+            return documentIds;
+        }
+    }
+
+    /**
+     * Growable set of node ids without boxing, in insertion order until a removal moves
+     * the last node into the gap. An open-addressing table (linear probing) maps each
+     * node to its position, so add and remove are O(1).
+     */
+    static final class NodeList {
+        private int[] values = new int[8];
+        private int size;
+        // Slot holds node + 1 (0 = empty) and the node's position in values
+        private int[] slotNodes = new int[16];
+        private int[] slotPositions = new int[16];
+
+        /**
+         * Add a node (no-op if present).
+         */
+        void add(int node) {
+            if (find(node) >= 0) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if ((size + 1) * 2 > slotNodes.length) {
+                rehash(slotNodes.length * 2);
+            }
+            values[size] = node;
+            put(node, size);
+            size++;
+        }
+
+        /**
+         * Remove a node (no-op if absent).
+         */
+        void remove(int node) {
+            int slot = find(node);
+            if (slot < 0) {
+                return;
+            }
+            int position = slotPositions[slot];
+            clearSlot(slot);
+            int last = values[--size];
+            if (position != size) {
+                values[position] = last;
+                slotPositions[find(last)] = position;
+            }
+        }
+
+        boolean contains(int node) {
+            return find(node) >= 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int find(int node) {
+            int mask = slotNodes.length - 1;
+            for (int slot = home(node, mask); slotNodes[slot] != 0; slot = (slot + 1) & mask) {
+                if (slotNodes[slot] == node + 1) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void put(int node, int position) {
+            int mask = slotNodes.length - 1;
+            int slot = home(node, mask);
+            while (slotNodes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slotNodes[slot] = node + 1;
+            slotPositions[slot] = position;
+        }
+
+        /**
+         * Empty a slot, shifting later entries of the probe run back so lookups still find them.
+         */
+        private void clearSlot(int slot) {
+            int mask = slotNodes.length - 1;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; slotNodes[i] != 0; i = (i + 1) & mask) {
+                int home = home(slotNodes[i] - 1, mask);
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    slotNodes[hole] = slotNodes[i];
+                    slotPositions[hole] = slotPositions[i];
+                    hole = i;
+                }
+            }
+            slotNodes[hole] = 0;
+        }
+
+        private void rehash(int capacity) {
+            slotNodes = new int[capacity];
+            slotPositions = new int[capacity];
+            for (int i = 0; i < size; i++) {
+                put(values[i], i);
+            }
+        }
+
+        private static int home(int node, int mask) {
+            int hash = node * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
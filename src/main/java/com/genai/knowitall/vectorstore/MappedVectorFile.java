@@ -0,0 +1,116 @@
+package com.genai.knowitall.vectorstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Fixed-size float vectors stored in a memory-mapped temporary file.
+ *
+ * Holds the full-precision vectors of a quantized HnswIndex: they are only read to
+ * rescore a few candidates per search, so the OS keeps the hot ones in the page cache
+ * and can evict the rest, instead of all of them sitting on the Java heap. The file is
+ * mapped in segments of segmentVectors vectors and deleted when closed (or on exit).
+ *
+ * Thread safety: concurrent reads are safe; writes, clear and close must not run
+ * concurrently with anything else (HnswIndex is guarded by its owner's lock).
+ */
+public class MappedVectorFile implements AutoCloseable {
+
+    private final int dimension;
+    private final int segmentVectors;
+    private final Path path;
+    private final FileChannel channel;
+    private FloatBuffer[] segments = new FloatBuffer[0];
+
+    /**
+     * @param directory       Directory for the file (null = the system temp dir)
+     * @param dimension       Floats per vector
+     * @param segmentVectors  Vectors per mapped segment
+     */
+    public MappedVectorFile(Path directory, int dimension, int segmentVectors) {
+        this.dimension = dimension;
+        this.segmentVectors = segmentVectors;
+        try {
+            Path dir = directory != null ? Files.createDirectories(directory) : Path.of(System.getProperty("java.io.tmpdir"));
+            this.path = Files.createTempFile(dir, "hnsw-vectors-", ".f32");
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            path.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create vector file", e);
+        }
+    }
+
+    /**
+     * Write vector {@code index} from values[offset .. offset + dimension).
+     */
+    public void write(int index, float[] values, int offset) {
+        FloatBuffer segment = segment(index / segmentVectors);
+        segment.put((index % segmentVectors) * dimension, values, offset, dimension);
+    }
+
+    /**
+     * Copy of vector {@code index}.
+     */
+    public float[] read(int index) {
+        float[] values = new float[dimension];
+        segments[index / segmentVectors].get((index % segmentVectors) * dimension, values, 0, dimension);
+        return values;
+    }
+
+    /**
+     * Dot product of q[qOffset .. qOffset + dimension) with vector {@code index}.
+     */
+    public float dot(float[] q, int qOffset, int index) {
+        FloatBuffer segment = segments[index / segmentVectors];
+        int base = (index % segmentVectors) * dimension;
+        float sum = 0f;
+        for (int i = 0; i < dimension; i++) {
+            sum += q[qOffset + i] * segment.get(base + i);
+        }
+        return sum;
+    }
+
+    /**
+     * Drop all vectors and shrink the file.
+     */
+    public void clear() {
+        segments = new FloatBuffer[0];
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear vector file " + path, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        segments = new FloatBuffer[0];
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close vector file " + path, e);
+        }
+    }
+
+    private FloatBuffer segment(int number) {
+        if (number >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(number + 1, segments.length * 2));
+        }
+        if (segments[number] == null) {
+            long bytes = (long) segmentVectors * dimension * Float.BYTES;
+            try {
+                segments[number] = channel.map(FileChannel.MapMode.READ_WRITE, number * bytes, bytes).asFloatBuffer();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map vector file " + path, e);
+            }
+        }
+        return segments[number];
+    }
+}
@@ -1,28 +1,105 @@
 package com.genai.knowitall.vectorstore;
 
-import dev.langchain4j.data.embedding.Embedding;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingMatch;
-import org.springframework.stereotype.Service;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.JsonWithInt.Value;
+import io.qdrant.client.grpc.Points.Filter;
+import io.qdrant.client.grpc.Points.PointId;
+import io.qdrant.client.grpc.Points.PointStruct;
+import io.qdrant.client.grpc.Points.QuantizationSearchParams;
+import io.qdrant.client.grpc.Points.RetrievedPoint;
+import io.qdrant.client.grpc.Points.ScoredPoint;
+import io.qdrant.client.grpc.Points.ScrollPoints;
+import io.qdrant.client.grpc.Points.ScrollResponse;
+import io.qdrant.client.grpc.Points.SearchParams;
+import io.qdrant.client.grpc.Points.SearchPoints;
+import io.qdrant.client.grpc.Points.UpdateResult;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
+import static io.qdrant.client.ConditionFactory.matchKeyword;
+import static io.qdrant.client.ConditionFactory.matchKeywords;
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.ValueFactory.value;
+import static io.qdrant.client.VectorsFactory.vectors;
+import static io.qdrant.client.WithPayloadSelectorFactory.enable;
+import static io.qdrant.client.WithPayloadSelectorFactory.include;
+
 /**
- * Qdrant implementation of VectorStoreClient using LangChain4j EmbeddingStore.
+ * Qdrant implementation of VectorStoreClient.
+ * Registered as a bean by VectorStoreConfig when vectorstore.type=qdrant.
+ *
+ * Writes go straight through the Qdrant gRPC client in batches of upsertBatchSize
+ * points, with up to upsertMaxInFlight batch requests pipelined at once.
+ * Chunk metadata lives in the point payload and comes back with each search hit
+ * (see ChunkMetadataStore). Search runs on the gRPC client with document/owner filters
+ * evaluated by Qdrant against keyword payload indexes. A point shared by several chunks
+ * lists its references in the payload (document_id and owner become lists, which the
+ * same keyword indexes match element-wise).
+ *
+ * With quantization (see VectorStoreConfig) searches ask Qdrant to oversample on the
+ * quantized vectors and rescore the candidates with the original ones.
+ *
+ * Deletes select points by their document_id payload and run in batches; Qdrant
+ * reclaims the space of deleted points itself (segment optimizer).
  */
-@Service
 public class QdrantVectorStore implements VectorStoreClient {
 
     private static final Logger logger = Logger.getLogger(QdrantVectorStore.class.getName());
-    private final EmbeddingStore<String> embeddingStore;
-    private final Map<String, Map<String, Object>> metadataCache;
 
-    public QdrantVectorStore(EmbeddingStore<String> embeddingStore) {
-        this.embeddingStore = embeddingStore;
-        this.metadataCache = new HashMap<>();
-        logger.info("QdrantVectorStore initialized with EmbeddingStore");
+    /**
+     * Payload fields holding a point's references (enough to rewrite them on delete)
+     */
+    private static final List<String> REFERENCE_FIELDS = List.of("document_id", "owner", "chunk_id", "chunk_index");
+
+    /**
+     * Further pages a filtered search fetches to replace hits no single reference matched
+     */
+    private static final int MAX_REFILL_PAGES = 3;
+
+    private final QdrantClient qdrantClient;
+    private final String collectionName;
+    private final int upsertBatchSize;
+    private final int upsertMaxInFlight;
+    private final ChunkMetadataStore metadataStore;
+    private final SearchParams searchParams;
+
+    public QdrantVectorStore(
+            QdrantClient qdrantClient,
+            String collectionName,
+            int upsertBatchSize,
+            int upsertMaxInFlight,
+            ChunkMetadataStore metadataStore) {
+        this(qdrantClient, collectionName, upsertBatchSize, upsertMaxInFlight, metadataStore,
+                VectorQuantization.NONE, 1.0);
+    }
+
+    public QdrantVectorStore(
+            QdrantClient qdrantClient,
+            String collectionName,
+            int upsertBatchSize,
+            int upsertMaxInFlight,
+            ChunkMetadataStore metadataStore,
+            VectorQuantization quantization,
+            double oversampling) {
+        this.qdrantClient = qdrantClient;
+        this.collectionName = collectionName;
+        this.upsertBatchSize = Math.max(1, upsertBatchSize);
+        this.upsertMaxInFlight = Math.max(1, upsertMaxInFlight);
+        this.metadataStore = metadataStore;
+        this.searchParams = quantization == VectorQuantization.NONE
+                ? null
+                : SearchParams.newBuilder()
+                        .setQuantization(QuantizationSearchParams.newBuilder()
+                                .setRescore(true)
+                                .setOversampling(Math.max(1.0, oversampling)))
+                        .build();
+        logger.info("QdrantVectorStore initialized (collection: " + collectionName +
+                   ", upsert batch size: " + this.upsertBatchSize +
+                   ", max in-flight: " + this.upsertMaxInFlight +
+                   ", quantization: " + quantization + ")");
     }
 
     /**
@@ -32,71 +109,205 @@ public class QdrantVectorStore implements VectorStoreClient {
      * @param metadata      Key-value metadata (document_id, chunk_index, content, etc.)
      */
     @Override
-    public void storeEmbedding(String vectorId, List<Float> embedding, Map<String, Object> metadata) {
+    public void storeEmbedding(String vectorId, float[] embedding, Map<String, Object> metadata) {
+        storeEmbeddings(List.of(new VectorRecord(vectorId, embedding, metadata)));
+    }
+
+    /**
+     * Store many chunks with batched, pipelined upserts.
+     * Up to upsertMaxInFlight batch requests are outstanding at once; the call returns
+     * once every batch has been acknowledged by Qdrant.
+     * @param records   Vectors to store; existing vector IDs are overwritten
+     */
+    @Override
+    public void storeEmbeddings(List<VectorRecord> records) {
+        Deque<ListenableFuture<UpdateResult>> inFlight = new ArrayDeque<>();
+        int batchStart = 0;
+
         try {
-            // Convert List<Float> to float[]
-            float[] embeddingArray = new float[embedding.size()];
-            for (int i = 0; i < embedding.size(); i++) {
-                embeddingArray[i] = embedding.get(i);
-            }
+            while (batchStart < records.size()) {
+                int batchEnd = Math.min(batchStart + upsertBatchSize, records.size());
 
-            // Create Embedding object from float array
-            Embedding embeddingObj = new Embedding(embeddingArray);
+                List<PointStruct> points = new ArrayList<>(batchEnd - batchStart);
+                for (VectorRecord record : records.subList(batchStart, batchEnd)) {
+                    points.add(toPoint(record));
+                }
 
-            // Store in EmbeddingStore
-            embeddingStore.add(vectorId, embeddingObj);
+                if (inFlight.size() >= upsertMaxInFlight) {
+                    inFlight.removeFirst().get();
+                }
+                inFlight.addLast(qdrantClient.upsertAsync(collectionName, points));
+                batchStart = batchEnd;
+            }
 
-            // Cache metadata locally for retrieval during search
-            metadataCache.put(vectorId, new HashMap<>(metadata));
+            while (!inFlight.isEmpty()) {
+                inFlight.removeFirst().get();
+            }
 
-        } catch (Exception e) {
-            throw new VectorStoreException("Failed to store embedding for vectorId: " + vectorId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException("Interrupted while storing " + records.size() + " embeddings", e);
+        } catch (ExecutionException e) {
+            throw new VectorStoreException("Failed to store " + records.size() + " embeddings", e.getCause());
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
         }
     }
 
     /**
-     * Semantic search: find top-K most similar chunks for a query embedding.
+     * Semantic search with the filter pushed down to Qdrant as a payload filter
+     * (keyword indexes on document_id and owner), so filtered queries cost the same
+     * as unfiltered ones and still return a full top-K. Shared points that matched the
+     * filter only through two different references are dropped (see toSearchResult) and
+     * replaced from the next page of hits (up to MAX_REFILL_PAGES more requests).
      * @param queryEmbedding    The query vector (same dimensions as stored embeddings)
      * @param topK              Number of results to return (default: 5)
-     * @param documentFilter    Optional document ID to filter search results (null = search all)
+     * @param filter            Document/owner restrictions (null or empty = search all)
      * @return List of VectorSearchResult objects (sorted by similarity, highest first)
      */
     @Override
-    public List<VectorSearchResult> search(List<Float> queryEmbedding, int topK, String documentFilter) {
+    public List<VectorSearchResult> search(float[] queryEmbedding, int topK, SearchFilter filter) {
+        SearchPoints.Builder request = SearchPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setLimit(topK)
+                .setWithPayload(enable(true));
+        // Element-wise add keeps the protobuf repeated float field unboxed
+        for (float value : queryEmbedding) {
+            request.addVector(value);
+        }
+        if (filter != null && !filter.isEmpty()) {
+            request.setFilter(toFilter(filter));
+        }
+        if (searchParams != null) {
+            request.setParams(searchParams);
+        }
+
         try {
-            // Convert List<Float> to float[]
-            float[] queryEmbeddingArray = new float[queryEmbedding.size()];
-            for (int i = 0; i < queryEmbedding.size(); i++) {
-                queryEmbeddingArray[i] = queryEmbedding.get(i);
+            SearchFilter applied = filter != null && !filter.isEmpty() ? filter : null;
+            List<VectorSearchResult> results = new ArrayList<>(topK);
+            int offset = 0;
+            for (int page = 0; page <= MAX_REFILL_PAGES; page++) {
+                List<ScoredPoint> points = qdrantClient.searchAsync(request.setOffset(offset).build()).get();
+                for (ScoredPoint point : points) {
+                    VectorSearchResult result = toSearchResult(point, applied);
+                    if (result != null && results.size() < topK) {
+                        results.add(result);
+                    }
+                }
+                offset += points.size();
+                if (results.size() >= topK || points.size() < topK) {
+                    break;
+                }
             }
+            return results;
 
-            // Create Embedding from float array
-            Embedding queryEmbedding_obj = new Embedding(queryEmbeddingArray);
-
-            // Search in EmbeddingStore
-            List<EmbeddingMatch<String>> matches = embeddingStore.findRelevant(queryEmbedding_obj, topK);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException("Interrupted during search", e);
+        } catch (ExecutionException e) {
+            throw new VectorStoreException("Search operation failed", e.getCause());
+        }
+    }
 
-            // Convert to domain objects and apply document filter if needed
-            return matches.stream()
-                    .filter(match -> {
-                        if (documentFilter != null && !documentFilter.isEmpty()) {
-                            String docId = getDocumentIdFromMatch(match);
-                            return documentFilter.equals(docId);
-                        }
-                        return true;
-                    })
-                    .map(this::convertEmbeddingMatch)
-                    .collect(Collectors.toList());
+    /**
+     * Rewrite the reference lists of shared points (one set-payload request per point,
+     * pipelined like upserts); points with no references left are deleted, in batches
+     * of upsertBatchSize points per request.
+     * @param referencesByVectorId  All references per vector; an empty list removes the vector
+     */
+    @Override
+    public void updateReferences(Map<String, List<VectorReference>> referencesByVectorId) {
+        Deque<ListenableFuture<UpdateResult>> inFlight = new ArrayDeque<>();
+        List<PointId> released = new ArrayList<>();
+        try {
+            for (Map.Entry<String, List<VectorReference>> entry : referencesByVectorId.entrySet()) {
+                PointId pointId = id(UUID.fromString(entry.getKey()));
+                if (entry.getValue().isEmpty()) {
+                    released.add(pointId);
+                    continue;
+                }
+                if (inFlight.size() >= upsertMaxInFlight) {
+                    inFlight.removeFirst().get();
+                }
+                inFlight.addLast(qdrantClient.setPayloadAsync(collectionName,
+                        ChunkMetadataStore.referencesToPayload(entry.getValue()), pointId, null, null, null));
+            }
+            for (int start = 0; start < released.size(); start += upsertBatchSize) {
+                if (inFlight.size() >= upsertMaxInFlight) {
+                    inFlight.removeFirst().get();
+                }
+                inFlight.addLast(qdrantClient.deleteAsync(collectionName,
+                        released.subList(start, Math.min(start + upsertBatchSize, released.size()))));
+            }
+            while (!inFlight.isEmpty()) {
+                inFlight.removeFirst().get();
+            }
 
-        } catch (Exception e) {
-            throw new VectorStoreException("Search operation failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException("Interrupted while updating references of shared vectors", e);
+        } catch (ExecutionException e) {
+            throw new VectorStoreException("Failed to update references of " + referencesByVectorId.size() +
+                                           " shared vectors", e.getCause());
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
         }
     }
 
+    /**
+     * Delete a document's points: scroll the points whose document_id payload matches,
+     * a page of upsertBatchSize at a time, and delete each page's points in one request.
+     * Shared points that other documents still reference only lose this document's
+     * references. The references are read and written back, so callers serialize this
+     * with updateReferences (DocumentIngestionService.deleteDocumentVectors).
+     * @param documentId    The ID of the document to delete
+     */
     @Override
     public void deleteDocument(String documentId) {
-        // Note: EmbeddingStore interface doesn't support bulk delete by metadata
-        logger.warning("Bulk delete by document_id not supported via EmbeddingStore interface");
+        Filter filter = Filter.newBuilder().addMust(matchKeyword("document_id", documentId)).build();
+        int deleted = 0;
+        int kept = 0;
+        PointId offset = null;
+        try {
+            do {
+                ScrollPoints.Builder request = ScrollPoints.newBuilder()
+                        .setCollectionName(collectionName)
+                        .setFilter(filter)
+                        .setLimit(upsertBatchSize)
+                        .setWithPayload(include(REFERENCE_FIELDS));
+                if (offset != null) {
+                    request.setOffset(offset);
+                }
+                ScrollResponse page = qdrantClient.scrollAsync(request.build()).get();
+
+                Map<String, List<VectorReference>> references = new HashMap<>();
+                for (RetrievedPoint point : page.getResultList()) {
+                    String vectorId = point.getId().getUuid();
+                    List<VectorReference> remaining = ChunkMetadataStore
+                            .referencesFromPayload(vectorId, point.getPayloadMap()).stream()
+                            .filter(reference -> !documentId.equals(reference.getDocumentId()))
+                            .toList();
+                    references.put(vectorId, remaining);
+                    if (remaining.isEmpty()) {
+                        deleted++;
+                    } else {
+                        kept++;
+                    }
+                }
+                if (!references.isEmpty()) {
+                    updateReferences(references);
+                }
+                offset = page.hasNextPageOffset() ? page.getNextPageOffset() : null;
+            } while (offset != null);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException("Interrupted while deleting vectors of document " + documentId, e);
+        } catch (ExecutionException e) {
+            throw new VectorStoreException("Failed to delete vectors of document " + documentId, e.getCause());
+        }
+        logger.info("Deleted " + deleted + " vectors for document: " + documentId +
+                   " (" + kept + " shared vectors kept)");
     }
 
     /**
@@ -106,7 +317,7 @@ public class QdrantVectorStore implements VectorStoreClient {
      * @param metadata      Updated metadata
      */
     @Override
-    public void updateEmbedding(String vectorId, List<Float> embedding, Map<String, Object> metadata) {
+    public void updateEmbedding(String vectorId, float[] embedding, Map<String, Object> metadata) {
         try {
             storeEmbedding(vectorId, embedding, metadata);
         } catch (Exception e) {
@@ -121,16 +332,62 @@ public class QdrantVectorStore implements VectorStoreClient {
      */
     @Override
     public boolean exists(String vectorId) {
-        return metadataCache.containsKey(vectorId);
+        try {
+            return metadataStore.exists(vectorId);
+        } catch (IllegalArgumentException e) {
+            // Not a UUID, so it can't be a Qdrant point ID
+            return false;
+        }
+    }
+
+    /**
+     * List point IDs with a scroll over the collection (in point ID order, no payload
+     * or vectors). The cursor is the next page's first point ID.
+     * @param cursor    Cursor from the previous page (null = first page)
+     * @param limit     Maximum vector IDs per page
+     * @return The page and the cursor of the next one
+     */
+    @Override
+    public VectorIdPage listVectorIds(String cursor, int limit) {
+        ScrollPoints.Builder request = ScrollPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setLimit(limit)
+                .setWithPayload(enable(false));
+        if (cursor != null) {
+            request.setOffset(id(UUID.fromString(cursor)));
+        }
+        try {
+            ScrollResponse page = qdrantClient.scrollAsync(request.build()).get();
+            List<String> vectorIds = new ArrayList<>(page.getResultCount());
+            for (RetrievedPoint point : page.getResultList()) {
+                vectorIds.add(point.getId().getUuid());
+            }
+            return new VectorIdPage(vectorIds, page.hasNextPageOffset() ? page.getNextPageOffset().getUuid() : null);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException("Interrupted while listing vectors", e);
+        } catch (ExecutionException e) {
+            throw new VectorStoreException("Failed to list vectors", e.getCause());
+        }
     }
 
     /**
      * Clear all embeddings from the collection (use with caution - typically for testing).
+     * Deletes every point with an empty (match-all) filter; the collection, its
+     * configuration and payload indexes are kept.
      */
     @Override
     public void deleteAll() {
-        logger.warning("deleteAll() not supported via EmbeddingStore interface");
-        metadataCache.clear();
+        try {
+            qdrantClient.deleteAsync(collectionName, Filter.getDefaultInstance()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreException("Interrupted while deleting all vectors", e);
+        } catch (ExecutionException e) {
+            throw new VectorStoreException("Failed to delete all vectors", e.getCause());
+        }
+        logger.info("Deleted all vectors from collection: " + collectionName);
     }
 
     /**
@@ -140,7 +397,7 @@ public class QdrantVectorStore implements VectorStoreClient {
     @Override
     public boolean isHealthy() {
         try {
-            return embeddingStore != null;
+            return qdrantClient != null;
         } catch (Exception e) {
             logger.warning("Vector store health check failed: " + e.getMessage());
             return false;
@@ -150,60 +407,95 @@ public class QdrantVectorStore implements VectorStoreClient {
     // ==================== Helper Methods ====================
 
     /**
-     * Extract document_id from EmbeddingMatch metadata.
-     * @param match The EmbeddingMatch object
-     * @return The document_id if available, else null
+     * Build a Qdrant point (UUID id, vector and metadata payload) from a record.
      */
-    private String getDocumentIdFromMatch(EmbeddingMatch<String> match) {
-        String vectorId = match.embeddingId();
-        if (metadataCache.containsKey(vectorId)) {
-            Map<String, Object> metadata = metadataCache.get(vectorId);
-            Object docId = metadata.get("document_id");
-            return docId != null ? docId.toString() : null;
+    private PointStruct toPoint(VectorRecord record) {
+        UUID pointId;
+        try {
+            pointId = UUID.fromString(record.getVectorId());
+        } catch (IllegalArgumentException e) {
+            throw new VectorStoreException("Qdrant point IDs must be UUIDs: " + record.getVectorId(), e);
         }
-        return null;
+
+        return PointStruct.newBuilder()
+                .setId(id(pointId))
+                .setVectors(vectors(record.getEmbedding()))
+                .putAllPayload(toPayload(record.getMetadata()))
+                .build();
     }
 
     /**
-     * Convert EmbeddingMatch to VectorSearchResult.
+     * Convert metadata values to Qdrant payload values (null entries are skipped).
      */
-    private VectorSearchResult convertEmbeddingMatch(EmbeddingMatch<String> match) {
-        String vectorId = match.embeddingId();
-        Map<String, Object> metadata = metadataCache.getOrDefault(vectorId, new HashMap<>());
-
-        return VectorSearchResult.builder()
-                .vectorId(vectorId)
-                .score(Math.max(0.0, Math.min(1.0, match.score())))
-                .documentId(getStringValue(metadata, "document_id"))
-                .chunkIndex(getIntValue(metadata))
-                .content(getStringValue(metadata, "content"))
-                .source(getStringValue(metadata, "source"))
-                .build();
+    private Map<String, Value> toPayload(Map<String, Object> metadata) {
+        Map<String, Value> payload = new HashMap<>();
+        if (metadata == null) {
+            return payload;
+        }
+        metadata.forEach((key, raw) -> {
+            if (raw instanceof Integer || raw instanceof Long) {
+                payload.put(key, value(((Number) raw).longValue()));
+            } else if (raw instanceof Number) {
+                payload.put(key, value(((Number) raw).doubleValue()));
+            } else if (raw instanceof Boolean) {
+                payload.put(key, value((Boolean) raw));
+            } else if (raw != null) {
+                payload.put(key, value(raw.toString()));
+            }
+        });
+        return payload;
     }
 
     /**
-     * Extract string value from metadata map.
+     * Translate a SearchFilter into a Qdrant payload filter (one must clause per restricted
+     * field, a must_not clause for excluded documents). A shared point referenced by an
+     * excluded document is excluded too until its references are rewritten.
      */
-    private String getStringValue(Map<String, Object> map, String key) {
-        Object value = map.get(key);
-        return value != null ? value.toString() : null;
+    private Filter toFilter(SearchFilter filter) {
+        Filter.Builder builder = Filter.newBuilder();
+        if (filter.hasDocumentIds()) {
+            builder.addMust(matchKeywords("document_id", new ArrayList<>(filter.getDocumentIds())));
+        }
+        if (filter.hasOwners()) {
+            builder.addMust(matchKeywords("owner", new ArrayList<>(filter.getOwners())));
+        }
+        if (filter.hasExcludedDocumentIds()) {
+            builder.addMustNot(matchKeywords("document_id", new ArrayList<>(filter.getExcludedDocumentIds())));
+        }
+        return builder.build();
     }
 
     /**
-     * Extract integer chunk_index value from metadata map.
+     * Convert a scored point to VectorSearchResult.
+     * Qdrant returns raw cosine similarity; it is mapped to (cos + 1) / 2, the relevance
+     * score previously reported through LangChain4j, so confidence thresholds are unchanged.
+     *
+     * A shared point is reported as its first reference that passes the filter. Qdrant
+     * matches the document and owner lists independently, so a point can match through
+     * two different references; it is then dropped (null) as no single reference passes.
      */
-    private Integer getIntValue(Map<String, Object> map) {
-        Object value = map.get("chunk_index");
-        if (value == null) {
-            return null;
-        }
-        try {
-            if (value instanceof Integer) {
-                return (Integer) value;
+    private VectorSearchResult toSearchResult(ScoredPoint point, SearchFilter filter) {
+        String vectorId = point.getId().getUuid();
+        ChunkMetadata metadata = ChunkMetadataStore.fromPayload(point.getPayloadMap());
+        VectorReference reference = null;
+        for (VectorReference candidate : ChunkMetadataStore.referencesFromPayload(vectorId, point.getPayloadMap())) {
+            if (filter == null || filter.matches(candidate.getDocumentId(), candidate.getOwner())) {
+                reference = candidate;
+                break;
             }
-            return Integer.parseInt(value.toString());
-        } catch (NumberFormatException e) {
+        }
+        if (reference == null) {
             return null;
         }
+        double relevance = (point.getScore() + 1.0) / 2.0;
+        return VectorSearchResult.builder()
+                .vectorId(vectorId)
+                .chunkId(reference.getChunkId())
+                .score(Math.max(0.0, Math.min(1.0, relevance)))
+                .documentId(reference.getDocumentId())
+                .chunkIndex(reference.getChunkIndex())
+                .content(metadata.getContent())
+                .source(metadata.getSource())
+                .build();
     }
 }
@@ -0,0 +1,85 @@
+package com.genai.knowitall.vectorstore;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * Payload filter applied by the vector store during search (not after it).
+ * A chunk matches when its document_id is in documentIds (if set) AND its
+ * owner is in owners (if set), and its document_id is not in excludedDocumentIds.
+ * Empty or null sets mean "no restriction".
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SearchFilter {
+
+    /**
+     * Allowed document IDs (payload key: document_id)
+     */
+    private Set<String> documentIds;
+
+    /**
+     * Allowed document owners (payload key: owner)
+     */
+    private Set<String> owners;
+
+    /**
+     * Document IDs never returned (documents deleted but not yet purged from the store)
+     */
+    private Set<String> excludedDocumentIds;
+
+    /**
+     * Filter for a single document; null or empty ID yields an unrestricted filter.
+     */
+    public static SearchFilter forDocument(String documentId) {
+        if (documentId == null || documentId.isEmpty()) {
+            return new SearchFilter();
+        }
+        return SearchFilter.builder().documentIds(Set.of(documentId)).build();
+    }
+
+    public boolean hasDocumentIds() {
+        return documentIds != null && !documentIds.isEmpty();
+    }
+
+    public boolean hasOwners() {
+        return owners != null && !owners.isEmpty();
+    }
+
+    public boolean hasExcludedDocumentIds() {
+        return excludedDocumentIds != null && !excludedDocumentIds.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return !hasDocumentIds() && !hasOwners() && !hasExcludedDocumentIds();
+    }
+
+    /**
+     * Copy of this filter that also excludes the given documents (this filter if there are none).
+     */
+    public SearchFilter excluding(Set<String> documentIds) {
+        if (documentIds == null || documentIds.isEmpty()) {
+            return this;
+        }
+        return new SearchFilter(this.documentIds, owners, Set.copyOf(documentIds));
+    }
+
+    /**
+     * Whether a chunk of the given document and owner passes this filter.
+     */
+    public boolean matches(String documentId, String owner) {
+        if (hasDocumentIds() && (documentId == null || !documentIds.contains(documentId))) {
+            return false;
+        }
+        if (hasExcludedDocumentIds() && documentId != null && excludedDocumentIds.contains(documentId)) {
+            return false;
+        }
+        return !hasOwners() || (owner != null && owners.contains(owner));
+    }
+}
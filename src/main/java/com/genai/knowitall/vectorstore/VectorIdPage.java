@@ -0,0 +1,24 @@
+package com.genai.knowitall.vectorstore;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of vector IDs from a full scan of the store (see VectorStoreClient.listVectorIds).
+ */
+@Data
+@AllArgsConstructor
+public class VectorIdPage {
+
+    /**
+     * Vector IDs of this page
+     */
+    private List<String> vectorIds;
+
+    /**
+     * Cursor for the next page, or null when the scan is complete
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,43 @@
+package com.genai.knowitall.vectorstore;
+
+import java.util.Locale;
+
+/**
+ * How vectors are compressed for search (vectorstore.quantization).
+ *
+ * Quantized vectors only rank candidates: the search fetches oversampling times as many
+ * as requested and rescores them against the original float vectors, which are kept
+ * out of RAM (on disk in Qdrant, in a memory-mapped file for the in-process index).
+ */
+public enum VectorQuantization {
+
+    /**
+     * Full-precision float32 vectors (4 bytes per dimension)
+     */
+    NONE,
+
+    /**
+     * Scalar int8 quantization: one byte per dimension plus a scale per vector (~4x smaller)
+     */
+    INT8,
+
+    /**
+     * Binary quantization: the sign of each dimension, one bit per dimension (32x smaller)
+     */
+    BINARY;
+
+    /**
+     * Parse a property value (none, int8 or binary; case-insensitive, blank = none).
+     */
+    public static VectorQuantization parse(String value) {
+        if (value == null || value.isBlank()) {
+            return NONE;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown vector quantization '" + value +
+                    "' (expected none, int8 or binary)", e);
+        }
+    }
+}
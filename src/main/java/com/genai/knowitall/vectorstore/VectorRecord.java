@@ -0,0 +1,31 @@
+package com.genai.knowitall.vectorstore;
+
+import lombok.*;
+
+import java.util.Map;
+
+/**
+ * A single point to write to the vector store: vector ID, embedding and metadata.
+ * Used by VectorStoreClient.storeEmbeddings() for bulk ingestion.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VectorRecord {
+
+    /**
+     * Unique identifier for the vector (typically documentChunk.id)
+     */
+    private String vectorId;
+
+    /**
+     * The embedding vector (e.g., 1536 dimensions for OpenAI); not copied, must not be modified
+     */
+    private float[] embedding;
+
+    /**
+     * Key-value metadata (document_id, chunk_index, content, etc.)
+     */
+    private Map<String, Object> metadata;
+}
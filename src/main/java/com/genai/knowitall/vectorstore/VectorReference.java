@@ -0,0 +1,36 @@
+package com.genai.knowitall.vectorstore;
+
+import lombok.*;
+
+/**
+ * A chunk referencing a stored vector.
+ * Chunks with identical content share one vector; each of them (one per document is
+ * enough for filtering) is a reference, so searches restricted to any referencing
+ * document or owner still find the vector.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VectorReference {
+
+    /**
+     * ID of the referencing chunk
+     */
+    private String chunkId;
+
+    /**
+     * Document the chunk belongs to
+     */
+    private String documentId;
+
+    /**
+     * Owner of that document (may be null)
+     */
+    private String owner;
+
+    /**
+     * Sequential index of the chunk within its document
+     */
+    private Integer chunkIndex;
+}
@@ -9,14 +9,20 @@ import lombok.*;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class VectorSearchResult {
 
     /**
-     * The vector ID (typically documentChunk.id)
+     * The vector ID (shared by all chunks with the same content)
      */
     private String vectorId;
 
+    /**
+     * The chunk this result stands for: one of the chunks referencing the vector, in a
+     * document that passes the search filter (null = the chunk whose ID is vectorId)
+     */
+    private String chunkId;
+
     /**
      * Similarity score (0.0 to 1.0, where 1.0 is identical)
      */
@@ -41,4 +47,11 @@ public class VectorSearchResult {
      * Source/filename for reference
      */
     private String source;
+
+    /**
+     * ID of the chunk to resolve this result to (chunkId, or vectorId when not set).
+     */
+    public String resolvedChunkId() {
+        return chunkId != null ? chunkId : vectorId;
+    }
 }
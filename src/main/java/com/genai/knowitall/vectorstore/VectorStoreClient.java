@@ -7,8 +7,11 @@ import java.util.Map;
  * Abstraction layer for vector database operations.
  * Defines the contract for storing, retrieving, and managing document embeddings.
  *
- * Implementation: Qdrant (via LangChain4j)
+ * Implementations: Qdrant (QdrantVectorStore, gRPC), in-process HNSW (HnswVectorStore)
  * Purpose: Language-agnostic interface to allow swapping implementations
+ *
+ * Vectors are passed as primitive float[] (no boxing on the hot path). Implementations
+ * must not modify or retain caller-owned arrays beyond copying them into storage.
  */
 public interface VectorStoreClient {
 
@@ -19,7 +22,16 @@ public interface VectorStoreClient {
      * @param embedding     The embedding vector (e.g., 1536 dimensions for OpenAI)
      * @param metadata      Key-value metadata (document_id, chunk_index, content, etc.)
      */
-    void storeEmbedding(String vectorId, List<Float> embedding, Map<String, Object> metadata);
+    void storeEmbedding(String vectorId, float[] embedding, Map<String, Object> metadata);
+
+    /**
+     * Store many chunks in bulk (ingestion path).
+     * Implementations write in batches instead of one round trip per chunk.
+     *
+     * @param records   Vectors to store; existing vector IDs are overwritten
+     * @throws VectorStoreException if any batch fails
+     */
+    void storeEmbeddings(List<VectorRecord> records);
 
     /**
      * Semantic search: find top-K most similar chunks for a query embedding.
@@ -29,12 +41,39 @@ public interface VectorStoreClient {
      * @param documentFilter    Optional document ID to filter search results (null = search all)
      * @return List of SearchResult objects (sorted by similarity, highest first)
      */
-    List<VectorSearchResult> search(List<Float> queryEmbedding, int topK, String documentFilter);
+    default List<VectorSearchResult> search(float[] queryEmbedding, int topK, String documentFilter) {
+        return search(queryEmbedding, topK, SearchFilter.forDocument(documentFilter));
+    }
+
+    /**
+     * Semantic search restricted by a payload filter.
+     * The filter is applied inside the vector search, so a filtered query still
+     * returns up to topK matching chunks.
+     *
+     * @param queryEmbedding    The query vector (same dimensions as stored embeddings)
+     * @param topK              Number of results to return
+     * @param filter            Document/owner restrictions (null or empty = search all)
+     * @return List of SearchResult objects (sorted by similarity, highest first)
+     */
+    List<VectorSearchResult> search(float[] queryEmbedding, int topK, SearchFilter filter);
+
+    /**
+     * Replace the chunks that shared vectors answer for.
+     * A vector stored once for some content is referenced by every chunk with that
+     * content; filtered searches match it for any referencing document or owner, and
+     * results report the first reference that passes the filter.
+     *
+     * @param referencesByVectorId  All references per vector; an empty list removes the vector
+     * @throws VectorStoreException if the update fails
+     */
+    void updateReferences(Map<String, List<VectorReference>> referencesByVectorId);
 
     /**
-     * Delete all embeddings associated with a document.
+     * Delete all embeddings associated with a document, selected by their document_id
+     * (in batches). Shared vectors that other documents still reference are kept for them.
      *
      * @param documentId    The ID of the document to delete
+     * @throws VectorStoreException if the delete fails (it can be retried)
      */
     void deleteDocument(String documentId);
 
@@ -45,7 +84,7 @@ public interface VectorStoreClient {
      * @param embedding     The new embedding vector
      * @param metadata      Updated metadata
      */
-    void updateEmbedding(String vectorId, List<Float> embedding, Map<String, Object> metadata);
+    void updateEmbedding(String vectorId, float[] embedding, Map<String, Object> metadata);
 
     /**
      * Check if a vector ID exists in the store.
@@ -55,6 +94,33 @@ public interface VectorStoreClient {
      */
     boolean exists(String vectorId);
 
+    /**
+     * Whether stored vectors survive a restart. Vector IDs recorded elsewhere (chunks,
+     * shared vectors) must be checked with exists() before reuse when they do not.
+     *
+     * @return true if the store is persistent (default), false if it is in-memory only
+     */
+    default boolean isPersistent() {
+        return true;
+    }
+
+    /**
+     * List the stored vector IDs one page at a time (a full scan, e.g. to find orphaned
+     * vectors). Vectors stored or deleted during the scan may or may not be listed.
+     *
+     * @param cursor    Cursor from the previous page (null = first page)
+     * @param limit     Maximum vector IDs per page
+     * @return The page and the cursor of the next one
+     */
+    VectorIdPage listVectorIds(String cursor, int limit);
+
+    /**
+     * Reclaim the space of deleted vectors, if the store does not do so on its own.
+     * Searches keep working while this runs.
+     */
+    default void compact() {
+    }
+
     /**
      * Clear all embeddings from the collection (use with caution - typically for testing).
      */
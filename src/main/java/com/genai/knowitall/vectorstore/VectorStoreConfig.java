@@ -1,8 +1,9 @@
 package com.genai.knowitall.vectorstore;
 
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QdrantGrpcClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpEntity;
@@ -12,12 +13,24 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 
 /**
- * Configuration class to set up LangChain4j EmbeddingStore backed by Qdrant.
- * Creates the Qdrant collection if it does not exist, then initializes the store.
+ * Configuration class to set up the VectorStoreClient.
+ *
+ * Backend is selected by vectorstore.type:
+ * - qdrant (default): Qdrant over gRPC. Creates the collection and the keyword
+ *   payload indexes used for filtered search if they do not exist.
+ * - hnsw: in-process HNSW index (HnswVectorStore), no external dependency.
+ *
+ * vectorstore.quantization (none, int8, binary) applies to both: Qdrant gets a
+ * quantization config with the original vectors on disk, and searches with
+ * oversampling and rescoring; the HNSW index keeps quantized codes in memory and
+ * rescores against memory-mapped originals.
  */
 @Configuration
 public class VectorStoreConfig {
@@ -42,26 +55,55 @@ public class VectorStoreConfig {
     @Value("${qdrant.vector.size:1536}")
     private int vectorSize;
 
+    @Value("${qdrant.timeout.seconds:30}")
+    private int qdrantTimeoutSeconds;
+
+    @Value("${qdrant.upsert.batch.size:256}")
+    private int upsertBatchSize;
+
+    @Value("${qdrant.upsert.max-in-flight:4}")
+    private int upsertMaxInFlight;
+
+    @Value("${hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${hnsw.ef.construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${hnsw.ef.search:100}")
+    private int hnswEfSearch;
+
+    @Value("${hnsw.originals.dir:}")
+    private String hnswOriginalsDir;
+
+    @Value("${vectorstore.quantization:none}")
+    private String quantization;
+
+    @Value("${vectorstore.quantization.oversampling:3.0}")
+    private double quantizationOversampling;
+
     /**
-     * Create EmbeddingStore bean using Qdrant implementation from LangChain4j.
-     * Ensures the collection exists (creates it via REST if missing).
+     * Create the shared Qdrant gRPC client.
+     * Ensures the collection and its payload indexes exist (created via REST if missing).
      */
     @Bean
-    public EmbeddingStore<String> embeddingStore() {
-        logger.info("Initializing Qdrant EmbeddingStore: " + qdrantHost + ":" + qdrantPort +
+    @ConditionalOnProperty(name = "vectorstore.type", havingValue = "qdrant", matchIfMissing = true)
+    public QdrantClient qdrantClient() {
+        logger.info("Initializing Qdrant client: " + qdrantHost + ":" + qdrantPort +
                     ", collection: " + collectionName);
 
         try {
             ensureCollectionExists();
-            QdrantEmbeddingStore store = QdrantEmbeddingStore.builder()
-                    .host(qdrantHost)
-                    .port(qdrantPort)
-                    .collectionName(collectionName)
-                    .build();
-            logger.info("✓ Qdrant EmbeddingStore initialized successfully");
-            return (EmbeddingStore<String>) (EmbeddingStore<?>) store;
+            ensurePayloadIndex("document_id");
+            ensurePayloadIndex("owner");
+            QdrantGrpcClient.Builder grpcClient = QdrantGrpcClient.newBuilder(qdrantHost, qdrantPort, false)
+                    .withTimeout(Duration.ofSeconds(qdrantTimeoutSeconds));
+            if (qdrantApiKey != null && !qdrantApiKey.isEmpty()) {
+                grpcClient.withApiKey(qdrantApiKey);
+            }
+            return new QdrantClient(grpcClient.build());
         } catch (Exception e) {
-            String msg = "Failed to initialize Qdrant EmbeddingStore at " + qdrantHost + ":" + qdrantPort;
+            String msg = "Failed to initialize Qdrant client at " + qdrantHost + ":" + qdrantPort;
             logger.severe(msg);
             logger.severe("Make sure Qdrant is running. Use gRPC port 6334. Example: docker run -p 6333:6333 -p 6334:6334 qdrant/qdrant");
             throw new RuntimeException(msg, e);
@@ -77,23 +119,33 @@ public class VectorStoreConfig {
         RestTemplate rest = new RestTemplate();
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        // Request body: {"vectors": {"size": 1536, "distance": "Cosine"}}
-        Map<String, Object> vectorsConfig = Map.of(
-                "size", vectorSize,
-                "distance", "Cosine"
-        );
-        Map<String, Object> body = Map.of("vectors", vectorsConfig);
+        // Request body: {"vectors": {"size": 1536, "distance": "Cosine"}}, plus with quantization
+        // "on_disk": true (originals only read for rescoring) and {"quantization_config": {...}}
+        Map<String, Object> quantizationConfig = quantizationConfig(VectorQuantization.parse(quantization));
+        Map<String, Object> vectorsConfig = new HashMap<>();
+        vectorsConfig.put("size", vectorSize);
+        vectorsConfig.put("distance", "Cosine");
+        Map<String, Object> body = new HashMap<>();
+        body.put("vectors", vectorsConfig);
+        if (quantizationConfig != null) {
+            vectorsConfig.put("on_disk", true);
+            body.put("quantization_config", quantizationConfig);
+        }
         HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
         try {
             ResponseEntity<String> response = rest.exchange(url, HttpMethod.PUT, request, String.class);
             if (response.getStatusCode().is2xxSuccessful()) {
-                logger.info("Created Qdrant collection: " + collectionName);
+                logger.info("Created Qdrant collection: " + collectionName +
+                           (quantizationConfig != null ? " (quantization: " + quantization + ")" : ""));
             }
         } catch (Exception e) {
             // 409 or 400 may mean collection already exists
             String msg = e.getMessage();
             if (msg != null && (msg.contains("409") || msg.contains("already exists") || msg.contains("400"))) {
                 logger.fine("Collection " + collectionName + " already exists or creation returned: " + msg);
+                if (quantizationConfig != null) {
+                    updateQuantization(quantizationConfig);
+                }
                 return;
             }
             logger.warning("Could not ensure Qdrant collection exists (will fail on first upsert if missing): " + e.getMessage());
@@ -101,13 +153,93 @@ public class VectorStoreConfig {
     }
 
     /**
-     * Create VectorStoreClient bean using the EmbeddingStore.
-     * @param embeddingStore LangChain4j EmbeddingStore bean
+     * Apply the quantization config to an existing collection, and move its original
+     * vectors on disk as a new collection would have them (PATCH; Qdrant builds the
+     * quantized vectors and rewrites the segments in the background).
+     */
+    private void updateQuantization(Map<String, Object> quantizationConfig) {
+        String url = "http://" + qdrantHost + ":" + qdrantRestPort + "/collections/" + collectionName;
+        RestTemplate rest = new RestTemplate();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        // Request body: {"vectors": {"": {"on_disk": true}}, "quantization_config": {...}}
+        // ("" is the collection's unnamed vector)
+        Map<String, Object> body = Map.of(
+                "vectors", Map.of("", Map.of("on_disk", true)),
+                "quantization_config", quantizationConfig
+        );
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
+        try {
+            rest.exchange(url, HttpMethod.PATCH, request, String.class);
+            logger.info("Updated quantization of Qdrant collection " + collectionName + " to: " + quantization +
+                       " (original vectors move on disk as segments are optimized)");
+        } catch (Exception e) {
+            logger.warning("Could not update quantization of collection " + collectionName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Qdrant quantization_config for the setting (null = none). Quantized vectors are
+     * kept in RAM; int8 clips outliers at the 0.99 quantile.
+     */
+    private static Map<String, Object> quantizationConfig(VectorQuantization quantization) {
+        return switch (quantization) {
+            case INT8 -> Map.of("scalar", Map.of("type", "int8", "quantile", 0.99, "always_ram", true));
+            case BINARY -> Map.of("binary", Map.of("always_ram", true));
+            case NONE -> null;
+        };
+    }
+
+    /**
+     * Create a keyword payload index via REST API so filters on the field are evaluated
+     * inside the vector search instead of scanning payloads. Idempotent on the Qdrant side.
+     */
+    private void ensurePayloadIndex(String fieldName) {
+        String url = "http://" + qdrantHost + ":" + qdrantRestPort + "/collections/" + collectionName + "/index";
+        RestTemplate rest = new RestTemplate();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        // Request body: {"field_name": "document_id", "field_schema": "keyword"}
+        Map<String, Object> body = Map.of(
+                "field_name", fieldName,
+                "field_schema", "keyword"
+        );
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
+        try {
+            rest.exchange(url, HttpMethod.PUT, request, String.class);
+            logger.fine("Ensured keyword payload index on " + collectionName + "." + fieldName);
+        } catch (Exception e) {
+            logger.warning("Could not create payload index on " + fieldName +
+                          " (filtered search will be slower): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create VectorStoreClient bean using the gRPC client.
+     * @param qdrantClient Qdrant gRPC client (bulk writes, filtered search)
      * @return VectorStoreClient implementation
      */
     @Bean
-    public VectorStoreClient vectorStoreClient(EmbeddingStore<String> embeddingStore) {
+    @ConditionalOnProperty(name = "vectorstore.type", havingValue = "qdrant", matchIfMissing = true)
+    public VectorStoreClient vectorStoreClient(QdrantClient qdrantClient) {
         logger.info("Creating QdrantVectorStore service bean");
-        return new QdrantVectorStore(embeddingStore);
+        ChunkMetadataStore metadataStore = new ChunkMetadataStore(qdrantClient, collectionName);
+        return new QdrantVectorStore(qdrantClient, collectionName,
+                upsertBatchSize, upsertMaxInFlight, metadataStore,
+                VectorQuantization.parse(quantization), quantizationOversampling);
+    }
+
+    /**
+     * Create in-process HNSW VectorStoreClient bean (vectorstore.type=hnsw).
+     * Dimension comes from qdrant.vector.size so both backends share one setting.
+     * @return HnswVectorStore implementation
+     */
+    @Bean
+    @ConditionalOnProperty(name = "vectorstore.type", havingValue = "hnsw")
+    public VectorStoreClient hnswVectorStoreClient() {
+        logger.info("Creating HnswVectorStore service bean");
+        Path originalsDir = hnswOriginalsDir == null || hnswOriginalsDir.isBlank() ? null : Path.of(hnswOriginalsDir);
+        return new HnswVectorStore(vectorSize, hnswM, hnswEfConstruction, hnswEfSearch,
+                VectorQuantization.parse(quantization), quantizationOversampling, originalsDir);
     }
 }
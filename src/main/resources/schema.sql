@@ -36,6 +36,11 @@ CREATE TABLE IF NOT EXISTS document_chunks (
     vector_id VARCHAR(255),
     metadata JSON,
     token_count INT,
+    content_hash VARCHAR(64),
+    embedding_model VARCHAR(255),
+    page_start INT,
+    page_end INT,
+    revision INT NOT NULL DEFAULT 0,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 
@@ -47,6 +52,44 @@ CREATE TABLE IF NOT EXISTS document_chunks (
 CREATE INDEX IF NOT EXISTS idx_document_id ON document_chunks(document_id);
 CREATE INDEX IF NOT EXISTS idx_vector_id ON document_chunks(vector_id);
 CREATE INDEX IF NOT EXISTS idx_chunk_index ON document_chunks(document_id, chunk_index);
+CREATE INDEX IF NOT EXISTS idx_content_hash ON document_chunks(content_hash);
+
+-- Shared Vectors Table
+-- One stored embedding per distinct chunk content and embedding model, referenced by chunks
+CREATE TABLE IF NOT EXISTS shared_vectors (
+    vector_id VARCHAR(36) PRIMARY KEY,
+    content_hash VARCHAR(64) NOT NULL,
+    embedding_model VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Create indexes for shared_vectors table
+CREATE INDEX IF NOT EXISTS idx_shared_vector_hash ON shared_vectors(content_hash, embedding_model);
+
+-- Ingestion Jobs Table
+-- Durable ingestion queue: one job per document, claimed by workers under a lease
+CREATE TABLE IF NOT EXISTS ingestion_jobs (
+    document_id VARCHAR(36) PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    spool_path VARCHAR(1024) NOT NULL,
+    content_type VARCHAR(255),
+    filename VARCHAR(255),
+    size_bytes BIGINT,
+    priority_at TIMESTAMP,
+    incremental BOOLEAN NOT NULL DEFAULT FALSE,
+    revision INT NOT NULL DEFAULT 0,
+    chunks_checkpoint INT NOT NULL DEFAULT 0,
+    chunking_complete BOOLEAN NOT NULL DEFAULT FALSE,
+    attempts INT NOT NULL DEFAULT 0,
+    lease_owner VARCHAR(255),
+    lease_expires_at TIMESTAMP,
+    last_error CLOB,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP
+);
+
+-- Create indexes for ingestion_jobs table
+CREATE INDEX IF NOT EXISTS idx_ingestion_job_status ON ingestion_jobs(status, priority_at);
 
 -- =====================================================
 -- Performance Indexes Summary
@@ -60,6 +103,15 @@ CREATE INDEX IF NOT EXISTS idx_chunk_index ON document_chunks(document_id, chunk
 --   - idx_document_id: Fast retrieval of all chunks for a document
 --   - idx_vector_id: Fast tracking of vector embeddings
 --   - idx_chunk_index: Fast retrieval in document order
+--   - idx_content_hash: Fast lookup of chunks sharing a vector by content
+--   - page_start/page_end: Source page range, for citations (no index)
+--
+-- shared_vectors:
+--   - idx_shared_vector_hash: Fast reuse of an existing embedding for identical content
+--
+-- ingestion_jobs:
+--   - idx_ingestion_job_status: Fast claim of the next queued job in priority order,
+--     and of RUNNING jobs whose lease has expired
 --
 -- Foreign Keys:
 --   - ON DELETE CASCADE: Automatically deletes chunks when document is deleted
@@ -0,0 +1,95 @@
+package com.genai.knowitall.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingCacheTest {
+
+    private static final String MODEL = "text-embedding-3-small";
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void diskEntriesSurviveARestartAtHalfPrecision() {
+        float[] vector = randomVector(new Random(1), 256);
+        new EmbeddingCache(true, 10, cacheDir.toString()).put(MODEL, "chunk text", vector);
+
+        float[] restored = new EmbeddingCache(true, 10, cacheDir.toString()).get(MODEL, "chunk text");
+
+        assertNotNull(restored);
+        assertEquals(vector.length, restored.length);
+        for (int i = 0; i < vector.length; i++) {
+            // fp16 keeps 11 significant bits
+            assertEquals(vector[i], restored[i], Math.abs(vector[i]) / 1024 + 1e-7f, "component " + i);
+        }
+    }
+
+    @Test
+    void entriesAreKeyedByModelName() {
+        EmbeddingCache cache = new EmbeddingCache(true, 10, cacheDir.toString());
+        float[] small = {0.25f, -0.5f};
+        float[] large = {0.75f, 0.125f};
+        cache.put(MODEL, "chunk text", small);
+        cache.put("text-embedding-3-large", "chunk text", large);
+
+        assertArrayEquals(small, cache.get(MODEL, "chunk text"));
+        assertArrayEquals(large, cache.get("text-embedding-3-large", "chunk text"));
+        assertNull(cache.get("text-embedding-ada-002", "chunk text"));
+
+        // Also on disk, after a restart
+        EmbeddingCache restarted = new EmbeddingCache(true, 10, cacheDir.toString());
+        assertArrayEquals(small, restarted.get(MODEL, "chunk text"));
+        assertArrayEquals(large, restarted.get("text-embedding-3-large", "chunk text"));
+        assertNotEquals(EmbeddingCache.key(MODEL, "chunk text"), EmbeddingCache.key("text-embedding-3-large", "chunk text"));
+    }
+
+    @Test
+    void entryEvictedFromMemoryIsReadBackFromDisk() {
+        EmbeddingCache cache = new EmbeddingCache(true, 1, cacheDir.toString());
+        cache.put(MODEL, "first", new float[]{1f, 0f});
+        cache.put(MODEL, "second", new float[]{0f, 1f});
+
+        assertArrayEquals(new float[]{1f, 0f}, cache.get(MODEL, "first"));
+    }
+
+    @Test
+    void unreadableDiskEntryIsDiscarded() throws IOException {
+        EmbeddingCache cache = new EmbeddingCache(true, 10, cacheDir.toString());
+        String key = EmbeddingCache.key(MODEL, "chunk text");
+        Path entry = cacheDir.resolve(key.substring(0, 2)).resolve(key + ".f16");
+        Files.createDirectories(entry.getParent());
+        Files.write(entry, new byte[]{0, 0});
+
+        assertNull(cache.get(MODEL, "chunk text"));
+        assertFalse(Files.exists(entry));
+    }
+
+    @Test
+    void disabledCacheStoresNothing() throws IOException {
+        EmbeddingCache cache = new EmbeddingCache(false, 10, cacheDir.toString());
+        cache.put(MODEL, "chunk text", new float[]{1f});
+
+        assertNull(cache.get(MODEL, "chunk text"));
+        try (var files = Files.list(cacheDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian() * 0.05f;
+        }
+        return vector;
+    }
+}
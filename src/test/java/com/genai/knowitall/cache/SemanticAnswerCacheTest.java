@@ -0,0 +1,106 @@
+package com.genai.knowitall.cache;
+
+import com.genai.knowitall.controller.dto.QueryResponse;
+import com.genai.knowitall.controller.dto.SourceReference;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SemanticAnswerCacheTest {
+
+    private static final String SCOPE = SemanticAnswerCache.scopeKey(5, 0.7, Set.of(), Set.of());
+    private static final float[] QUESTION = {1f, 0f};
+
+    @Test
+    void hitsAtOrAboveTheSimilarityThresholdOnly() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(true, 0.95, 3600, 10);
+        cache.put(SCOPE, QUESTION, grounded("answer", "doc-a"), cache.currentVersion());
+
+        // cos = 0.98 and 0.89
+        assertEquals("answer", cache.lookup(SCOPE, new float[]{1f, 0.2f}).orElseThrow().getAnswer());
+        assertTrue(cache.lookup(SCOPE, new float[]{1f, 0.5f}).isEmpty());
+        // Scale does not matter, only direction
+        assertTrue(cache.lookup(SCOPE, new float[]{3f, 0f}).isPresent());
+    }
+
+    @Test
+    void scopesAreIsolated() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(true, 0.95, 3600, 10);
+        cache.put(SCOPE, QUESTION, grounded("answer", "doc-a"), cache.currentVersion());
+
+        assertTrue(cache.lookup(SemanticAnswerCache.scopeKey(3, 0.7, Set.of(), Set.of()), QUESTION).isEmpty());
+        assertTrue(cache.lookup(SemanticAnswerCache.scopeKey(5, 0.7, Set.of("doc-a"), Set.of()), QUESTION).isEmpty());
+        assertTrue(cache.lookup(SemanticAnswerCache.scopeKey(5, 0.7, Set.of(), Set.of("alice")), QUESTION).isEmpty());
+        // Filter order does not change the scope
+        assertEquals(SemanticAnswerCache.scopeKey(5, 0.7, List.of("b", "a"), List.of()),
+                SemanticAnswerCache.scopeKey(5, 0.7, List.of("a", "b"), List.of()));
+    }
+
+    @Test
+    void expiredEntriesAreNotServed() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(true, 0.95, 0, 10);
+        cache.put(SCOPE, QUESTION, grounded("answer", "doc-a"), cache.currentVersion());
+
+        assertTrue(cache.lookup(SCOPE, QUESTION).isEmpty());
+    }
+
+    @Test
+    void oldestEntryIsEvictedBeyondMaxEntries() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(true, 0.95, 3600, 2);
+        float[] first = {1f, 0f, 0f};
+        float[] second = {0f, 1f, 0f};
+        float[] third = {0f, 0f, 1f};
+        cache.put(SCOPE, first, grounded("first", "doc-a"), cache.currentVersion());
+        cache.put(SCOPE, second, grounded("second", "doc-a"), cache.currentVersion());
+        cache.put(SCOPE, third, grounded("third", "doc-a"), cache.currentVersion());
+
+        assertTrue(cache.lookup(SCOPE, first).isEmpty());
+        assertEquals("second", cache.lookup(SCOPE, second).orElseThrow().getAnswer());
+        assertEquals("third", cache.lookup(SCOPE, third).orElseThrow().getAnswer());
+    }
+
+    @Test
+    void invalidateDocumentDropsCitingAndUngroundedEntries() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(true, 0.95, 3600, 10);
+        float[] citing = {1f, 0f, 0f};
+        float[] other = {0f, 1f, 0f};
+        float[] ungrounded = {0f, 0f, 1f};
+        cache.put(SCOPE, citing, grounded("citing", "doc-a"), cache.currentVersion());
+        cache.put(SCOPE, other, grounded("other", "doc-b"), cache.currentVersion());
+        cache.put(SCOPE, ungrounded, QueryResponse.builder().answer("guess").isGrounded(false).sources(List.of()).build(),
+                cache.currentVersion());
+
+        cache.invalidateDocument("doc-a");
+
+        assertTrue(cache.lookup(SCOPE, citing).isEmpty());
+        assertTrue(cache.lookup(SCOPE, ungrounded).isEmpty());
+        assertEquals("other", cache.lookup(SCOPE, other).orElseThrow().getAnswer());
+    }
+
+    @Test
+    void putIsSkippedAfterAnInvalidation() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(true, 0.95, 3600, 10);
+        long versionAtStart = cache.currentVersion();
+
+        // A document changed while the query was running
+        cache.invalidateDocument("doc-b");
+        cache.put(SCOPE, QUESTION, grounded("stale", "doc-a"), versionAtStart);
+
+        assertTrue(cache.lookup(SCOPE, QUESTION).isEmpty());
+        cache.put(SCOPE, QUESTION, grounded("fresh", "doc-a"), cache.currentVersion());
+        assertEquals("fresh", cache.lookup(SCOPE, QUESTION).orElseThrow().getAnswer());
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static QueryResponse grounded(String answer, String documentId) {
+        return QueryResponse.builder()
+                .answer(answer)
+                .isGrounded(true)
+                .sources(List.of(SourceReference.builder().documentId(documentId).build()))
+                .build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.genai.knowitall.controller;
+
+import com.genai.knowitall.repository.DocumentRepository;
+import com.genai.knowitall.service.DocumentDeletionService;
+import com.genai.knowitall.service.DocumentIngestionService;
+import com.genai.knowitall.service.IngestionJobService;
+import com.genai.knowitall.service.exception.IngestionQueueFullException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class DocumentControllerTest {
+
+    private static final MockMultipartFile PDF =
+            new MockMultipartFile("file", "report.pdf", "application/pdf", new byte[]{'%', 'P', 'D', 'F'});
+
+    @TempDir
+    Path spoolDir;
+
+    private final IngestionJobService ingestionJobService = mock(IngestionJobService.class);
+    private final DocumentController controller = new DocumentController(mock(DocumentRepository.class),
+            mock(DocumentIngestionService.class), ingestionJobService, mock(DocumentDeletionService.class));
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(controller, "maxFileSizeBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(controller, "spoolDir", spoolDir.toString());
+    }
+
+    @Test
+    void uploadToAFullQueueIsRefusedWith429AndRetryAfter() throws IOException {
+        doThrow(new IngestionQueueFullException("Ingestion queue is full (100 documents waiting)", 30))
+                .when(ingestionJobService).admit(anyLong());
+
+        ResponseEntity<?> response = controller.uploadDocument(PDF, null, null, "anonymous");
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("30", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verify(ingestionJobService, never()).submit(any(), any(), anyString(), anyString());
+        assertSpoolDirEmpty();
+    }
+
+    @Test
+    void refusalWhenTheJobIsQueuedDeletesTheSpoolFile() throws IOException {
+        doThrow(new IngestionQueueFullException("Ingestion queue is full (1024 MB waiting)", 45))
+                .when(ingestionJobService).submit(any(), any(), anyString(), anyString());
+
+        ResponseEntity<?> response = controller.uploadDocument(PDF, null, null, "anonymous");
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("45", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertSpoolDirEmpty();
+    }
+
+    @Test
+    void admittedUploadIsAccepted() throws IOException {
+        ResponseEntity<?> response = controller.uploadDocument(PDF, null, null, "anonymous");
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertNotNull(response.getHeaders().getLocation());
+        verify(ingestionJobService).submit(any(), any(), eq("application/pdf"), eq("report.pdf"));
+    }
+
+    // ==================== Helper Methods ====================
+
+    private void assertSpoolDirEmpty() throws IOException {
+        try (var files = Files.list(spoolDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
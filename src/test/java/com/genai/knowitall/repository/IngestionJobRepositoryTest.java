@@ -0,0 +1,135 @@
+package com.genai.knowitall.repository;
+
+import com.genai.knowitall.model.IngestionJob;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.genai.knowitall.model.IngestionJobStatus.QUEUED;
+import static com.genai.knowitall.model.IngestionJobStatus.RUNNING;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class IngestionJobRepositoryTest {
+
+    private static final String DOCUMENT_ID = "doc";
+    private static final long LEASE_SECONDS = 60;
+
+    @Autowired
+    private IngestionJobRepository jobRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Test
+    void onlyOneOfTwoRacingOwnersGetsTheLease() {
+        queueJob();
+        // Both workers' polls saw the job as claimable
+        assertEquals(1, claimableIds(now).size());
+        assertEquals(1, claimableIds(now).size());
+
+        assertEquals(1, claim("worker-a", now));
+        assertEquals(0, claim("worker-b", now));
+
+        IngestionJob job = reload();
+        assertEquals(RUNNING, job.getStatus());
+        assertEquals("worker-a", job.getLeaseOwner());
+        assertEquals(1, job.getAttempts());
+        assertTrue(claimableIds(now).isEmpty());
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverAndTheOldOwnerLosesIt() {
+        queueJob();
+        assertEquals(1, claim("worker-a", now));
+        LocalDateTime expired = now.plusSeconds(LEASE_SECONDS + 1);
+
+        assertEquals(1, claimableIds(expired).size());
+        assertEquals(1, claim("worker-b", expired));
+
+        IngestionJob job = reload();
+        assertEquals("worker-b", job.getLeaseOwner());
+        assertEquals(2, job.getAttempts());
+        assertEquals(0, jobRepository.renewLease(DOCUMENT_ID, "worker-a", expired.plusSeconds(LEASE_SECONDS), RUNNING));
+        assertEquals(0, jobRepository.lockLease(DOCUMENT_ID, "worker-a", expired, RUNNING));
+        assertEquals(1, jobRepository.renewLease(DOCUMENT_ID, "worker-b", expired.plusSeconds(LEASE_SECONDS), RUNNING));
+    }
+
+    @Test
+    void lockLeaseFailsOnceTheJobIsCancelled() {
+        queueJob();
+        assertEquals(1, claim("worker-a", now));
+        assertEquals(1, jobRepository.lockLease(DOCUMENT_ID, "worker-a", now, RUNNING));
+
+        // IngestionJobService.cancel deletes the row
+        jobRepository.delete(reload());
+        jobRepository.flush();
+
+        assertEquals(0, jobRepository.lockLease(DOCUMENT_ID, "worker-a", now, RUNNING));
+        assertEquals(0, jobRepository.updateCheckpoint(DOCUMENT_ID, "worker-a", 64, false, now));
+    }
+
+    @Test
+    void resumedJobKeepsTheCheckpointOfTheLostLease() {
+        queueJob();
+        assertEquals(1, claim("worker-a", now));
+        assertEquals(1, jobRepository.updateCheckpoint(DOCUMENT_ID, "worker-a", 128, false, now));
+
+        LocalDateTime expired = now.plusSeconds(LEASE_SECONDS + 1);
+        assertEquals(1, claim("worker-b", expired));
+
+        IngestionJob job = reload();
+        assertEquals(128, job.getChunksCheckpoint());
+        assertFalse(job.getChunkingComplete());
+        // attempts > 1: DocumentIngestionService.runJob resumes instead of starting over
+        assertEquals(2, job.getAttempts());
+
+        // The previous owner can no longer move the checkpoint
+        assertEquals(0, jobRepository.updateCheckpoint(DOCUMENT_ID, "worker-a", 256, true, expired));
+        assertEquals(1, jobRepository.updateCheckpoint(DOCUMENT_ID, "worker-b", 192, true, expired));
+        job = reload();
+        assertEquals(192, job.getChunksCheckpoint());
+        assertTrue(job.getChunkingComplete());
+    }
+
+    // ==================== Helper Methods ====================
+
+    private void queueJob() {
+        jobRepository.saveAndFlush(IngestionJob.builder()
+                .documentId(DOCUMENT_ID)
+                .status(QUEUED)
+                .spoolPath("/tmp/" + DOCUMENT_ID)
+                .sizeBytes(1024L)
+                .incremental(false)
+                .revision(0)
+                .chunksCheckpoint(0)
+                .chunkingComplete(false)
+                .attempts(0)
+                .createdAt(now)
+                .priorityAt(now)
+                .build());
+    }
+
+    private int claim(String owner, LocalDateTime at) {
+        return jobRepository.claim(DOCUMENT_ID, owner, at.plusSeconds(LEASE_SECONDS), at, QUEUED, RUNNING);
+    }
+
+    private List<String> claimableIds(LocalDateTime at) {
+        return jobRepository.findClaimableIds(QUEUED, RUNNING, at, PageRequest.of(0, 10));
+    }
+
+    /**
+     * The job as stored (bulk updates bypass the persistence context).
+     */
+    private IngestionJob reload() {
+        entityManager.clear();
+        return jobRepository.findById(DOCUMENT_ID).orElseThrow();
+    }
+}
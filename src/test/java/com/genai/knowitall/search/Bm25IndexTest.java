@@ -0,0 +1,94 @@
+package com.genai.knowitall.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Bm25IndexTest {
+
+    @Test
+    void tokenizeKeepsCompoundTokensWhole() {
+        List<String> tokens = Bm25Index.tokenize("Error ERR-4012 after upgrading to v2.3.1 (part_no_77)");
+
+        assertTrue(tokens.containsAll(List.of("error", "err", "4012", "err-4012", "v2", "3", "1", "v2.3.1",
+                "part", "no", "77", "part_no_77")), tokens.toString());
+        assertTrue(tokens.containsAll(List.of("after", "upgrading", "to")));
+    }
+
+    @Test
+    void tokenizeSplitsPlainHyphenatedWordsAndTrailingJoiners() {
+        // Compounds need a digit; a joiner without a following run ends the token
+        assertEquals(List.of("state", "of", "the", "art"), Bm25Index.tokenize("State-of-the-art"));
+        assertEquals(List.of("v2", "x"), Bm25Index.tokenize("v2. x"));
+        assertEquals(List.of(), Bm25Index.tokenize("  -- ..  "));
+        assertEquals(List.of(), Bm25Index.tokenize(null));
+    }
+
+    @Test
+    void compoundQueryMatchesExactCodeFirst() {
+        Bm25Index index = new Bm25Index();
+        index.add("c1", "v1", "doc", null, "Error code ERR-4012 means the disk is full");
+        index.add("c2", "v2", "doc", null, "Error 4012 and ERR messages are logged elsewhere");
+
+        List<Bm25Index.Hit> hits = index.search("ERR-4012", 2, null);
+
+        assertEquals(2, hits.size());
+        assertEquals("c1", index.chunkId(hits.get(0).doc()));
+    }
+
+    @Test
+    void compactionRoundTripsVarintPostings() {
+        Bm25Index index = new Bm25Index();
+        Bm25Index expected = new Bm25Index();
+        // 600 chunks: doc-number gaps above 127 and term frequencies above 127 need multi-byte varints
+        for (int i = 0; i < 600; i++) {
+            String document = "doc-" + (i % 3);
+            String content = i % 200 == 0 ? "rare " + "common ".repeat(150) : "common filler" + i;
+            index.add("c" + i, "v" + i, document, "owner", content);
+            boolean survives = !document.equals("doc-1") && i % 5 != 0;
+            if (survives) {
+                expected.add("c" + i, "v" + i, document, "owner", content);
+            }
+        }
+        for (int i = 0; i < 600; i += 5) {
+            index.removeChunk("c" + i);
+        }
+        index.removeDocument("doc-1");
+        index.compact();
+
+        assertEquals(expected.liveSize(), index.liveSize());
+        for (String query : List.of("common", "rare", "filler7", "filler599")) {
+            assertHitsEqual(expected, index, query);
+        }
+        // Removed chunks are gone, and their IDs can be indexed again
+        assertFalse(index.removeChunk("c0"));
+        assertTrue(index.removeChunk("c2"));
+        assertTrue(index.search("filler1", 10, null).isEmpty());
+    }
+
+    @Test
+    void removeDocumentDropsChunksRemovedOneByOneOnlyOnce() {
+        Bm25Index index = new Bm25Index();
+        index.add("c1", "v1", "doc", null, "alpha");
+        index.add("c2", "v2", "doc", null, "alpha");
+        index.removeChunk("c1");
+
+        assertEquals(2, index.removeDocument("doc"));
+        assertEquals(0, index.liveSize());
+        assertTrue(index.search("alpha", 5, null).isEmpty());
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static void assertHitsEqual(Bm25Index expected, Bm25Index actual, String query) {
+        List<Bm25Index.Hit> expectedHits = expected.search(query, 1000, null);
+        List<Bm25Index.Hit> actualHits = actual.search(query, 1000, null);
+        assertEquals(expectedHits.size(), actualHits.size(), query);
+        for (int i = 0; i < expectedHits.size(); i++) {
+            assertEquals(expected.chunkId(expectedHits.get(i).doc()), actual.chunkId(actualHits.get(i).doc()), query);
+            assertEquals(expectedHits.get(i).score(), actualHits.get(i).score(), 1e-5f, query);
+        }
+    }
+}
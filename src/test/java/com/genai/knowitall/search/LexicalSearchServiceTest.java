@@ -0,0 +1,117 @@
+package com.genai.knowitall.search;
+
+import com.genai.knowitall.model.DocumentChunk;
+import com.genai.knowitall.repository.DocumentChunkRepository;
+import com.genai.knowitall.repository.DocumentChunkRepository.ChunkIndexInfo;
+import com.genai.knowitall.vectorstore.SearchFilter;
+import com.genai.knowitall.vectorstore.VectorSearchResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class LexicalSearchServiceTest {
+
+    private final DocumentChunkRepository chunkRepository = mock(DocumentChunkRepository.class);
+    private final LexicalSearchService service = new LexicalSearchService(chunkRepository, true);
+
+    @Test
+    void searchCollapsesCopiesAndWidensUntilTopKDistinct() {
+        List<DocumentChunk> chunks = new ArrayList<>();
+        // Five copies of the best-matching text share one vector
+        for (int i = 0; i < 5; i++) {
+            chunks.add(chunk("copy" + i, "shared", "kafka kafka kafka consumer lag"));
+        }
+        chunks.add(chunk("d1", "v1", "kafka consumer lag explained for operators"));
+        chunks.add(chunk("d2", "v2", "kafka lag alerts and consumer group tuning guide"));
+        chunks.add(chunk("d3", "v3", "notes on kafka retention and storage settings today"));
+        service.addChunks("doc", null, chunks);
+
+        List<VectorSearchResult> top3 = service.search("kafka consumer lag", 3, null);
+        assertEquals(List.of("shared", "v1", "v2"), top3.stream().map(VectorSearchResult::getVectorId).toList());
+
+        // Asking for more than there are distinct matches returns them all
+        List<VectorSearchResult> all = service.search("kafka", 10, null);
+        assertEquals(4, all.size());
+        assertEquals(4, all.stream().map(VectorSearchResult::getVectorId).distinct().count());
+    }
+
+    @Test
+    void searchAppliesDocumentOwnerAndExclusionFilters() {
+        service.addChunks("doc-a", "alice", List.of(chunk("a1", "va", "invoice totals")));
+        service.addChunks("doc-b", "bob", List.of(chunk("b1", "vb", "invoice totals")));
+
+        assertEquals(List.of("doc-a"), documents(service.search("invoice", 5,
+                SearchFilter.builder().owners(Set.of("alice")).build())));
+        assertEquals(List.of("doc-b"), documents(service.search("invoice", 5,
+                new SearchFilter().excluding(Set.of("doc-a")))));
+
+        service.removeChunks(List.of("b1"));
+        assertEquals(List.of("doc-a"), documents(service.search("invoice", 5, null)));
+    }
+
+    @Test
+    void rebuildReplaysUpdatesMadeWhileItRuns() {
+        when(chunkRepository.findIndexInfo(any(Pageable.class))).thenAnswer(invocation -> {
+            // Concurrent ingestion and delete while the database is being read
+            service.addChunks("doc-new", null, List.of(chunk("n1", "vn", "quarterly roadmap")));
+            service.removeDocument("doc-old");
+            return new SliceImpl<>(List.of(
+                    info("o1", "vo", "doc-old", "quarterly roadmap draft"),
+                    info("k1", "vk", "doc-kept", "quarterly roadmap final")),
+                    PageRequest.of(0, 1000), false);
+        });
+
+        service.rebuild();
+
+        assertEquals(Set.of("doc-new", "doc-kept"), Set.copyOf(documents(service.search("quarterly roadmap", 10, null))));
+        verify(chunkRepository, times(1)).findIndexInfo(any(Pageable.class));
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static DocumentChunk chunk(String id, String vectorId, String content) {
+        return DocumentChunk.builder().id(id).vectorId(vectorId).content(content).build();
+    }
+
+    private static List<String> documents(List<VectorSearchResult> results) {
+        return results.stream().map(VectorSearchResult::getDocumentId).toList();
+    }
+
+    private static ChunkIndexInfo info(String chunkId, String vectorId, String documentId, String content) {
+        return new ChunkIndexInfo() {
+            @Override
+            public String getChunkId() {
+                return chunkId;
+            }
+
+            @Override
+            public String getVectorId() {
+                return vectorId;
+            }
+
+            @Override
+            public String getDocumentId() {
+                return documentId;
+            }
+
+            @Override
+            public String getOwner() {
+                return null;
+            }
+
+            @Override
+            public String getContent() {
+                return content;
+            }
+        };
+    }
+}
@@ -0,0 +1,176 @@
+package com.genai.knowitall.service;
+
+import com.genai.knowitall.model.DocumentChunk;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentChunkingServiceTest {
+
+    private static final TokenCounter COUNTER = new TokenCounter("cl100k_base", "");
+
+    @Test
+    void chunksStayWithinSizeAndCarryOverlap() {
+        DocumentChunkingService service = chunker(60, 20, false, 0);
+        List<String> sentences = sentences(0, 80);
+        List<DocumentChunk> chunks = service.chunkDocument("doc", String.join("", sentences));
+
+        assertTrue(chunks.size() > 10);
+        for (DocumentChunk chunk : chunks) {
+            assertTrue(chunk.getTokenCount() <= 60, "chunk over 60 tokens: " + chunk.getTokenCount());
+        }
+        for (int i = 1; i < chunks.size(); i++) {
+            String previous = chunks.get(i - 1).getContent();
+            String next = chunks.get(i).getContent();
+            String lastSentence = previous.substring(previous.lastIndexOf("Sentence"));
+            assertTrue(next.startsWith(lastSentence), "chunk " + i + " starts with the previous chunk's last sentence");
+            assertNotEquals(previous, next);
+        }
+
+        // Every sentence is in some chunk, in order
+        int chunk = 0;
+        for (String sentence : sentences) {
+            while (!chunks.get(chunk).getContent().contains(sentence.strip())) {
+                chunk++;
+                assertTrue(chunk < chunks.size(), "sentence missing: " + sentence);
+            }
+        }
+    }
+
+    @Test
+    void overlapNeverRepeatsAWholeChunk() {
+        // Sentences of about 10 tokens with an overlap that could hold several
+        DocumentChunkingService service = chunker(30, 100, false, 0);
+        List<DocumentChunk> chunks = service.chunkDocument("doc", String.join("", sentences(0, 40)));
+
+        for (int i = 1; i < chunks.size(); i++) {
+            assertFalse(chunks.get(i - 1).getContent().contains(chunks.get(i).getContent()),
+                    "chunk " + i + " adds a new sentence");
+        }
+    }
+
+    @Test
+    void sentenceLongerThanChunkIsSplitByTokens() {
+        DocumentChunkingService service = chunker(50, 10, false, 0);
+        String text = "word ".repeat(400);
+        List<DocumentChunk> chunks = service.chunkDocument("doc", text);
+
+        assertTrue(chunks.size() >= 8);
+        for (DocumentChunk chunk : chunks) {
+            assertTrue(chunk.getTokenCount() <= 50, "chunk over 50 tokens: " + chunk.getTokenCount());
+        }
+    }
+
+    @Test
+    void contentDefinedBoundariesAreStableWhenTextIsInsertedBefore() {
+        List<String> original = sentences(0, 400);
+        List<String> edited = new ArrayList<>(original);
+        edited.addAll(5, sentences(1000, 3));
+
+        Set<String> before = hashes(chunker(150, 20, true, 40).chunkDocument("doc", String.join("", original)));
+        Set<String> after = hashes(chunker(150, 20, true, 40).chunkDocument("doc", String.join("", edited)));
+        Set<String> kept = new HashSet<>(before);
+        kept.retainAll(after);
+        assertTrue(kept.size() >= before.size() - 3,
+                "only the chunks around the insertion change (" + kept.size() + " of " + before.size() + " kept)");
+
+        // Fixed-size packing shifts every later boundary instead
+        Set<String> fixedBefore = hashes(chunker(150, 20, false, 40).chunkDocument("doc", String.join("", original)));
+        Set<String> fixedAfter = hashes(chunker(150, 20, false, 40).chunkDocument("doc", String.join("", edited)));
+        fixedBefore.retainAll(fixedAfter);
+        assertTrue(kept.size() > fixedBefore.size());
+    }
+
+    @Test
+    void chunksCarryThePagesTheySpan() {
+        // 7 sentences per page, written through the pipe the extractor feeds
+        int sentencesPerPage = 7;
+        List<String> sentences = sentences(0, 56);
+        TextPipe pipe = new TextPipe(sentences.size() + 8, 5000);
+        for (int i = 0; i < sentences.size(); i++) {
+            if (i % sentencesPerPage == 0) {
+                pipe.startPage(i / sentencesPerPage + 1);
+            }
+            pipe.write(sentences.get(i));
+        }
+        pipe.finish();
+
+        List<DocumentChunk> chunks = new ArrayList<>();
+        chunker(30, 0, false, 0).chunkDocument("doc", pipe, pipe.pages(), chunks::add);
+
+        Pattern number = Pattern.compile("Sentence (\\d+) ");
+        boolean spansPages = false;
+        for (DocumentChunk chunk : chunks) {
+            Matcher matcher = number.matcher(chunk.getContent());
+            List<Integer> numbers = new ArrayList<>();
+            while (matcher.find()) {
+                numbers.add(Integer.parseInt(matcher.group(1)));
+            }
+            assertFalse(numbers.isEmpty());
+            assertEquals(numbers.get(0) / sentencesPerPage + 1, chunk.getPageStart(), chunk.getContent());
+            assertEquals(numbers.get(numbers.size() - 1) / sentencesPerPage + 1, chunk.getPageEnd(), chunk.getContent());
+            spansPages |= !chunk.getPageStart().equals(chunk.getPageEnd());
+        }
+        assertTrue(spansPages, "some chunk crosses a page boundary");
+    }
+
+    @Test
+    void chunksHaveNoPagesWithoutPageOffsets() {
+        List<DocumentChunk> chunks = new ArrayList<>();
+        chunker(30, 0, false, 0).chunkDocument("doc", new StringReader(String.join("", sentences(0, 10))),
+                null, chunks::add);
+
+        assertFalse(chunks.isEmpty());
+        for (DocumentChunk chunk : chunks) {
+            assertNull(chunk.getPageStart());
+            assertNull(chunk.getPageEnd());
+        }
+    }
+
+    @Test
+    void contentHashIgnoresLayout() {
+        assertEquals(DocumentChunkingService.contentHash("Hello  world.\nNext line"),
+                DocumentChunkingService.contentHash(" Hello world. Next\tline "));
+        assertNotEquals(DocumentChunkingService.contentHash("Hello world."),
+                DocumentChunkingService.contentHash("Hello world!"));
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static DocumentChunkingService chunker(int size, int overlap, boolean contentDefined, int minTokens) {
+        DocumentChunkingService service = new DocumentChunkingService(COUNTER);
+        ReflectionTestUtils.setField(service, "chunkSizeTokens", size);
+        ReflectionTestUtils.setField(service, "overlapTokens", overlap);
+        ReflectionTestUtils.setField(service, "contentDefined", contentDefined);
+        ReflectionTestUtils.setField(service, "minChunkTokens", minTokens);
+        return service;
+    }
+
+    /**
+     * Distinct sentences of about 10 tokens each, numbered from first.
+     */
+    private static List<String> sentences(int first, int count) {
+        List<String> sentences = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            sentences.add("Sentence " + i + " is about topic " + (i * 7 % 13) + " and more. ");
+        }
+        return sentences;
+    }
+
+    private static Set<String> hashes(List<DocumentChunk> chunks) {
+        Set<String> hashes = new HashSet<>();
+        for (DocumentChunk chunk : chunks) {
+            hashes.add(chunk.getContentHash());
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,97 @@
+package com.genai.knowitall.service;
+
+import com.genai.knowitall.cache.SemanticAnswerCache;
+import com.genai.knowitall.repository.DocumentChunkRepository;
+import com.genai.knowitall.repository.DocumentRepository;
+import com.genai.knowitall.search.LexicalSearchService;
+import com.genai.knowitall.vectorstore.SearchFilter;
+import com.genai.knowitall.vectorstore.VectorStoreClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class DocumentDeletionServiceTest {
+
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final DocumentChunkRepository chunkRepository = mock(DocumentChunkRepository.class);
+    private final DocumentIngestionService ingestionService = mock(DocumentIngestionService.class);
+    private final IngestionJobService ingestionJobService = mock(IngestionJobService.class);
+    private final LexicalSearchService lexicalSearchService = mock(LexicalSearchService.class);
+    private final DocumentDeletionService service = new DocumentDeletionService(documentRepository, chunkRepository,
+            ingestionService, ingestionJobService, mock(VectorStoreClient.class), lexicalSearchService,
+            mock(SemanticAnswerCache.class), 0, 100);
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void deletedDocumentIsExcludedUntilPurged() {
+        when(ingestionJobService.cancel("doc")).thenReturn(CompletableFuture.completedFuture(null));
+        when(ingestionService.deleteChunks(anyString(), any())).thenReturn(Set.of("v1"));
+
+        service.deleteDocument("doc");
+
+        verify(documentRepository).deleteById("doc");
+        verify(lexicalSearchService, atLeastOnce()).removeDocument("doc");
+        SearchFilter filter = service.excludeDeleted(null);
+        assertNotNull(filter);
+        verify(ingestionService, timeout(2000)).refreshReferences(Set.of("v1"));
+        verify(ingestionService, timeout(2000)).deleteDocumentVectors("doc");
+    }
+
+    @Test
+    void purgeWaitsForTheCancelledJobWithoutBlockingTheDelete() {
+        CompletableFuture<Void> jobStopped = new CompletableFuture<>();
+        when(ingestionJobService.cancel("doc")).thenReturn(jobStopped);
+        when(ingestionService.deleteChunks(anyString(), any())).thenReturn(Set.of("v1"));
+
+        service.deleteDocument("doc");
+
+        verify(documentRepository).deleteById("doc");
+        verify(ingestionService, after(200).never()).deleteDocumentVectors(any());
+        assertNotNull(service.excludeDeleted(null));
+
+        jobStopped.complete(null);
+        verify(ingestionService, timeout(2000)).deleteDocumentVectors("doc");
+        // Once more, for entries the job's last window added
+        verify(lexicalSearchService, timeout(2000).times(2)).removeDocument("doc");
+    }
+
+    @Test
+    void failedDeleteKeepsTheDocumentAndPurgesNothing() {
+        when(ingestionJobService.cancel("doc")).thenReturn(CompletableFuture.completedFuture(null));
+        when(chunkRepository.findVectorInfoByDocumentId("doc")).thenReturn(List.of());
+        when(ingestionService.deleteChunks(anyString(), any()))
+                .thenThrow(new DataAccessResourceFailureException("database unavailable"));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.deleteDocument("doc"));
+
+        assertNull(service.excludeDeleted(null), "no tombstone left behind");
+        verify(documentRepository, never()).deleteById(any());
+        verify(lexicalSearchService, never()).removeDocument(any());
+        verify(ingestionService, after(200).never()).deleteDocumentVectors(any());
+    }
+
+    @Test
+    void failedCancelKeepsTheDocument() {
+        doThrow(new DataAccessResourceFailureException("database unavailable"))
+                .when(ingestionJobService).cancel("doc");
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.deleteDocument("doc"));
+
+        assertNull(service.excludeDeleted(null));
+        verify(ingestionService, never()).deleteChunks(any(), any());
+        verify(documentRepository, never()).deleteById(any());
+    }
+}
@@ -0,0 +1,266 @@
+package com.genai.knowitall.service;
+
+import com.genai.knowitall.cache.SemanticAnswerCache;
+import com.genai.knowitall.model.Document;
+import com.genai.knowitall.model.DocumentChunk;
+import com.genai.knowitall.model.DocumentStatus;
+import com.genai.knowitall.model.IngestionJob;
+import com.genai.knowitall.model.IngestionJobStatus;
+import com.genai.knowitall.model.SharedVector;
+import com.genai.knowitall.repository.DocumentChunkRepository;
+import com.genai.knowitall.repository.DocumentChunkRepository.ChunkVectorInfo;
+import com.genai.knowitall.repository.DocumentChunkRepository.VectorReferenceInfo;
+import com.genai.knowitall.repository.DocumentRepository;
+import com.genai.knowitall.repository.IngestionJobRepository;
+import com.genai.knowitall.repository.SharedVectorRepository;
+import com.genai.knowitall.search.LexicalSearchService;
+import com.genai.knowitall.vectorstore.VectorRecord;
+import com.genai.knowitall.vectorstore.VectorReference;
+import com.genai.knowitall.vectorstore.VectorStoreClient;
+import com.genai.knowitall.vectorstore.VectorStoreException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DocumentIngestionServiceTest {
+
+    private static final String DOCUMENT_ID = "doc";
+    private static final String MODEL = "test-model";
+
+    // One chunk per sentence (chunk size 9 tokens, sentences of 6-8 tokens, no overlap)
+    private static final String ALPHA = "Alpha covers the ingestion pipeline.";
+    private static final String BETA = "Beta covers the vector store.";
+    private static final String GAMMA = "Gamma covers the answer cache.";
+    private static final String DELTA = "Delta covers the lexical index.";
+
+    @TempDir
+    Path tempDir;
+
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final DocumentChunkRepository chunkRepository = mock(DocumentChunkRepository.class);
+    private final IngestionJobRepository jobRepository = mock(IngestionJobRepository.class);
+    private final TextExtractionService textExtractionService = mock(TextExtractionService.class);
+    private final EmbeddingService embeddingService = mock(EmbeddingService.class);
+    private final VectorStoreClient vectorStoreClient = mock(VectorStoreClient.class);
+    private final SharedVectorRepository sharedVectorRepository = mock(SharedVectorRepository.class);
+    private final LexicalSearchService lexicalSearchService = mock(LexicalSearchService.class);
+    private DocumentIngestionService service;
+
+    @BeforeEach
+    void setUp() {
+        DocumentChunkingService chunkingService = new DocumentChunkingService(new TokenCounter("cl100k_base", ""));
+        ReflectionTestUtils.setField(chunkingService, "chunkSizeTokens", 9);
+        ReflectionTestUtils.setField(chunkingService, "overlapTokens", 0);
+        ReflectionTestUtils.setField(chunkingService, "contentDefined", false);
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        service = new DocumentIngestionService(documentRepository, chunkRepository, jobRepository,
+                textExtractionService, chunkingService, embeddingService, vectorStoreClient,
+                mock(SemanticAnswerCache.class), lexicalSearchService, sharedVectorRepository,
+                transactionManager, true, 64, 64, 10);
+
+        when(documentRepository.findById(DOCUMENT_ID)).thenReturn(Optional.of(new Document()));
+        when(embeddingService.getEmbeddingModelName()).thenReturn(MODEL);
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<float[]> embeddings = new ArrayList<>();
+            for (Object ignored : invocation.<List<?>>getArgument(0)) {
+                embeddings.add(new float[]{1f, 0f});
+            }
+            return embeddings;
+        });
+        when(vectorStoreClient.isPersistent()).thenReturn(true);
+        when(jobRepository.lockLease(eq(DOCUMENT_ID), eq("worker"), any(), eq(IngestionJobStatus.RUNNING)))
+                .thenReturn(1);
+    }
+
+    @Test
+    void reUploadEmbedsOnlyNewContentAndReleasesDroppedVectors() throws IOException {
+        // Revision 0 has alpha, beta and gamma; the new version drops gamma and adds delta
+        List<ChunkVectorInfo> previous = List.of(
+                vectorInfo("c-alpha", "v-alpha", ALPHA),
+                vectorInfo("c-beta", "v-beta", BETA),
+                vectorInfo("c-gamma", "v-gamma", GAMMA));
+        when(chunkRepository.findVectorInfoBeforeRevision(DOCUMENT_ID, 1)).thenReturn(previous);
+        when(chunkRepository.countByDocumentIdAndRevisionAndVectorIdIsNotNull(DOCUMENT_ID, 1)).thenReturn(3L);
+        // Once revision 0 is deleted, only the new chunks reference alpha and beta
+        when(chunkRepository.findReferencesByVectorIds(anyCollection())).thenAnswer(invocation -> {
+            List<VectorReferenceInfo> references = new ArrayList<>();
+            for (String vectorId : invocation.<Collection<String>>getArgument(0)) {
+                if (!vectorId.equals("v-gamma")) {
+                    references.add(referenceInfo("new-" + vectorId, vectorId, DOCUMENT_ID, 0));
+                }
+            }
+            return references;
+        });
+
+        DocumentStatus status = service.runJob(job(true, 1, ALPHA + " " + BETA + " " + DELTA), () -> null);
+
+        assertEquals(DocumentStatus.READY, status);
+        verify(embeddingService).generateEmbeddings(List.of(DELTA));
+        ArgumentCaptor<List<VectorRecord>> records = ArgumentCaptor.captor();
+        verify(vectorStoreClient).storeEmbeddings(records.capture());
+        assertEquals(1, records.getValue().size());
+
+        List<DocumentChunk> saved = savedChunks();
+        assertEquals(3, saved.size());
+        assertEquals("v-alpha", saved.get(0).getVectorId());
+        assertEquals("v-beta", saved.get(1).getVectorId());
+        assertEquals(saved.get(2).getId(), saved.get(2).getVectorId());
+        assertEquals(records.getValue().get(0).getVectorId(), saved.get(2).getId());
+        for (DocumentChunk chunk : saved) {
+            assertEquals(1, chunk.getRevision());
+        }
+
+        // The previous revision is removed; the vector only it referenced goes with it
+        verify(chunkRepository).deleteAllByIdInBatch(List.of("c-alpha", "c-beta", "c-gamma"));
+        ArgumentCaptor<Map<String, List<VectorReference>>> references = ArgumentCaptor.captor();
+        verify(vectorStoreClient).updateReferences(references.capture());
+        assertEquals(Set.of("v-alpha", "v-beta", "v-gamma"), references.getValue().keySet());
+        assertTrue(references.getValue().get("v-gamma").isEmpty());
+        assertEquals(1, references.getValue().get("v-alpha").size());
+        verify(sharedVectorRepository).deleteAllByIdInBatch(List.of("v-gamma"));
+    }
+
+    @Test
+    void windowIsPlannedAgainWhenAReusedSharedVectorIsReleased() throws IOException {
+        // Another document's vector for alpha is found, then released before the window is saved
+        SharedVector shared = SharedVector.builder()
+                .vectorId("v-other")
+                .contentHash(DocumentChunkingService.contentHash(ALPHA))
+                .embeddingModel(MODEL)
+                .build();
+        when(sharedVectorRepository.findByEmbeddingModelAndContentHashInOrderByCreatedAtAsc(eq(MODEL), anyCollection()))
+                .thenReturn(List.of(shared))
+                .thenReturn(List.of());
+        when(sharedVectorRepository.findExistingVectorIds(anyCollection())).thenReturn(List.of());
+        when(chunkRepository.countByDocumentIdAndRevisionAndVectorIdIsNotNull(DOCUMENT_ID, 0)).thenReturn(2L);
+
+        DocumentStatus status = service.runJob(job(false, 0, ALPHA + " " + BETA), () -> null);
+
+        assertEquals(DocumentStatus.READY, status);
+        verify(embeddingService).generateEmbeddings(List.of(BETA));
+        verify(embeddingService).generateEmbeddings(List.of(ALPHA, BETA));
+        List<DocumentChunk> saved = savedChunks();
+        assertEquals(2, saved.size());
+        for (DocumentChunk chunk : saved) {
+            assertEquals(chunk.getId(), chunk.getVectorId(), "embedded again, not pointing at the released vector");
+        }
+        verify(vectorStoreClient, never()).updateReferences(any());
+    }
+
+    @Test
+    void cancelledJobSavesNoWindow() throws IOException {
+        // The job's row was deleted (document deleted) while the window was being embedded
+        when(jobRepository.lockLease(any(), any(), any(), any())).thenReturn(0);
+
+        DocumentStatus status = service.runJob(job(false, 0, ALPHA + " " + BETA), () -> null);
+
+        assertNull(status);
+        verify(chunkRepository, never()).saveAll(any());
+        verify(lexicalSearchService, never()).addChunks(any(), any(), any());
+        verify(documentRepository, never()).save(argThat(document -> document.getStatus() == DocumentStatus.FAILED));
+    }
+
+    @Test
+    void refreshReferencesListsOneChunkPerDocumentAndReleasesUnreferencedVectors() {
+        when(chunkRepository.findReferencesByVectorIds(anyCollection())).thenReturn(List.of(
+                referenceInfo("c1", "v1", "d1", 0),
+                referenceInfo("c2", "v1", "d1", 3),
+                referenceInfo("c3", "v1", "d2", 1)));
+
+        assertTrue(service.refreshReferences(Set.of("v1", "v2")));
+
+        ArgumentCaptor<Map<String, List<VectorReference>>> references = ArgumentCaptor.captor();
+        verify(vectorStoreClient).updateReferences(references.capture());
+        assertEquals(List.of("c1", "c3"),
+                references.getValue().get("v1").stream().map(VectorReference::getChunkId).toList());
+        assertTrue(references.getValue().get("v2").isEmpty());
+        verify(sharedVectorRepository).deleteAllByIdInBatch(List.of("v2"));
+    }
+
+    @Test
+    void refreshReferencesKeepsSharedVectorRecordsWhenTheStoreUpdateFails() {
+        doThrow(new VectorStoreException("unavailable")).when(vectorStoreClient).updateReferences(any());
+
+        assertFalse(service.refreshReferences(Set.of("v1")));
+        verify(sharedVectorRepository, never()).deleteAllByIdInBatch(any());
+    }
+
+    // ==================== Helper Methods ====================
+
+    /**
+     * A leased job for DOCUMENT_ID whose upload extracts to the given text.
+     */
+    private IngestionJob job(boolean incremental, int revision, String text) throws IOException {
+        Path spoolFile = Files.writeString(tempDir.resolve("upload"), text);
+        when(textExtractionService.extractAsync(any(), anyString(), anyString(), any())).thenAnswer(invocation -> {
+            invocation.<TextExtractionService.TextSink>getArgument(3).accept(text);
+            return CompletableFuture.completedFuture((long) text.length());
+        });
+        return IngestionJob.builder()
+                .documentId(DOCUMENT_ID)
+                .status(IngestionJobStatus.RUNNING)
+                .spoolPath(spoolFile.toString())
+                .contentType("text/plain")
+                .filename("upload.txt")
+                .incremental(incremental)
+                .revision(revision)
+                .chunksCheckpoint(0)
+                .chunkingComplete(false)
+                .attempts(1)
+                .leaseOwner("worker")
+                .build();
+    }
+
+    private List<DocumentChunk> savedChunks() {
+        ArgumentCaptor<List<DocumentChunk>> chunks = ArgumentCaptor.captor();
+        verify(chunkRepository).saveAll(chunks.capture());
+        return chunks.getValue();
+    }
+
+    private static ChunkVectorInfo vectorInfo(String chunkId, String vectorId, String content) {
+        String contentHash = DocumentChunkingService.contentHash(content);
+        return new ChunkVectorInfo() {
+            public String getChunkId() { return chunkId; }
+            public String getVectorId() { return vectorId; }
+            public String getContentHash() { return contentHash; }
+            public String getEmbeddingModel() { return MODEL; }
+        };
+    }
+
+    private static VectorReferenceInfo referenceInfo(String chunkId, String vectorId, String documentId,
+                                                     int chunkIndex) {
+        return new VectorReferenceInfo() {
+            public String getChunkId() { return chunkId; }
+            public String getVectorId() { return vectorId; }
+            public String getDocumentId() { return documentId; }
+            public String getOwner() { return null; }
+            public Integer getChunkIndex() { return chunkIndex; }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package com.genai.knowitall.service;
+
+import com.genai.knowitall.model.Document;
+import com.genai.knowitall.model.DocumentStatus;
+import com.genai.knowitall.model.IngestionJob;
+import com.genai.knowitall.model.IngestionJobStatus;
+import com.genai.knowitall.repository.DocumentRepository;
+import com.genai.knowitall.repository.IngestionJobRepository;
+import com.genai.knowitall.service.exception.IngestionQueueFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IngestionJobServiceTest {
+
+    private static final long MAX_JOBS = 3;
+    private static final long MAX_BYTES = 1000;
+    private static final long RETRY_AFTER_SECONDS = 30;
+
+    @TempDir
+    Path tempDir;
+
+    private final IngestionJobRepository jobRepository = mock(IngestionJobRepository.class);
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final IngestionJobService service = newService();
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void fullQueueOfJobsIsRefusedWithRetryAfter() {
+        when(jobRepository.countByStatus(IngestionJobStatus.QUEUED)).thenReturn(MAX_JOBS);
+
+        IngestionQueueFullException error = assertThrows(IngestionQueueFullException.class, () -> service.admit(1));
+
+        assertEquals(RETRY_AFTER_SECONDS, error.getRetryAfterSeconds());
+        assertTrue(error.getMessage().contains("3 documents waiting"));
+    }
+
+    @Test
+    void uploadBeyondTheQueuedBytesIsRefused() {
+        when(jobRepository.countByStatus(IngestionJobStatus.QUEUED)).thenReturn(1L);
+        when(jobRepository.sumSizeBytesByStatus(IngestionJobStatus.QUEUED)).thenReturn(900L);
+
+        assertThrows(IngestionQueueFullException.class, () -> service.admit(101));
+        assertDoesNotThrow(() -> service.admit(100));
+    }
+
+    @Test
+    void uploadLargerThanTheByteBudgetIsAdmittedIntoAnEmptyQueue() {
+        assertDoesNotThrow(() -> service.admit(10 * MAX_BYTES));
+    }
+
+    @Test
+    void submitChecksAgainWhenItQueuesTheJob() throws IOException {
+        // Passed the early check, then the queue filled up before the job was written
+        when(jobRepository.countByStatus(IngestionJobStatus.QUEUED)).thenReturn(0L, MAX_JOBS);
+        service.admit(10);
+
+        assertThrows(IngestionQueueFullException.class,
+                () -> service.submit(newDocument(), spoolFile(10), "application/pdf", "report.pdf"));
+
+        verify(documentRepository, never()).save(any());
+        verify(jobRepository, never()).save(any());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void submitSavesTheDocumentAndItsJobTogether() throws IOException {
+        Document document = newDocument();
+
+        service.submit(document, spoolFile(10), "application/pdf", "report.pdf");
+
+        verify(documentRepository).save(document);
+        verify(jobRepository).save(argThat((IngestionJob job) ->
+                job.getDocumentId().equals("doc") && job.getStatus() == IngestionJobStatus.QUEUED
+                        && job.getSizeBytes() == 10));
+        verify(transactionManager).commit(any());
+    }
+
+    // ==================== Helper Methods ====================
+
+    private IngestionJobService newService() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        return new IngestionJobService(jobRepository, documentRepository, mock(DocumentIngestionService.class),
+                transactionManager, 1, 60, 2000, 3, 10, MAX_JOBS, MAX_BYTES, RETRY_AFTER_SECONDS, false);
+    }
+
+    private Document newDocument() {
+        return Document.builder()
+                .id("doc")
+                .filename("report.pdf")
+                .status(DocumentStatus.UPLOADING)
+                .uploadedAt(LocalDateTime.now())
+                .build();
+    }
+
+    private Path spoolFile(int sizeBytes) throws IOException {
+        return Files.write(tempDir.resolve("doc.upload"), new byte[sizeBytes]);
+    }
+}
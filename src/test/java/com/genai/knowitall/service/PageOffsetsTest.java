@@ -0,0 +1,60 @@
+package com.genai.knowitall.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageOffsetsTest {
+
+    @Test
+    void pageAtResolvesPageBoundaries() {
+        PageOffsets pages = new PageOffsets();
+        assertTrue(pages.isEmpty());
+        assertNull(pages.pageAt(0));
+
+        pages.mark(0, 1);
+        pages.mark(100, 2);
+        pages.mark(250, 3);
+
+        assertFalse(pages.isEmpty());
+        assertEquals(1, pages.pageAt(0));
+        assertEquals(1, pages.pageAt(99));
+        assertEquals(2, pages.pageAt(100));
+        assertEquals(2, pages.pageAt(249));
+        assertEquals(3, pages.pageAt(250));
+        assertEquals(3, pages.pageAt(1_000_000));
+    }
+
+    @Test
+    void offsetsBeforeTheFirstPageHaveNoPage() {
+        PageOffsets pages = new PageOffsets();
+        pages.mark(10, 1);
+
+        assertNull(pages.pageAt(9));
+        assertEquals(1, pages.pageAt(10));
+    }
+
+    @Test
+    void pageWithoutTextIsReplacedByTheNextPage() {
+        PageOffsets pages = new PageOffsets();
+        pages.mark(0, 1);
+        pages.mark(50, 2);
+        pages.mark(50, 3);
+
+        assertEquals(1, pages.pageAt(49));
+        assertEquals(3, pages.pageAt(50));
+    }
+
+    @Test
+    void growsBeyondItsInitialCapacity() {
+        PageOffsets pages = new PageOffsets();
+        for (int page = 1; page <= 1000; page++) {
+            pages.mark((page - 1) * 10L, page);
+        }
+
+        for (int page = 1; page <= 1000; page++) {
+            assertEquals(page, pages.pageAt((page - 1) * 10L));
+            assertEquals(page, pages.pageAt((page - 1) * 10L + 9));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.genai.knowitall.service;
+
+import com.genai.knowitall.cache.SemanticAnswerCache;
+import com.genai.knowitall.controller.dto.QueryResponse;
+import com.genai.knowitall.controller.dto.SourceReference;
+import com.genai.knowitall.repository.DocumentChunkRepository;
+import com.genai.knowitall.search.LexicalSearchService;
+import com.genai.knowitall.search.Reranker;
+import com.genai.knowitall.vectorstore.SearchFilter;
+import com.genai.knowitall.vectorstore.VectorSearchResult;
+import com.genai.knowitall.vectorstore.VectorStoreClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class RAGServiceTest {
+
+    private static final List<Integer> RETRIEVAL_ORDER = List.of(0, 1, 2);
+    private static final List<Integer> RERANKED_ORDER = List.of(2, 1, 0);
+    private static final long BUDGET_MS = 100;
+
+    private final VectorStoreClient vectorStoreClient = mock(VectorStoreClient.class);
+    private final EmbeddingService embeddingService = mock(EmbeddingService.class);
+    private final LLMProvider llmProvider = mock(LLMProvider.class);
+    private final DocumentDeletionService deletionService = mock(DocumentDeletionService.class);
+    private RAGService service;
+
+    @BeforeEach
+    void setUp() {
+        List<VectorSearchResult> candidates = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            candidates.add(VectorSearchResult.builder()
+                    .vectorId("v" + i)
+                    .documentId("doc")
+                    .chunkIndex(i)
+                    .score(0.9 - i * 0.1)
+                    .content("chunk " + i)
+                    .build());
+        }
+        when(embeddingService.generateEmbedding(anyString())).thenReturn(new float[]{1f, 0f});
+        when(deletionService.excludeDeleted(any())).thenReturn(new SearchFilter());
+        when(vectorStoreClient.search(any(float[].class), anyInt(), any(SearchFilter.class))).thenReturn(candidates);
+        when(llmProvider.generateResponse(anyString(), anyString())).thenReturn("answer");
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void rerankedOrderIsUsedWithinTheBudget() {
+        BlockingReranker reranker = new BlockingReranker(false);
+        reranker.release.countDown();
+        service = newService(reranker, 4, 5000);
+
+        assertEquals(RERANKED_ORDER, chunkOrder(query()));
+    }
+
+    @Test
+    void rerankerSlowerThanTheBudgetFallsBackToRetrievalOrderOnTime() throws InterruptedException {
+        BlockingReranker reranker = new BlockingReranker(false);
+        service = newService(reranker, 4, BUDGET_MS);
+
+        long start = System.nanoTime();
+        QueryResponse response = query();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(RETRIEVAL_ORDER, chunkOrder(response));
+        assertTrue(elapsedMs < 1000, "answered after " + elapsedMs + "ms");
+        // Interrupted by the cancel, so it stops and gives its permit back
+        awaitAvailablePermits(4);
+    }
+
+    @Test
+    void overrunningRerankKeepsItsPermitUntilItStops() throws InterruptedException {
+        BlockingReranker reranker = new BlockingReranker(true);
+        service = newService(reranker, 1, BUDGET_MS);
+
+        assertEquals(RETRIEVAL_ORDER, chunkOrder(query()));
+        // Still running (it ignores the interrupt): the next query skips reranking
+        assertEquals(0, permits().availablePermits());
+        assertEquals(RETRIEVAL_ORDER, chunkOrder(query()));
+        assertEquals(1, reranker.calls.get());
+
+        reranker.release.countDown();
+        awaitAvailablePermits(1);
+        ReflectionTestUtils.setField(service, "rerankBudgetMs", 5000L);
+        assertEquals(RERANKED_ORDER, chunkOrder(query()));
+        assertEquals(2, reranker.calls.get());
+    }
+
+    @Test
+    void rerankCancelledBeforeItStartsReleasesItsPermit() throws InterruptedException {
+        BlockingReranker reranker = new BlockingReranker(false);
+        reranker.release.countDown();
+        service = newService(reranker, 1, BUDGET_MS);
+        // Occupy the only rerank thread, so the query's task is still queued at its deadline
+        CountDownLatch unblock = new CountDownLatch(1);
+        ExecutorService rerankExecutor = (ExecutorService) ReflectionTestUtils.getField(service, "rerankExecutor");
+        rerankExecutor.submit(() -> {
+            unblock.await();
+            return null;
+        });
+
+        assertEquals(RETRIEVAL_ORDER, chunkOrder(query()));
+        assertEquals(1, permits().availablePermits());
+
+        unblock.countDown();
+        ReflectionTestUtils.setField(service, "rerankBudgetMs", 5000L);
+        assertEquals(RERANKED_ORDER, chunkOrder(query()));
+        // The cancelled task never ran
+        assertEquals(1, reranker.calls.get());
+    }
+
+    @Test
+    void queriesSkipTheRerankAtTheConcurrencyLimit() throws Exception {
+        BlockingReranker reranker = new BlockingReranker(false);
+        service = newService(reranker, 2, 5000);
+
+        CompletableFuture<QueryResponse> first = CompletableFuture.supplyAsync(this::query);
+        CompletableFuture<QueryResponse> second = CompletableFuture.supplyAsync(this::query);
+        assertTrue(reranker.entered.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        assertEquals(RETRIEVAL_ORDER, chunkOrder(query()));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, "did not wait for a permit");
+        assertEquals(2, reranker.calls.get());
+
+        reranker.release.countDown();
+        assertEquals(RERANKED_ORDER, chunkOrder(first.get(5, TimeUnit.SECONDS)));
+        assertEquals(RERANKED_ORDER, chunkOrder(second.get(5, TimeUnit.SECONDS)));
+    }
+
+    // ==================== Helper Methods ====================
+
+    private RAGService newService(Reranker reranker, int maxConcurrent, long budgetMs) {
+        RAGService ragService = new RAGService(vectorStoreClient, embeddingService, llmProvider,
+                mock(DocumentChunkRepository.class), mock(SemanticAnswerCache.class), mock(TokenCounter.class),
+                mock(LexicalSearchService.class), deletionService, Optional.of(reranker), maxConcurrent, 4, false);
+        ReflectionTestUtils.setField(ragService, "defaultTopK", 3);
+        ReflectionTestUtils.setField(ragService, "defaultConfidenceThreshold", 0.5);
+        ReflectionTestUtils.setField(ragService, "maxContextTokens", 2000);
+        ReflectionTestUtils.setField(ragService, "rrfK", 60);
+        ReflectionTestUtils.setField(ragService, "candidatesMultiplier", 3);
+        ReflectionTestUtils.setField(ragService, "rerankCandidates", 20);
+        ReflectionTestUtils.setField(ragService, "rerankBudgetMs", budgetMs);
+        return ragService;
+    }
+
+    private QueryResponse query() {
+        QueryResponse response = service.query("Which chunk?", 3, 0.5, null);
+        assertNull(response.getError());
+        return response;
+    }
+
+    private static List<Integer> chunkOrder(QueryResponse response) {
+        return response.getSources().stream().map(SourceReference::getChunkIndex).toList();
+    }
+
+    private Semaphore permits() {
+        return (Semaphore) ReflectionTestUtils.getField(service, "rerankPermits");
+    }
+
+    private void awaitAvailablePermits(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (permits().availablePermits() != expected) {
+            assertTrue(System.nanoTime() < deadline, "permits not released");
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Reverses the candidates once released; optionally keeps waiting through interrupts.
+     */
+    private static class BlockingReranker implements Reranker {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch entered = new CountDownLatch(2);
+        final AtomicInteger calls = new AtomicInteger();
+        private final boolean ignoresInterrupts;
+
+        BlockingReranker(boolean ignoresInterrupts) {
+            this.ignoresInterrupts = ignoresInterrupts;
+        }
+
+        @Override
+        public List<VectorSearchResult> rerank(String question, List<VectorSearchResult> candidates) {
+            calls.incrementAndGet();
+            entered.countDown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    if (!ignoresInterrupts) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Rerank cancelled", e);
+                    }
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            List<VectorSearchResult> reranked = new ArrayList<>(candidates);
+            Collections.reverse(reranked);
+            return reranked;
+        }
+
+        @Override
+        public String name() {
+            return "blocking";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.genai.knowitall.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextPipeTest {
+
+    @Test
+    void consumerReadsWhatTheProducerWritesInOrder() throws Exception {
+        TextPipe pipe = new TextPipe(1, 5000);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            expected.append("segment ").append(i).append(' ');
+        }
+
+        // Capacity 1: the producer waits for the consumer at every segment
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 200; i++) {
+                pipe.write("segment " + i + " ");
+            }
+            pipe.finish();
+        });
+
+        assertEquals(expected.toString(), readAll(pipe));
+        producer.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void readTimesOutWhenTheProducerStalls() {
+        TextPipe pipe = new TextPipe(4, 50);
+        pipe.write("partial");
+
+        IOException error = assertThrows(IOException.class, () -> readAll(pipe));
+        assertTrue(error.getMessage().contains("Timed out"));
+    }
+
+    @Test
+    void writeTimesOutWhenTheConsumerStalls() {
+        TextPipe pipe = new TextPipe(1, 50);
+        pipe.write("first");
+
+        assertThrows(IllegalStateException.class, () -> pipe.write("second"));
+    }
+
+    @Test
+    void failSurfacesAsAnIOExceptionOnTheNextRead() throws IOException {
+        TextPipe pipe = new TextPipe(4, 5000);
+        pipe.write("buffered text");
+        RuntimeException cause = new IllegalArgumentException("corrupt page");
+
+        pipe.fail(cause);
+
+        IOException error = assertThrows(IOException.class, () -> pipe.read(new char[16], 0, 16));
+        assertSame(cause, error.getCause());
+        // The stream stays ended
+        assertEquals(-1, pipe.read(new char[16], 0, 16));
+    }
+
+    @Test
+    void closeFailsAWaitingAndLaterProducer() {
+        TextPipe pipe = new TextPipe(1, 5000);
+        pipe.write("first");
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> pipe.write("second"));
+
+        pipe.close();
+
+        CompletionException error = assertThrows(CompletionException.class, () -> blocked.orTimeout(5, TimeUnit.SECONDS).join());
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertThrows(IllegalStateException.class, () -> pipe.write("third"));
+        assertThrows(IllegalStateException.class, pipe::finish);
+    }
+
+    @Test
+    void pageStartsAreRecordedAtTheirCharacterOffsets() throws IOException {
+        TextPipe pipe = new TextPipe(8, 5000);
+        pipe.startPage(1);
+        pipe.write("0123456789");
+        pipe.startPage(2);
+        pipe.write("abcde");
+        pipe.startPage(3);
+        pipe.finish();
+
+        assertEquals("0123456789abcde", readAll(pipe));
+        PageOffsets pages = pipe.pages();
+        assertEquals(1, pages.pageAt(9));
+        assertEquals(2, pages.pageAt(10));
+        assertEquals(2, pages.pageAt(14));
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[7];
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) != -1) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.genai.knowitall.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    // One permit per millisecond
+    private static final long PER_MILLISECOND = 60_000;
+
+    @Test
+    void acquisitionIsPacedToTheRefillRate() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(PER_MILLISECOND);
+        long start = System.nanoTime();
+        bucket.acquire(PER_MILLISECOND);
+        assertTrue(elapsedMs(start) < 50, "a full bucket is available at once");
+
+        start = System.nanoTime();
+        bucket.acquire(100);
+        long waited = elapsedMs(start);
+        assertTrue(waited >= 90 && waited < 2000, "waited " + waited + "ms for 100 permits");
+    }
+
+    @Test
+    void requestLargerThanTheBucketDrivesTheBalanceNegative() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(PER_MILLISECOND);
+
+        long start = System.nanoTime();
+        bucket.acquire(2 * PER_MILLISECOND);
+        assertTrue(elapsedMs(start) < 50, "admitted once the bucket is full");
+
+        // A minute of overdraft: the next permit is out of reach, so tryAcquire gives up without waiting
+        start = System.nanoTime();
+        assertFalse(bucket.tryAcquire(1, 200, TimeUnit.MILLISECONDS));
+        assertTrue(elapsedMs(start) < 150);
+    }
+
+    @Test
+    void waitersAreServedInArrivalOrder() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(10 * PER_MILLISECOND);
+        bucket.acquire(10 * PER_MILLISECOND);
+        Queue<String> served = new ConcurrentLinkedQueue<>();
+
+        // first holds the bucket while it waits ~200ms; large queues before small
+        Thread first = acquireInBackground(bucket, 2000, "first", served);
+        awaitState(first, Thread.State.TIMED_WAITING);
+        Thread large = acquireInBackground(bucket, 1000, "large", served);
+        awaitState(large, Thread.State.WAITING);
+        Thread small = acquireInBackground(bucket, 1, "small", served);
+        awaitState(small, Thread.State.WAITING);
+
+        for (Thread thread : List.of(first, large, small)) {
+            thread.join(5000);
+        }
+        assertEquals(List.of("first", "large", "small"), List.copyOf(served));
+    }
+
+    @Test
+    void tryAcquireGivesUpWithinItsTimeoutBehindAWaiter() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(PER_MILLISECOND);
+        bucket.acquire(PER_MILLISECOND);
+        Thread waiter = acquireInBackground(bucket, 500, "waiter", new ConcurrentLinkedQueue<>());
+        awaitState(waiter, Thread.State.TIMED_WAITING);
+
+        long start = System.nanoTime();
+        assertFalse(bucket.tryAcquire(1, 50, TimeUnit.MILLISECONDS));
+        long waited = elapsedMs(start);
+        assertTrue(waited < 400, "gave up after " + waited + "ms");
+        waiter.join(5000);
+    }
+
+    @Test
+    void releasedPermitsAreAvailableAgain() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(PER_MILLISECOND);
+        bucket.acquire(PER_MILLISECOND);
+        assertFalse(bucket.tryAcquire(PER_MILLISECOND / 2, 0, TimeUnit.MILLISECONDS));
+
+        bucket.release(PER_MILLISECOND / 2);
+
+        assertTrue(bucket.tryAcquire(PER_MILLISECOND / 2, 0, TimeUnit.MILLISECONDS));
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static Thread acquireInBackground(TokenBucket bucket, long permits, String name, Queue<String> served) {
+        Thread thread = new Thread(() -> {
+            try {
+                bucket.acquire(permits);
+                served.add(name);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != state) {
+            assertTrue(System.nanoTime() < deadline, thread.getName() + " never reached " + state);
+            Thread.sleep(1);
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,64 @@
+package com.genai.knowitall.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCounterTest {
+
+    private static final TokenCounter COUNTER = new TokenCounter("cl100k_base", "");
+
+    private static final String ASCII = "The quick brown fox jumps over the lazy dog. ".repeat(20);
+    // Multi-byte characters whose bytes straddle token boundaries
+    private static final String MULTIBYTE = "数据库连接池耗尽 🚀🔥 ERR-4012 überprüfen — ".repeat(15);
+
+    @Test
+    void countsExactTokens() {
+        assertEquals(0, COUNTER.count(""));
+        assertEquals(0, COUNTER.count(null));
+        assertEquals(2, COUNTER.count("hello world"));
+        assertTrue(COUNTER.count(MULTIBYTE) > MULTIBYTE.length() / 4, "CJK and emoji take more tokens than chars / 4");
+    }
+
+    @Test
+    void truncateReturnsLongestPrefixWithinLimit() {
+        for (String text : List.of(ASCII, MULTIBYTE)) {
+            for (int limit : new int[]{1, 7, 50, 199}) {
+                String prefix = COUNTER.truncate(text, limit);
+                assertTrue(text.startsWith(prefix), "prefix of the text");
+                assertTrue(COUNTER.count(prefix) <= limit, "within " + limit + " tokens");
+                assertFalse(prefix.contains("�"), "no half-decoded character");
+            }
+        }
+        assertEquals(ASCII, COUNTER.truncate(ASCII, 10_000));
+        assertEquals("", COUNTER.truncate(ASCII, 0));
+        assertEquals(10, COUNTER.count(COUNTER.truncate(ASCII, 10)));
+    }
+
+    @Test
+    void splitPiecesRespectLimitAndConcatenateBack() {
+        for (int limit : new int[]{1, 3, 16, 100}) {
+            List<String> pieces = COUNTER.split(ASCII, limit);
+            assertEquals(ASCII, String.join("", pieces));
+            for (String piece : pieces) {
+                assertTrue(COUNTER.count(piece) <= limit, "piece over " + limit + " tokens: " + piece);
+            }
+        }
+    }
+
+    @Test
+    void splitCarriesCharactersAcrossWindows() {
+        for (int limit : new int[]{1, 2, 5, 33}) {
+            List<String> pieces = COUNTER.split(MULTIBYTE, limit);
+            assertEquals(MULTIBYTE, String.join("", pieces), "limit " + limit);
+            for (String piece : pieces) {
+                assertFalse(piece.isEmpty());
+                assertFalse(piece.contains("�"));
+            }
+        }
+        assertTrue(COUNTER.split("", 10).isEmpty());
+        assertEquals(List.of("short"), COUNTER.split("short", 0));
+    }
+}
@@ -0,0 +1,183 @@
+package com.genai.knowitall.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    private static final int SLAB_NODES = 4096;
+
+    @Test
+    void searchRecallMatchesBruteForce() {
+        Random random = new Random(11);
+        float[][] vectors = randomVectors(random, 3000, 32);
+        HnswIndex index = new HnswIndex(32, 16, 100);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+
+        double recall = recallAt10(index, vectors, randomVectors(random, 50, 32), 100);
+        assertTrue(recall >= 0.95, "recall@10 " + recall);
+    }
+
+    @Test
+    void int8SearchWithRescoringKeepsRecall() {
+        assertQuantizedRecall(VectorQuantization.INT8, 3.0, 0.95);
+    }
+
+    @Test
+    void binarySearchWithOversampledRescoringKeepsRecall() {
+        assertQuantizedRecall(VectorQuantization.BINARY, 10.0, 0.9);
+    }
+
+    @Test
+    void searchSkipsTombstonedNodes() {
+        Random random = new Random(5);
+        float[][] vectors = randomVectors(random, 500, 16);
+        HnswIndex index = new HnswIndex(16, 8, 50);
+        for (float[] vector : vectors) {
+            index.add(vector);
+        }
+        for (int node = 0; node < 500; node += 2) {
+            index.markDeleted(node);
+        }
+        index.markDeleted(0);
+
+        assertEquals(500, index.size());
+        assertEquals(250, index.liveSize());
+        for (int node = 0; node < 500; node += 50) {
+            for (HnswIndex.Hit hit : index.search(vectors[node], 10, 50, null)) {
+                assertFalse(index.isDeleted(hit.node()), "tombstoned node " + hit.node() + " returned");
+            }
+        }
+        // A live node is still its own nearest neighbor
+        assertEquals(1, index.search(vectors[1], 1, 50, null).get(0).node());
+        assertEquals(3, index.search(vectors[3], 1, 50, node -> node % 2 == 1).get(0).node());
+    }
+
+    @Test
+    void vectorsSurviveSlabBoundaries() {
+        assertSlabBoundaries(VectorQuantization.NONE);
+    }
+
+    @Test
+    void quantizedOriginalsSurviveSegmentBoundaries() {
+        assertSlabBoundaries(VectorQuantization.INT8);
+    }
+
+    @Test
+    void clearDropsAllNodes() {
+        HnswIndex index = new HnswIndex(4, 4, 10);
+        index.add(new float[]{1, 0, 0, 0});
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertTrue(index.search(new float[]{1, 0, 0, 0}, 1, 10, null).isEmpty());
+        assertEquals(0, index.add(new float[]{0, 1, 0, 0}));
+    }
+
+    @Test
+    void rejectsWrongDimension() {
+        HnswIndex index = new HnswIndex(4, 4, 10);
+        assertThrows(IllegalArgumentException.class, () -> index.add(new float[3]));
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static void assertSlabBoundaries(VectorQuantization quantization) {
+        Random random = new Random(3);
+        int count = 2 * SLAB_NODES + 1;
+        float[][] vectors = randomVectors(random, count, 8);
+        HnswIndex index = new HnswIndex(8, 8, 20, quantization, 2.0, null);
+        try {
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, index.add(vectors[i]));
+            }
+            for (int node : new int[]{0, SLAB_NODES - 1, SLAB_NODES, 2 * SLAB_NODES - 1, 2 * SLAB_NODES}) {
+                assertArrayEquals(HnswIndex.normalizedCopy(vectors[node]), index.vector(node), 1e-6f,
+                        "vector of node " + node);
+                assertEquals(1.0f, index.similarity(HnswIndex.normalizedCopy(vectors[node]), node), 1e-5f);
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Recall@10 of a quantized index (rescored with the originals) against exact search,
+     * on clustered data like embeddings (random Gaussian vectors have no near neighbors).
+     */
+    private static void assertQuantizedRecall(VectorQuantization quantization, double oversampling, double floor) {
+        Random random = new Random(17);
+        int dimension = 256;
+        float[][] centers = randomVectors(random, 40, dimension);
+        float[][] vectors = clustered(random, centers, 2000);
+        float[][] queries = clustered(random, centers, 40);
+        HnswIndex index = new HnswIndex(dimension, 16, 100, quantization, oversampling, null);
+        try {
+            for (float[] vector : vectors) {
+                index.add(vector);
+            }
+            double recall = recallAt10(index, vectors, queries, 100);
+            assertTrue(recall >= floor, quantization + " recall@10 " + recall + " below " + floor);
+        } finally {
+            index.close();
+        }
+    }
+
+    private static float[][] clustered(Random random, float[][] centers, int count) {
+        float[][] vectors = randomVectors(random, count, centers[0].length);
+        for (float[] vector : vectors) {
+            float[] center = centers[random.nextInt(centers.length)];
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] = center[d] + vector[d];
+            }
+        }
+        return vectors;
+    }
+
+    static double recallAt10(HnswIndex index, float[][] vectors, float[][] queries, int ef) {
+        int hits = 0;
+        for (float[] query : queries) {
+            Set<Integer> expected = bruteForce(vectors, query, 10);
+            List<HnswIndex.Hit> found = index.search(query, 10, ef, null);
+            for (HnswIndex.Hit hit : found) {
+                if (expected.contains(hit.node())) {
+                    hits++;
+                }
+            }
+        }
+        return hits / (double) (queries.length * 10);
+    }
+
+    private static Set<Integer> bruteForce(float[][] vectors, float[] query, int k) {
+        float[] normalized = HnswIndex.normalizedCopy(query);
+        float[] scores = new float[vectors.length];
+        Integer[] nodes = new Integer[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            nodes[i] = i;
+            float[] vector = HnswIndex.normalizedCopy(vectors[i]);
+            for (int d = 0; d < vector.length; d++) {
+                scores[i] += vector[d] * normalized[d];
+            }
+        }
+        java.util.Arrays.sort(nodes, (a, b) -> Float.compare(scores[b], scores[a]));
+        return new HashSet<>(List.of(nodes).subList(0, k));
+    }
+
+    static float[][] randomVectors(Random random, int count, int dimension) {
+        float[][] vectors = new float[count][dimension];
+        for (float[] vector : vectors) {
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,180 @@
+package com.genai.knowitall.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswVectorStoreTest {
+
+    private static final int DIMENSION = 16;
+
+    @Test
+    void deleteDocumentKeepsVectorsSharedWithOtherDocuments() {
+        HnswVectorStore store = new HnswVectorStore(DIMENSION, 8, 50, 50);
+        float[][] vectors = HnswIndexTest.randomVectors(new Random(1), 3, DIMENSION);
+        store.storeEmbeddings(List.of(
+                record("v1", vectors[0], "doc-a", 0),
+                record("v2", vectors[1], "doc-a", 1),
+                record("v3", vectors[2], "doc-b", 0)));
+        store.updateReferences(Map.of("v2", List.of(
+                new VectorReference("v2", "doc-a", null, 1),
+                new VectorReference("c9", "doc-b", null, 1))));
+
+        store.deleteDocument("doc-a");
+
+        assertFalse(store.exists("v1"));
+        assertTrue(store.exists("v2"));
+        VectorSearchResult shared = store.search(vectors[1], 1, SearchFilter.forDocument("doc-b")).get(0);
+        assertEquals("v2", shared.getVectorId());
+        assertEquals("c9", shared.getChunkId());
+        assertTrue(store.search(vectors[0], 3, SearchFilter.forDocument("doc-a")).isEmpty());
+
+        // Deleting again (or an unknown document) is a no-op
+        store.deleteDocument("doc-a");
+        store.deleteDocument("doc-x");
+        assertEquals(Set.of("v2", "v3"), listAll(store));
+    }
+
+    @Test
+    void compactionDropsTombstonesAndKeepsSearchResults() {
+        HnswVectorStore store = new HnswVectorStore(DIMENSION, 8, 50, 100);
+        float[][] vectors = HnswIndexTest.randomVectors(new Random(2), 1000, DIMENSION);
+        List<VectorRecord> records = new ArrayList<>();
+        for (int i = 0; i < vectors.length; i++) {
+            records.add(record("v" + i, vectors[i], "doc-" + (i % 4), i));
+        }
+        store.storeEmbeddings(records);
+
+        store.deleteDocument("doc-0");
+        store.compact();
+
+        Set<String> live = listAll(store);
+        assertEquals(750, live.size());
+        assertFalse(live.contains("v0"));
+        for (int i = 1; i < vectors.length; i += 97) {
+            if (i % 4 != 0) {
+                assertEquals("v" + i, store.search(vectors[i], 1, (SearchFilter) null).get(0).getVectorId());
+            }
+        }
+        VectorSearchResult filtered = store.search(vectors[5], 1, SearchFilter.forDocument("doc-1")).get(0);
+        assertEquals("v5", filtered.getVectorId());
+
+        // Writes after compaction land in the new graph
+        store.storeEmbeddings(List.of(record("v0", vectors[0], "doc-0", 0)));
+        assertEquals("v0", store.search(vectors[0], 1, SearchFilter.forDocument("doc-0")).get(0).getVectorId());
+    }
+
+    @Test
+    void writesMadeDuringCompactionAreKept() throws Exception {
+        HnswVectorStore store = new HnswVectorStore(DIMENSION, 8, 50, 100);
+        float[][] vectors = HnswIndexTest.randomVectors(new Random(3), 4000, DIMENSION);
+        List<VectorRecord> records = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            records.add(record("v" + i, vectors[i], "doc-" + (i % 4), i));
+        }
+        store.storeEmbeddings(records);
+        store.deleteDocument("doc-0");
+
+        // Stores, replaces and deletes interleave with the copy and the rebuild
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            for (int i = 3000; i < 4000; i++) {
+                store.storeEmbeddings(List.of(record("v" + i, vectors[i], "doc-new", i)));
+                if (i == 3500) {
+                    store.deleteDocument("doc-1");
+                }
+            }
+            store.storeEmbeddings(List.of(record("v2", vectors[0], "doc-2", 2)));
+        });
+        store.compact();
+        writer.get(30, TimeUnit.SECONDS);
+
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 4000; i++) {
+            if (i >= 3000 || i % 4 == 2 || i % 4 == 3) {
+                expected.add("v" + i);
+            }
+        }
+        assertEquals(expected, listAll(store));
+        for (int i = 3; i < 4000; i += 89) {
+            if (expected.contains("v" + i)) {
+                assertEquals("v" + i, store.search(vectors[i], 1, (SearchFilter) null).get(0).getVectorId());
+            }
+        }
+        assertTrue(store.search(vectors[5], 1, SearchFilter.forDocument("doc-1")).isEmpty());
+        assertEquals("v2", store.search(vectors[0], 1, SearchFilter.forDocument("doc-2")).get(0).getVectorId());
+        assertEquals(1000, store.search(vectors[3000], 2000, SearchFilter.forDocument("doc-new")).size());
+    }
+
+    @Test
+    void storingAnExistingVectorIdReplacesIt() {
+        HnswVectorStore store = new HnswVectorStore(DIMENSION, 8, 50, 50);
+        float[][] vectors = HnswIndexTest.randomVectors(new Random(4), 2, DIMENSION);
+        store.storeEmbedding("v1", vectors[0], Map.of("document_id", "doc-a", "chunk_index", 0));
+        store.storeEmbedding("v1", vectors[1], Map.of("document_id", "doc-b", "chunk_index", 0));
+
+        assertEquals(Set.of("v1"), listAll(store));
+        assertTrue(store.search(vectors[1], 1, SearchFilter.forDocument("doc-a")).isEmpty());
+        assertEquals("doc-b", store.search(vectors[1], 1, (SearchFilter) null).get(0).getDocumentId());
+    }
+
+    @Test
+    void rejectedReplacementKeepsTheExistingVector() {
+        HnswVectorStore store = new HnswVectorStore(DIMENSION, 8, 50, 50);
+        float[] vector = HnswIndexTest.randomVectors(new Random(5), 1, DIMENSION)[0];
+        store.storeEmbedding("v1", vector, Map.of("document_id", "doc-a", "chunk_index", 0));
+
+        assertThrows(VectorStoreException.class, () ->
+                store.storeEmbedding("v1", new float[DIMENSION + 1], Map.of("document_id", "doc-b", "chunk_index", 0)));
+
+        assertTrue(store.exists("v1"));
+        assertEquals("doc-a", store.search(vector, 1, SearchFilter.forDocument("doc-a")).get(0).getDocumentId());
+    }
+
+    @Test
+    void nodeListAddsAndRemovesInConstantTime() {
+        HnswVectorStore.NodeList nodes = new HnswVectorStore.NodeList();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(9);
+        for (int i = 0; i < 20_000; i++) {
+            int node = random.nextInt(5000);
+            if (random.nextBoolean()) {
+                nodes.add(node);
+                expected.add(node);
+            } else {
+                nodes.remove(node);
+                expected.remove(node);
+            }
+        }
+        assertEquals(expected.size(), nodes.size());
+        for (int node = 0; node < 5000; node++) {
+            assertEquals(expected.contains(node), nodes.contains(node), "node " + node);
+        }
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static VectorRecord record(String vectorId, float[] vector, String documentId, int chunkIndex) {
+        return new VectorRecord(vectorId, vector, Map.of("document_id", documentId, "chunk_index", chunkIndex,
+                "content", "chunk " + chunkIndex));
+    }
+
+    private static Set<String> listAll(HnswVectorStore store) {
+        Set<String> vectorIds = new HashSet<>();
+        String cursor = null;
+        do {
+            VectorIdPage page = store.listVectorIds(cursor, 100);
+            vectorIds.addAll(page.getVectorIds());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return vectorIds;
+    }
+}
@@ -0,0 +1,86 @@
+package com.genai.knowitall.vectorstore;
+
+import com.google.common.util.concurrent.Futures;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Points.ScoredPoint;
+import io.qdrant.client.grpc.Points.SearchPoints;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.ValueFactory.value;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class QdrantVectorStoreTest {
+
+    private final QdrantClient client = mock(QdrantClient.class);
+    private final QdrantVectorStore store = new QdrantVectorStore(client, "test", 256, 4,
+            new ChunkMetadataStore(client, "test"));
+
+    @Test
+    void filteredSearchRefillsHitsNoSingleReferenceMatches() {
+        // doc-a/owner-y and doc-b/owner-x: matches document doc-a and owner owner-x, but not in one chunk
+        ScoredPoint crossMatch = point(0.9f,
+                new VectorReference("c1", "doc-a", "owner-y", 0),
+                new VectorReference("c2", "doc-b", "owner-x", 0));
+        List<ScoredPoint> firstPage = new ArrayList<>();
+        firstPage.add(crossMatch);
+        firstPage.add(point(0.8f, new VectorReference(null, "doc-a", "owner-x", 1)));
+        List<ScoredPoint> secondPage = List.of(point(0.7f, new VectorReference(null, "doc-a", "owner-x", 2)));
+        when(client.searchAsync(any(SearchPoints.class)))
+                .thenReturn(Futures.immediateFuture(firstPage))
+                .thenReturn(Futures.immediateFuture(secondPage));
+
+        SearchFilter filter = SearchFilter.builder()
+                .documentIds(Set.of("doc-a"))
+                .owners(Set.of("owner-x"))
+                .build();
+        List<VectorSearchResult> results = store.search(new float[]{1f, 0f}, 2, filter);
+
+        assertEquals(List.of(1, 2), results.stream().map(VectorSearchResult::getChunkIndex).toList());
+        ArgumentCaptor<SearchPoints> requests = ArgumentCaptor.forClass(SearchPoints.class);
+        verify(client, times(2)).searchAsync(requests.capture());
+        assertEquals(0, requests.getAllValues().get(0).getOffset());
+        assertEquals(2, requests.getAllValues().get(1).getOffset());
+    }
+
+    @Test
+    void searchStopsWhenPageIsNotFull() {
+        when(client.searchAsync(any(SearchPoints.class)))
+                .thenReturn(Futures.immediateFuture(List.of(point(0.5f, new VectorReference(null, "doc-a", null, 0)))));
+
+        List<VectorSearchResult> results = store.search(new float[]{1f, 0f}, 5, SearchFilter.forDocument("doc-a"));
+
+        assertEquals(1, results.size());
+        assertEquals(0.75, results.get(0).getScore(), 1e-6);
+        verify(client, times(1)).searchAsync(any(SearchPoints.class));
+    }
+
+    // ==================== Helper Methods ====================
+
+    private static ScoredPoint point(float score, VectorReference... references) {
+        String vectorId = UUID.randomUUID().toString();
+        ScoredPoint.Builder point = ScoredPoint.newBuilder()
+                .setId(id(UUID.fromString(vectorId)))
+                .setScore(score);
+        if (references.length == 1 && references[0].getChunkId() == null) {
+            // A point referenced only by the chunk it was stored for
+            VectorReference reference = references[0];
+            point.putPayload("document_id", value(reference.getDocumentId()));
+            if (reference.getOwner() != null) {
+                point.putPayload("owner", value(reference.getOwner()));
+            }
+            point.putPayload("chunk_index", value(reference.getChunkIndex()));
+        } else {
+            point.putAllPayload(ChunkMetadataStore.referencesToPayload(List.of(references)));
+        }
+        return point.build();
+    }
+}